@@ -16,6 +16,7 @@
 
 package com.android.launcher3.model;
 
+import android.appwidget.AppWidgetProviderInfo;
 import android.content.ComponentName;
 import android.content.Context;
 import android.os.UserHandle;
@@ -73,6 +74,15 @@ public class WidgetsModel {
         return Collections.emptyList();
     }
 
+    /**
+     * Same as {@link #update(LauncherAppState, PackageUserKey)}, but uses {@param providers} if
+     * not null instead of querying the widget providers for the package/user.
+     */
+    public List<ComponentWithLabelAndIcon> update(LauncherAppState app,
+            @Nullable PackageUserKey packageUser, @Nullable List<AppWidgetProviderInfo> providers) {
+        return Collections.emptyList();
+    }
+
 
     public void onPackageIconsUpdated(Set<String> packageNames, UserHandle user,
             LauncherAppState app) {
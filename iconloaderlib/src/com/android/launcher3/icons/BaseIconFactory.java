@@ -52,7 +52,6 @@ public class BaseIconFactory implements AutoCloseable {
     protected final int mFillResIconDpi;
     protected final int mIconBitmapSize;
 
-    private IconNormalizer mNormalizer;
     private ShadowGenerator mShadowGenerator;
     private final boolean mShapeDetection;
 
@@ -100,11 +99,11 @@ public class BaseIconFactory implements AutoCloseable {
         return mShadowGenerator;
     }
 
+    /**
+     * Returns the normalizer of the calling thread, which should not be used on other threads
+     */
     public IconNormalizer getNormalizer() {
-        if (mNormalizer == null) {
-            mNormalizer = new IconNormalizer(mContext, mIconBitmapSize, mShapeDetection);
-        }
-        return mNormalizer;
+        return IconNormalizer.getInstance(mContext, mIconBitmapSize, mShapeDetection);
     }
 
     @SuppressWarnings("deprecation")
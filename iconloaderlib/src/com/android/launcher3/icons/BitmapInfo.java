@@ -28,7 +28,9 @@ import android.util.Log;
 import com.android.launcher3.icons.ThemedIconDrawable.ThemedBitmapInfo;
 import com.android.launcher3.icons.cache.BaseIconCache;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 
 import androidx.annotation.NonNull;
@@ -133,6 +135,28 @@ public class BitmapInfo {
         }
     }
 
+    /**
+     * Decodes only the icon bitmap of a BitmapInfo previously serialized using
+     * {@link #toByteArray()}, ignoring any extra data like the theme.
+     */
+    @Nullable
+    static Bitmap decodeIcon(byte[] data, BitmapFactory.Options decodeOptions) {
+        if (data[0] == TYPE_DEFAULT) {
+            return BitmapFactory.decodeByteArray(data, 1, data.length - 1, decodeOptions);
+        } else if (data[0] == TYPE_THEMED) {
+            try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data))) {
+                dis.readByte(); // type
+                dis.readFloat(); // normalization scale
+                dis.readUTF(); // theme resource name
+                return BitmapFactory.decodeStream(dis, null, decodeOptions);
+            } catch (IOException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+    }
+
     public static BitmapInfo fromBitmap(@NonNull Bitmap bitmap) {
         return of(bitmap, 0);
     }
@@ -17,19 +17,33 @@ package com.android.launcher3.icons;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.util.SparseArray;
+
 import java.util.Arrays;
 
 /**
  * Utility class for extracting colors from a bitmap.
+ *
+ * The sampled pixels are read one row at a time and converted to HSV with the same float
+ * operations as {@link Color#colorToHSV(int, float[])}, so that the results are identical to
+ * sampling with {@link Bitmap#getPixel(int, int)}. An instance reuses its buffers and does not
+ * allocate once they are large enough for the bitmaps scanned.
  */
 public class ColorExtractor {
 
     private final int NUM_SAMPLES = 20;
-    private final float[] mTmpHsv = new float[3];
     private final float[] mTmpHueScoreHistogram = new float[360];
-    private final int[] mTmpPixels = new int[NUM_SAMPLES];
-    private final SparseArray<Float> mTmpRgbScores = new SparseArray<>();
+
+    private int[] mTmpRow = new int[0];
+
+    // Colors of the first pixels sampled, along with their hue, saturation and value
+    private int[] mTmpPixels = new int[NUM_SAMPLES];
+    private int[] mTmpPixelHues = new int[NUM_SAMPLES];
+    private float[] mTmpPixelSaturations = new float[NUM_SAMPLES];
+    private float[] mTmpPixelValues = new float[NUM_SAMPLES];
+
+    // Scores of the [s,v] buckets of the winning hue, in the order they are found
+    private int[] mTmpRgbBuckets = new int[NUM_SAMPLES];
+    private float[] mTmpRgbScores = new float[NUM_SAMPLES];
 
     /**
      * This picks a dominant color, looking for high-saturation, high-value, repeated hues.
@@ -50,10 +64,7 @@ public class ColorExtractor {
         if (sampleStride < 1) {
             sampleStride = 1;
         }
-
-        // This is an out-param, for getting the hsv values for an rgb
-        float[] hsv = mTmpHsv;
-        Arrays.fill(hsv, 0);
+        ensureCapacity(width, samples);
 
         // First get the best hue, by creating a histogram over 360 hue buckets,
         // where each pixel contributes a score weighted by saturation, value, and alpha.
@@ -62,31 +73,43 @@ public class ColorExtractor {
         float highScore = -1;
         int bestHue = -1;
 
+        int[] row = mTmpRow;
         int[] pixels = mTmpPixels;
-        Arrays.fill(pixels, 0);
+        int[] pixelHues = mTmpPixelHues;
+        float[] pixelSaturations = mTmpPixelSaturations;
+        float[] pixelValues = mTmpPixelValues;
         int pixelCount = 0;
 
         for (int y = 0; y < height; y += sampleStride) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
             for (int x = 0; x < width; x += sampleStride) {
-                int argb = bitmap.getPixel(x, y);
-                int alpha = 0xFF & (argb >> 24);
-                if (alpha < 0x80) {
+                int argb = row[x];
+                if ((argb >>> 24) < 0x80) {
                     // Drop mostly-transparent pixels.
                     continue;
                 }
-                // Remove the alpha channel.
-                int rgb = argb | 0xFF000000;
-                Color.colorToHSV(rgb, hsv);
+                int r = (argb >> 16) & 0xFF;
+                int g = (argb >> 8) & 0xFF;
+                int b = argb & 0xFF;
+                int max = Math.max(r, Math.max(g, b));
+                int delta = max - Math.min(r, Math.min(g, b));
+                float s = delta == 0 ? 0 : (float) delta / max;
+                float v = (float) max / 255;
                 // Bucket colors by the 360 integer hues.
-                int hue = (int) hsv[0];
+                int hue = delta == 0 ? 0 : (int) computeHue(r, g, b, max, delta);
                 if (hue < 0 || hue >= hueScoreHistogram.length) {
                     // Defensively avoid array bounds violations.
                     continue;
                 }
                 if (pixelCount < samples) {
-                    pixels[pixelCount++] = rgb;
+                    // Remove the alpha channel.
+                    pixels[pixelCount] = argb | 0xFF000000;
+                    pixelHues[pixelCount] = hue;
+                    pixelSaturations[pixelCount] = s;
+                    pixelValues[pixelCount] = v;
+                    pixelCount++;
                 }
-                float score = hsv[1] * hsv[2];
+                float score = s * v;
                 hueScoreHistogram[hue] += score;
                 if (hueScoreHistogram[hue] > highScore) {
                     highScore = hueScoreHistogram[hue];
@@ -95,33 +118,77 @@ public class ColorExtractor {
             }
         }
 
-        SparseArray<Float> rgbScores = mTmpRgbScores;
-        rgbScores.clear();
+        int[] rgbBuckets = mTmpRgbBuckets;
+        float[] rgbScores = mTmpRgbScores;
+        int bucketCount = 0;
         int bestColor = 0xff000000;
         highScore = -1;
         // Go back over the RGB colors that match the winning hue,
         // creating a histogram of weighted s*v scores, for up to 100*100 [s,v] buckets.
         // The highest-scoring RGB color wins.
         for (int i = 0; i < pixelCount; i++) {
-            int rgb = pixels[i];
-            Color.colorToHSV(rgb, hsv);
-            int hue = (int) hsv[0];
-            if (hue == bestHue) {
-                float s = hsv[1];
-                float v = hsv[2];
+            if (pixelHues[i] == bestHue) {
+                float s = pixelSaturations[i];
+                float v = pixelValues[i];
                 int bucket = (int) (s * 100) + (int) (v * 10000);
                 // Score by cumulative saturation * value.
                 float score = s * v;
-                Float oldTotal = rgbScores.get(bucket);
-                float newTotal = oldTotal == null ? score : oldTotal + score;
-                rgbScores.put(bucket, newTotal);
+                int index = 0;
+                while (index < bucketCount && rgbBuckets[index] != bucket) {
+                    index++;
+                }
+                float newTotal;
+                if (index < bucketCount) {
+                    newTotal = rgbScores[index] + score;
+                } else {
+                    newTotal = score;
+                    rgbBuckets[index] = bucket;
+                    bucketCount++;
+                }
+                rgbScores[index] = newTotal;
                 if (newTotal > highScore) {
                     highScore = newTotal;
                     // All the colors in the winning bucket are very similar. Last in wins.
-                    bestColor = rgb;
+                    bestColor = pixels[i];
                 }
             }
         }
         return bestColor;
     }
+
+    private void ensureCapacity(int width, int samples) {
+        if (mTmpRow.length < width) {
+            mTmpRow = new int[width];
+        }
+        if (mTmpPixels.length < samples) {
+            mTmpPixels = new int[samples];
+            mTmpPixelHues = new int[samples];
+            mTmpPixelSaturations = new float[samples];
+            mTmpPixelValues = new float[samples];
+            mTmpRgbBuckets = new int[samples];
+            mTmpRgbScores = new float[samples];
+        }
+    }
+
+    /**
+     * Returns the hue in degrees of a color which is not a shade of gray, rounded exactly like
+     * {@link Color#colorToHSV(int, float[])} does.
+     * @param max the largest of the components
+     * @param delta the difference between the largest and the smallest components, not 0
+     */
+    private static float computeHue(int r, int g, int b, int max, int delta) {
+        float h;
+        if (r == max) {
+            h = (float) (g - b) / delta;
+        } else if (g == max) {
+            h = 2 + (float) (b - r) / delta;
+        } else {
+            h = 4 + (float) (r - g) / delta;
+        }
+        h *= 60;
+        if (h < 0) {
+            h += 360;
+        }
+        return h;
+    }
 }
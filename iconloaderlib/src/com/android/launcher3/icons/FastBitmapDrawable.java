@@ -50,6 +50,8 @@ public class FastBitmapDrawable extends Drawable {
 
     protected final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
     protected Bitmap mBitmap;
+    // Region of mBitmap to draw, or null to draw the whole bitmap
+    @Nullable protected final Rect mSrcRect;
     protected final int mIconColor;
 
     @Nullable private ColorFilter mColorFilter;
@@ -90,7 +92,17 @@ public class FastBitmapDrawable extends Drawable {
     }
 
     protected FastBitmapDrawable(Bitmap b, int iconColor, boolean isDisabled) {
+        this(b, null, iconColor, isDisabled);
+    }
+
+    /**
+     * Creates a drawable for the {@param srcRect} region of {@param b}, which is typically a page
+     * of an {@link IconAtlas} shared by many drawables.
+     */
+    protected FastBitmapDrawable(Bitmap b, @Nullable Rect srcRect, int iconColor,
+            boolean isDisabled) {
         mBitmap = b;
+        mSrcRect = srcRect;
         mIconColor = iconColor;
         setFilterBitmap(true);
         setIsDisabled(isDisabled);
@@ -110,7 +122,7 @@ public class FastBitmapDrawable extends Drawable {
     }
 
     protected void drawInternal(Canvas canvas, Rect bounds) {
-        canvas.drawBitmap(mBitmap, null, bounds, mPaint);
+        canvas.drawBitmap(mBitmap, mSrcRect, bounds, mPaint);
     }
 
     /**
@@ -173,12 +185,12 @@ public class FastBitmapDrawable extends Drawable {
 
     @Override
     public int getIntrinsicWidth() {
-        return mBitmap.getWidth();
+        return mSrcRect == null ? mBitmap.getWidth() : mSrcRect.width();
     }
 
     @Override
     public int getIntrinsicHeight() {
-        return mBitmap.getHeight();
+        return mSrcRect == null ? mBitmap.getHeight() : mSrcRect.height();
     }
 
     @Override
@@ -268,7 +280,7 @@ public class FastBitmapDrawable extends Drawable {
 
     @Override
     public ConstantState getConstantState() {
-        return new FastBitmapConstantState(mBitmap, mIconColor, mIsDisabled);
+        return new FastBitmapConstantState(mBitmap, mSrcRect, mIconColor, mIsDisabled);
     }
 
     public static ColorFilter getDisabledFColorFilter(float disabledAlpha) {
@@ -292,18 +304,25 @@ public class FastBitmapDrawable extends Drawable {
 
     protected static class FastBitmapConstantState extends ConstantState {
         protected final Bitmap mBitmap;
+        @Nullable protected final Rect mSrcRect;
         protected final int mIconColor;
         protected final boolean mIsDisabled;
 
         public FastBitmapConstantState(Bitmap bitmap, int color, boolean isDisabled) {
+            this(bitmap, null, color, isDisabled);
+        }
+
+        public FastBitmapConstantState(Bitmap bitmap, @Nullable Rect srcRect, int color,
+                boolean isDisabled) {
             mBitmap = bitmap;
+            mSrcRect = srcRect;
             mIconColor = color;
             mIsDisabled = isDisabled;
         }
 
         @Override
         public FastBitmapDrawable newDrawable() {
-            return new FastBitmapDrawable(mBitmap, mIconColor, mIsDisabled);
+            return new FastBitmapDrawable(mBitmap, mSrcRect, mIconColor, mIsDisabled);
         }
 
         @Override
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.UserHandle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.UiThread;
+
+import com.android.launcher3.util.ComponentKey;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Packs icons into a few large shared bitmaps, so that a list of icons needs a handful of
+ * allocations and texture uploads instead of one per icon.
+ *
+ * All icons have the same size and are laid out in a grid of slots on each page, with a
+ * transparent gutter between slots so that filtering does not bleed neighbouring icons. Pages are
+ * only allocated once a slot is needed, and are only as tall as the rows needed by the icons
+ * {@link #reserve reserved} at that time. Each slot is owned by the key of a cache entry: loading
+ * the same key again redraws its slot, and the slot is only freed for reuse when the entry is
+ * removed, for example when its package is uninstalled. Once the pages hold the maximum number of
+ * slots, {@link #add} returns null and the caller falls back to a flat placeholder.
+ *
+ * Slots are allocated on the calling thread, but the pages are only drawn on the UI thread, by
+ * a single pass per frame over all the icons added since the previous pass. The UI thread never
+ * draws a page while it is being updated, and each page is uploaded at most once per pass.
+ */
+public class IconAtlas {
+
+    // Transparent pixels around each slot
+    private static final int SLOT_PADDING = 1;
+
+    private final int mIconSize;
+    private final int mSlotSize;
+    private final int mPageSize;
+    private final int mMaxPages;
+    private final int mSlotsPerRow;
+    private final int mSlotsPerPage;
+    private final Executor mUiExecutor;
+
+    private final ArrayList<Bitmap> mPages = new ArrayList<>();
+    private final HashMap<ComponentKey, Region> mRegions = new HashMap<>();
+    private final ArrayDeque<Region> mFreeRegions = new ArrayDeque<>();
+    // Slots of the pages allocated so far, and the number of them which were handed out
+    private int mCapacity;
+    private int mAllocatedSlots;
+    // Number of icons expected to be added, used to size the next page
+    private int mReservedSlots;
+
+    private ArrayList<PendingDraw> mPendingDraws = new ArrayList<>();
+    private boolean mDrawScheduled;
+
+    // Only accessed on the UI thread
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+
+    private int mRejectedCount;
+    private int mDrawPassCount;
+    private int mDrawnIconCount;
+
+    /**
+     * @param iconSize size of each icon in the atlas
+     * @param pageSize width and height of each shared bitmap
+     * @param maxPages maximum number of full size shared bitmaps
+     * @param uiExecutor executor of the thread which draws the icons using the atlas
+     */
+    public IconAtlas(int iconSize, int pageSize, int maxPages, Executor uiExecutor) {
+        int slotSize = iconSize + 2 * SLOT_PADDING;
+        if (slotSize > pageSize) {
+            throw new IllegalArgumentException("Icon size " + iconSize
+                    + " does not fit in page size " + pageSize);
+        }
+        mIconSize = iconSize;
+        mSlotSize = slotSize;
+        mPageSize = pageSize;
+        mMaxPages = maxPages;
+        mSlotsPerRow = pageSize / slotSize;
+        mSlotsPerPage = mSlotsPerRow * mSlotsPerRow;
+        mUiExecutor = uiExecutor;
+    }
+
+    public int getIconSize() {
+        return mIconSize;
+    }
+
+    /**
+     * Indicates that up to {@param count} icons are about to be added, so that a page allocated
+     * for them only has the rows they need.
+     */
+    public synchronized void reserve(int count) {
+        mReservedSlots = count;
+    }
+
+    /**
+     * Returns the slot owned by {@param key}, allocating one if needed, or null if the atlas is
+     * full.
+     */
+    @Nullable
+    public synchronized Region allocate(@NonNull ComponentKey key) {
+        Region region = mRegions.get(key);
+        if (region != null) {
+            return region;
+        }
+        region = mFreeRegions.poll();
+        if (region == null) {
+            if (mAllocatedSlots == mCapacity && !addPage()) {
+                mRejectedCount++;
+                return null;
+            }
+            Bitmap page = mPages.get(mPages.size() - 1);
+            int slot = mAllocatedSlots - (mCapacity - getSlotCount(page));
+            int left = (slot % mSlotsPerRow) * mSlotSize + SLOT_PADDING;
+            int top = (slot / mSlotsPerRow) * mSlotSize + SLOT_PADDING;
+            mAllocatedSlots++;
+            mReservedSlots = Math.max(mReservedSlots - 1, 0);
+            region = new Region(page, new Rect(left, top, left + mIconSize, top + mIconSize));
+        }
+        mRegions.put(key, region);
+        return region;
+    }
+
+    /**
+     * Allocates a page with enough rows for the reserved icons, up to a full page, and returns
+     * false if the atlas already holds the maximum number of slots.
+     */
+    private boolean addPage() {
+        int remainingSlots = mMaxPages * mSlotsPerPage - mCapacity;
+        if (remainingSlots <= 0) {
+            return false;
+        }
+        int slots = Math.min(Math.min(Math.max(mReservedSlots, 1), mSlotsPerPage), remainingSlots);
+        int rows = (slots + mSlotsPerRow - 1) / mSlotsPerRow;
+        Bitmap page = Bitmap.createBitmap(mPageSize, rows * mSlotSize, Bitmap.Config.ARGB_8888);
+        mPages.add(page);
+        mCapacity += getSlotCount(page);
+        return true;
+    }
+
+    private int getSlotCount(Bitmap page) {
+        return (page.getHeight() / mSlotSize) * mSlotsPerRow;
+    }
+
+    /**
+     * Schedules {@param icon} to be drawn in the slot owned by {@param key} and returns that slot,
+     * or null if the atlas is full. The atlas takes ownership of {@param icon} and recycles it
+     * once drawn, unless null is returned.
+     */
+    @Nullable
+    public Region add(@NonNull ComponentKey key, @NonNull Bitmap icon) {
+        Region region = allocate(key);
+        if (region == null) {
+            return null;
+        }
+        synchronized (this) {
+            mPendingDraws.add(new PendingDraw(region, icon));
+            if (!mDrawScheduled) {
+                mDrawScheduled = true;
+                mUiExecutor.execute(this::drawPendingIcons);
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Frees the slot owned by {@param key}, if any
+     */
+    public synchronized void remove(@NonNull ComponentKey key) {
+        Region region = mRegions.remove(key);
+        if (region != null) {
+            mFreeRegions.add(region);
+        }
+    }
+
+    /**
+     * Frees the slots owned by the components of {@param packageName}
+     */
+    public synchronized void removePackage(@NonNull String packageName, @NonNull UserHandle user) {
+        Iterator<Map.Entry<ComponentKey, Region>> itr = mRegions.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<ComponentKey, Region> entry = itr.next();
+            ComponentKey key = entry.getKey();
+            if (key.user.equals(user)
+                    && key.componentName.getPackageName().equals(packageName)) {
+                mFreeRegions.add(entry.getValue());
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases all the pages and slots. Pages still referenced by drawables are not recycled,
+     * they are freed once no longer used. Icons which were not drawn yet are dropped.
+     */
+    public void clear() {
+        ArrayList<PendingDraw> draws;
+        synchronized (this) {
+            mPages.clear();
+            mRegions.clear();
+            mFreeRegions.clear();
+            mCapacity = 0;
+            mAllocatedSlots = 0;
+            mReservedSlots = 0;
+            draws = mPendingDraws;
+            mPendingDraws = new ArrayList<>();
+        }
+        for (PendingDraw draw : draws) {
+            draw.icon.recycle();
+        }
+    }
+
+    /**
+     * Draws the icons added since the last pass into their pages
+     */
+    @UiThread
+    public void drawPendingIcons() {
+        ArrayList<PendingDraw> draws;
+        synchronized (this) {
+            draws = mPendingDraws;
+            mPendingDraws = new ArrayList<>();
+            mDrawScheduled = false;
+        }
+        if (draws.isEmpty()) {
+            return;
+        }
+        HashMap<Bitmap, Canvas> canvases = new HashMap<>();
+        for (PendingDraw draw : draws) {
+            Canvas canvas = canvases.get(draw.region.page);
+            if (canvas == null) {
+                canvas = new Canvas(draw.region.page);
+                canvases.put(draw.region.page, canvas);
+            }
+            // The slot may hold the previous icon of the same key, or of a removed key
+            canvas.save();
+            canvas.clipRect(draw.region.bounds);
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            canvas.drawBitmap(draw.icon, null, draw.region.bounds, mPaint);
+            canvas.restore();
+            draw.icon.recycle();
+        }
+        synchronized (this) {
+            mDrawPassCount++;
+            mDrawnIconCount += draws.size();
+        }
+    }
+
+    /**
+     * Returns true if the icon serialized in {@param data} can be drawn from the atlas. Themed
+     * icons are not, as their theme data would be lost.
+     */
+    public static boolean canAdd(@NonNull byte[] data) {
+        return data.length > 0 && data[0] == BitmapInfo.TYPE_DEFAULT;
+    }
+
+    /**
+     * Decodes an icon serialized by {@link BitmapInfo#toByteArray()} into a software bitmap
+     * which can be added to an atlas of {@param iconSize} icons, sampled down if it is at least
+     * twice as large. This does not touch the atlas and is meant to be called without holding
+     * any lock. Returns null if the data could not be decoded.
+     */
+    @Nullable
+    public static Bitmap decode(@NonNull byte[] data, int iconSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapInfo.decodeIcon(data, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= iconSize) {
+            options.inSampleSize *= 2;
+        }
+        return BitmapInfo.decodeIcon(data, options);
+    }
+
+    /**
+     * Returns the number of slots owned by a key
+     */
+    public synchronized int getIconCount() {
+        return mRegions.size();
+    }
+
+    public synchronized int getPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * Returns the number of passes which drew icons into the pages
+     */
+    public synchronized int getDrawPassCount() {
+        return mDrawPassCount;
+    }
+
+    /**
+     * Returns the number of bytes used by the shared bitmaps
+     */
+    public synchronized long getAllocatedBytes() {
+        long bytes = 0;
+        for (Bitmap page : mPages) {
+            bytes += page.getAllocationByteCount();
+        }
+        return bytes;
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "IconAtlas: iconSize=" + mIconSize + " pages=" + mPages.size()
+                + " slots=" + mCapacity + "/" + (mMaxPages * mSlotsPerPage) + " icons="
+                + mRegions.size() + " freeSlots=" + mFreeRegions.size() + " rejected="
+                + mRejectedCount + " bytes=" + getAllocatedBytes());
+        writer.println(prefix + "  drawPasses=" + mDrawPassCount + " drawnIcons="
+                + mDrawnIconCount);
+    }
+
+    private static class PendingDraw {
+        final Region region;
+        final Bitmap icon;
+
+        PendingDraw(Region region, Bitmap icon) {
+            this.region = region;
+            this.icon = icon;
+        }
+    }
+
+    /**
+     * The location of an icon in the atlas
+     */
+    public static final class Region {
+
+        public final Bitmap page;
+        public final Rect bounds;
+
+        Region(Bitmap page, Rect bounds) {
+            this.page = page;
+            this.bounds = bounds;
+        }
+    }
+
+    /**
+     * A low resolution {@link BitmapInfo} which is drawn from a region of the atlas instead of a
+     * flat placeholder. The atlas icon is drawn at full size, so views showing it do not need to
+     * load the high resolution icon.
+     */
+    public static class AtlasBitmapInfo extends BitmapInfo {
+
+        public final Region region;
+
+        public AtlasBitmapInfo(Region region, int color) {
+            super(LOW_RES_ICON, color);
+            this.region = region;
+        }
+
+        @Override
+        @RequiresApi(api = Build.VERSION_CODES.O)
+        public FastBitmapDrawable newIcon(Context context) {
+            FastBitmapDrawable drawable = new FastBitmapDrawable(
+                    region.page, region.bounds, color, false);
+            drawable.mDisabledAlpha = GraphicsUtils.getFloat(context, R.attr.disabledIconAlpha, 1f);
+            return drawable;
+        }
+    }
+}
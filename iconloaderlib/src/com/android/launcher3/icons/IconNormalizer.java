@@ -40,6 +40,13 @@ import java.nio.ByteBuffer;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+/**
+ * Computes the scale needed to normalize the visible area of icons.
+ *
+ * An instance keeps the buffers of a single normalization and is not thread safe. Use
+ * {@link #getInstance} to get the instance owned by the calling thread, so that icons can be
+ * normalized on multiple threads without locking.
+ */
 public class IconNormalizer {
 
     private static final String TAG = "IconNormalizer";
@@ -65,6 +72,12 @@ public class IconNormalizer {
     // Ratio of the diameter of an normalized circular icon to the actual icon size.
     public static final float ICON_VISIBLE_AREA_FACTOR = 0.92f;
 
+    private static final ThreadLocal<IconNormalizer> sThreadInstance = new ThreadLocal<>();
+    private static final ThreadLocal<ResultCache> sThreadResultCache = new ThreadLocal<>();
+    // Incremented when the icon parameters change, to drop the instances owned by each thread
+    private static volatile int sGeneration;
+
+    private final int mGeneration;
     private final int mMaxSize;
     private final Bitmap mBitmap;
     private final Canvas mCanvas;
@@ -76,6 +89,8 @@ public class IconNormalizer {
     private float mAdaptiveIconScale;
 
     private boolean mEnableShapeDetection;
+    // Identifies the system icon mask, which affects the shape detection
+    private final String mMaskKey;
 
     // for each y, stores the position of the leftmost x and the rightmost x
     private final float[] mLeftBorder;
@@ -86,6 +101,7 @@ public class IconNormalizer {
 
     /** package private **/
     IconNormalizer(Context context, int iconBitmapSize, boolean shapeDetection) {
+        mGeneration = sGeneration;
         // Use twice the icon size as maximum size to avoid scaling down twice.
         mMaxSize = iconBitmapSize * 2;
         mBitmap = Bitmap.createBitmap(mMaxSize, mMaxSize, Bitmap.Config.ALPHA_8);
@@ -112,6 +128,57 @@ public class IconNormalizer {
         mMatrix = new Matrix();
         mAdaptiveIconScale = SCALE_NOT_INITIALIZED;
         mEnableShapeDetection = shapeDetection;
+        mMaskKey = IconProvider.CONFIG_ICON_MASK_RES_ID == 0 ? "" : Integer.toHexString(
+                context.getResources().getString(IconProvider.CONFIG_ICON_MASK_RES_ID).hashCode());
+    }
+
+    /**
+     * Returns the normalizer owned by the calling thread for the provided parameters
+     */
+    public static IconNormalizer getInstance(Context context, int iconBitmapSize,
+            boolean shapeDetection) {
+        IconNormalizer normalizer = sThreadInstance.get();
+        if (normalizer == null || normalizer.mGeneration != sGeneration
+                || normalizer.mMaxSize != iconBitmapSize * 2
+                || normalizer.mEnableShapeDetection != shapeDetection) {
+            normalizer = new IconNormalizer(context, iconBitmapSize, shapeDetection);
+            sThreadInstance.set(normalizer);
+        }
+        return normalizer;
+    }
+
+    /**
+     * Invalidates the normalizers and the cached results of all threads, so that the next icons
+     * are normalized with the current icon shape and mask. Must be called when the icon
+     * parameters change.
+     */
+    public static void invalidateInstances() {
+        sGeneration++;
+    }
+
+    /**
+     * Lets the next normalization of a non adaptive icon on the calling thread reuse
+     * {@param result}, if it was computed with the same parameters, instead of scanning the icon.
+     * This is meant to wrap the rendering of an icon whose source drawable did not change since
+     * {@param result} was computed. Must be followed by {@link #endResultCaching()}.
+     */
+    public static void beginResultCaching(@Nullable Result result) {
+        ResultCache cache = new ResultCache();
+        cache.generation = sGeneration;
+        cache.reusable = result;
+        sThreadResultCache.set(cache);
+    }
+
+    /**
+     * Returns the result of the first normalization of a non adaptive icon on the calling thread
+     * since {@link #beginResultCaching}, which is the same instance as the reusable result if it
+     * was reused, or null if there was no such normalization.
+     */
+    @Nullable
+    public static Result endResultCaching() {
+        ResultCache cache = sThreadResultCache.get();
+        sThreadResultCache.remove();
+        return cache == null ? null : cache.result;
     }
 
     private static float getScale(float hullArea, float boundingArea, float fullArea) {
@@ -236,7 +303,7 @@ public class IconNormalizer {
      *
      * @param outBounds optional rect to receive the fraction distance from each edge.
      */
-    public synchronized float getScale(@NonNull Drawable d, @Nullable RectF outBounds,
+    public float getScale(@NonNull Drawable d, @Nullable RectF outBounds,
             @Nullable Path path, @Nullable boolean[] outMaskShape) {
         if (BaseIconFactory.ATLEAST_OREO && d instanceof AdaptiveIconDrawable) {
             if (mAdaptiveIconScale == SCALE_NOT_INITIALIZED) {
@@ -247,6 +314,36 @@ public class IconNormalizer {
             }
             return mAdaptiveIconScale;
         }
+
+        ResultCache cache = sThreadResultCache.get();
+        if (cache == null || cache.result != null || cache.generation != sGeneration
+                || mGeneration != sGeneration) {
+            // Results computed across an invalidation are neither reused nor returned
+            return computeScale(d, outBounds, path, outMaskShape);
+        }
+        boolean detectShape = outMaskShape != null && mEnableShapeDetection
+                && outMaskShape.length > 0;
+        String params = mMaxSize + (detectShape ? "," + mMaskKey : "");
+        Result result = cache.reusable;
+        if (result == null || !result.params.equals(params)) {
+            RectF bounds = new RectF();
+            boolean[] maskShape = new boolean[1];
+            float scale = computeScale(d, bounds, path, detectShape ? maskShape : null);
+            result = new Result(params, scale, bounds, maskShape[0]);
+        }
+        cache.result = result;
+
+        if (outBounds != null) {
+            outBounds.set(result.bounds);
+        }
+        if (detectShape) {
+            outMaskShape[0] = result.isShape;
+        }
+        return result.scale;
+    }
+
+    private float computeScale(@NonNull Drawable d, @Nullable RectF outBounds,
+            @Nullable Path path, @Nullable boolean[] outMaskShape) {
         int width = d.getIntrinsicWidth();
         int height = d.getIntrinsicHeight();
         if (width <= 0 || height <= 0) {
@@ -401,6 +498,43 @@ public class IconNormalizer {
         }
     }
 
+    /**
+     * Result of the normalization of a non adaptive icon, which only depends on its source
+     * drawable and on the parameters of the normalizer, and can be persisted along with the icon.
+     */
+    public static final class Result {
+
+        /**
+         * Identifies the parameters of the normalizer which computed this result
+         */
+        @NonNull
+        public final String params;
+        public final float scale;
+        /**
+         * Fraction distance from each edge to the visible icon
+         */
+        @NonNull
+        public final RectF bounds;
+        /**
+         * Whether the icon has the shape of the system icon mask
+         */
+        public final boolean isShape;
+
+        public Result(@NonNull String params, float scale, @NonNull RectF bounds,
+                boolean isShape) {
+            this.params = params;
+            this.scale = scale;
+            this.bounds = bounds;
+            this.isShape = isShape;
+        }
+    }
+
+    private static class ResultCache {
+        int generation;
+        @Nullable Result reusable;
+        @Nullable Result result;
+    }
+
     /**
      * @return The diameter of the normalized circle that fits inside of the square (size x size).
      */
@@ -15,6 +15,7 @@
  */
 package com.android.launcher3.icons.cache;
 
+import android.app.ActivityManager;
 import android.content.ComponentName;
 import android.content.ContentValues;
 import android.content.Context;
@@ -28,6 +29,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.graphics.Bitmap;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Handler;
@@ -40,16 +42,21 @@ import android.util.Log;
 
 import com.android.launcher3.icons.BaseIconFactory;
 import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.icons.IconAtlas;
+import com.android.launcher3.icons.IconAtlas.AtlasBitmapInfo;
+import com.android.launcher3.icons.IconNormalizer;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.PlatformUtil;
 import com.android.launcher3.util.SQLiteCacheHelper;
 
-import java.util.AbstractMap;
-import java.util.Collections;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import androidx.annotation.NonNull;
@@ -66,6 +73,18 @@ public abstract class BaseIconCache {
     private static final boolean DEBUG = false;
 
     private static final int INITIAL_ICON_CACHE_CAPACITY = 50;
+    // Fraction of the app memory class used by the evictable in-memory entries
+    private static final int MEM_CACHE_SIZE_DIVISOR = 16;
+
+    // Number of entries read from the DB per query, and per acquisition of the cache lock, by
+    // prefetchEntries. Kept well under the SQLite bind-argument limit.
+    private static final int PREFETCH_BATCH_SIZE = 64;
+
+    // Icons are kept at full size in the atlas, so that they do not need to be replaced by the
+    // high resolution icon. A full page holds 100 icons of 192px, pages are only as tall as the
+    // rows needed by the batch which allocated them.
+    private static final int ATLAS_PAGE_SIZE = 2048;
+    private static final int ATLAS_MAX_PAGES = 4;
 
     // Empty class name is used for storing package default entry.
     public static final String EMPTY_CLASS_NAME = ".";
@@ -78,50 +97,81 @@ public abstract class BaseIconCache {
         public CharSequence contentDescription = "";
     }
 
+    /**
+     * An entry read by {@link #prefetchEntries} whose icon is drawn from the atlas
+     */
+    private static class AtlasLoad {
+        final ComponentKey key;
+        final CacheEntry entry;
+        final byte[] data;
+        @Nullable Bitmap icon;
+
+        AtlasLoad(ComponentKey key, CacheEntry entry, byte[] data) {
+            this.key = key;
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
     private final HashMap<UserHandle, BitmapInfo> mDefaultIcons = new HashMap<>();
 
     protected final Context mContext;
     protected final PackageManager mPackageManager;
 
-    private final Map<ComponentKey, CacheEntry> mCache;
+    private final IconMemCache mCache;
     protected final Handler mWorkerHandler;
 
     protected int mIconDpi;
+    protected int mIconPixelSize;
     protected IconDB mIconDb;
+    @Nullable
+    protected MappedIconStore mIconStore;
     protected LocaleList mLocaleList = LocaleList.getEmptyLocaleList();
     protected String mSystemState = "";
+    @Nullable
+    private IconAtlas mIconAtlas;
+
+    final IconUpdateStats mUpdateStats = new IconUpdateStats();
+    // Incremented each time a new update handler is created, so that renders completing after
+    // their handler was replaced do not resume the old update task.
+    int mUpdateHandlerGeneration = 0;
 
     private final String mDbFileName;
+    private final boolean mUseMappedStore;
     private final Looper mBgLooper;
 
     public BaseIconCache(Context context, String dbFileName, Looper bgLooper,
                          int iconDpi, int iconPixelSize, boolean inMemoryCache) {
+        this(context, dbFileName, bgLooper, iconDpi, iconPixelSize, inMemoryCache,
+                false /* useMappedStore */);
+    }
+
+    /**
+     * @param useMappedStore if true, the icon bitmaps are kept in a {@link MappedIconStore} and
+     *                       the DB only keeps the rest of each entry.
+     */
+    public BaseIconCache(Context context, String dbFileName, Looper bgLooper,
+                         int iconDpi, int iconPixelSize, boolean inMemoryCache,
+                         boolean useMappedStore) {
         mContext = context;
         mDbFileName = dbFileName;
+        mUseMappedStore = useMappedStore && dbFileName != null;
         mPackageManager = context.getPackageManager();
         mBgLooper = bgLooper;
         mWorkerHandler = new Handler(mBgLooper);
 
-        if (inMemoryCache) {
-            mCache = new HashMap<>(INITIAL_ICON_CACHE_CAPACITY);
-        } else {
-            // Use a dummy cache
-            mCache = new AbstractMap<ComponentKey, CacheEntry>() {
-                @Override
-                public Set<Entry<ComponentKey, CacheEntry>> entrySet() {
-                    return Collections.emptySet();
-                }
-
-                @Override
-                public CacheEntry put(ComponentKey key, CacheEntry value) {
-                    return value;
-                }
-            };
-        }
+        // A cache without budget does not keep anything
+        long memCacheSize = inMemoryCache
+                ? context.getSystemService(ActivityManager.class).getMemoryClass() * 1024L * 1024L
+                        / MEM_CACHE_SIZE_DIVISOR
+                : 0;
+        mCache = new IconMemCache(INITIAL_ICON_CACHE_CAPACITY, memCacheSize);
 
         updateSystemState();
         mIconDpi = iconDpi;
+        mIconPixelSize = iconPixelSize;
         mIconDb = new IconDB(context, dbFileName, iconPixelSize);
+        mIconStore = createIconStore(iconPixelSize);
     }
 
     /**
@@ -140,6 +190,14 @@ public abstract class BaseIconCache {
      */
     public abstract BaseIconFactory getIconFactory();
 
+    /**
+     * Returns true if low resolution entries loaded by {@link #prefetchEntries} should be drawn
+     * from a shared {@link IconAtlas} instead of a flat placeholder.
+     */
+    public boolean isIconAtlasEnabled() {
+        return false;
+    }
+
     public void updateIconParams(int iconDpi, int iconPixelSize) {
         mWorkerHandler.post(() -> updateIconParamsBg(iconDpi, iconPixelSize));
     }
@@ -150,7 +208,31 @@ public abstract class BaseIconCache {
         mIconDb.clear();
         mIconDb.close();
         mIconDb = new IconDB(mContext, mDbFileName, iconPixelSize);
+        if (mIconStore != null) {
+            mIconStore.close();
+        }
+        mIconStore = createIconStore(iconPixelSize);
         mCache.clear();
+        mIconPixelSize = iconPixelSize;
+        releaseIconAtlas();
+    }
+
+    @Nullable
+    private MappedIconStore createIconStore(int iconPixelSize) {
+        if (!mUseMappedStore) {
+            return null;
+        }
+        File dir = mContext.getDatabasePath(mDbFileName).getParentFile();
+        return new MappedIconStore(dir, mDbFileName + "-store", IconDB.getVersion(iconPixelSize),
+                this::onIconStoreDataLost);
+    }
+
+    /**
+     * Removes the rows whose icon was only kept in the store, as it can no longer be read. This
+     * lets the update handler cache these icons again instead of treating the rows as valid.
+     */
+    private void onIconStoreDataLost() {
+        mIconDb.delete(IconDB.COLUMN_ICON + " IS NULL", null);
     }
 
     private Drawable getFullResIcon(Resources resources, int iconId) {
@@ -194,16 +276,23 @@ public abstract class BaseIconCache {
      * Remove any records for the supplied package name from memory.
      */
     private void removeFromMemCacheLocked(String packageName, UserHandle user) {
-        HashSet<ComponentKey> forDeletion = new HashSet<>();
-        for (ComponentKey key: mCache.keySet()) {
-            if (key.componentName.getPackageName().equals(packageName)
-                    && key.user.equals(user)) {
-                forDeletion.add(key);
-            }
-        }
-        for (ComponentKey condemned: forDeletion) {
-            mCache.remove(condemned);
-        }
+        mCache.removePackage(packageName, user);
+    }
+
+    /**
+     * Keeps the entry of {@param key} in memory while an item using it is in the model, while
+     * other entries are evicted when the memory budget is exceeded. Each call must be balanced
+     * by a call to {@link #unpinKey}.
+     */
+    public synchronized void pinKey(@NonNull ComponentKey key) {
+        mCache.pin(key);
+    }
+
+    /**
+     * Reverts a call to {@link #pinKey}
+     */
+    public synchronized void unpinKey(@NonNull ComponentKey key) {
+        mCache.unpin(key);
     }
 
     /**
@@ -215,11 +304,46 @@ public abstract class BaseIconCache {
         mIconDb.delete(
                 IconDB.COLUMN_COMPONENT + " LIKE ? AND " + IconDB.COLUMN_USER + " = ?",
                 new String[]{packageName + "/%", Long.toString(userSerial)});
+        mIconDb.delete(IconDB.NORMALIZATION_TABLE_NAME,
+                IconDB.COLUMN_COMPONENT + " LIKE ? AND " + IconDB.COLUMN_USER + " = ?",
+                new String[]{packageName + "/%", Long.toString(userSerial)});
+        if (mIconStore != null) {
+            mIconStore.removePackage(packageName, userSerial);
+        }
+        if (mIconAtlas != null) {
+            mIconAtlas.removePackage(packageName, user);
+        }
     }
 
     public IconCacheUpdateHandler getUpdateHandler() {
         updateSystemState();
-        return new IconCacheUpdateHandler(this);
+        return new IconCacheUpdateHandler(this, getIconRenderExecutor());
+    }
+
+    /**
+     * Returns an executor used by {@link IconCacheUpdateHandler} to render icons in parallel, or
+     * null if icons should be rendered one at a time on the worker thread.
+     */
+    @Nullable
+    protected Executor getIconRenderExecutor() {
+        return null;
+    }
+
+    /**
+     * Dumps the state of the cache
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "BaseIconCache:");
+        mUpdateStats.dump(prefix + "  ", writer);
+        synchronized (this) {
+            mCache.dump(prefix + "  ", writer);
+            if (mIconAtlas != null) {
+                mIconAtlas.dump(prefix + "  ", writer);
+            }
+        }
+        if (mIconStore != null) {
+            mIconStore.dump(prefix + "  ", writer);
+        }
     }
 
     /**
@@ -243,24 +367,54 @@ public abstract class BaseIconCache {
      *                        old data.
      */
     @VisibleForTesting
-    public synchronized <T> void addIconToDBAndMemCache(T object, CachingLogic<T> cachingLogic,
-                                                        PackageInfo info, long userSerial, boolean replaceExisting) {
+    public <T> void addIconToDBAndMemCache(T object, CachingLogic<T> cachingLogic,
+                                           PackageInfo info, long userSerial, boolean replaceExisting) {
         UserHandle user = cachingLogic.getUser(object);
         ComponentName componentName = cachingLogic.getComponent(object);
 
         final ComponentKey key = new ComponentKey(componentName, user);
-        CacheEntry entry = null;
         if (!replaceExisting) {
-            entry = mCache.get(key);
-            // We can't reuse the entry if the high-res icon is not present.
-            if (entry == null || entry.bitmap.isNullOrLowRes()) {
-                entry = null;
+            synchronized (this) {
+                CacheEntry entry = mCache.get(key);
+                // We can't reuse the entry if the high-res icon is not present.
+                if (entry != null && !entry.bitmap.isNullOrLowRes()) {
+                    addEntryToDBAndMemCache(key, entry, object, cachingLogic, info, userSerial);
+                    return;
+                }
             }
         }
-        if (entry == null) {
-            entry = new CacheEntry();
-            entry.bitmap = cachingLogic.loadIcon(mContext, object);
-        }
+        // The icon and its persisted normalization are loaded without holding the cache lock
+        addRenderedIconToDBAndMemCache(object, cachingLogic,
+                loadIcon(key, object, cachingLogic, info), info, userSerial);
+    }
+
+    /**
+     * Same as {@link #addIconToDBAndMemCache(Object, CachingLogic, PackageInfo, long, boolean)},
+     * but uses an icon that was already rendered by {@link CachingLogic#loadIcon}, possibly on a
+     * different thread.
+     */
+    synchronized <T> void addRenderedIconToDBAndMemCache(T object, CachingLogic<T> cachingLogic,
+            @NonNull BitmapInfo icon, PackageInfo info, long userSerial) {
+        CacheEntry entry = new CacheEntry();
+        entry.bitmap = icon;
+        addEntryToDBAndMemCache(
+                new ComponentKey(cachingLogic.getComponent(object), cachingLogic.getUser(object)),
+                entry, object, cachingLogic, info, userSerial);
+    }
+
+    /**
+     * Returns true if the in-memory cache has a high-res icon for {@param key}, which would be
+     * reused by {@link #addIconToDBAndMemCache} when not replacing existing entries.
+     */
+    synchronized boolean hasHighResIconInMemCache(ComponentKey key) {
+        CacheEntry entry = mCache.get(key);
+        return entry != null && !entry.bitmap.isNullOrLowRes();
+    }
+
+    private <T> void addEntryToDBAndMemCache(ComponentKey key, CacheEntry entry, T object,
+            CachingLogic<T> cachingLogic, PackageInfo info, long userSerial) {
+        UserHandle user = key.user;
+        ComponentName componentName = key.componentName;
         // Icon can't be loaded from cachingLogic, which implies alternative icon was loaded
         // (e.g. fallback icon, default icon). So we drop here since there's no point in caching
         // an empty entry.
@@ -285,9 +439,27 @@ public abstract class BaseIconCache {
         values.put(IconDB.COLUMN_USER, userSerial);
         values.put(IconDB.COLUMN_LAST_UPDATED, lastUpdateTime);
         values.put(IconDB.COLUMN_VERSION, PlatformUtil.getVersion(info));
+        if (mIconStore != null && mIconStore.put(values)) {
+            values.putNull(IconDB.COLUMN_ICON);
+        }
         mIconDb.insertOrReplace(values);
     }
 
+    /**
+     * Moves the icon of a row written before the store was enabled, read with
+     * {@link IconDB#COLUMNS_ALL}, from the DB to the store.
+     */
+    private void moveRowToStore(Cursor c) {
+        if (mIconStore == null || c.isNull(2)) {
+            return;
+        }
+        ContentValues values = IconDB.rowToContentValues(c);
+        if (mIconStore.put(values)) {
+            values.putNull(IconDB.COLUMN_ICON);
+            mIconDb.insertOrReplace(values);
+        }
+    }
+
     public synchronized BitmapInfo getDefaultIcon(UserHandle user) {
         if (!mDefaultIcons.containsKey(user)) {
             mDefaultIcons.put(user, makeDefaultIcon(user));
@@ -312,9 +484,6 @@ public abstract class BaseIconCache {
         CacheEntry entry = mCache.get(cacheKey);
         if (entry == null || (entry.bitmap.isLowRes() && !useLowResIcon)) {
             entry = new CacheEntry();
-            if (cachingLogic.addToMemCache()) {
-                mCache.put(cacheKey, entry);
-            }
 
             // Check the DB first.
             T object = null;
@@ -325,6 +494,9 @@ public abstract class BaseIconCache {
                 providerFetchedOnce = true;
 
                 if (object != null) {
+                    // The persisted normalization is not looked up here, as it would add a
+                    // package and a DB lookup to every miss while the lock is held. It is only
+                    // used by the update handler, which loads it before taking the lock.
                     entry.bitmap = cachingLogic.loadIcon(mContext, object);
                 } else {
                     if (usePackageIcon) {
@@ -357,6 +529,10 @@ public abstract class BaseIconCache {
                             cachingLogic.getDescription(object, entry.title), user);
                 }
             }
+            // Only add the entry once filled-out, as its memory size is computed when added
+            if (cachingLogic.addToMemCache()) {
+                mCache.put(cacheKey, entry);
+            }
         }
         return entry;
     }
@@ -364,6 +540,22 @@ public abstract class BaseIconCache {
     public synchronized void clear() {
         assertWorkerThread();
         mIconDb.clear();
+        mIconDb.delete(IconDB.NORMALIZATION_TABLE_NAME, null, null);
+        if (mIconStore != null) {
+            mIconStore.clear();
+        }
+        releaseIconAtlas();
+    }
+
+    /**
+     * Releases the pages of the atlas. Pages still referenced by bound items are kept until these
+     * items are rebound, new icons are added to a new atlas.
+     */
+    private void releaseIconAtlas() {
+        if (mIconAtlas != null) {
+            mIconAtlas.clear();
+            mIconAtlas = null;
+        }
     }
 
     /**
@@ -390,11 +582,98 @@ public abstract class BaseIconCache {
             li.close();
         }
         if (!TextUtils.isEmpty(title) && entry.bitmap.icon != null) {
-            mCache.put(cacheKey, entry);
+            mCache.putUnevictable(cacheKey, entry);
         }
     }
 
-    private static ComponentKey getPackageKey(String packageName, UserHandle user) {
+    /**
+     * Loads the icon of {@param object}, reusing the persisted normalization of its source
+     * drawable if it is still valid, and persisting the new normalization otherwise. This
+     * should not be called while holding the cache lock, as it queries and updates the DB.
+     */
+    @NonNull
+    private <T> BitmapInfo loadIcon(ComponentKey key, T object, CachingLogic<T> cachingLogic,
+            @Nullable PackageInfo info) {
+        String source = cachingLogic.getIconSource(mContext, object);
+        if (source == null || info == null) {
+            return cachingLogic.loadIcon(mContext, object);
+        }
+
+        IconNormalizer.Result cached = getNormalizationFromDB(key, source, info);
+        IconNormalizer.Result result;
+        BitmapInfo icon;
+        IconNormalizer.beginResultCaching(cached);
+        try {
+            icon = cachingLogic.loadIcon(mContext, object);
+        } finally {
+            result = IconNormalizer.endResultCaching();
+        }
+        addNormalizationToDB(key, source, info, cached, result);
+        return icon;
+    }
+
+    /**
+     * Returns the normalization persisted for the source drawable of {@param key}, or null if
+     * there is none or if the drawable might have changed since.
+     */
+    @Nullable
+    IconNormalizer.Result getNormalizationFromDB(ComponentKey key, String source,
+            PackageInfo info) {
+        try (Cursor c = mIconDb.query(IconDB.NORMALIZATION_TABLE_NAME,
+                IconDB.COLUMNS_NORMALIZATION,
+                IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ? AND "
+                        + IconDB.COLUMN_VERSION + " = ? AND "
+                        + IconDB.COLUMN_LAST_UPDATED + " = ? AND "
+                        + IconDB.COLUMN_ICON_SOURCE + " = ?",
+                new String[]{
+                        key.componentName.flattenToString(),
+                        Long.toString(getSerialNumberForUser(key.user)),
+                        Long.toString(PlatformUtil.getVersion(info)),
+                        Long.toString(info.lastUpdateTime),
+                        source})) {
+            if (c.moveToNext()) {
+                return new IconNormalizer.Result(c.getString(0), c.getFloat(1),
+                        new RectF(c.getFloat(2), c.getFloat(3), c.getFloat(4), c.getFloat(5)),
+                        c.getInt(6) != 0);
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading icon normalization", e);
+        }
+        return null;
+    }
+
+    /**
+     * Persists the normalization {@param result} of the source drawable of {@param key}, unless
+     * it is the {@param cached} normalization which was reused.
+     */
+    void addNormalizationToDB(ComponentKey key, String source, PackageInfo info,
+            @Nullable IconNormalizer.Result cached, @Nullable IconNormalizer.Result result) {
+        if (result == null) {
+            // Adaptive icons do not need to be scanned
+            return;
+        }
+        if (result == cached) {
+            mUpdateStats.onNormalizationReused();
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(IconDB.COLUMN_COMPONENT, key.componentName.flattenToString());
+        values.put(IconDB.COLUMN_USER, getSerialNumberForUser(key.user));
+        values.put(IconDB.COLUMN_VERSION, PlatformUtil.getVersion(info));
+        values.put(IconDB.COLUMN_LAST_UPDATED, info.lastUpdateTime);
+        values.put(IconDB.COLUMN_ICON_SOURCE, source);
+        values.put(IconDB.COLUMN_NORMALIZATION_PARAMS, result.params);
+        values.put(IconDB.COLUMN_SCALE, result.scale);
+        values.put(IconDB.COLUMN_BOUNDS_LEFT, result.bounds.left);
+        values.put(IconDB.COLUMN_BOUNDS_TOP, result.bounds.top);
+        values.put(IconDB.COLUMN_BOUNDS_RIGHT, result.bounds.right);
+        values.put(IconDB.COLUMN_BOUNDS_BOTTOM, result.bounds.bottom);
+        values.put(IconDB.COLUMN_IS_SHAPE, result.isShape ? 1 : 0);
+        mIconDb.insertOrReplace(IconDB.NORMALIZATION_TABLE_NAME, values);
+        mUpdateStats.onNormalizationStored();
+    }
+
+    protected static ComponentKey getPackageKey(String packageName, UserHandle user) {
         ComponentName cn = new ComponentName(packageName, packageName + EMPTY_CLASS_NAME);
         return new ComponentKey(cn, user);
     }
@@ -459,35 +738,25 @@ public abstract class BaseIconCache {
     }
 
     protected boolean getEntryFromDB(ComponentKey cacheKey, CacheEntry entry, boolean lowRes) {
+        if (mIconStore != null && getEntryFromStore(cacheKey, entry, lowRes, null)) {
+            return true;
+        }
         Cursor c = null;
         try {
+            // The full row is only needed to move the icon of an older row to the store
+            String[] columns = getColumns(lowRes);
+            boolean readsIcon = columns == IconDB.COLUMNS_HIGH_RES;
             c = mIconDb.query(
-                    lowRes ? IconDB.COLUMNS_LOW_RES : IconDB.COLUMNS_HIGH_RES,
+                    mIconStore != null && readsIcon ? IconDB.COLUMNS_ALL : columns,
                     IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
                     new String[]{
                             cacheKey.componentName.flattenToString(),
                             Long.toString(getSerialNumberForUser(cacheKey.user))});
             if (c.moveToNext()) {
-                // Set the alpha to be 255, so that we never have a wrong color
-                entry.bitmap = BitmapInfo.of(LOW_RES_ICON, setColorAlphaBound(c.getInt(0), 255));
-                entry.title = c.getString(1);
-                if (entry.title == null) {
-                    entry.title = "";
-                    entry.contentDescription = "";
-                } else {
-                    entry.contentDescription = mPackageManager.getUserBadgedLabel(
-                            entry.title, cacheKey.user);
+                if (mIconStore != null && readsIcon) {
+                    moveRowToStore(c);
                 }
-
-                if (!lowRes) {
-                    try {
-                        entry.bitmap = BitmapInfo.fromByteArray(
-                                c.getBlob(2), entry.bitmap.color, cacheKey.user, this, mContext);
-                    } catch (Exception e) {
-                        return false;
-                    }
-                }
-                return entry.bitmap != null;
+                return readEntryFromCursor(c, entry, cacheKey.user, lowRes);
             }
         } catch (SQLiteException e) {
             Log.d(TAG, "Error reading icon cache", e);
@@ -499,6 +768,235 @@ public abstract class BaseIconCache {
         return false;
     }
 
+    /**
+     * Reads an entry from the current row of a cursor whose first columns are
+     * {@link IconDB#COLUMNS_HIGH_RES} or {@link IconDB#COLUMNS_LOW_RES}, as returned by
+     * {@link #getColumns(boolean)}
+     */
+    private boolean readEntryFromCursor(Cursor c, CacheEntry entry, UserHandle user,
+            boolean lowRes) {
+        // Set the alpha to be 255, so that we never have a wrong color
+        int color = setColorAlphaBound(c.getInt(0), 255);
+        entry.bitmap = BitmapInfo.of(LOW_RES_ICON, color);
+        entry.title = c.getString(1);
+        if (entry.title == null) {
+            entry.title = "";
+            entry.contentDescription = "";
+        } else {
+            entry.contentDescription = mPackageManager.getUserBadgedLabel(entry.title, user);
+        }
+
+        if (!lowRes) {
+            try {
+                entry.bitmap = BitmapInfo.fromByteArray(
+                        c.getBlob(2), entry.bitmap.color, user, this, mContext);
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        return entry.bitmap != null;
+    }
+
+    /**
+     * Loads the persisted entries for {@param keys} into the in-memory cache using one query per
+     * batch of components, instead of one query per component. This is meant to be called before
+     * a bulk load, so that the subsequent per-item lookups are served from memory. The cache lock
+     * is only held while processing a single batch.
+     *
+     * If the icon atlas is enabled, the low resolution entries are drawn from the atlas. Their
+     * icons are decoded without holding the cache lock.
+     */
+    public void prefetchEntries(List<ComponentKey> keys, boolean lowRes) {
+        assertWorkerThread();
+        HashMap<UserHandle, List<ComponentKey>> keysByUser = new HashMap<>();
+        for (ComponentKey key : keys) {
+            List<ComponentKey> userKeys = keysByUser.get(key.user);
+            if (userKeys == null) {
+                userKeys = new ArrayList<>();
+                keysByUser.put(key.user, userKeys);
+            }
+            userKeys.add(key);
+        }
+        for (Map.Entry<UserHandle, List<ComponentKey>> entry : keysByUser.entrySet()) {
+            long userSerial = getSerialNumberForUser(entry.getKey());
+            List<ComponentKey> userKeys = entry.getValue();
+            for (int start = 0; start < userKeys.size(); start += PREFETCH_BATCH_SIZE) {
+                prefetchBatch(userKeys.subList(
+                        start, Math.min(start + PREFETCH_BATCH_SIZE, userKeys.size())),
+                        userSerial, lowRes);
+            }
+        }
+    }
+
+    private void prefetchBatch(List<ComponentKey> batch, long userSerial, boolean lowRes) {
+        ArrayList<AtlasLoad> atlasLoads = lowRes && isIconAtlasEnabled() ? new ArrayList<>() : null;
+        synchronized (this) {
+            readBatchLocked(batch, userSerial, lowRes, atlasLoads);
+        }
+        if (atlasLoads != null && !atlasLoads.isEmpty()) {
+            addToAtlas(atlasLoads);
+        }
+    }
+
+    /**
+     * Reads the entries of {@param batch} into the in-memory cache. If {@param atlasLoads} is not
+     * null, the entries which have an icon that is not themed are added to it instead, to be
+     * drawn from the atlas.
+     */
+    private void readBatchLocked(List<ComponentKey> batch, long userSerial, boolean lowRes,
+            @Nullable List<AtlasLoad> atlasLoads) {
+        HashMap<String, ComponentKey> pending = new HashMap<>();
+        for (ComponentKey key : batch) {
+            CacheEntry entry = mCache.get(key);
+            if (entry == null || (entry.bitmap.isLowRes() && !lowRes)) {
+                pending.put(key.componentName.flattenToString(), key);
+            }
+        }
+        if (mIconStore != null) {
+            Iterator<ComponentKey> itr = pending.values().iterator();
+            while (itr.hasNext()) {
+                ComponentKey key = itr.next();
+                CacheEntry entry = new CacheEntry();
+                MappedIconStore.Entry stored = new MappedIconStore.Entry();
+                if (getEntryFromStore(key, entry, lowRes, atlasLoads == null ? null : stored)
+                        && !TextUtils.isEmpty(entry.title)) {
+                    putOrLoadIntoAtlas(key, entry, stored.icon, atlasLoads);
+                    itr.remove();
+                }
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        StringBuilder selection = new StringBuilder()
+                .append(IconDB.COLUMN_USER).append(" = ? AND ")
+                .append(IconDB.COLUMN_COMPONENT).append(" IN (");
+        String[] selectionArgs = new String[pending.size() + 1];
+        selectionArgs[0] = Long.toString(userSerial);
+        int i = 1;
+        for (String component : pending.keySet()) {
+            selection.append(i > 1 ? ", ?" : "?");
+            selectionArgs[i++] = component;
+        }
+        selection.append(')');
+
+        boolean readIcon = !lowRes || atlasLoads != null;
+        String[] columns = readIcon ? IconDB.COLUMNS_ALL : IconDB.COLUMNS_LOW_RES_WITH_COMPONENT;
+        int componentIndex = readIcon
+                ? IconDB.COLUMNS_ALL_COMPONENT : IconDB.COLUMNS_LOW_RES.length;
+        try (Cursor c = mIconDb.query(columns, selection.toString(), selectionArgs)) {
+            while (c.moveToNext()) {
+                ComponentKey key = pending.get(c.getString(componentIndex));
+                if (key == null) {
+                    continue;
+                }
+                if (readIcon) {
+                    moveRowToStore(c);
+                }
+                CacheEntry entry = new CacheEntry();
+                // Entries without a title are completed by cacheLocked using the info provider
+                if (readEntryFromCursor(c, entry, key.user, lowRes)
+                        && !TextUtils.isEmpty(entry.title)) {
+                    putOrLoadIntoAtlas(key, entry,
+                            atlasLoads != null ? c.getBlob(2) : null, atlasLoads);
+                }
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error prefetching icon cache entries", e);
+        }
+    }
+
+    private void putOrLoadIntoAtlas(ComponentKey key, CacheEntry entry, @Nullable byte[] icon,
+            @Nullable List<AtlasLoad> atlasLoads) {
+        if (atlasLoads != null && icon != null && IconAtlas.canAdd(icon)) {
+            atlasLoads.add(new AtlasLoad(key, entry, icon));
+        } else {
+            mCache.put(key, entry);
+        }
+    }
+
+    /**
+     * Decodes the icons of {@param loads} and adds them to the atlas, then puts their entries in
+     * the in-memory cache, unless another entry was loaded in the meantime. Decoding happens
+     * without holding the cache lock.
+     */
+    private void addToAtlas(List<AtlasLoad> loads) {
+        IconAtlas atlas;
+        synchronized (this) {
+            if (mIconAtlas == null) {
+                mIconAtlas = new IconAtlas(mIconPixelSize, ATLAS_PAGE_SIZE, ATLAS_MAX_PAGES,
+                        new Handler(Looper.getMainLooper())::post);
+            }
+            atlas = mIconAtlas;
+        }
+        for (AtlasLoad load : loads) {
+            load.icon = IconAtlas.decode(load.data, atlas.getIconSize());
+        }
+        synchronized (this) {
+            atlas.reserve(loads.size());
+            for (AtlasLoad load : loads) {
+                IconAtlas.Region region = null;
+                // The atlas is replaced when the icon parameters change
+                if (atlas == mIconAtlas && mCache.get(load.key) == null && load.icon != null) {
+                    region = atlas.add(load.key, load.icon);
+                    if (region != null) {
+                        load.entry.bitmap = new AtlasBitmapInfo(region, load.entry.bitmap.color);
+                    }
+                    mCache.put(load.key, load.entry);
+                }
+                if (region == null && load.icon != null) {
+                    load.icon.recycle();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an entry from the store.
+     * @param outStored if not null, receives the stored entry including its icon, even for a low
+     *                  resolution entry
+     */
+    private boolean getEntryFromStore(ComponentKey cacheKey, CacheEntry entry, boolean lowRes,
+            @Nullable MappedIconStore.Entry outStored) {
+        MappedIconStore.Entry stored = outStored != null ? outStored : new MappedIconStore.Entry();
+        if (!mIconStore.get(cacheKey.componentName.flattenToString(),
+                getSerialNumberForUser(cacheKey.user), lowRes && outStored == null, stored)) {
+            return false;
+        }
+        // Set the alpha to be 255, so that we never have a wrong color
+        int color = setColorAlphaBound(stored.color, 255);
+        if (lowRes) {
+            entry.bitmap = BitmapInfo.of(LOW_RES_ICON, color);
+        } else {
+            try {
+                entry.bitmap = BitmapInfo.fromByteArray(
+                        stored.icon, color, cacheKey.user, this, mContext);
+            } catch (Exception e) {
+                return false;
+            }
+            if (entry.bitmap == null) {
+                return false;
+            }
+        }
+        if (stored.label == null) {
+            entry.title = "";
+            entry.contentDescription = "";
+        } else {
+            entry.title = stored.label;
+            entry.contentDescription = mPackageManager.getUserBadgedLabel(
+                    entry.title, cacheKey.user);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the columns to read for an entry
+     */
+    private String[] getColumns(boolean lowRes) {
+        return lowRes ? IconDB.COLUMNS_LOW_RES : IconDB.COLUMNS_HIGH_RES;
+    }
+
     /**
      * Returns a cursor for an arbitrary query to the cache db
      */
@@ -511,7 +1009,7 @@ public abstract class BaseIconCache {
      * Cache class to store the actual entries on disk
      */
     public static final class IconDB extends SQLiteCacheHelper {
-        private static final int RELEASE_VERSION = 31;
+        private static final int RELEASE_VERSION = 32;
 
         public static final String TABLE_NAME = "icons";
         public static final String COLUMN_ROWID = "rowid";
@@ -525,13 +1023,59 @@ public abstract class BaseIconCache {
         public static final String COLUMN_SYSTEM_STATE = "system_state";
         public static final String COLUMN_KEYWORDS = "keywords";
 
+        /**
+         * Table of the normalization of the source drawable of each icon. Unlike the icons, these
+         * are kept when the icon parameters change, as they do not depend on the icon shape.
+         */
+        public static final String NORMALIZATION_TABLE_NAME = "icon_normalization";
+        public static final String COLUMN_ICON_SOURCE = "icon_source";
+        public static final String COLUMN_NORMALIZATION_PARAMS = "normalization_params";
+        public static final String COLUMN_SCALE = "scale";
+        public static final String COLUMN_BOUNDS_LEFT = "bounds_left";
+        public static final String COLUMN_BOUNDS_TOP = "bounds_top";
+        public static final String COLUMN_BOUNDS_RIGHT = "bounds_right";
+        public static final String COLUMN_BOUNDS_BOTTOM = "bounds_bottom";
+        public static final String COLUMN_IS_SHAPE = "is_shape";
+
         public static final String[] COLUMNS_HIGH_RES = new String[] {
                 IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL, IconDB.COLUMN_ICON };
         public static final String[] COLUMNS_LOW_RES = new String[] {
                 IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL };
+        /** Same prefix as {@link #COLUMNS_HIGH_RES}, followed by all the remaining columns */
+        public static final String[] COLUMNS_ALL = new String[] {
+                IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL, IconDB.COLUMN_ICON,
+                IconDB.COLUMN_COMPONENT, IconDB.COLUMN_USER, IconDB.COLUMN_LAST_UPDATED,
+                IconDB.COLUMN_VERSION, IconDB.COLUMN_SYSTEM_STATE, IconDB.COLUMN_KEYWORDS };
+        static final int COLUMNS_ALL_COMPONENT = 3;
+        static final String[] COLUMNS_LOW_RES_WITH_COMPONENT = new String[] {
+                IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL, IconDB.COLUMN_COMPONENT };
+        static final String[] COLUMNS_NORMALIZATION = new String[] {
+                COLUMN_NORMALIZATION_PARAMS, COLUMN_SCALE, COLUMN_BOUNDS_LEFT, COLUMN_BOUNDS_TOP,
+                COLUMN_BOUNDS_RIGHT, COLUMN_BOUNDS_BOTTOM, COLUMN_IS_SHAPE };
 
         public IconDB(Context context, String dbFileName, int iconPixelSize) {
-            super(context, dbFileName, (RELEASE_VERSION << 16) + iconPixelSize, TABLE_NAME);
+            super(context, dbFileName, getVersion(iconPixelSize), TABLE_NAME);
+        }
+
+        static int getVersion(int iconPixelSize) {
+            return (RELEASE_VERSION << 16) + iconPixelSize;
+        }
+
+        /**
+         * Reads the current row of a cursor queried with {@link #COLUMNS_ALL}
+         */
+        static ContentValues rowToContentValues(Cursor c) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_ICON_COLOR, c.getInt(0));
+            values.put(COLUMN_LABEL, c.getString(1));
+            values.put(COLUMN_ICON, c.getBlob(2));
+            values.put(COLUMN_COMPONENT, c.getString(3));
+            values.put(COLUMN_USER, c.getLong(4));
+            values.put(COLUMN_LAST_UPDATED, c.getLong(5));
+            values.put(COLUMN_VERSION, c.getLong(6));
+            values.put(COLUMN_SYSTEM_STATE, c.getString(7));
+            values.put(COLUMN_KEYWORDS, c.getString(8));
+            return values;
         }
 
         @Override
@@ -548,6 +1092,21 @@ public abstract class BaseIconCache {
                     + COLUMN_KEYWORDS + " TEXT, "
                     + "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") "
                     + ");");
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + NORMALIZATION_TABLE_NAME + " ("
+                    + COLUMN_COMPONENT + " TEXT NOT NULL, "
+                    + COLUMN_USER + " INTEGER NOT NULL, "
+                    + COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_ICON_SOURCE + " TEXT NOT NULL, "
+                    + COLUMN_NORMALIZATION_PARAMS + " TEXT NOT NULL, "
+                    + COLUMN_SCALE + " REAL NOT NULL, "
+                    + COLUMN_BOUNDS_LEFT + " REAL NOT NULL, "
+                    + COLUMN_BOUNDS_TOP + " REAL NOT NULL, "
+                    + COLUMN_BOUNDS_RIGHT + " REAL NOT NULL, "
+                    + COLUMN_BOUNDS_BOTTOM + " REAL NOT NULL, "
+                    + COLUMN_IS_SHAPE + " INTEGER NOT NULL DEFAULT 0, "
+                    + "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") "
+                    + ");");
         }
     }
 
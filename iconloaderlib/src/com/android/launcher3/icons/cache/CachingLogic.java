@@ -41,6 +41,17 @@ public interface CachingLogic<T> {
     @NonNull
     BitmapInfo loadIcon(Context context, T object);
 
+    /**
+     * Returns a key identifying the drawable loaded by {@link #loadIcon} within the current
+     * version of its package, like its resource, or null if it is not known. The normalization of
+     * the drawable is persisted and reused as long as the key and the package version are the
+     * same.
+     */
+    @Nullable
+    default String getIconSource(Context context, T object) {
+        return null;
+    }
+
     /**
      * Provides a option list of keywords to associate with this object
      */
@@ -26,13 +26,21 @@ import android.os.UserHandle;
 import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.Log;
+import android.util.Pair;
+import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 
+import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.icons.IconNormalizer;
 import com.android.launcher3.icons.cache.BaseIconCache.IconDB;
+import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.PlatformUtil;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.Nullable;
 
 /**
  * Utility class to handle updating the Icon cache
@@ -55,21 +63,39 @@ public class IconCacheUpdateHandler {
 
     private static final Object ICON_UPDATE_TOKEN = new Object();
 
+    /**
+     * Maximum number of icons being rendered on the render executor at any time, per task.
+     * This bounds the number of rendered bitmaps waiting to be committed.
+     */
+    private static final int MAX_RENDERS_IN_FLIGHT = 16;
+
     private final HashMap<String, PackageInfo> mPkgInfoMap;
     private final BaseIconCache mIconCache;
+    @Nullable
+    private final Executor mRenderExecutor;
+    private final int mGeneration;
 
     private final ArrayMap<UserHandle, Set<String>> mPackagesToIgnore = new ArrayMap<>();
 
     private final SparseBooleanArray mItemsToDelete = new SparseBooleanArray();
+    // Component and user serial for each row in mItemsToDelete, used to keep the mapped store
+    // in sync with the DB
+    private final SparseArray<Pair<String, Long>> mRowKeys = new SparseArray<>();
     private boolean mFilterMode = MODE_SET_INVALID_ITEMS;
 
-    IconCacheUpdateHandler(BaseIconCache cache) {
+    /**
+     * @param renderExecutor if not null, icons are rendered in parallel on this executor while
+     *                       the DB and memory cache are still updated in order on the worker
+     */
+    IconCacheUpdateHandler(BaseIconCache cache, @Nullable Executor renderExecutor) {
         mIconCache = cache;
+        mRenderExecutor = renderExecutor;
 
         mPkgInfoMap = new HashMap<>();
 
         // Remove all active icon update tasks.
         mIconCache.mWorkerHandler.removeCallbacksAndMessages(ICON_UPDATE_TOKEN);
+        mGeneration = ++mIconCache.mUpdateHandlerGeneration;
 
         createPackageInfoMap();
     }
@@ -165,7 +191,7 @@ public class IconCacheUpdateHandler {
 
                         if (mFilterMode == MODE_SET_INVALID_ITEMS) {
                             mIconCache.remove(component, user);
-                            mItemsToDelete.put(rowId, true);
+                            markForDeletion(rowId, cn, userSerial);
                         }
                     }
                     continue;
@@ -190,7 +216,7 @@ public class IconCacheUpdateHandler {
                 if (app == null) {
                     if (mFilterMode == MODE_SET_INVALID_ITEMS) {
                         mIconCache.remove(component, user);
-                        mItemsToDelete.put(rowId, true);
+                        markForDeletion(rowId, cn, userSerial);
                     }
                 } else {
                     appsToUpdate.add(app);
@@ -205,8 +231,20 @@ public class IconCacheUpdateHandler {
         if (!componentMap.isEmpty() || !appsToUpdate.isEmpty()) {
             Stack<T> appsToAdd = new Stack<>();
             appsToAdd.addAll(componentMap.values());
-            new SerializedIconUpdateTask(userSerial, user, appsToAdd, appsToUpdate, cachingLogic,
-                    onUpdateCallback).scheduleNext();
+            if (mRenderExecutor != null) {
+                new ParallelIconUpdateTask<>(userSerial, user, appsToAdd, appsToUpdate,
+                        cachingLogic, onUpdateCallback).scheduleNext();
+            } else {
+                new SerializedIconUpdateTask<>(userSerial, user, appsToAdd, appsToUpdate,
+                        cachingLogic, onUpdateCallback).scheduleNext();
+            }
+        }
+    }
+
+    private void markForDeletion(int rowId, String component, long userSerial) {
+        mItemsToDelete.put(rowId, true);
+        if (mIconCache.mIconStore != null) {
+            mRowKeys.put(rowId, Pair.create(component, userSerial));
         }
     }
 
@@ -236,6 +274,17 @@ public class IconCacheUpdateHandler {
         if (deleteCount > 0) {
             mIconCache.mIconDb.delete(queryBuilder.toString(), null);
         }
+
+        MappedIconStore store = mIconCache.mIconStore;
+        if (store != null) {
+            for (int i = 0; i < count; i++) {
+                Pair<String, Long> key = mRowKeys.get(mItemsToDelete.keyAt(i));
+                if (mItemsToDelete.valueAt(i) && key != null) {
+                    store.remove(key.first, key.second);
+                }
+            }
+            store.maybeCompact();
+        }
     }
 
     /**
@@ -251,6 +300,7 @@ public class IconCacheUpdateHandler {
         private final CachingLogic<T> mCachingLogic;
         private final HashSet<String> mUpdatedPackages = new HashSet<>();
         private final OnUpdateCallback mOnUpdateCallback;
+        private final IconUpdateStats.Pass mPass;
 
         SerializedIconUpdateTask(long userSerial, UserHandle userHandle,
                                  Stack<T> appsToAdd, Stack<T> appsToUpdate, CachingLogic<T> cachingLogic,
@@ -261,6 +311,7 @@ public class IconCacheUpdateHandler {
             mAppsToUpdate = appsToUpdate;
             mCachingLogic = cachingLogic;
             mOnUpdateCallback = onUpdateCallback;
+            mPass = mIconCache.mUpdateStats.onPassStarted(false /* parallel */);
         }
 
         @Override
@@ -272,6 +323,7 @@ public class IconCacheUpdateHandler {
 
                 mIconCache.addIconToDBAndMemCache(
                         app, mCachingLogic, info, mUserSerial, true /*replace existing*/);
+                mIconCache.mUpdateStats.onIconCommitted(mPass);
                 mUpdatedPackages.add(pkg);
 
                 if (mAppsToUpdate.isEmpty() && !mUpdatedPackages.isEmpty()) {
@@ -289,10 +341,124 @@ public class IconCacheUpdateHandler {
                 if (info != null) {
                     mIconCache.addIconToDBAndMemCache(app, mCachingLogic, info,
                             mUserSerial, false /*replace existing*/);
+                    mIconCache.mUpdateStats.onIconCommitted(mPass);
                 }
 
                 if (!mAppsToAdd.isEmpty()) {
                     scheduleNext();
+                } else {
+                    mIconCache.mUpdateStats.onPassFinished(mPass);
+                }
+            } else {
+                // Only updates in this pass, the last update ran one more time to get here
+                mIconCache.mUpdateStats.onPassFinished(mPass);
+            }
+        }
+
+        public void scheduleNext() {
+            mIconCache.mWorkerHandler.postAtTime(this, ICON_UPDATE_TOKEN,
+                    SystemClock.uptimeMillis() + 1);
+        }
+    }
+
+    /**
+     * A variant of {@link SerializedIconUpdateTask} which renders icons on the render executor.
+     * Each render thread obtains its own icon factory through {@link CachingLogic#loadIcon}, so
+     * normalization, shadow generation and color extraction run in parallel. The rendered icons
+     * are committed to the DB and memory cache on the worker thread, in the same order as the
+     * serialized task would: all updates first, then all additions.
+     */
+    private class ParallelIconUpdateTask<T> implements Runnable {
+        private final long mUserSerial;
+        private final UserHandle mUserHandle;
+        private final Stack<T> mAppsToAdd;
+        private final Stack<T> mAppsToUpdate;
+        private final CachingLogic<T> mCachingLogic;
+        private final HashSet<String> mUpdatedPackages = new HashSet<>();
+        private final OnUpdateCallback mOnUpdateCallback;
+
+        private final ArrayDeque<RenderRequest> mInFlight = new ArrayDeque<>();
+        private final IconUpdateStats.Pass mPass;
+        private int mPendingUpdates;
+        private boolean mFinished;
+
+        ParallelIconUpdateTask(long userSerial, UserHandle userHandle,
+                Stack<T> appsToAdd, Stack<T> appsToUpdate, CachingLogic<T> cachingLogic,
+                OnUpdateCallback onUpdateCallback) {
+            mUserHandle = userHandle;
+            mUserSerial = userSerial;
+            mAppsToAdd = appsToAdd;
+            mAppsToUpdate = appsToUpdate;
+            mCachingLogic = cachingLogic;
+            mOnUpdateCallback = onUpdateCallback;
+            mPendingUpdates = appsToUpdate.size();
+            mPass = mIconCache.mUpdateStats.onPassStarted(true /* parallel */);
+        }
+
+        @Override
+        public void run() {
+            if (mGeneration != mIconCache.mUpdateHandlerGeneration) {
+                // A newer update handler has taken over
+                return;
+            }
+
+            // Commit finished renders in submission order
+            while (!mInFlight.isEmpty() && mInFlight.peekFirst().mDone) {
+                commit(mInFlight.pollFirst());
+            }
+
+            while (mInFlight.size() < MAX_RENDERS_IN_FLIGHT) {
+                RenderRequest request;
+                if (!mAppsToUpdate.isEmpty()) {
+                    T app = mAppsToUpdate.pop();
+                    request = new RenderRequest(app, mPkgInfoMap.get(
+                            mCachingLogic.getComponent(app).getPackageName()), true);
+                } else if (!mAppsToAdd.isEmpty()) {
+                    T app = mAppsToAdd.pop();
+                    request = new RenderRequest(app, mPkgInfoMap.get(
+                            mCachingLogic.getComponent(app).getPackageName()), false);
+                } else {
+                    break;
+                }
+                mInFlight.add(request);
+                if (request.mRender) {
+                    mRenderExecutor.execute(request);
+                }
+            }
+
+            if (!mInFlight.isEmpty() && mInFlight.peekFirst().mDone) {
+                // Some requests did not need rendering, commit them right away
+                scheduleNext();
+            } else if (mInFlight.isEmpty() && !mFinished) {
+                mFinished = true;
+                mIconCache.mUpdateStats.onPassFinished(mPass);
+            }
+        }
+
+        private void commit(RenderRequest request) {
+            if (request.mInfo != null) {
+                if (request.mIcon != null) {
+                    mIconCache.addRenderedIconToDBAndMemCache(request.mApp, mCachingLogic,
+                            request.mIcon, request.mInfo, mUserSerial);
+                    if (request.mIconSource != null) {
+                        mIconCache.addNormalizationToDB(request.mKey, request.mIconSource,
+                                request.mInfo, request.mCachedNormalization,
+                                request.mNormalization);
+                    }
+                } else {
+                    // Either reuses the high-res icon already in memory, or renders it here if
+                    // rendering on the executor failed
+                    mIconCache.addIconToDBAndMemCache(request.mApp, mCachingLogic,
+                            request.mInfo, mUserSerial, request.mIsUpdate);
+                }
+                mIconCache.mUpdateStats.onIconCommitted(mPass);
+            }
+            if (request.mIsUpdate) {
+                mUpdatedPackages.add(mCachingLogic.getComponent(request.mApp).getPackageName());
+                mPendingUpdates--;
+                if (mPendingUpdates == 0) {
+                    // No more app to update. Notify callback.
+                    mOnUpdateCallback.onPackageIconsUpdated(mUpdatedPackages, mUserHandle);
                 }
             }
         }
@@ -301,6 +467,58 @@ public class IconCacheUpdateHandler {
             mIconCache.mWorkerHandler.postAtTime(this, ICON_UPDATE_TOKEN,
                     SystemClock.uptimeMillis() + 1);
         }
+
+        private class RenderRequest implements Runnable {
+            final T mApp;
+            final ComponentKey mKey;
+            @Nullable final PackageInfo mInfo;
+            final boolean mIsUpdate;
+            final boolean mRender;
+
+            // Normalization of the source drawable, persisted along with the rendered icon
+            @Nullable final String mIconSource;
+            @Nullable final IconNormalizer.Result mCachedNormalization;
+            @Nullable IconNormalizer.Result mNormalization;
+
+            @Nullable BitmapInfo mIcon;
+            volatile boolean mDone;
+
+            RenderRequest(T app, @Nullable PackageInfo info, boolean isUpdate) {
+                mApp = app;
+                mKey = new ComponentKey(mCachingLogic.getComponent(app), mUserHandle);
+                mInfo = info;
+                mIsUpdate = isUpdate;
+                // Additions reuse an existing high-res icon instead of rendering a new one. We do
+                // not check the mPkgInfoMap when generating the mAppsToAdd, so the info can be
+                // missing, in which case the app is skipped.
+                mRender = info != null
+                        && (isUpdate || !mIconCache.hasHighResIconInMemCache(mKey));
+                mDone = !mRender;
+
+                mIconSource = mRender
+                        ? mCachingLogic.getIconSource(mIconCache.mContext, app) : null;
+                mCachedNormalization = mIconSource == null
+                        ? null : mIconCache.getNormalizationFromDB(mKey, mIconSource, info);
+            }
+
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtimeNanos();
+                IconNormalizer.beginResultCaching(mCachedNormalization);
+                try {
+                    mIcon = mCachingLogic.loadIcon(mIconCache.mContext, mApp);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error rendering icon", e);
+                    // Falls back to rendering on the worker thread when committed
+                    mIcon = null;
+                } finally {
+                    mNormalization = IconNormalizer.endResultCaching();
+                }
+                mIconCache.mUpdateStats.onIconRendered(SystemClock.elapsedRealtimeNanos() - start);
+                mDone = true;
+                scheduleNext();
+            }
+        }
     }
 
     public interface OnUpdateCallback {
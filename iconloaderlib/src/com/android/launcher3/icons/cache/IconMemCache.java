@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons.cache;
+
+import android.graphics.Bitmap;
+import android.os.UserHandle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.icons.cache.BaseIconCache.CacheEntry;
+import com.android.launcher3.util.ComponentKey;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory layer of {@link BaseIconCache}, which keeps the least recently used entries within a
+ * budget based on the size of their bitmaps. Evicted entries are read again from the DB on the
+ * next lookup.
+ *
+ * Entries with a pinned key, typically used by bound items which hold on to the same bitmaps
+ * anyway, and entries which are not persisted in the DB are never evicted and do not count
+ * towards the budget.
+ *
+ * This class is not thread safe, it is only accessed under the {@link BaseIconCache} lock.
+ */
+class IconMemCache {
+
+    // Approximate size of an entry excluding its bitmap
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final long mMaxBytes;
+    // Entries in access order, from least to most recently used
+    private final LinkedHashMap<ComponentKey, Node> mNodes;
+
+    // Number of times each key was pinned, as several items can use the same key
+    private final HashMap<ComponentKey, Integer> mPinCounts = new HashMap<>();
+    private long mEvictableBytes;
+    private long mUnevictableBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * @param maxBytes budget for the evictable entries. If it is not positive, nothing is kept in
+     *                 memory.
+     */
+    IconMemCache(int initialCapacity, long maxBytes) {
+        mMaxBytes = maxBytes;
+        mNodes = new LinkedHashMap<>(initialCapacity, 0.75f, true /* accessOrder */);
+    }
+
+    @Nullable
+    CacheEntry get(ComponentKey key) {
+        Node node = mNodes.get(key);
+        if (node == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return node.entry;
+    }
+
+    /**
+     * Adds an entry which can be evicted. This must be called again if the entry is modified
+     * after being added, so that its size is updated.
+     */
+    void put(ComponentKey key, CacheEntry entry) {
+        put(key, new Node(entry, true));
+    }
+
+    /**
+     * Adds an entry which is not persisted in the DB, and hence cannot be evicted.
+     */
+    void putUnevictable(ComponentKey key, CacheEntry entry) {
+        put(key, new Node(entry, false));
+    }
+
+    private void put(ComponentKey key, Node node) {
+        if (mMaxBytes <= 0) {
+            return;
+        }
+        Node old = mNodes.put(key, node);
+        if (old != null) {
+            onNodeRemoved(key, old);
+        }
+        addBytes(key, node, node.size);
+        trim();
+    }
+
+    @Nullable
+    CacheEntry remove(ComponentKey key) {
+        Node node = mNodes.remove(key);
+        if (node == null) {
+            return null;
+        }
+        onNodeRemoved(key, node);
+        return node.entry;
+    }
+
+    /**
+     * Removes all the entries of the provided package
+     */
+    void removePackage(String packageName, UserHandle user) {
+        Iterator<Map.Entry<ComponentKey, Node>> itr = mNodes.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<ComponentKey, Node> e = itr.next();
+            ComponentKey key = e.getKey();
+            if (key.componentName.getPackageName().equals(packageName) && key.user.equals(user)) {
+                itr.remove();
+                onNodeRemoved(key, e.getValue());
+            }
+        }
+    }
+
+    void clear() {
+        mNodes.clear();
+        mEvictableBytes = 0;
+        mUnevictableBytes = 0;
+    }
+
+    /**
+     * Prevents the entry of {@param key} from being evicted, until {@link #unpin} is called as
+     * many times as this method
+     */
+    void pin(@NonNull ComponentKey key) {
+        Integer count = mPinCounts.get(key);
+        if (count != null) {
+            mPinCounts.put(key, count + 1);
+            return;
+        }
+        Node node = mNodes.get(key);
+        if (node != null) {
+            onNodeRemoved(key, node);
+        }
+        mPinCounts.put(key, 1);
+        if (node != null) {
+            addBytes(key, node, node.size);
+        }
+    }
+
+    /**
+     * Reverts a call to {@link #pin}
+     */
+    void unpin(@NonNull ComponentKey key) {
+        Integer count = mPinCounts.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            mPinCounts.put(key, count - 1);
+            return;
+        }
+        Node node = mNodes.get(key);
+        if (node != null) {
+            onNodeRemoved(key, node);
+        }
+        mPinCounts.remove(key);
+        if (node != null) {
+            addBytes(key, node, node.size);
+            trim();
+        }
+    }
+
+    private boolean isEvictable(ComponentKey key, Node node) {
+        return node.evictable && !mPinCounts.containsKey(key);
+    }
+
+    private void onNodeRemoved(ComponentKey key, Node node) {
+        addBytes(key, node, -node.size);
+    }
+
+    private void addBytes(ComponentKey key, Node node, long bytes) {
+        if (isEvictable(key, node)) {
+            mEvictableBytes += bytes;
+        } else {
+            mUnevictableBytes += bytes;
+        }
+    }
+
+    /**
+     * Evicts the least recently used evictable entries until they fit in the budget
+     */
+    private void trim() {
+        Iterator<Map.Entry<ComponentKey, Node>> itr = mNodes.entrySet().iterator();
+        while (mEvictableBytes > mMaxBytes && itr.hasNext()) {
+            Map.Entry<ComponentKey, Node> e = itr.next();
+            if (isEvictable(e.getKey(), e.getValue())) {
+                itr.remove();
+                mEvictableBytes -= e.getValue().size;
+                mEvictionCount++;
+            }
+        }
+    }
+
+    int size() {
+        return mNodes.size();
+    }
+
+    long getEvictableBytes() {
+        return mEvictableBytes;
+    }
+
+    int getHitCount() {
+        return mHitCount;
+    }
+
+    int getMissCount() {
+        return mMissCount;
+    }
+
+    int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "IconMemCache: entries=" + mNodes.size()
+                + " pinnedKeys=" + mPinCounts.size());
+        writer.println(prefix + "  bytes: evictable=" + mEvictableBytes + "/" + mMaxBytes
+                + " unevictable=" + mUnevictableBytes);
+        writer.println(prefix + "  hits=" + mHitCount + " misses=" + mMissCount
+                + " evictions=" + mEvictionCount);
+    }
+
+    /**
+     * Returns the approximate memory used by {@param entry}. Low resolution bitmaps are either
+     * empty or shared, and are not counted.
+     */
+    static int getSize(CacheEntry entry) {
+        BitmapInfo info = entry.bitmap;
+        if (info == null || info.isNullOrLowRes()) {
+            return ENTRY_OVERHEAD_BYTES;
+        }
+        // Hardware bitmaps do not report their allocation, icons are always ARGB_8888
+        Bitmap icon = info.icon;
+        return ENTRY_OVERHEAD_BYTES + icon.getWidth() * icon.getHeight() * 4;
+    }
+
+    private static class Node {
+        final CacheEntry entry;
+        final int size;
+        final boolean evictable;
+
+        Node(CacheEntry entry, boolean evictable) {
+            this.entry = entry;
+            this.size = getSize(entry);
+            this.evictable = evictable;
+        }
+    }
+}
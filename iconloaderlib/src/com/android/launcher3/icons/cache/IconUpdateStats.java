@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons.cache;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput counters for icons rendered and committed by {@link IconCacheUpdateHandler}.
+ * Render counters can be updated from any thread, the rest only from the cache worker thread.
+ */
+class IconUpdateStats {
+
+    private final AtomicInteger mIconsRendered = new AtomicInteger();
+    private final AtomicLong mRenderTimeNanos = new AtomicLong();
+
+    private int mIconsCommitted;
+    private int mParallelPasses;
+    private int mSerialPasses;
+    private long mPassTimeNanos;
+    private int mLastPassIconCount;
+    private long mLastPassTimeNanos;
+    private int mNormalizationsReused;
+    private int mNormalizationsStored;
+
+    /**
+     * Called on a render thread after an icon was rendered
+     */
+    void onIconRendered(long renderTimeNanos) {
+        mIconsRendered.incrementAndGet();
+        mRenderTimeNanos.addAndGet(renderTimeNanos);
+    }
+
+    /**
+     * Returns a new pass, kept by the update task as several passes can run at the same time
+     */
+    Pass onPassStarted(boolean parallel) {
+        if (parallel) {
+            mParallelPasses++;
+        } else {
+            mSerialPasses++;
+        }
+        return new Pass();
+    }
+
+    void onIconCommitted(Pass pass) {
+        mIconsCommitted++;
+        pass.mIconCount++;
+    }
+
+    void onPassFinished(Pass pass) {
+        mLastPassTimeNanos = SystemClock.elapsedRealtimeNanos() - pass.mStartNanos;
+        mLastPassIconCount = pass.mIconCount;
+        mPassTimeNanos += mLastPassTimeNanos;
+    }
+
+    void onNormalizationReused() {
+        mNormalizationsReused++;
+    }
+
+    void onNormalizationStored() {
+        mNormalizationsStored++;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        int rendered = mIconsRendered.get();
+        writer.println(prefix + "IconUpdateStats:");
+        writer.println(prefix + "  passes: parallel=" + mParallelPasses
+                + " serial=" + mSerialPasses);
+        writer.println(prefix + "  iconsRendered=" + rendered + " avgRenderMs="
+                + (rendered == 0 ? 0 : mRenderTimeNanos.get() / rendered / 1_000_000f));
+        writer.println(prefix + "  iconsCommitted=" + mIconsCommitted + " iconsPerSec="
+                + iconsPerSecond(mIconsCommitted, mPassTimeNanos));
+        writer.println(prefix + "  lastPass: icons=" + mLastPassIconCount + " timeMs="
+                + mLastPassTimeNanos / 1_000_000 + " iconsPerSec="
+                + iconsPerSecond(mLastPassIconCount, mLastPassTimeNanos));
+        writer.println(prefix + "  normalizations: reused=" + mNormalizationsReused
+                + " stored=" + mNormalizationsStored);
+    }
+
+    private static float iconsPerSecond(int count, long nanos) {
+        return nanos == 0 ? 0 : count * 1_000_000_000f / nanos;
+    }
+
+    /**
+     * Start time and icon count of a single update pass
+     */
+    static class Pass {
+        private final long mStartNanos = SystemClock.elapsedRealtimeNanos();
+        private int mIconCount;
+    }
+}
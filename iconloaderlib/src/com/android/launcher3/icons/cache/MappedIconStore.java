@@ -0,0 +1,698 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons.cache;
+
+import android.content.ContentValues;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import com.android.launcher3.icons.cache.BaseIconCache.IconDB;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A memory-mapped, append-only store for the icon bitmaps of the icon cache. When it is enabled,
+ * {@link IconDB} only keeps the metadata of each entry and the icon bytes live here.
+ *
+ * The store is made of two files:
+ *   - An index file with a fixed size open-addressing table, keyed by a hash of the component
+ *     and the user serial. It is mapped read-write, so a lookup is a single hashed probe.
+ *   - A data file where records are only ever appended. Replaced and removed records become dead
+ *     bytes which are reclaimed by {@link #compact()}. Each compaction writes a new data file
+ *     with the next generation number, which is recorded in the index header.
+ *
+ * Each record keeps the same version, lastUpdated and system-state information as the DB row, so
+ * that it can be validated the same way. Any IO error disables the store, in which case all
+ * lookups miss and the caller reloads the icon.
+ */
+public class MappedIconStore {
+
+    private static final String TAG = "MappedIconStore";
+
+    private static final int MAGIC = 0x4C494354;
+
+    // Index file header
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_SLOT_COUNT = 8;
+    private static final int HEADER_LIVE_COUNT = 12;
+    private static final int HEADER_DATA_END = 16;
+    private static final int HEADER_DEAD_BYTES = 24;
+    private static final int HEADER_DATA_GENERATION = 32;
+    private static final int HEADER_SIZE = 40;
+
+    // Each slot is a (long hash, long offset) pair. A zero hash marks an empty slot and a negative
+    // offset marks a removed entry, which still needs to be probed through.
+    private static final int SLOT_SIZE = 16;
+    private static final long EMPTY_HASH = 0;
+    private static final long REMOVED_OFFSET = -1;
+
+    private static final int MIN_SLOT_COUNT = 1024;
+    private static final float MAX_LOAD_FACTOR = 0.7f;
+
+    // Compaction is only worth it once a reasonable amount of the data file is dead.
+    private static final long MIN_DEAD_BYTES_FOR_COMPACTION = 256 * 1024;
+
+    // Offset of the component name in a record: length, userSerial, lastUpdated, version, color
+    private static final int RECORD_COMPONENT_OFFSET = 4 + 8 + 8 + 4 + 4;
+
+    private final File mDir;
+    private final String mName;
+    private final File mIndexFile;
+    private final int mVersion;
+    // Called when the stored entries are lost, e.g. when the files are created or reset
+    @Nullable private final Runnable mOnDataLost;
+
+    private File mDataFile;
+    private long mDataGeneration;
+
+    private FileChannel mIndexChannel;
+    private FileChannel mDataChannel;
+    private MappedByteBuffer mIndex;
+    private MappedByteBuffer mData;
+
+    private int mSlotCount;
+    private int mUsedSlots;
+    private int mLiveCount;
+    private long mDataEnd;
+    private long mDeadBytes;
+
+    private boolean mDisabled;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mCompactionCount;
+
+    public MappedIconStore(File dir, String name, int version) {
+        this(dir, name, version, null);
+    }
+
+    /**
+     * @param onDataLost called, with the store locked, each time the entries are lost: when the
+     *                   store is created, reset because of an invalid or outdated index, cleared
+     *                   or disabled after an error
+     */
+    public MappedIconStore(File dir, String name, int version, @Nullable Runnable onDataLost) {
+        mDir = dir;
+        mName = name;
+        mIndexFile = new File(dir, name + ".idx");
+        mVersion = version;
+        mOnDataLost = onDataLost;
+        try {
+            openFiles();
+        } catch (IOException e) {
+            onError(e);
+        }
+    }
+
+    /**
+     * Reads the entry for the provided component into {@param out}.
+     * @param lowRes if true, the icon bytes are not read
+     * @return true if an entry was found
+     */
+    public synchronized boolean get(String component, long userSerial, boolean lowRes,
+            @NonNull Entry out) {
+        if (mDisabled) {
+            return false;
+        }
+        try {
+            byte[] key = component.getBytes(StandardCharsets.UTF_8);
+            int slot = findSlot(key, userSerial, hash(key, userSerial));
+            if (slot < 0) {
+                mMissCount++;
+                return false;
+            }
+            ByteBuffer record = readRecord(mIndex.getLong(slotPosition(slot) + 8));
+            record.position(4 + 8);
+            out.lastUpdated = record.getLong();
+            out.version = record.getInt();
+            out.color = record.getInt();
+            skipBytes(record);
+            out.systemState = readString(record);
+            out.label = readString(record);
+            out.keywords = readString(record);
+            out.icon = lowRes ? null : readBytes(record);
+            mHitCount++;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            onError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Appends a new record built from the {@link IconDB} columns in {@param values}, replacing
+     * any previous record for the same component and user.
+     * @return true if the record was written
+     */
+    public synchronized boolean put(ContentValues values) {
+        if (mDisabled) {
+            return false;
+        }
+        String component = values.getAsString(IconDB.COLUMN_COMPONENT);
+        long userSerial = values.getAsLong(IconDB.COLUMN_USER);
+        byte[] key = component.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key, userSerial);
+        try {
+            byte[] record = encodeRecord(key, userSerial, values);
+            int slot = findSlot(key, userSerial, hash);
+            if (slot < 0 && mUsedSlots + 1 > mSlotCount * MAX_LOAD_FACTOR) {
+                compactLocked(slotCountFor(mLiveCount + 1));
+            }
+
+            long offset = mDataEnd;
+            mDataChannel.write(ByteBuffer.wrap(record), offset);
+            mDataEnd += record.length;
+
+            if (slot >= 0) {
+                int position = slotPosition(slot);
+                mDeadBytes += recordSize(mIndex.getLong(position + 8));
+                mIndex.putLong(position + 8, offset);
+            } else {
+                insertSlot(mIndex, mSlotCount, hash, offset);
+                mLiveCount++;
+            }
+            writeHeader();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            onError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes the entry for the provided component, if present
+     */
+    public synchronized void remove(String component, long userSerial) {
+        if (mDisabled) {
+            return;
+        }
+        try {
+            byte[] key = component.getBytes(StandardCharsets.UTF_8);
+            int slot = findSlot(key, userSerial, hash(key, userSerial));
+            if (slot >= 0) {
+                removeSlot(slot);
+                writeHeader();
+            }
+        } catch (IOException | RuntimeException e) {
+            onError(e);
+        }
+    }
+
+    /**
+     * Removes all the entries for the provided package and user
+     */
+    public synchronized void removePackage(String packageName, long userSerial) {
+        if (mDisabled) {
+            return;
+        }
+        String prefix = packageName + "/";
+        try {
+            for (int i = 0; i < mSlotCount; i++) {
+                int position = slotPosition(i);
+                long offset = mIndex.getLong(position + 8);
+                if (mIndex.getLong(position) == EMPTY_HASH || offset == REMOVED_OFFSET) {
+                    continue;
+                }
+                ByteBuffer record = readRecord(offset);
+                if (record.getLong(4) != userSerial) {
+                    continue;
+                }
+                record.position(RECORD_COMPONENT_OFFSET);
+                if (readString(record).startsWith(prefix)) {
+                    removeSlot(i);
+                }
+            }
+            writeHeader();
+        } catch (IOException | RuntimeException e) {
+            onError(e);
+        }
+    }
+
+    /**
+     * Removes all entries from the store
+     */
+    public synchronized void clear() {
+        try {
+            closeChannels();
+            mIndexFile.delete();
+            deleteDataFiles(-1);
+            mDisabled = false;
+            openFiles();
+        } catch (IOException e) {
+            onError(e);
+        }
+    }
+
+    /**
+     * Compacts the data file if enough of it is occupied by replaced or removed records
+     */
+    public synchronized void maybeCompact() {
+        if (!mDisabled && mDeadBytes > MIN_DEAD_BYTES_FOR_COMPACTION
+                && mDeadBytes * 2 > mDataEnd) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites all live records into a new data file and rebuilds the index
+     */
+    public synchronized void compact() {
+        if (mDisabled) {
+            return;
+        }
+        try {
+            compactLocked(slotCountFor(mLiveCount));
+        } catch (IOException | RuntimeException e) {
+            onError(e);
+        }
+    }
+
+    public synchronized void close() {
+        closeChannels();
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "MappedIconStore:");
+        writer.println(prefix + "  disabled=" + mDisabled);
+        writer.println(prefix + "  entries=" + mLiveCount + " slots=" + mSlotCount);
+        writer.println(prefix + "  dataBytes=" + mDataEnd + " deadBytes=" + mDeadBytes);
+        writer.println(prefix + "  hits=" + mHitCount + " misses=" + mMissCount
+                + " compactions=" + mCompactionCount);
+    }
+
+    private void openFiles() throws IOException {
+        mIndexFile.getParentFile().mkdirs();
+        mIndexChannel = new RandomAccessFile(mIndexFile, "rw").getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        mIndexChannel.read(header, 0);
+        int slotCount = header.getInt(HEADER_SLOT_COUNT);
+        long dataEnd = header.getLong(HEADER_DATA_END);
+        long generation = header.getLong(HEADER_DATA_GENERATION);
+        mDataGeneration = Math.max(generation, 0);
+        mDataFile = dataFile(mDataGeneration);
+        // Removes the data files left behind by a previous compaction, or by one which did not
+        // complete. Only the file referenced by the index is ever read.
+        deleteDataFiles(mDataGeneration);
+        mDataChannel = new RandomAccessFile(mDataFile, "rw").getChannel();
+
+        boolean valid = header.getInt(HEADER_MAGIC) == MAGIC
+                && header.getInt(HEADER_VERSION) == mVersion
+                && slotCount >= MIN_SLOT_COUNT
+                && Integer.bitCount(slotCount) == 1
+                && generation >= 0
+                && mIndexChannel.size() == indexSize(slotCount)
+                && dataEnd >= 0 && dataEnd <= mDataChannel.size();
+        if (!valid) {
+            mIndexChannel.truncate(0);
+            mDataChannel.truncate(0);
+            slotCount = MIN_SLOT_COUNT;
+            dataEnd = 0;
+            notifyDataLost();
+        } else if (mDataChannel.size() > dataEnd) {
+            // Drop any partially written record
+            mDataChannel.truncate(dataEnd);
+        }
+
+        mIndex = mIndexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexSize(slotCount));
+        mData = null;
+        mSlotCount = slotCount;
+        mDataEnd = dataEnd;
+        if (valid) {
+            mLiveCount = mIndex.getInt(HEADER_LIVE_COUNT);
+            mDeadBytes = mIndex.getLong(HEADER_DEAD_BYTES);
+            mUsedSlots = 0;
+            for (int i = 0; i < mSlotCount; i++) {
+                if (mIndex.getLong(slotPosition(i)) != EMPTY_HASH) {
+                    mUsedSlots++;
+                }
+            }
+        } else {
+            mLiveCount = 0;
+            mDeadBytes = 0;
+            mUsedSlots = 0;
+            mIndex.putInt(HEADER_MAGIC, MAGIC);
+            mIndex.putInt(HEADER_VERSION, mVersion);
+            mIndex.putInt(HEADER_SLOT_COUNT, mSlotCount);
+            mIndex.putLong(HEADER_DATA_GENERATION, mDataGeneration);
+            writeHeader();
+        }
+    }
+
+    /**
+     * Writes the live records to the data file of the next generation and a new index pointing
+     * to it. The new index is synced and then renamed over the current one, which atomically
+     * switches to the new data file: if the process dies before the rename, the current files
+     * are still intact and the partial data file is deleted on the next open.
+     */
+    private void compactLocked(int slotCount) throws IOException {
+        File tmpIndexFile = new File(mIndexFile.getPath() + ".tmp");
+        long newGeneration = mDataGeneration + 1;
+        File newDataFile = dataFile(newGeneration);
+        int liveCount = 0;
+        long dataEnd = 0;
+        try (FileChannel indexChannel = new RandomAccessFile(tmpIndexFile, "rw").getChannel();
+             FileChannel dataChannel = new RandomAccessFile(newDataFile, "rw").getChannel()) {
+            indexChannel.truncate(0);
+            dataChannel.truncate(0);
+            MappedByteBuffer index = indexChannel.map(
+                    FileChannel.MapMode.READ_WRITE, 0, indexSize(slotCount));
+            for (int i = 0; i < mSlotCount; i++) {
+                int position = slotPosition(i);
+                long hash = mIndex.getLong(position);
+                long offset = mIndex.getLong(position + 8);
+                if (hash == EMPTY_HASH || offset == REMOVED_OFFSET) {
+                    continue;
+                }
+                int size = recordSize(offset);
+                long copied = 0;
+                while (copied < size) {
+                    copied += mDataChannel.transferTo(offset + copied, size - copied, dataChannel);
+                }
+                insertSlot(index, slotCount, hash, dataEnd);
+                dataEnd += size;
+                liveCount++;
+            }
+            index.putInt(HEADER_MAGIC, MAGIC);
+            index.putInt(HEADER_VERSION, mVersion);
+            index.putInt(HEADER_SLOT_COUNT, slotCount);
+            index.putInt(HEADER_LIVE_COUNT, liveCount);
+            index.putLong(HEADER_DATA_END, dataEnd);
+            index.putLong(HEADER_DEAD_BYTES, 0);
+            index.putLong(HEADER_DATA_GENERATION, newGeneration);
+            // The data must be durable before the index referencing it
+            dataChannel.force(true);
+            index.force();
+            indexChannel.force(true);
+        }
+
+        closeChannels();
+        if (!tmpIndexFile.renameTo(mIndexFile)) {
+            throw new IOException("Unable to replace store index");
+        }
+        syncDirectory();
+        openFiles();
+        mCompactionCount++;
+    }
+
+    /**
+     * Syncs the store directory, so that the index rename is durable
+     */
+    private void syncDirectory() {
+        try {
+            FileDescriptor fd = Os.open(mDir.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            Log.d(TAG, "Unable to sync icon store directory", e);
+        }
+    }
+
+    private File dataFile(long generation) {
+        return new File(mDir, mName + "." + generation + ".dat");
+    }
+
+    /**
+     * Deletes all the data files of this store, except the one of {@param keepGeneration}
+     */
+    private void deleteDataFiles(long keepGeneration) {
+        String prefix = mName + ".";
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        File keep = keepGeneration < 0 ? null : dataFile(keepGeneration);
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && name.endsWith(".dat") && !file.equals(keep)) {
+                file.delete();
+            }
+        }
+    }
+
+    private void closeChannels() {
+        mIndex = null;
+        mData = null;
+        try {
+            if (mIndexChannel != null) {
+                mIndexChannel.close();
+            }
+            if (mDataChannel != null) {
+                mDataChannel.close();
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Error closing icon store", e);
+        }
+        mIndexChannel = null;
+        mDataChannel = null;
+    }
+
+    private void onError(Exception e) {
+        Log.e(TAG, "Error accessing icon store, disabling it", e);
+        closeChannels();
+        mDisabled = true;
+        notifyDataLost();
+    }
+
+    private void notifyDataLost() {
+        if (mOnDataLost != null) {
+            mOnDataLost.run();
+        }
+    }
+
+    private void writeHeader() {
+        mIndex.putInt(HEADER_LIVE_COUNT, mLiveCount);
+        mIndex.putLong(HEADER_DATA_END, mDataEnd);
+        mIndex.putLong(HEADER_DEAD_BYTES, mDeadBytes);
+    }
+
+    /**
+     * Returns the slot holding the live entry for the provided key or -1
+     */
+    private int findSlot(byte[] key, long userSerial, long hash) throws IOException {
+        int mask = mSlotCount - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        for (int i = 0; i < mSlotCount; i++) {
+            int position = slotPosition(slot);
+            long slotHash = mIndex.getLong(position);
+            if (slotHash == EMPTY_HASH) {
+                return -1;
+            }
+            long offset = mIndex.getLong(position + 8);
+            if (slotHash == hash && offset != REMOVED_OFFSET
+                    && recordMatches(offset, key, userSerial)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insertSlot(ByteBuffer index, int slotCount, long hash, long offset) {
+        int mask = slotCount - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true) {
+            int position = slotPosition(slot);
+            long slotHash = index.getLong(position);
+            if (slotHash == EMPTY_HASH || index.getLong(position + 8) == REMOVED_OFFSET) {
+                if (slotHash == EMPTY_HASH && index == mIndex) {
+                    mUsedSlots++;
+                }
+                index.putLong(position, hash);
+                index.putLong(position + 8, offset);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void removeSlot(int slot) throws IOException {
+        int position = slotPosition(slot);
+        mDeadBytes += recordSize(mIndex.getLong(position + 8));
+        mIndex.putLong(position + 8, REMOVED_OFFSET);
+        mLiveCount--;
+    }
+
+    private boolean recordMatches(long offset, byte[] key, long userSerial) throws IOException {
+        ByteBuffer record = readRecord(offset);
+        if (record.getLong(4) != userSerial
+                || record.getInt(RECORD_COMPONENT_OFFSET) != key.length) {
+            return false;
+        }
+        int start = RECORD_COMPONENT_OFFSET + 4;
+        for (int i = 0; i < key.length; i++) {
+            if (record.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a view over the record at {@param offset}, remapping the data file if it has grown
+     * past the currently mapped region.
+     */
+    private ByteBuffer readRecord(long offset) throws IOException {
+        if (mData == null || offset + 4 > mData.capacity()) {
+            remapData();
+        }
+        int size = mData.getInt((int) offset) + 4;
+        if (offset + size > mData.capacity()) {
+            remapData();
+        }
+        ByteBuffer record = mData.duplicate();
+        record.position((int) offset);
+        record.limit((int) offset + size);
+        return record.slice();
+    }
+
+    private int recordSize(long offset) throws IOException {
+        return readRecord(offset).capacity();
+    }
+
+    private void remapData() throws IOException {
+        mData = mDataChannel.map(FileChannel.MapMode.READ_ONLY, 0, mDataEnd);
+    }
+
+    private static byte[] encodeRecord(byte[] key, long userSerial, ContentValues values)
+            throws IOException {
+        byte[] icon = values.getAsByteArray(IconDB.COLUMN_ICON);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                256 + (icon == null ? 0 : icon.length));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // Placeholder for the record length
+        out.writeLong(userSerial);
+        out.writeLong(getLong(values, IconDB.COLUMN_LAST_UPDATED));
+        out.writeInt((int) getLong(values, IconDB.COLUMN_VERSION));
+        out.writeInt((int) getLong(values, IconDB.COLUMN_ICON_COLOR));
+        writeBytes(out, key);
+        writeString(out, values.getAsString(IconDB.COLUMN_SYSTEM_STATE));
+        writeString(out, values.getAsString(IconDB.COLUMN_LABEL));
+        writeString(out, values.getAsString(IconDB.COLUMN_KEYWORDS));
+        writeBytes(out, icon);
+        out.close();
+
+        byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(0, record.length - 4);
+        return record;
+    }
+
+    private static long getLong(ContentValues values, String key) {
+        Long value = values.getAsLong(key);
+        return value == null ? 0 : value;
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value)
+            throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, @Nullable byte[] value)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = readBytes(record);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    private static byte[] readBytes(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return bytes;
+    }
+
+    private static void skipBytes(ByteBuffer record) {
+        int length = record.getInt();
+        if (length > 0) {
+            record.position(record.position() + length);
+        }
+    }
+
+    private static long hash(byte[] key, long userSerial) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        for (int i = 0; i < 8; i++) {
+            hash ^= (userSerial >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash == EMPTY_HASH ? 1 : hash;
+    }
+
+    private static int slotCountFor(int entryCount) {
+        int slotCount = MIN_SLOT_COUNT;
+        while (entryCount > slotCount * MAX_LOAD_FACTOR / 2) {
+            slotCount <<= 1;
+        }
+        return slotCount;
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long indexSize(int slotCount) {
+        return HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+    }
+
+    /**
+     * Holder for the data read from the store
+     */
+    public static class Entry {
+        public int color;
+        public long lastUpdated;
+        public int version;
+        @Nullable public String systemState;
+        @Nullable public String label;
+        @Nullable public String keywords;
+        @Nullable public byte[] icon;
+    }
+}
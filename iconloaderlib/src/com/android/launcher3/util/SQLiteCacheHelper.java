@@ -12,6 +12,10 @@ import android.util.Log;
 /**
  * An extension of {@link SQLiteOpenHelper} with utility methods for a single table cache DB.
  * Any exception during write operations are ignored, and any version change causes a DB reset.
+ *
+ * Additional tables can be created in {@link #onCreateTable(SQLiteDatabase)} using
+ * "CREATE TABLE IF NOT EXISTS". These are not dropped by a reset of the cache table, and are
+ * accessed with the methods taking a table name.
  */
 public abstract class SQLiteCacheHelper {
     private static final String TAG = "SQLiteCacheHelper";
@@ -37,11 +41,18 @@ public abstract class SQLiteCacheHelper {
      * @see SQLiteDatabase#delete(String, String, String[])
      */
     public void delete(String whereClause, String[] whereArgs) {
+        delete(mTableName, whereClause, whereArgs);
+    }
+
+    /**
+     * Same as {@link #delete(String, String[])} for another table of the DB
+     */
+    public void delete(String table, String whereClause, String[] whereArgs) {
         if (mIgnoreWrites) {
             return;
         }
         try {
-            mOpenHelper.getWritableDatabase().delete(mTableName, whereClause, whereArgs);
+            mOpenHelper.getWritableDatabase().delete(table, whereClause, whereArgs);
         } catch (SQLiteFullException e) {
             onDiskFull(e);
         } catch (SQLiteException e) {
@@ -53,12 +64,19 @@ public abstract class SQLiteCacheHelper {
      * @see SQLiteDatabase#insertWithOnConflict(String, String, ContentValues, int)
      */
     public void insertOrReplace(ContentValues values) {
+        insertOrReplace(mTableName, values);
+    }
+
+    /**
+     * Same as {@link #insertOrReplace(ContentValues)} for another table of the DB
+     */
+    public void insertOrReplace(String table, ContentValues values) {
         if (mIgnoreWrites) {
             return;
         }
         try {
             mOpenHelper.getWritableDatabase().insertWithOnConflict(
-                    mTableName, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                    table, null, values, SQLiteDatabase.CONFLICT_REPLACE);
         } catch (SQLiteFullException e) {
             onDiskFull(e);
         } catch (SQLiteException e) {
@@ -75,8 +93,16 @@ public abstract class SQLiteCacheHelper {
      * @see SQLiteDatabase#query(String, String[], String, String[], String, String, String)
      */
     public Cursor query(String[] columns, String selection, String[] selectionArgs) {
+        return query(mTableName, columns, selection, selectionArgs);
+    }
+
+    /**
+     * Same as {@link #query(String[], String, String[])} for another table of the DB
+     */
+    public Cursor query(String table, String[] columns, String selection,
+            String[] selectionArgs) {
         return mOpenHelper.getReadableDatabase().query(
-                mTableName, columns, selection, selectionArgs, null, null, null);
+                table, columns, selection, selectionArgs, null, null, null);
     }
 
     public void clear() {
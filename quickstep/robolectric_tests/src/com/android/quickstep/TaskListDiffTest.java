@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Intent;
+
+import com.android.launcher3.util.IntArray;
+import com.android.systemui.shared.recents.model.Task;
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for {@link TaskListDiff}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskListDiffTest {
+
+    @Test
+    public void sameList_isEmpty() {
+        assertTrue(TaskListDiff.compute(tasks(1, 2, 3), tasks(1, 2, 3)).isEmpty());
+    }
+
+    @Test
+    public void insertedAndRemoved() {
+        TaskListDiff diff = TaskListDiff.compute(tasks(1, 2, 3), tasks(2, 3, 4));
+
+        assertEquals(IntArray.wrap(4), diff.inserted);
+        assertEquals(IntArray.wrap(1), diff.removed);
+        assertTrue(diff.getMoved().isEmpty());
+        assertTrue(diff.changed.isEmpty());
+    }
+
+    @Test
+    public void taskMovedToFront_onlyReportsThatTask() {
+        // The most recent task is last
+        TaskListDiff diff = TaskListDiff.compute(tasks(1, 2, 3, 4, 5), tasks(1, 3, 4, 5, 2));
+
+        assertEquals(IntArray.wrap(2), diff.getMoved());
+        assertTrue(diff.inserted.isEmpty());
+        assertTrue(diff.removed.isEmpty());
+    }
+
+    @Test
+    public void changedTask() {
+        ArrayList<Task> newTasks = tasks(1, 2, 3);
+        newTasks.set(1, task(2, 100));
+        TaskListDiff diff = TaskListDiff.compute(tasks(1, 2, 3), newTasks);
+
+        assertEquals(IntArray.wrap(2), diff.changed);
+        assertTrue(diff.getMoved().isEmpty());
+    }
+
+    @Test
+    public void reversedList_keepsOneTaskInPlace() {
+        TaskListDiff diff = TaskListDiff.compute(tasks(1, 2, 3, 4), tasks(4, 3, 2, 1));
+
+        assertEquals(3, diff.getMoved().size());
+    }
+
+    private static ArrayList<Task> tasks(int... ids) {
+        ArrayList<Task> tasks = new ArrayList<>();
+        for (int id : ids) {
+            tasks.add(task(id, 0));
+        }
+        return tasks;
+    }
+
+    private static Task task(int id, long lastActiveTime) {
+        return new Task(new TaskKey(id, 0, new Intent(), null, 0, lastActiveTime));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link SharedLoadRequest}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SharedLoadRequestTest {
+
+    private final ArrayList<String> mResults = new ArrayList<>();
+
+    @Test
+    public void callbacksShareOneLoad() {
+        TestRequest request = new TestRequest();
+        request.addCallback(r -> mResults.add("a:" + r));
+        request.addCallback(r -> mResults.add("b:" + r));
+        request.run();
+
+        assertEquals(1, request.mLoadCount);
+        assertEquals(Arrays.asList("a:1", "b:1"), mResults);
+        assertEquals(Arrays.asList("result:1"), request.mEvents);
+    }
+
+    @Test
+    public void cancellingOneHandle_keepsTheLoad() {
+        TestRequest request = new TestRequest();
+        CancellableTask first = request.addCallback(r -> mResults.add("a:" + r));
+        request.addCallback(r -> mResults.add("b:" + r));
+        first.cancel();
+        request.run();
+
+        assertEquals(Arrays.asList("b:1"), mResults);
+        assertEquals(Arrays.asList("result:1"), request.mEvents);
+    }
+
+    @Test
+    public void cancellingAllHandles_cancelsTheLoad() {
+        TestRequest request = new TestRequest();
+        CancellableTask first = request.addCallback(r -> mResults.add("a:" + r));
+        CancellableTask second = request.addCallback(r -> mResults.add("b:" + r));
+        first.cancel();
+        second.cancel();
+        request.run();
+
+        assertEquals(0, request.mLoadCount);
+        assertTrue(mResults.isEmpty());
+        assertEquals(Arrays.asList("cancelled"), request.mEvents);
+        // Cancelling again does not notify the request twice
+        second.cancel();
+        assertFalse(request.mEvents.size() > 1);
+    }
+
+    private static class TestRequest extends SharedLoadRequest<Integer> {
+
+        final ArrayList<String> mEvents = new ArrayList<>();
+        int mLoadCount;
+
+        @Override
+        public Integer getResultOnBg() {
+            return ++mLoadCount;
+        }
+
+        @Override
+        protected void onResult(Integer result) {
+            mEvents.add("result:" + result);
+        }
+
+        @Override
+        protected void onCancelled() {
+            mEvents.add("cancelled");
+        }
+    }
+}
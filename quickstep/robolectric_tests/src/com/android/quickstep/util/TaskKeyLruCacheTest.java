@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import com.android.quickstep.util.TaskKeyLruCache.Weigher;
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for {@link TaskKeyLruCache}, with a benchmark replaying an overview scroll
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskKeyLruCacheTest {
+
+    private static final String TAG = "TaskKeyLruCacheTest";
+
+    private static final int HIGH_RES_BYTES = 1600;
+    private static final int LOW_RES_BYTES = HIGH_RES_BYTES / 16;
+    private static final int CACHE_SIZE = 3;
+
+    private static final Weigher<Thumbnail> WEIGHER = new Weigher<Thumbnail>() {
+        @Override
+        public int getBudgetIndex(Thumbnail value) {
+            return value.lowRes ? 1 : 0;
+        }
+
+        @Override
+        public long getSize(Thumbnail value) {
+            return value.bytes;
+        }
+    };
+
+    // Task count, and segments of the scroll as start position, end position and whether the
+    // scroll is fast enough to only load low resolution thumbnails
+    private static final int TASK_COUNT = 40;
+    private static final int[][] SCROLL = {
+            {0, 39, 1}, {39, 39, 0}, {39, 30, 0}, {30, 5, 1}, {5, 5, 0}, {5, 12, 0},
+            {12, 35, 1}, {35, 35, 0}, {35, 0, 1}, {0, 3, 0}, {3, 20, 1}, {20, 16, 0},
+    };
+    private static final int REPLAY_COUNT = 200;
+
+    @Test
+    public void put_evictsLeastRecentlyAccessed() {
+        TaskKeyLruCache<String> cache = new TaskKeyLruCache<>(2);
+        cache.put(key(1), "1");
+        cache.put(key(2), "2");
+        assertNotNull(cache.getAndInvalidateIfModified(key(1)));
+        cache.put(key(3), "3");
+
+        assertEquals("1", cache.getAndInvalidateIfModified(key(1)));
+        assertNull(cache.getAndInvalidateIfModified(key(2)));
+        assertEquals("3", cache.getAndInvalidateIfModified(key(3)));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void get_invalidatesModifiedTask() {
+        TaskKeyLruCache<String> cache = new TaskKeyLruCache<>(2);
+        cache.put(key(1), "1");
+        assertNull(cache.getAndInvalidateIfModified(new TaskKey(1, 0, null, null, 0, 5)));
+        assertNull(cache.getAndInvalidateIfModified(key(1)));
+        assertEquals(0, cache.getSize(0));
+    }
+
+    @Test
+    public void put_usesSeparateBudgets() {
+        TaskKeyLruCache<Thumbnail> cache = newByteCache();
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            cache.put(key(i), new Thumbnail(false));
+        }
+        // Loading many low resolution thumbnails does not evict the high resolution ones
+        for (int i = CACHE_SIZE; i < CACHE_SIZE * 10; i++) {
+            cache.put(key(i), new Thumbnail(true));
+        }
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            assertNotNull(cache.getAndInvalidateIfModified(key(i)));
+        }
+        assertEquals(CACHE_SIZE * HIGH_RES_BYTES, cache.getSize(0));
+        assertTrue(cache.getSize(1) <= CACHE_SIZE * HIGH_RES_BYTES / 4);
+
+        // Replacing a thumbnail moves it to the other budget
+        cache.updateIfAlreadyInCache(0, new Thumbnail(true));
+        assertEquals((CACHE_SIZE - 1) * HIGH_RES_BYTES, cache.getSize(0));
+    }
+
+    @Test
+    public void put_keepsEntryLargerThanBudget() {
+        TaskKeyLruCache<Thumbnail> cache = newByteCache();
+        Thumbnail large = new Thumbnail(false);
+        large.bytes = HIGH_RES_BYTES * CACHE_SIZE * 2;
+        cache.put(key(1), new Thumbnail(false));
+        cache.put(key(2), large);
+        assertNull(cache.getAndInvalidateIfModified(key(1)));
+        assertNotNull(cache.getAndInvalidateIfModified(key(2)));
+    }
+
+    @Test
+    public void benchmarkOverviewScroll() {
+        Result countResult = replay(new TaskKeyLruCache<>(CACHE_SIZE));
+        Result byteResult = replay(newByteCache());
+        Log.d(TAG, "count: " + countResult);
+        Log.d(TAG, "bytes: " + byteResult);
+        assertTrue(byteResult.hits >= countResult.hits);
+    }
+
+    private static Result replay(TaskKeyLruCache<Thumbnail> cache) {
+        ArrayList<TaskKey> keys = new ArrayList<>();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            keys.add(key(i));
+        }
+
+        Result result = new Result();
+        long start = System.nanoTime();
+        for (int r = 0; r < REPLAY_COUNT; r++) {
+            for (int[] segment : SCROLL) {
+                int step = Integer.signum(segment[1] - segment[0]);
+                boolean lowRes = segment[2] != 0;
+                for (int pos = segment[0]; ; pos += step) {
+                    // The current task and its neighbours are visible
+                    for (int i = Math.max(pos - 1, 0); i <= Math.min(pos + 1, TASK_COUNT - 1);
+                            i++) {
+                        TaskKey key = keys.get(i);
+                        Thumbnail cached = cache.getAndInvalidateIfModified(key);
+                        result.lookups++;
+                        // Same check as TaskThumbnailCache
+                        if (cached != null && (!cached.lowRes || lowRes)) {
+                            result.hits++;
+                        } else {
+                            cache.put(key, new Thumbnail(lowRes));
+                            result.loadedBytes += lowRes ? LOW_RES_BYTES : HIGH_RES_BYTES;
+                        }
+                    }
+                    if (pos == segment[1]) {
+                        break;
+                    }
+                }
+            }
+        }
+        result.nanosPerLookup = (System.nanoTime() - start) / result.lookups;
+        result.evictions = cache.getEvictionCount();
+        return result;
+    }
+
+    private static TaskKeyLruCache<Thumbnail> newByteCache() {
+        long highResBudget = CACHE_SIZE * HIGH_RES_BYTES;
+        return new TaskKeyLruCache<>(new long[] {highResBudget, highResBudget / 4}, WEIGHER);
+    }
+
+    private static TaskKey key(int id) {
+        return new TaskKey(id, 0, null, null, 0, 0);
+    }
+
+    private static class Thumbnail {
+        final boolean lowRes;
+        long bytes;
+
+        Thumbnail(boolean lowRes) {
+            this.lowRes = lowRes;
+            bytes = lowRes ? LOW_RES_BYTES : HIGH_RES_BYTES;
+        }
+    }
+
+    private static class Result {
+        int lookups;
+        int hits;
+        long loadedBytes;
+        int evictions;
+        long nanosPerLookup;
+
+        @Override
+        public String toString() {
+            return "lookups=" + lookups + " hitRate=" + (hits * 100 / lookups) + "%"
+                    + " loadedKb=" + loadedBytes / 1024 + " evictions=" + evictions
+                    + " nsPerLookup=" + nanosPerLookup;
+        }
+    }
+}
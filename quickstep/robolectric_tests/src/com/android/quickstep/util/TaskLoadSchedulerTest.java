@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Intent;
+import android.util.SparseIntArray;
+
+import com.android.launcher3.icons.IconProvider;
+import com.android.quickstep.TaskIconCache;
+import com.android.systemui.shared.recents.model.Task;
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link TaskLoadScheduler}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskLoadSchedulerTest {
+
+    private final ArrayList<Runnable> mPosted = new ArrayList<>();
+    private final ArrayList<String> mRun = new ArrayList<>();
+
+    private TaskLoadScheduler mScheduler;
+
+    @Before
+    public void setup() {
+        mScheduler = new TaskLoadScheduler(mPosted::add);
+    }
+
+    @Test
+    public void runsInSubmissionOrder_withoutPriorities() {
+        submit(1, "a");
+        submit(2, "b");
+        submit(3, "c");
+        runAll();
+
+        assertEquals(Arrays.asList("a", "b", "c"), mRun);
+    }
+
+    @Test
+    public void runsByPriority() {
+        setPriorities(1, 5, 2, TaskLoadScheduler.PRIORITY_HIGHEST, 3, 1);
+        submit(1, "a");
+        submit(2, "b");
+        submit(3, "c");
+        submit(4, "d");
+        runAll();
+
+        assertEquals(Arrays.asList("b", "c", "a", "d"), mRun);
+    }
+
+    @Test
+    public void reprioritize_appliesToPendingRequests() {
+        setPriorities(1, 1, 2, 2);
+        submit(1, "a");
+        submit(2, "b");
+        submit(3, "c");
+
+        mPosted.remove(0).run();
+        setPriorities(2, 3, 3, TaskLoadScheduler.PRIORITY_HIGHEST);
+        runAll();
+
+        assertEquals(Arrays.asList("a", "c", "b"), mRun);
+    }
+
+    @Test
+    public void untargetedRequests_runFirst() {
+        setPriorities(1, TaskLoadScheduler.PRIORITY_HIGHEST);
+        submit(1, "a");
+        mScheduler.execute(() -> mRun.add("reset"));
+        runAll();
+
+        assertEquals(Arrays.asList("reset", "a"), mRun);
+    }
+
+    @Test
+    public void duplicateIconRequests_shareOneLoad() {
+        TaskIconCache iconCache = new TaskIconCache(RuntimeEnvironment.application, mScheduler,
+                new IconProvider(RuntimeEnvironment.application));
+        Task task = new Task(new TaskKey(1, 0, new Intent(), null, 0, 0));
+        CancellableTask first = iconCache.updateIconInBackground(task, t -> { });
+        CancellableTask second = iconCache.updateIconInBackground(task, t -> { });
+        iconCache.updateIconInBackground(
+                new Task(new TaskKey(2, 0, new Intent(), null, 0, 0)), t -> { });
+        assertEquals(2, mPosted.size());
+
+        // The load is kept while one of the requests still needs it
+        first.cancel();
+        CancellableTask third = iconCache.updateIconInBackground(task, t -> { });
+        assertEquals(2, mPosted.size());
+
+        // Once all its requests are cancelled, a new request starts a new load
+        second.cancel();
+        third.cancel();
+        iconCache.updateIconInBackground(task, t -> { });
+        assertEquals(3, mPosted.size());
+    }
+
+    private void submit(int taskId, String name) {
+        mScheduler.execute(taskId, () -> mRun.add(name));
+    }
+
+    private void setPriorities(int... taskIdsAndPriorities) {
+        SparseIntArray priorities = new SparseIntArray();
+        for (int i = 0; i < taskIdsAndPriorities.length; i += 2) {
+            priorities.put(taskIdsAndPriorities[i], taskIdsAndPriorities[i + 1]);
+        }
+        mScheduler.setPriorities(priorities);
+    }
+
+    private void runAll() {
+        while (!mPosted.isEmpty()) {
+            mPosted.remove(0).run();
+        }
+    }
+}
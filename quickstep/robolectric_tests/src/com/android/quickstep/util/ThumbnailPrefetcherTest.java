@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Intent;
+
+import com.android.systemui.shared.recents.model.Task;
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+import com.android.systemui.shared.recents.model.ThumbnailData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Tests for {@link ThumbnailPrefetcher}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ThumbnailPrefetcherTest {
+
+    private final ArrayList<String> mLoads = new ArrayList<>();
+    private final HashMap<String, FakeRequest> mRequests = new HashMap<>();
+
+    private ThumbnailPrefetcher mPrefetcher;
+
+    @Before
+    public void setup() {
+        mPrefetcher = new ThumbnailPrefetcher((key, lowResolution) -> {
+            String name = (lowResolution ? "low" : "high") + key.id;
+            mLoads.add(name);
+            FakeRequest request = new FakeRequest();
+            mRequests.put(name, request);
+            return request;
+        });
+    }
+
+    @Test
+    public void getFlingTargets_skipsRunningAndLoadedTasks() {
+        Task running = task(1);
+        Task loaded = task(2);
+        loaded.thumbnail = new ThumbnailData();
+        List<Task> tasks = Arrays.asList(running, loaded, task(3), null, task(5), task(6));
+
+        ArrayList<TaskKey> keys = new ArrayList<>();
+        ThumbnailPrefetcher.getFlingTargets(tasks, i -> i <= 4, running, keys);
+        assertEquals(2, keys.size());
+        assertEquals(3, keys.get(0).id);
+        assertEquals(5, keys.get(1).id);
+    }
+
+    @Test
+    public void prefetch_queuesLowResFirst() {
+        mPrefetcher.prefetch(Arrays.asList(key(1), key(2)), true /* highResolution */);
+        assertEquals(Arrays.asList("low1", "low2", "high1", "high2"), mLoads);
+
+        // Targeting the same tasks again does not request them again
+        mPrefetcher.prefetch(Arrays.asList(key(2), key(1)), true /* highResolution */);
+        assertEquals(4, mLoads.size());
+    }
+
+    @Test
+    public void prefetch_cancelsUntargetedTasks() {
+        mPrefetcher.prefetch(Arrays.asList(key(1), key(2)), false /* highResolution */);
+        mPrefetcher.prefetch(Arrays.asList(key(2), key(3)), false /* highResolution */);
+
+        assertEquals(Arrays.asList("low1", "low2", "low3"), mLoads);
+        assertTrue(mRequests.get("low1").mCancelled);
+        assertFalse(mRequests.get("low2").mCancelled);
+        assertFalse(mRequests.get("low3").mCancelled);
+    }
+
+    @Test
+    public void onFlingFinished_keepsPendingLoads() {
+        mPrefetcher.prefetch(Arrays.asList(key(1)), true /* highResolution */);
+        mPrefetcher.onFlingFinished();
+        mPrefetcher.cancelAll();
+        assertFalse(mRequests.get("low1").mCancelled);
+        assertFalse(mRequests.get("high1").mCancelled);
+
+        // The next fling requests the thumbnails again, the cache shares the pending loads
+        mPrefetcher.prefetch(Arrays.asList(key(1)), false /* highResolution */);
+        assertEquals(Arrays.asList("low1", "high1", "low1"), mLoads);
+    }
+
+    @Test
+    public void cancelAll_cancelsPendingLoads() {
+        mPrefetcher.prefetch(Arrays.asList(key(1), key(2)), true /* highResolution */);
+        mPrefetcher.cancelAll();
+        for (String name : mLoads) {
+            assertTrue(name, mRequests.get(name).mCancelled);
+        }
+    }
+
+    private static TaskKey key(int id) {
+        return new TaskKey(id, 0, new Intent(), null, 0, 0);
+    }
+
+    private static Task task(int id) {
+        return new Task(key(id));
+    }
+
+    private static class FakeRequest extends CancellableTask<ThumbnailData> {
+
+        boolean mCancelled;
+
+        @Override
+        public ThumbnailData getResultOnBg() {
+            return null;
+        }
+
+        @Override
+        public void handleResult(ThumbnailData result) { }
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            mCancelled = true;
+        }
+    }
+}
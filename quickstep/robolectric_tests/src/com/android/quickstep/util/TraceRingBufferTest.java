@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static com.android.launcher3.tracing.LauncherTraceFileProto.MagicNumber.MAGIC_NUMBER_H_VALUE;
+import static com.android.launcher3.tracing.LauncherTraceFileProto.MagicNumber.MAGIC_NUMBER_L_VALUE;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import com.android.launcher3.tracing.GestureStateProto;
+import com.android.launcher3.tracing.InputConsumerProto;
+import com.android.launcher3.tracing.LauncherTraceEntryProto;
+import com.android.launcher3.tracing.LauncherTraceFileProto;
+import com.android.launcher3.tracing.LauncherTraceProto;
+import com.android.launcher3.tracing.OverviewComponentObserverProto;
+import com.android.launcher3.tracing.SwipeHandlerProto;
+import com.android.launcher3.tracing.TouchInteractionServiceProto;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for {@link TraceEntryWriter} and {@link TraceRingBuffer}, checking that their output
+ * decodes with the launcher trace protos, with a measurement of the cost per traced frame.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TraceRingBufferTest {
+
+    private static final String TAG = "TraceRingBufferTest";
+
+    private static final long MAGIC_NUMBER_VALUE =
+            ((long) MAGIC_NUMBER_H_VALUE << 32) | MAGIC_NUMBER_L_VALUE;
+
+    private static final int WARMUP_FRAMES = 2000;
+    private static final int MEASURED_FRAMES = 20000;
+
+    @Test
+    public void writer_matchesGeneratedProto() {
+        // Long enough for the nested messages to need a length over one byte
+        String name = "OTHER_ACTIVITY:ACCESSIBILITY:é漢😀:"
+                + String.join("", Collections.nCopies(20, "RESET_GESTURE"));
+        TraceEntryWriter writer = new TraceEntryWriter(4096);
+        writeEntry(writer, 123456789L, name, -42, 0.75f);
+
+        byte[] expected = buildEntry(123456789L, name, -42, 0.75f).toByteArray();
+        assertArrayEquals(expected, Arrays.copyOf(writer.getBuffer(), writer.getSize()));
+    }
+
+    @Test
+    public void ringBuffer_decodesAsTraceFile() throws IOException {
+        TraceEntryWriter writer = new TraceEntryWriter(4096);
+        TraceRingBuffer buffer = new TraceRingBuffer(1000);
+        int entryCount = 100;
+        for (int i = 0; i < entryCount; i++) {
+            writeEntry(writer, i, "OTHER_ACTIVITY", i, i / 100f);
+            assertTrue(buffer.add(writer));
+        }
+        // Older entries were dropped to fit in the buffer
+        assertTrue(buffer.getEntryCount() < entryCount);
+        assertEquals(entryCount, buffer.getEntryCount() + buffer.getDroppedCount());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(MAGIC_NUMBER_VALUE, out);
+        LauncherTraceFileProto file = LauncherTraceFileProto.parseFrom(out.toByteArray());
+
+        assertEquals(MAGIC_NUMBER_VALUE, file.getMagicNumber());
+        assertEquals(buffer.getEntryCount(), file.getEntryCount());
+        int first = entryCount - file.getEntryCount();
+        for (int i = 0; i < file.getEntryCount(); i++) {
+            LauncherTraceEntryProto entry = file.getEntry(i);
+            assertEquals(buildEntry(first + i, "OTHER_ACTIVITY", first + i, (first + i) / 100f),
+                    entry);
+        }
+    }
+
+    @Test
+    public void ringBuffer_rejectsOverflowingEntries() {
+        TraceEntryWriter writer = new TraceEntryWriter(16);
+        writeEntry(writer, 1, "OTHER_ACTIVITY", 1, 1);
+        assertTrue(writer.hasOverflowed());
+
+        TraceRingBuffer buffer = new TraceRingBuffer(1000);
+        assertEquals(false, buffer.add(writer));
+        assertEquals(0, buffer.getEntryCount());
+    }
+
+    @Test
+    public void benchmarkFrameUpdate() {
+        TraceEntryWriter writer = new TraceEntryWriter(4096);
+        TraceRingBuffer buffer = new TraceRingBuffer(1024 * 1024);
+
+        Result ringBuffer = measure(frame -> {
+            writeEntry(writer, frame, "OTHER_ACTIVITY", frame, 0.5f);
+            buffer.add(writer);
+        });
+        Result builders = measure(frame -> buildEntry(frame, "OTHER_ACTIVITY", frame, 0.5f));
+
+        Log.d(TAG, "ringBuffer: " + ringBuffer);
+        Log.d(TAG, "builders: " + builders);
+        if (ringBuffer.bytesPerFrame >= 0) {
+            assertTrue(ringBuffer + " vs " + builders,
+                    ringBuffer.bytesPerFrame < builders.bytesPerFrame);
+        }
+    }
+
+    /**
+     * Writes the same entry as the traceables of TouchInteractionService during a swipe up
+     */
+    private static void writeEntry(TraceEntryWriter writer, long time, String consumerName,
+            int scrollOffset, float progress) {
+        writer.reset();
+        writer.writeFixed64(LauncherTraceEntryProto.ELAPSED_REALTIME_NANOS_FIELD_NUMBER, time);
+        writer.beginMessage(LauncherTraceEntryProto.LAUNCHER_FIELD_NUMBER);
+        writer.beginMessage(LauncherTraceProto.TOUCH_INTERACTION_SERVICE_FIELD_NUMBER);
+        writer.writeBool(TouchInteractionServiceProto.SERVICE_CONNECTED_FIELD_NUMBER, true);
+
+        writer.beginMessage(
+                TouchInteractionServiceProto.OVERVIEW_COMPONENT_OBVSERVER_FIELD_NUMBER);
+        writer.writeBool(OverviewComponentObserverProto.OVERVIEW_ACTIVITY_STARTED_FIELD_NUMBER,
+                true);
+        writer.writeBool(OverviewComponentObserverProto.OVERVIEW_ACTIVITY_RESUMED_FIELD_NUMBER,
+                false);
+        writer.endMessage();
+
+        writer.beginMessage(TouchInteractionServiceProto.INPUT_CONSUMER_FIELD_NUMBER);
+        writer.writeString(InputConsumerProto.NAME_FIELD_NUMBER, consumerName);
+        writer.beginMessage(InputConsumerProto.SWIPE_HANDLER_FIELD_NUMBER);
+        writer.beginMessage(SwipeHandlerProto.GESTURE_STATE_FIELD_NUMBER);
+        writer.writeEnum(GestureStateProto.ENDTARGET_FIELD_NUMBER,
+                GestureStateProto.GestureEndTarget.RECENTS_VALUE);
+        writer.endMessage();
+        writer.writeBool(SwipeHandlerProto.IS_RECENTS_ATTACHED_TO_APP_WINDOW_FIELD_NUMBER, true);
+        writer.writeInt32(SwipeHandlerProto.SCROLL_OFFSET_FIELD_NUMBER, scrollOffset);
+        writer.writeFloat(SwipeHandlerProto.APP_TO_OVERVIEW_PROGRESS_FIELD_NUMBER, progress);
+        writer.endMessage();
+        writer.endMessage();
+
+        writer.endMessage();
+        writer.endMessage();
+    }
+
+    private static LauncherTraceEntryProto buildEntry(long time, String consumerName,
+            int scrollOffset, float progress) {
+        return LauncherTraceEntryProto.newBuilder()
+                .setElapsedRealtimeNanos(time)
+                .setLauncher(LauncherTraceProto.newBuilder()
+                        .setTouchInteractionService(TouchInteractionServiceProto.newBuilder()
+                                .setServiceConnected(true)
+                                .setOverviewComponentObvserver(
+                                        OverviewComponentObserverProto.newBuilder()
+                                                .setOverviewActivityStarted(true)
+                                                .setOverviewActivityResumed(false))
+                                .setInputConsumer(InputConsumerProto.newBuilder()
+                                        .setName(consumerName)
+                                        .setSwipeHandler(SwipeHandlerProto.newBuilder()
+                                                .setGestureState(GestureStateProto.newBuilder()
+                                                        .setEndTarget(GestureStateProto
+                                                                .GestureEndTarget.RECENTS))
+                                                .setIsRecentsAttachedToAppWindow(true)
+                                                .setScrollOffset(scrollOffset)
+                                                .setAppToOverviewProgress(progress)))))
+                .build();
+    }
+
+    private static Result measure(Frame frame) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            frame.update(i);
+        }
+
+        long startBytes = getAllocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            frame.update(i);
+        }
+        long time = System.nanoTime() - startTime;
+        long bytes = getAllocatedBytes() - startBytes;
+
+        Result result = new Result();
+        result.nanosPerFrame = time / MEASURED_FRAMES;
+        result.bytesPerFrame = startBytes < 0 ? -1 : bytes / MEASURED_FRAMES;
+        return result;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread, or -1 if the JVM does not report it.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private interface Frame {
+        void update(int frame);
+    }
+
+    private static class Result {
+        long nanosPerFrame;
+        long bytesPerFrame;
+
+        @Override
+        public String toString() {
+            return "nsPerFrame=" + nanosPerFrame + " bytesPerFrame=" + bytesPerFrame;
+        }
+    }
+}
@@ -106,6 +106,7 @@ import com.android.quickstep.util.RectFSpringAnim;
 import com.android.quickstep.util.StaggeredWorkspaceAnim;
 import com.android.quickstep.util.SurfaceTransactionApplier;
 import com.android.quickstep.util.SwipePipToHomeAnimator;
+import com.android.quickstep.util.TraceEntryWriter;
 import com.android.quickstep.util.TransformParams;
 import com.android.quickstep.views.RecentsView;
 import com.android.quickstep.views.TaskView;
@@ -1810,6 +1811,26 @@ public abstract class AbsSwipeUpHandler<T extends StatefulActivity<S>,
         inputConsumerProto.setSwipeHandler(swipeHandlerProto);
     }
 
+    /**
+     * Same as {@link #writeToProto}, without allocating.
+     * @see com.android.quickstep.util.ProtoTracer.RingBufferTraceable#writeToTrace
+     */
+    public void writeToTrace(TraceEntryWriter writer) {
+        writer.beginMessage(InputConsumerProto.SWIPE_HANDLER_FIELD_NUMBER);
+
+        mGestureState.writeToTrace(writer);
+
+        writer.writeBool(SwipeHandlerProto.IS_RECENTS_ATTACHED_TO_APP_WINDOW_FIELD_NUMBER,
+                mAnimationFactory.isRecentsAttachedToAppWindow());
+        writer.writeInt32(SwipeHandlerProto.SCROLL_OFFSET_FIELD_NUMBER, mRecentsView == null
+                ? 0
+                : mRecentsView.getScrollOffset());
+        writer.writeFloat(SwipeHandlerProto.APP_TO_OVERVIEW_PROGRESS_FIELD_NUMBER,
+                mCurrentShift.value);
+
+        writer.endMessage();
+    }
+
     public interface Factory {
 
         AbsSwipeUpHandler newHandler(GestureState gestureState, long touchTimeMs);
@@ -30,6 +30,7 @@ import com.android.launcher3.statemanager.StatefulActivity;
 import com.android.launcher3.tracing.GestureStateProto;
 import com.android.launcher3.tracing.SwipeHandlerProto;
 import com.android.quickstep.util.ActiveGestureLog;
+import com.android.quickstep.util.TraceEntryWriter;
 import com.android.systemui.shared.recents.model.ThumbnailData;
 import com.android.systemui.shared.system.RemoteAnimationTargetCompat;
 
@@ -418,4 +419,16 @@ public class GestureState implements RecentsAnimationCallbacks.RecentsAnimationL
                 : mEndTarget.protoEndTarget);
         swipeHandlerProto.setGestureState(gestureStateProto);
     }
+
+    /**
+     * Same as {@link #writeToProto}, without allocating.
+     * @see com.android.quickstep.util.ProtoTracer.RingBufferTraceable#writeToTrace
+     */
+    public void writeToTrace(TraceEntryWriter writer) {
+        writer.beginMessage(SwipeHandlerProto.GESTURE_STATE_FIELD_NUMBER);
+        writer.writeEnum(GestureStateProto.ENDTARGET_FIELD_NUMBER, mEndTarget == null
+                ? GestureStateProto.GestureEndTarget.UNSET_VALUE
+                : mEndTarget.protoEndTarget.getNumber());
+        writer.endMessage();
+    }
 }
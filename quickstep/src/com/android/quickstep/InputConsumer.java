@@ -23,6 +23,7 @@ import android.view.MotionEvent;
 
 import com.android.launcher3.tracing.InputConsumerProto;
 import com.android.launcher3.tracing.TouchInteractionServiceProto;
+import com.android.quickstep.util.TraceEntryWriter;
 
 @TargetApi(Build.VERSION_CODES.O)
 public interface InputConsumer {
@@ -136,4 +137,32 @@ public interface InputConsumer {
      * @see #writeToProto - allows subclasses to write additional info to the proto.
      */
     default void writeToProtoInternal(InputConsumerProto.Builder inputConsumerProto) {}
+
+    /**
+     * Same as {@link #writeToProto}, without allocating.
+     * @see com.android.quickstep.util.ProtoTracer.RingBufferTraceable#writeToTrace
+     */
+    default void writeToTrace(TraceEntryWriter writer) {
+        writer.beginMessage(TouchInteractionServiceProto.INPUT_CONSUMER_FIELD_NUMBER);
+        // Same as getName()
+        writer.beginString(InputConsumerProto.NAME_FIELD_NUMBER);
+        boolean first = true;
+        for (int i = 0; i < NAMES.length; i++) {
+            if ((getType() & (1 << i)) != 0) {
+                if (!first) {
+                    writer.appendString(":");
+                }
+                writer.appendString(NAMES[i]);
+                first = false;
+            }
+        }
+        writer.endString();
+        writeToTraceInternal(writer);
+        writer.endMessage();
+    }
+
+    /**
+     * @see #writeToTrace - allows subclasses to write additional info to the trace.
+     */
+    default void writeToTraceInternal(TraceEntryWriter writer) {}
 }
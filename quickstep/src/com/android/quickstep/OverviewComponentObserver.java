@@ -38,6 +38,7 @@ import android.util.SparseIntArray;
 import com.android.launcher3.tracing.OverviewComponentObserverProto;
 import com.android.launcher3.tracing.TouchInteractionServiceProto;
 import com.android.launcher3.util.SimpleBroadcastReceiver;
+import com.android.quickstep.util.TraceEntryWriter;
 import com.android.systemui.shared.system.PackageManagerWrapper;
 
 import java.io.PrintWriter;
@@ -276,4 +277,18 @@ public final class OverviewComponentObserver {
         overviewComponentObserver.setOverviewActivityResumed(mActivityInterface.isResumed());
         serviceProto.setOverviewComponentObvserver(overviewComponentObserver);
     }
+
+    /**
+     * Same as {@link #writeToProto}, without allocating.
+     * @see com.android.quickstep.util.ProtoTracer.RingBufferTraceable#writeToTrace
+     */
+    public void writeToTrace(TraceEntryWriter writer) {
+        writer.beginMessage(
+                TouchInteractionServiceProto.OVERVIEW_COMPONENT_OBVSERVER_FIELD_NUMBER);
+        writer.writeBool(OverviewComponentObserverProto.OVERVIEW_ACTIVITY_STARTED_FIELD_NUMBER,
+                mActivityInterface.isStarted());
+        writer.writeBool(OverviewComponentObserverProto.OVERVIEW_ACTIVITY_RESUMED_FIELD_NUMBER,
+                mActivityInterface.isResumed());
+        writer.endMessage();
+    }
 }
@@ -34,6 +34,7 @@ import com.android.launcher3.icons.IconProvider;
 import com.android.launcher3.icons.IconProvider.IconChangeListener;
 import com.android.launcher3.util.Executors.SimpleThreadFactory;
 import com.android.launcher3.util.MainThreadInitializedObject;
+import com.android.quickstep.util.TaskLoadScheduler;
 import com.android.systemui.shared.recents.model.Task;
 import com.android.systemui.shared.recents.model.ThumbnailData;
 import com.android.systemui.shared.system.ActivityManagerWrapper;
@@ -64,6 +65,7 @@ public class RecentsModel extends TaskStackChangeListener implements IconChangeL
     private final Context mContext;
 
     private final RecentTasksList mTaskList;
+    private final TaskLoadScheduler mLoadScheduler;
     private final TaskIconCache mIconCache;
     private final TaskThumbnailCache mThumbnailCache;
 
@@ -73,8 +75,9 @@ public class RecentsModel extends TaskStackChangeListener implements IconChangeL
                 new KeyguardManagerCompat(context), ActivityManagerWrapper.getInstance());
 
         IconProvider iconProvider = new IconProvider(context);
-        mIconCache = new TaskIconCache(context, RECENTS_MODEL_EXECUTOR, iconProvider);
-        mThumbnailCache = new TaskThumbnailCache(context, RECENTS_MODEL_EXECUTOR);
+        mLoadScheduler = new TaskLoadScheduler(RECENTS_MODEL_EXECUTOR);
+        mIconCache = new TaskIconCache(context, mLoadScheduler, iconProvider);
+        mThumbnailCache = new TaskThumbnailCache(context, mLoadScheduler);
 
         TaskStackChangeListeners.getInstance().registerTaskStackListener(this);
         iconProvider.registerIconChangeListener(this, MAIN_EXECUTOR.getHandler());
@@ -88,6 +91,10 @@ public class RecentsModel extends TaskStackChangeListener implements IconChangeL
         return mThumbnailCache;
     }
 
+    public TaskLoadScheduler getLoadScheduler() {
+        return mLoadScheduler;
+    }
+
     /**
      * Fetches the list of recent tasks.
      *
@@ -44,13 +44,14 @@ import com.android.launcher3.util.DisplayController.DisplayInfoChangeListener;
 import com.android.launcher3.util.DisplayController.Info;
 import com.android.launcher3.util.Preconditions;
 import com.android.quickstep.util.CancellableTask;
+import com.android.quickstep.util.SharedLoadRequest;
 import com.android.quickstep.util.TaskKeyLruCache;
+import com.android.quickstep.util.TaskLoadScheduler;
 import com.android.systemui.shared.recents.model.Task;
 import com.android.systemui.shared.recents.model.Task.TaskKey;
 import com.android.systemui.shared.system.PackageManagerWrapper;
 import com.android.systemui.shared.system.TaskDescriptionCompat;
 
-import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 /**
@@ -58,19 +59,22 @@ import java.util.function.Consumer;
  */
 public class TaskIconCache implements DisplayInfoChangeListener {
 
-    private final Executor mBgExecutor;
+    private final TaskLoadScheduler mLoadScheduler;
     private final AccessibilityManager mAccessibilityManager;
 
     private final Context mContext;
     private final TaskKeyLruCache<TaskCacheEntry> mIconCache;
     private final SparseArray<BitmapInfo> mDefaultIcons = new SparseArray<>();
+    // Loads not completed yet, by task id
+    private final SparseArray<IconLoadRequest> mPendingRequests = new SparseArray<>();
     private final IconProvider mIconProvider;
 
     private BaseIconFactory mIconFactory;
 
-    public TaskIconCache(Context context, Executor bgExecutor, IconProvider iconProvider) {
+    public TaskIconCache(Context context, TaskLoadScheduler loadScheduler,
+            IconProvider iconProvider) {
         mContext = context;
-        mBgExecutor = bgExecutor;
+        mLoadScheduler = loadScheduler;
         mAccessibilityManager = context.getSystemService(AccessibilityManager.class);
         mIconProvider = iconProvider;
 
@@ -103,28 +107,26 @@ public class TaskIconCache implements DisplayInfoChangeListener {
             callback.accept(task);
             return null;
         }
-        CancellableTask<TaskCacheEntry> request = new CancellableTask<TaskCacheEntry>() {
-            @Override
-            public TaskCacheEntry getResultOnBg() {
-                return getCacheEntry(task);
-            }
 
-            @Override
-            public void handleResult(TaskCacheEntry result) {
-                task.icon = result.icon;
-                task.titleDescription = result.contentDescription;
-                callback.accept(task);
-            }
-        };
-        mBgExecutor.execute(request);
-        return request;
+        // Share the load with a pending request for the same task
+        IconLoadRequest request = mPendingRequests.get(task.key.id);
+        if (request == null || !request.canServe(task.key)) {
+            request = new IconLoadRequest(task);
+            mPendingRequests.put(task.key.id, request);
+            mLoadScheduler.execute(task.key.id, request);
+        }
+        return request.addCallback(result -> {
+            task.icon = result.icon;
+            task.titleDescription = result.contentDescription;
+            callback.accept(task);
+        });
     }
 
     /**
      * Clears the icon cache
      */
     public void clearCache() {
-        mBgExecutor.execute(this::resetFactory);
+        mLoadScheduler.execute(this::resetFactory);
     }
 
     void onTaskRemoved(TaskKey taskKey) {
@@ -132,7 +134,7 @@ public class TaskIconCache implements DisplayInfoChangeListener {
     }
 
     void invalidateCacheEntries(String pkg, UserHandle handle) {
-        mBgExecutor.execute(() -> mIconCache.removeAll(key ->
+        mLoadScheduler.execute(() -> mIconCache.removeAll(key ->
                 pkg.equals(key.getPackageName()) && handle.getIdentifier() == key.userId));
     }
 
@@ -250,6 +252,48 @@ public class TaskIconCache implements DisplayInfoChangeListener {
         mIconCache.evictAll();
     }
 
+    /**
+     * Loads the icon of a task for all the requests made before it is loaded
+     */
+    private class IconLoadRequest extends SharedLoadRequest<TaskCacheEntry> {
+
+        private final Task mTask;
+
+        IconLoadRequest(Task task) {
+            mTask = task;
+        }
+
+        /**
+         * Returns whether the result of this request can be used for a request of the icon of
+         * the task with {@param key}
+         */
+        boolean canServe(TaskKey key) {
+            return mTask.key.windowingMode == key.windowingMode
+                    && mTask.key.lastActiveTime == key.lastActiveTime;
+        }
+
+        @Override
+        public TaskCacheEntry getResultOnBg() {
+            return getCacheEntry(mTask);
+        }
+
+        @Override
+        protected void onResult(TaskCacheEntry result) {
+            removePendingRequest();
+        }
+
+        @Override
+        protected void onCancelled() {
+            removePendingRequest();
+        }
+
+        private void removePendingRequest() {
+            if (mPendingRequests.get(mTask.key.id) == this) {
+                mPendingRequests.remove(mTask.key.id);
+            }
+        }
+    }
+
     private static class TaskCacheEntry {
         public Drawable icon;
         public String contentDescription = "";
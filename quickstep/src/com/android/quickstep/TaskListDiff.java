@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep;
+
+import android.util.SparseIntArray;
+
+import com.android.launcher3.util.IntArray;
+import com.android.systemui.shared.recents.model.Task;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Differences between two lists of recent tasks, as task ids:
+ * <ul>
+ *   <li>inserted: tasks only in the new list</li>
+ *   <li>removed: tasks only in the old list</li>
+ *   <li>changed: tasks in both lists whose data changed, so that their views need to be bound
+ *   again</li>
+ * </ul>
+ * The tasks which moved relative to the others are only computed on demand, by
+ * {@link #getMoved()}, as they are not needed when the diff is empty.
+ */
+public class TaskListDiff {
+
+    public final IntArray inserted = new IntArray();
+    public final IntArray removed = new IntArray();
+    public final IntArray changed = new IntArray();
+
+    // Ids of the tasks in both lists, in their new order, and their position in the old list
+    private final IntArray mKeptTaskIds = new IntArray();
+    private final IntArray mKeptFromPositions = new IntArray();
+
+    /**
+     * Returns the changes to go from {@param from} to {@param to}
+     */
+    public static TaskListDiff compute(List<Task> from, List<Task> to) {
+        TaskListDiff diff = new TaskListDiff();
+
+        SparseIntArray fromPositions = new SparseIntArray(from.size());
+        for (int i = 0; i < from.size(); i++) {
+            fromPositions.put(from.get(i).key.id, i);
+        }
+        SparseIntArray toPositions = new SparseIntArray(to.size());
+        for (int i = 0; i < to.size(); i++) {
+            toPositions.put(to.get(i).key.id, i);
+        }
+        for (Task task : from) {
+            if (toPositions.indexOfKey(task.key.id) < 0) {
+                diff.removed.add(task.key.id);
+            }
+        }
+
+        for (Task task : to) {
+            int fromPosition = fromPositions.get(task.key.id, -1);
+            if (fromPosition < 0) {
+                diff.inserted.add(task.key.id);
+                continue;
+            }
+            diff.mKeptTaskIds.add(task.key.id);
+            diff.mKeptFromPositions.add(fromPosition);
+            if (hasChanged(from.get(fromPosition), task)) {
+                diff.changed.add(task.key.id);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Returns the tasks whose position changed relative to the other tasks in both lists. The
+     * fewest tasks are reported, i.e. the others keep their relative order.
+     */
+    public IntArray getMoved() {
+        // The tasks in the longest increasing run of old positions keep their relative order,
+        // all the others moved
+        IntArray moved = new IntArray();
+        boolean[] inOrder = longestIncreasingSubsequence(mKeptFromPositions);
+        for (int i = 0; i < mKeptTaskIds.size(); i++) {
+            if (!inOrder[i]) {
+                moved.add(mKeptTaskIds.get(i));
+            }
+        }
+        return moved;
+    }
+
+    /** Returns whether the old positions of the kept tasks are in increasing order */
+    private boolean isOrderKept() {
+        for (int i = 1; i < mKeptFromPositions.size(); i++) {
+            if (mKeptFromPositions.get(i) < mKeptFromPositions.get(i - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasChanged(Task oldTask, Task newTask) {
+        return oldTask.key.windowingMode != newTask.key.windowingMode
+                || oldTask.key.lastActiveTime != newTask.key.lastActiveTime
+                || oldTask.key.userId != newTask.key.userId
+                || !Objects.equals(oldTask.key.getComponent(), newTask.key.getComponent())
+                || oldTask.isLocked != newTask.isLocked
+                || oldTask.colorBackground != newTask.colorBackground;
+    }
+
+    /**
+     * Returns which values of {@param values} are part of one of its longest strictly increasing
+     * subsequences.
+     */
+    private static boolean[] longestIncreasingSubsequence(IntArray values) {
+        int size = values.size();
+        // tails[k] is the index of the smallest value ending an increasing run of length k + 1
+        int[] tails = new int[size];
+        int[] previous = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            int value = values.get(i);
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values.get(tails[mid]) < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] result = new boolean[size];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            result[i] = true;
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether both lists have the same tasks in the same order, and none of them changed
+     */
+    public boolean isEmpty() {
+        return inserted.isEmpty() && removed.isEmpty() && changed.isEmpty() && isOrderKept();
+    }
+
+    @Override
+    public String toString() {
+        return "TaskListDiff{inserted=" + inserted.toConcatString()
+                + " removed=" + removed.toConcatString()
+                + " moved=" + getMoved().toConcatString()
+                + " changed=" + changed.toConcatString() + "}";
+    }
+}
@@ -17,28 +17,62 @@ package com.android.quickstep;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.graphics.Point;
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import com.android.launcher3.R;
+import com.android.launcher3.util.DisplayController;
 import com.android.launcher3.util.Preconditions;
 import com.android.quickstep.util.CancellableTask;
+import com.android.quickstep.util.SharedLoadRequest;
 import com.android.quickstep.util.TaskKeyLruCache;
+import com.android.quickstep.util.TaskKeyLruCache.Weigher;
+import com.android.quickstep.util.TaskLoadScheduler;
 import com.android.systemui.shared.recents.model.Task;
 import com.android.systemui.shared.recents.model.Task.TaskKey;
 import com.android.systemui.shared.recents.model.ThumbnailData;
 import com.android.systemui.shared.system.ActivityManagerWrapper;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 public class TaskThumbnailCache {
 
-    private final Executor mBgExecutor;
+    // Low and high resolution thumbnails are counted against separate byte budgets, so that
+    // loading one kind does not evict the other
+    private static final int BUDGET_HIGH_RES = 0;
+    private static final int BUDGET_LOW_RES = 1;
+    // Fraction of the high resolution budget used for low resolution thumbnails. As these are
+    // usually scaled down by 4, this fits 4 times more low resolution thumbnails.
+    private static final float LOW_RES_BUDGET_FRACTION = 0.25f;
+
+    private static final Weigher<ThumbnailData> THUMBNAIL_WEIGHER =
+            new Weigher<ThumbnailData>() {
+                @Override
+                public int getBudgetIndex(ThumbnailData value) {
+                    return value.reducedResolution ? BUDGET_LOW_RES : BUDGET_HIGH_RES;
+                }
+
+                @Override
+                public long getSize(ThumbnailData value) {
+                    return value.thumbnail == null ? 0 : value.thumbnail.getAllocationByteCount();
+                }
+            };
+
+    private final TaskLoadScheduler mLoadScheduler;
 
     private final int mCacheSize;
     private final TaskKeyLruCache<ThumbnailData> mCache;
     private final HighResLoadingState mHighResLoadingState;
     private final boolean mEnableTaskSnapshotPreloading;
+    // Loads not completed yet, by task id
+    private final SparseArray<ThumbnailLoadRequest> mPendingRequests = new SparseArray<>();
+    // Tasks whose cached thumbnail was prefetched and not shown yet
+    private final SparseBooleanArray mPrefetchedTaskIds = new SparseBooleanArray();
+    private final ThumbnailLoadStats mLoadStats = new ThumbnailLoadStats();
 
     public static class HighResLoadingState {
         private boolean mForceHighResThumbnails;
@@ -79,6 +113,13 @@ public class TaskThumbnailCache {
             return mHighResLoadingEnabled;
         }
 
+        /**
+         * Returns whether high res loading will be enabled once the current fling ends
+         */
+        public boolean isEnabledAfterFling() {
+            return mForceHighResThumbnails || mVisible;
+        }
+
         private void updateState() {
             boolean prevState = mHighResLoadingEnabled;
             mHighResLoadingEnabled = mForceHighResThumbnails || (mVisible && !mFlingingFast);
@@ -90,14 +131,27 @@ public class TaskThumbnailCache {
         }
     }
 
-    public TaskThumbnailCache(Context context, Executor bgExecutor) {
-        mBgExecutor = bgExecutor;
+    public TaskThumbnailCache(Context context, TaskLoadScheduler loadScheduler) {
+        mLoadScheduler = loadScheduler;
         mHighResLoadingState = new HighResLoadingState(context);
 
         Resources res = context.getResources();
         mCacheSize = res.getInteger(R.integer.recentsThumbnailCacheSize);
         mEnableTaskSnapshotPreloading = res.getBoolean(R.bool.config_enableTaskSnapshotPreloading);
-        mCache = new TaskKeyLruCache<>(mCacheSize);
+        mCache = new TaskKeyLruCache<>(getBudgets(context, mCacheSize), THUMBNAIL_WEIGHER);
+    }
+
+    /**
+     * Returns budgets fitting {@param cacheSize} full screen high resolution thumbnails
+     */
+    private static long[] getBudgets(Context context, int cacheSize) {
+        Point size = DisplayController.INSTANCE.get(context).getInfo().currentSize;
+        // Thumbnails are ARGB_8888
+        long highResBudget = (long) cacheSize * size.x * size.y * 4;
+        long[] budgets = new long[2];
+        budgets[BUDGET_HIGH_RES] = highResBudget;
+        budgets[BUDGET_LOW_RES] = (long) (highResBudget * LOW_RES_BUDGET_FRACTION);
+        return budgets;
     }
 
     /**
@@ -108,7 +162,7 @@ public class TaskThumbnailCache {
         // Fetch the thumbnail for this task and put it in the cache
         if (task.thumbnail == null) {
             updateThumbnailInBackground(task.key, true /* lowResolution */,
-                    t -> task.thumbnail = t);
+                    (t, source) -> task.thumbnail = t);
         }
     }
 
@@ -118,6 +172,7 @@ public class TaskThumbnailCache {
     public void updateTaskSnapShot(int taskId, ThumbnailData thumbnail) {
         Preconditions.assertUIThread();
         mCache.updateIfAlreadyInCache(taskId, thumbnail);
+        mPrefetchedTaskIds.delete(taskId);
     }
 
     /**
@@ -138,38 +193,66 @@ public class TaskThumbnailCache {
             return null;
         }
 
-        return updateThumbnailInBackground(task.key, !mHighResLoadingState.isEnabled(), t -> {
-            task.thumbnail = t;
-            callback.accept(t);
-        });
+        // Only track the time until the task shows its first thumbnail
+        long requestTime = task.thumbnail == null ? SystemClock.uptimeMillis() : -1;
+        return updateThumbnailInBackground(task.key, !mHighResLoadingState.isEnabled(),
+                (t, source) -> {
+                    if (requestTime >= 0) {
+                        mLoadStats.onFirstThumbnail(task.key.id,
+                                SystemClock.uptimeMillis() - requestTime, source);
+                    }
+                    task.thumbnail = t;
+                    callback.accept(t);
+                });
+    }
+
+    /**
+     * Asynchronously loads the thumbnail of {@param key} in the cache, so that it is available
+     * when the task becomes visible. Requests for the same thumbnail made before it is loaded
+     * share the same load.
+     *
+     * @return A cancelable handle to the request, or null if the thumbnail is already cached
+     */
+    public CancellableTask prefetchThumbnail(TaskKey key, boolean lowResolution) {
+        return updateThumbnailInBackground(key, lowResolution, true /* prefetch */,
+                (t, source) -> mPrefetchedTaskIds.put(key.id, true));
+    }
+
+    private CancellableTask updateThumbnailInBackground(TaskKey key, boolean lowResolution,
+            ThumbnailCallback callback) {
+        return updateThumbnailInBackground(key, lowResolution, false /* prefetch */, callback);
     }
 
     private CancellableTask updateThumbnailInBackground(TaskKey key, boolean lowResolution,
-            Consumer<ThumbnailData> callback) {
+            boolean prefetch, ThumbnailCallback callback) {
         Preconditions.assertUIThread();
 
         ThumbnailData cachedThumbnail = mCache.getAndInvalidateIfModified(key);
         if (cachedThumbnail != null && (!cachedThumbnail.reducedResolution || lowResolution)) {
             // Already cached, lets use that thumbnail
-            callback.accept(cachedThumbnail);
+            boolean prefetched = !prefetch && mPrefetchedTaskIds.get(key.id);
+            if (prefetched) {
+                mPrefetchedTaskIds.delete(key.id);
+            }
+            callback.onThumbnailLoaded(cachedThumbnail,
+                    prefetched ? ThumbnailLoadStats.SOURCE_PREFETCH
+                            : ThumbnailLoadStats.SOURCE_CACHE);
             return null;
         }
 
-        CancellableTask<ThumbnailData> request = new CancellableTask<ThumbnailData>() {
-            @Override
-            public ThumbnailData getResultOnBg() {
-                return ActivityManagerWrapper.getInstance().getTaskThumbnail(
-                        key.id, lowResolution);
-            }
+        if (!prefetch) {
+            // The prefetched thumbnail was evicted or is not good enough, it is loaded again
+            mPrefetchedTaskIds.delete(key.id);
+        }
 
-            @Override
-            public void handleResult(ThumbnailData result) {
-                mCache.put(key, result);
-                callback.accept(result);
-            }
-        };
-        mBgExecutor.execute(request);
-        return request;
+        // Share the load with a pending request for the same thumbnail
+        ThumbnailLoadRequest request = mPendingRequests.get(key.id);
+        if (request == null || !request.canServe(key, lowResolution)) {
+            request = new ThumbnailLoadRequest(key, lowResolution, prefetch);
+            mPendingRequests.put(key.id, request);
+            mLoadScheduler.execute(key.id, request);
+        }
+        return request.addCallback(callback);
     }
 
     /**
@@ -177,6 +260,7 @@ public class TaskThumbnailCache {
      */
     public void clear() {
         mCache.evictAll();
+        mPrefetchedTaskIds.clear();
     }
 
     /**
@@ -184,6 +268,13 @@ public class TaskThumbnailCache {
      */
     public void remove(Task.TaskKey key) {
         mCache.remove(key);
+        mPrefetchedTaskIds.delete(key.id);
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "TaskThumbnailCache:");
+        mCache.dump(prefix + "  ", writer);
+        mLoadStats.dump(prefix + "  ", writer);
     }
 
     /**
@@ -222,4 +313,111 @@ public class TaskThumbnailCache {
         return true;
     }
 
+    private interface ThumbnailCallback {
+        void onThumbnailLoaded(ThumbnailData thumbnail, int source);
+    }
+
+    /**
+     * Loads a thumbnail for all the requests made before it is loaded
+     */
+    private class ThumbnailLoadRequest extends SharedLoadRequest<ThumbnailData> {
+
+        private final TaskKey mKey;
+        private final boolean mLowResolution;
+        private final int mSource;
+
+        ThumbnailLoadRequest(TaskKey key, boolean lowResolution, boolean prefetch) {
+            mKey = key;
+            mLowResolution = lowResolution;
+            mSource = prefetch ? ThumbnailLoadStats.SOURCE_PREFETCH
+                    : ThumbnailLoadStats.SOURCE_LOAD;
+        }
+
+        /**
+         * Returns whether the result of this request can be used for a request of the
+         * thumbnail of {@param key} with {@param lowResolution}
+         */
+        boolean canServe(TaskKey key, boolean lowResolution) {
+            return mKey.windowingMode == key.windowingMode
+                    && mKey.lastActiveTime == key.lastActiveTime
+                    && (!mLowResolution || lowResolution);
+        }
+
+        CancellableTask addCallback(ThumbnailCallback callback) {
+            return addCallback(t -> callback.onThumbnailLoaded(t, mSource));
+        }
+
+        @Override
+        public ThumbnailData getResultOnBg() {
+            return ActivityManagerWrapper.getInstance().getTaskThumbnail(
+                    mKey.id, mLowResolution);
+        }
+
+        @Override
+        protected void onResult(ThumbnailData result) {
+            removePendingRequest();
+            mCache.put(mKey, result);
+        }
+
+        @Override
+        protected void onCancelled() {
+            removePendingRequest();
+        }
+
+        private void removePendingRequest() {
+            if (mPendingRequests.get(mKey.id) == this) {
+                mPendingRequests.remove(mKey.id);
+            }
+        }
+    }
+
+    /**
+     * Time until each task shows its first thumbnail after becoming visible
+     */
+    private static class ThumbnailLoadStats {
+
+        static final int SOURCE_CACHE = 0;
+        static final int SOURCE_PREFETCH = 1;
+        static final int SOURCE_LOAD = 2;
+        private static final String[] SOURCE_NAMES = {"cache", "prefetch", "load"};
+
+        // Number of per-task entries kept for the dump
+        private static final int HISTORY_SIZE = 16;
+
+        private final int[] mCounts = new int[SOURCE_NAMES.length];
+        private final long[] mTotalTimeMs = new long[SOURCE_NAMES.length];
+        private final long[] mMaxTimeMs = new long[SOURCE_NAMES.length];
+
+        private final int[] mHistoryTaskIds = new int[HISTORY_SIZE];
+        private final long[] mHistoryTimeMs = new long[HISTORY_SIZE];
+        private final int[] mHistorySources = new int[HISTORY_SIZE];
+        private int mHistoryCount;
+
+        synchronized void onFirstThumbnail(int taskId, long timeMs, int source) {
+            mCounts[source]++;
+            mTotalTimeMs[source] += timeMs;
+            mMaxTimeMs[source] = Math.max(mMaxTimeMs[source], timeMs);
+
+            int index = mHistoryCount % HISTORY_SIZE;
+            mHistoryTaskIds[index] = taskId;
+            mHistoryTimeMs[index] = timeMs;
+            mHistorySources[index] = source;
+            mHistoryCount++;
+        }
+
+        synchronized void dump(String prefix, PrintWriter writer) {
+            writer.println(prefix + "timeToFirstThumbnail:");
+            for (int i = 0; i < SOURCE_NAMES.length; i++) {
+                writer.println(prefix + "  " + SOURCE_NAMES[i] + ": count=" + mCounts[i]
+                        + " avgMs=" + (mCounts[i] == 0 ? 0 : mTotalTimeMs[i] / mCounts[i])
+                        + " maxMs=" + mMaxTimeMs[i]);
+            }
+            for (int i = Math.max(0, mHistoryCount - HISTORY_SIZE); i < mHistoryCount; i++) {
+                int index = i % HISTORY_SIZE;
+                writer.println(prefix + "  task=" + mHistoryTaskIds[index]
+                        + " ms=" + mHistoryTimeMs[index]
+                        + " source=" + SOURCE_NAMES[mHistorySources[index]]);
+            }
+        }
+    }
 }
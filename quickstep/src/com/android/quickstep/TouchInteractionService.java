@@ -99,7 +99,9 @@ import com.android.quickstep.inputconsumers.SysUiOverlayInputConsumer;
 import com.android.quickstep.util.ActiveGestureLog;
 import com.android.quickstep.util.AssistantUtilities;
 import com.android.quickstep.util.ProtoTracer;
+import com.android.quickstep.util.ProtoTracer.RingBufferTraceable;
 import com.android.quickstep.util.SplitScreenBounds;
+import com.android.quickstep.util.TraceEntryWriter;
 import com.android.systemui.plugins.OverscrollPlugin;
 import com.android.systemui.plugins.PluginListener;
 import com.android.systemui.shared.recents.IOverviewProxy;
@@ -127,7 +129,7 @@ import java.util.LinkedList;
  */
 @TargetApi(Build.VERSION_CODES.R)
 public class TouchInteractionService extends Service implements PluginListener<OverscrollPlugin>,
-        ProtoTraceable<LauncherTraceProto.Builder> {
+        ProtoTraceable<LauncherTraceProto.Builder>, RingBufferTraceable {
 
     private static final String TAG = "TouchInteractionService";
 
@@ -939,8 +941,9 @@ public class TouchInteractionService extends Service implements PluginListener<O
             pw.println("  resumed=" + resumed);
             pw.println("  mConsumer=" + mConsumer.getName());
             ActiveGestureLog.INSTANCE.dump("", pw);
-            pw.println("ProtoTrace:");
-            pw.println("  file=" + ProtoTracer.INSTANCE.get(this).getTraceFile());
+            RecentsModel.INSTANCE.get(this).getThumbnailCache().dump("", pw);
+            RecentsModel.INSTANCE.get(this).getLoadScheduler().dump("", pw);
+            ProtoTracer.INSTANCE.get(this).dump("", pw);
         }
     }
 
@@ -1010,4 +1013,17 @@ public class TouchInteractionService extends Service implements PluginListener<O
 
         proto.setTouchInteractionService(serviceProto);
     }
+
+    @Override
+    public void writeToTrace(TraceEntryWriter writer) {
+        writer.beginMessage(LauncherTraceProto.TOUCH_INTERACTION_SERVICE_FIELD_NUMBER);
+        writer.writeBool(TouchInteractionServiceProto.SERVICE_CONNECTED_FIELD_NUMBER, true);
+
+        if (mOverviewComponentObserver != null) {
+            mOverviewComponentObserver.writeToTrace(writer);
+        }
+        mConsumer.writeToTrace(writer);
+
+        writer.endMessage();
+    }
 }
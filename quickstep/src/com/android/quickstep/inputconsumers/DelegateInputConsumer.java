@@ -6,6 +6,7 @@ import com.android.launcher3.testing.TestLogging;
 import com.android.launcher3.testing.TestProtocol;
 import com.android.launcher3.tracing.InputConsumerProto;
 import com.android.quickstep.InputConsumer;
+import com.android.quickstep.util.TraceEntryWriter;
 import com.android.systemui.shared.system.InputMonitorCompat;
 
 public abstract class DelegateInputConsumer implements InputConsumer {
@@ -59,4 +60,9 @@ public abstract class DelegateInputConsumer implements InputConsumer {
     public void writeToProtoInternal(InputConsumerProto.Builder inputConsumerProto) {
         mDelegate.writeToProtoInternal(inputConsumerProto);
     }
+
+    @Override
+    public void writeToTraceInternal(TraceEntryWriter writer) {
+        mDelegate.writeToTraceInternal(writer);
+    }
 }
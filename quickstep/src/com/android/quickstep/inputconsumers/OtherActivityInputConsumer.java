@@ -69,6 +69,7 @@ import com.android.quickstep.util.ActiveGestureLog;
 import com.android.quickstep.util.CachedEventDispatcher;
 import com.android.quickstep.util.MotionPauseDetector;
 import com.android.quickstep.util.NavBarPosition;
+import com.android.quickstep.util.TraceEntryWriter;
 import com.android.systemui.shared.system.ActivityManagerWrapper;
 import com.android.systemui.shared.system.InputChannelCompat.InputEventReceiver;
 import com.android.systemui.shared.system.InputMonitorCompat;
@@ -499,4 +500,11 @@ public class OtherActivityInputConsumer extends ContextWrapper implements InputC
             mInteractionHandler.writeToProto(inputConsumerProto);
         }
     }
+
+    @Override
+    public void writeToTraceInternal(TraceEntryWriter writer) {
+        if (mInteractionHandler != null) {
+            mInteractionHandler.writeToTrace(writer);
+        }
+    }
 }
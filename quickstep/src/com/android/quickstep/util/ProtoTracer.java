@@ -19,10 +19,17 @@ package com.android.quickstep.util;
 import static com.android.launcher3.tracing.LauncherTraceFileProto.MagicNumber.MAGIC_NUMBER_H_VALUE;
 import static com.android.launcher3.tracing.LauncherTraceFileProto.MagicNumber.MAGIC_NUMBER_L_VALUE;
 
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
 import android.content.Context;
 import android.os.SystemClock;
 
 import android.os.Trace;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.tracing.LauncherTraceProto;
 import com.android.launcher3.tracing.LauncherTraceEntryProto;
 import com.android.launcher3.tracing.LauncherTraceFileProto;
@@ -32,7 +39,12 @@ import com.android.systemui.shared.tracing.FrameProtoTracer.ProtoTraceParams;
 import com.android.systemui.shared.tracing.ProtoTraceable;
 import com.google.protobuf.MessageLite;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Queue;
 
@@ -51,10 +63,38 @@ public class ProtoTracer implements ProtoTraceParams<MessageLite.Builder,
     private static final long MAGIC_NUMBER_VALUE =
             ((long) MAGIC_NUMBER_H_VALUE << 32) | MAGIC_NUMBER_L_VALUE;
 
+    // Sizes used when tracing to a ring buffer
+    private static final int RING_BUFFER_SIZE = 1024 * 1024;
+    private static final int ENTRY_BUFFER_SIZE = 4 * 1024;
+
     private final Context mContext;
     private final FrameProtoTracer<MessageLite.Builder, LauncherTraceFileProto.Builder,
         LauncherTraceEntryProto.Builder, LauncherTraceProto.Builder> mProtoTracer;
 
+    // State used when tracing to a ring buffer, only accessed on the main thread
+    private final ArrayList<RingBufferTraceable> mRingBufferTraceables = new ArrayList<>();
+    private final TraceEntryWriter mEntryWriter = new TraceEntryWriter(ENTRY_BUFFER_SIZE);
+    private TraceRingBuffer mRingBuffer;
+    // Buffer free to be reused, it is cleared after being written to the trace file
+    private TraceRingBuffer mSpareRingBuffer;
+    private boolean mRingBufferTracing;
+    private boolean mFrameUpdateScheduled;
+    private int mFrameCount;
+    private long mFrameTimeNanos;
+    private long mMaxFrameTimeNanos;
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> {
+        mFrameUpdateScheduled = false;
+        update();
+    };
+
+    /**
+     * Writes the state of an object to a trace entry without allocating, in the same format as
+     * {@link ProtoTraceable#writeToProto}, see {@link TraceEntryWriter}.
+     */
+    public interface RingBufferTraceable {
+        void writeToTrace(TraceEntryWriter writer);
+    }
+
     public ProtoTracer(Context context) {
         mContext = context;
         mProtoTracer = new FrameProtoTracer<>(this);
@@ -110,26 +150,107 @@ public class ProtoTracer implements ProtoTraceParams<MessageLite.Builder,
     }
 
     public void start() {
-        mProtoTracer.start();
+        if (!FeatureFlags.ENABLE_RING_BUFFER_TRACING.get()) {
+            mProtoTracer.start();
+            return;
+        }
+        if (mRingBufferTracing) {
+            return;
+        }
+        mRingBuffer = mSpareRingBuffer != null
+                ? mSpareRingBuffer : new TraceRingBuffer(RING_BUFFER_SIZE);
+        mSpareRingBuffer = null;
+        mFrameCount = 0;
+        mFrameTimeNanos = 0;
+        mMaxFrameTimeNanos = 0;
+        mRingBufferTracing = true;
     }
 
     public void stop() {
-        mProtoTracer.stop();
+        if (!mRingBufferTracing) {
+            mProtoTracer.stop();
+            return;
+        }
+        mRingBufferTracing = false;
+        if (mFrameUpdateScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameUpdateScheduled = false;
+        }
+        Log.d(TAG, "Ring buffer trace stopped: " + getFrameStats());
+
+        // The buffer is serialized in the background, and is only reused once written
+        TraceRingBuffer buffer = mRingBuffer;
+        mRingBuffer = null;
+        File file = getTraceFile();
+        UI_HELPER_EXECUTOR.execute(() -> {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                buffer.writeTo(MAGIC_NUMBER_VALUE, out);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to write trace file " + file, e);
+            }
+            buffer.clear();
+            MAIN_EXECUTOR.execute(() -> mSpareRingBuffer = buffer);
+        });
     }
 
     public void add(ProtoTraceable<LauncherTraceProto.Builder> traceable) {
         mProtoTracer.add(traceable);
+        if (traceable instanceof RingBufferTraceable
+                && !mRingBufferTraceables.contains(traceable)) {
+            mRingBufferTraceables.add((RingBufferTraceable) traceable);
+        }
     }
 
     public void remove(ProtoTraceable<LauncherTraceProto.Builder> traceable) {
         mProtoTracer.remove(traceable);
+        mRingBufferTraceables.remove(traceable);
     }
 
     public void scheduleFrameUpdate() {
-        mProtoTracer.scheduleFrameUpdate();
+        if (!mRingBufferTracing) {
+            mProtoTracer.scheduleFrameUpdate();
+        } else if (!mFrameUpdateScheduled) {
+            mFrameUpdateScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
     }
 
     public void update() {
-        mProtoTracer.update();
+        if (!mRingBufferTracing) {
+            mProtoTracer.update();
+            return;
+        }
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        TraceEntryWriter writer = mEntryWriter;
+        writer.reset();
+        writer.writeFixed64(LauncherTraceEntryProto.ELAPSED_REALTIME_NANOS_FIELD_NUMBER,
+                startTime);
+        writer.beginMessage(LauncherTraceEntryProto.LAUNCHER_FIELD_NUMBER);
+        for (int i = 0; i < mRingBufferTraceables.size(); i++) {
+            mRingBufferTraceables.get(i).writeToTrace(writer);
+        }
+        writer.endMessage();
+        mRingBuffer.add(writer);
+
+        long time = SystemClock.elapsedRealtimeNanos() - startTime;
+        mFrameCount++;
+        mFrameTimeNanos += time;
+        mMaxFrameTimeNanos = Math.max(mMaxFrameTimeNanos, time);
+    }
+
+    private String getFrameStats() {
+        return "frames=" + mFrameCount
+                + " avgFrameUs=" + (mFrameCount == 0 ? 0 : mFrameTimeNanos / mFrameCount / 1000)
+                + " maxFrameUs=" + mMaxFrameTimeNanos / 1000
+                + (mRingBuffer == null ? "" : " entries=" + mRingBuffer.getEntryCount()
+                        + " dropped=" + mRingBuffer.getDroppedCount());
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "ProtoTrace:");
+        writer.println(prefix + "  file=" + getTraceFile());
+        if (mRingBufferTracing) {
+            writer.println(prefix + "  ringBuffer: " + getFrameStats());
+        }
     }
 }
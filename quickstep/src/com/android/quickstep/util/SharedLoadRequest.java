@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import androidx.annotation.UiThread;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A {@link CancellableTask} whose result is delivered to all the callbacks added before it
+ * completes, so that duplicate requests can share a single load. Each callback gets its own
+ * handle, and the request itself is only cancelled once all the handles are cancelled.
+ */
+public abstract class SharedLoadRequest<T> extends CancellableTask<T> {
+
+    private final ArrayList<Consumer<T>> mCallbacks = new ArrayList<>();
+
+    /**
+     * Adds a callback to receive the result of this request
+     *
+     * @return A cancelable handle, which removes the callback when cancelled
+     */
+    @UiThread
+    public CancellableTask addCallback(Consumer<T> callback) {
+        mCallbacks.add(callback);
+        return new CancellableTask<T>() {
+            @Override
+            public T getResultOnBg() {
+                return null;
+            }
+
+            @Override
+            public void handleResult(T result) { }
+
+            @Override
+            public void cancel() {
+                super.cancel();
+                removeCallback(callback);
+            }
+        };
+    }
+
+    private void removeCallback(Consumer<T> callback) {
+        if (mCallbacks.remove(callback) && mCallbacks.isEmpty()) {
+            cancel();
+            onCancelled();
+        }
+    }
+
+    @Override
+    public final void handleResult(T result) {
+        onResult(result);
+        ArrayList<Consumer<T>> callbacks = new ArrayList<>(mCallbacks);
+        mCallbacks.clear();
+        for (Consumer<T> callback : callbacks) {
+            callback.accept(result);
+        }
+    }
+
+    /**
+     * Called on the UI thread with the result, before it is delivered to the callbacks
+     */
+    @UiThread
+    protected abstract void onResult(T result);
+
+    /**
+     * Called on the UI thread when the request is cancelled because all its callbacks were
+     * removed
+     */
+    @UiThread
+    protected void onCancelled() { }
+}
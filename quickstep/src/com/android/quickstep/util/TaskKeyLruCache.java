@@ -17,111 +17,307 @@ package com.android.quickstep.util;
 
 import android.util.Log;
 
+import com.android.launcher3.util.IntSparseArrayMap;
 import com.android.systemui.shared.recents.model.Task.TaskKey;
 
-import java.util.LinkedHashMap;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 
 /**
- * A simple LRU cache for task key entries
+ * A LRU cache for task key entries, keyed by task id.
+ *
+ * The entries are counted against one or more budgets, as defined by a {@link Weigher}. When a
+ * budget is exceeded, the least recently accessed entries of that budget are evicted. By default
+ * there is a single budget counting the entries.
+ *
+ * Lookups only take a read lock, so that they do not contend with each other. The access order
+ * is tracked with a counter instead of reordering the entries.
  * @param <V> The type of the value
- *           缓存实现
  */
 public class TaskKeyLruCache<V> {
 
-    private final MyLinkedHashMap<V> mMap;
+    private static final String TAG = "TaskKeyCache";
+
+    /**
+     * Computes the size of the cached values and the budget they are counted against
+     */
+    public interface Weigher<V> {
+
+        /**
+         * Returns the index of the budget {@param value} is counted against
+         */
+        int getBudgetIndex(V value);
+
+        /**
+         * Returns the size of {@param value}, in the unit of its budget
+         */
+        long getSize(V value);
+    }
+
+    // Only SparseArray.get() is safe under the read lock, the other accessors can compact the
+    // array and need the write lock
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final IntSparseArrayMap<Entry<V>> mEntries = new IntSparseArrayMap<>();
+    private final Weigher<V> mWeigher;
+    private final long[] mBudgets;
+    private final long[] mSizes;
+
+    // Incremented on each access, the entry with the lowest value is the least recently accessed
+    private final AtomicLong mAccessClock = new AtomicLong();
+
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+    private int mInvalidationCount;
+    private int mEvictionCount;
 
     public TaskKeyLruCache(int maxSize) {
-        mMap = new MyLinkedHashMap<>(maxSize);
+        this(new long[] {maxSize}, countWeigher());
     }
 
     /**
-     * Removes all entries from the cache
+     * @param budgets the maximum total size of the entries of each budget
+     * @param weigher computes the budget and size of each entry
      */
+    public TaskKeyLruCache(long[] budgets, Weigher<V> weigher) {
+        mBudgets = budgets.clone();
+        mSizes = new long[budgets.length];
+        mWeigher = weigher;
+    }
 
+    private static <V> Weigher<V> countWeigher() {
+        return new Weigher<V>() {
+            @Override
+            public int getBudgetIndex(V value) {
+                return 0;
+            }
 
-    public synchronized void evictAll() {
-        mMap.clear();
+            @Override
+            public long getSize(V value) {
+                return 1;
+            }
+        };
+    }
+
+    /**
+     * Removes all entries from the cache
+     */
+    public void evictAll() {
+        mLock.writeLock().lock();
+        try {
+            mEntries.clear();
+            for (int i = 0; i < mSizes.length; i++) {
+                mSizes[i] = 0;
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
     }
 
     /**
      * Removes a particular entry from the cache
      */
-    public synchronized void remove(TaskKey key) {
-        mMap.remove(key.id);
+    public void remove(TaskKey key) {
+        mLock.writeLock().lock();
+        try {
+            removeLocked(mEntries.indexOfKey(key.id));
+        } finally {
+            mLock.writeLock().unlock();
+        }
     }
 
     /**
      * Removes all entries matching keyCheck
      */
-    public synchronized void removeAll(Predicate<TaskKey> keyCheck) {
-        mMap.entrySet().removeIf(e -> keyCheck.test(e.getValue().mKey));
+    public void removeAll(Predicate<TaskKey> keyCheck) {
+        mLock.writeLock().lock();
+        try {
+            for (int i = mEntries.size() - 1; i >= 0; i--) {
+                if (keyCheck.test(mEntries.valueAt(i).mKey)) {
+                    removeLocked(i);
+                }
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
     }
 
     /**
      * Gets the entry if it is still valid
      */
-    public synchronized V getAndInvalidateIfModified(TaskKey key) {
-        Entry<V> entry = mMap.get(key.id);
-
-        if (entry != null && entry.mKey.windowingMode == key.windowingMode
-                && entry.mKey.lastActiveTime == key.lastActiveTime) {
-            return entry.mValue;
-        } else {
-            remove(key);
-            return null;
+    public V getAndInvalidateIfModified(TaskKey key) {
+        mLock.readLock().lock();
+        try {
+            Entry<V> entry = mEntries.get(key.id);
+            if (entry != null && entry.isValidFor(key)) {
+                entry.mLastAccess = mAccessClock.incrementAndGet();
+                mHitCount.incrementAndGet();
+                return entry.mValue;
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        mMissCount.incrementAndGet();
+        mLock.writeLock().lock();
+        try {
+            // The entry may have been updated since the read lock was released
+            int index = mEntries.indexOfKey(key.id);
+            if (index >= 0 && !mEntries.valueAt(index).isValidFor(key)) {
+                removeLocked(index);
+                mInvalidationCount++;
+            }
+        } finally {
+            mLock.writeLock().unlock();
         }
+        return null;
     }
 
     /**
-     * Adds an entry to the cache, optionally evicting the last accessed entry
+     * Adds an entry to the cache, evicting the least recently accessed entries if the budget of
+     * the entry is exceeded
      */
-    public final synchronized void put(TaskKey key, V value) {
-        if (key != null && value != null) {
-            mMap.put(key.id, new Entry<>(key, value));
-        } else {
-            Log.e("TaskKeyCache", "Unexpected null key or value: " + key + ", " + value);
+    public final void put(TaskKey key, V value) {
+        if (key == null || value == null) {
+            Log.e(TAG, "Unexpected null key or value: " + key + ", " + value);
+            return;
+        }
+        mLock.writeLock().lock();
+        try {
+            removeLocked(mEntries.indexOfKey(key.id));
+            Entry<V> entry = new Entry<>(key);
+            mEntries.put(key.id, entry);
+            setValueLocked(entry, value);
+        } finally {
+            mLock.writeLock().unlock();
         }
     }
 
     /**
      * Updates the cache entry if it is already present in the cache
      */
-    public synchronized void updateIfAlreadyInCache(int taskId, V data) {
-        Entry<V> entry = mMap.get(taskId);
-        if (entry != null) {
-            entry.mValue = data;
+    public void updateIfAlreadyInCache(int taskId, V data) {
+        mLock.writeLock().lock();
+        try {
+            Entry<V> entry = mEntries.get(taskId);
+            if (entry != null) {
+                mSizes[entry.mBudgetIndex] -= entry.mSize;
+                setValueLocked(entry, data);
+            }
+        } finally {
+            mLock.writeLock().unlock();
         }
     }
 
-    private static class Entry<V> {
+    private void setValueLocked(Entry<V> entry, V value) {
+        entry.mValue = value;
+        entry.mBudgetIndex = mWeigher.getBudgetIndex(value);
+        entry.mSize = mWeigher.getSize(value);
+        entry.mLastAccess = mAccessClock.incrementAndGet();
+        mSizes[entry.mBudgetIndex] += entry.mSize;
+        trimLocked(entry);
+    }
 
-        final TaskKey mKey;
-        V mValue;
+    /**
+     * Evicts the least recently accessed entries of the budget of {@param newEntry} until it is
+     * no longer exceeded. The new entry itself is always kept, even if it exceeds the budget.
+     */
+    private void trimLocked(Entry<V> newEntry) {
+        int budgetIndex = newEntry.mBudgetIndex;
+        while (mSizes[budgetIndex] > mBudgets[budgetIndex]) {
+            // There are only a few entries, so a scan is cheaper than maintaining an order
+            int eldestIndex = -1;
+            long eldestAccess = Long.MAX_VALUE;
+            for (int i = mEntries.size() - 1; i >= 0; i--) {
+                Entry<V> entry = mEntries.valueAt(i);
+                if (entry != newEntry && entry.mBudgetIndex == budgetIndex
+                        && entry.mLastAccess < eldestAccess) {
+                    eldestIndex = i;
+                    eldestAccess = entry.mLastAccess;
+                }
+            }
+            if (eldestIndex < 0) {
+                return;
+            }
+            removeLocked(eldestIndex);
+            mEvictionCount++;
+        }
+    }
 
-        Entry(TaskKey key, V value) {
-            mKey = key;
-            mValue = value;
+    private void removeLocked(int index) {
+        if (index >= 0) {
+            Entry<V> entry = mEntries.valueAt(index);
+            mSizes[entry.mBudgetIndex] -= entry.mSize;
+            mEntries.removeAt(index);
         }
+    }
+
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    public int getMissCount() {
+        return mMissCount.get();
+    }
 
-        @Override
-        public int hashCode() {
-            return mKey.id;
+    public int getEvictionCount() {
+        mLock.readLock().lock();
+        try {
+            return mEvictionCount;
+        } finally {
+            mLock.readLock().unlock();
         }
     }
 
-    private static class MyLinkedHashMap<V> extends LinkedHashMap<Integer, Entry<V>> {
+    /**
+     * Returns the total size of the entries counted against the budget {@param budgetIndex}
+     */
+    public long getSize(int budgetIndex) {
+        mLock.readLock().lock();
+        try {
+            return mSizes[budgetIndex];
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        // SparseArray.size() compacts the array after removals, so it needs the write lock
+        mLock.writeLock().lock();
+        try {
+            int hits = mHitCount.get();
+            int lookups = hits + mMissCount.get();
+            writer.println(prefix + "entries=" + mEntries.size() + " hits=" + hits
+                    + " misses=" + mMissCount.get() + " hitRate="
+                    + (lookups == 0 ? 0 : hits * 100 / lookups) + "%"
+                    + " invalidations=" + mInvalidationCount + " evictions=" + mEvictionCount);
+            for (int i = 0; i < mBudgets.length; i++) {
+                writer.println(prefix + "budget[" + i + "]: size=" + mSizes[i]
+                        + " max=" + mBudgets[i]);
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    private static class Entry<V> {
 
-        private final int mMaxSize;
+        final TaskKey mKey;
+        V mValue;
+        long mSize;
+        int mBudgetIndex;
+        // Written with only the read lock held, a lost update only affects the eviction order
+        volatile long mLastAccess;
 
-        MyLinkedHashMap(int maxSize) {
-            super(0, 0.75f, true /* accessOrder */);
-            mMaxSize = maxSize;
+        Entry(TaskKey key) {
+            mKey = key;
         }
 
-        @Override
-        protected boolean removeEldestEntry(Entry<Integer, TaskKeyLruCache.Entry<V>> eldest) {
-            return size() > mMaxSize;
+        boolean isValidFor(TaskKey key) {
+            return mKey.windowingMode == key.windowingMode
+                    && mKey.lastActiveTime == key.lastActiveTime;
         }
     }
 }
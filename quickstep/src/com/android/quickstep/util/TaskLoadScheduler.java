@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import android.os.SystemClock;
+import android.util.SparseIntArray;
+
+import androidx.annotation.UiThread;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Executor for loading the data of recent tasks, which runs the requests by priority instead of
+ * in submission order, so that the data of the tasks the user is looking at is not delayed by
+ * loads for off-screen tasks.
+ *
+ * The priority of a request is the priority of its task at the time it runs, set by
+ * {@link #setPriorities(SparseIntArray)}, lower values running first. Requests with the same
+ * priority run in submission order. Requests not associated with a task run before all the task
+ * loads.
+ *
+ * Requests are run one at a time on the provided executor.
+ */
+public class TaskLoadScheduler implements Executor {
+
+    public static final int PRIORITY_HIGHEST = 0;
+    // Used for tasks without a priority, e.g. tasks not bound to a view yet
+    public static final int PRIORITY_LOWEST = Integer.MAX_VALUE;
+    private static final int PRIORITY_UNTARGETED = -1;
+
+    private static final int NO_TASK_ID = -1;
+
+    private final Executor mExecutor;
+
+    // Guarded by mQueue
+    private final ArrayList<Request> mQueue = new ArrayList<>();
+    private SparseIntArray mPriorities = new SparseIntArray();
+
+    private int mRequestCount;
+    private int mReorderedCount;
+    private int mReprioritizeCount;
+    private int mHighestPriorityCount;
+    private long mHighestPriorityWaitMs;
+    private long mMaxHighestPriorityWaitMs;
+
+    public TaskLoadScheduler(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Runs {@param runnable} before all the pending task loads
+     */
+    @Override
+    public void execute(Runnable runnable) {
+        execute(NO_TASK_ID, runnable);
+    }
+
+    /**
+     * Runs {@param runnable}, which loads data for the task with {@param taskId}, according to
+     * the priority of that task.
+     */
+    public void execute(int taskId, Runnable runnable) {
+        synchronized (mQueue) {
+            mQueue.add(new Request(taskId, runnable));
+        }
+        // Each posted runnable runs the request with the highest priority at the time
+        mExecutor.execute(this::runNext);
+    }
+
+    /**
+     * Replaces the priority of all tasks, keyed by task id. Tasks not in {@param priorities}
+     * have the priority {@link #PRIORITY_LOWEST}.
+     */
+    @UiThread
+    public void setPriorities(SparseIntArray priorities) {
+        synchronized (mQueue) {
+            mPriorities = priorities.clone();
+            mReprioritizeCount++;
+        }
+    }
+
+    private int getPriority(Request request) {
+        return request.taskId == NO_TASK_ID
+                ? PRIORITY_UNTARGETED : mPriorities.get(request.taskId, PRIORITY_LOWEST);
+    }
+
+    private void runNext() {
+        Request next = null;
+        int nextPriority = 0;
+        synchronized (mQueue) {
+            int nextIndex = -1;
+            // The queue is in submission order, so the first request wins ties
+            for (int i = 0; i < mQueue.size(); i++) {
+                Request request = mQueue.get(i);
+                int priority = getPriority(request);
+                if (next == null || priority < nextPriority) {
+                    next = request;
+                    nextPriority = priority;
+                    nextIndex = i;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            mQueue.remove(nextIndex);
+
+            mRequestCount++;
+            if (nextIndex > 0) {
+                mReorderedCount++;
+            }
+            if (nextPriority == PRIORITY_HIGHEST) {
+                long waitMs = SystemClock.uptimeMillis() - next.queueTime;
+                mHighestPriorityCount++;
+                mHighestPriorityWaitMs += waitMs;
+                mMaxHighestPriorityWaitMs = Math.max(mMaxHighestPriorityWaitMs, waitMs);
+            }
+        }
+        next.runnable.run();
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        synchronized (mQueue) {
+            writer.println(prefix + "TaskLoadScheduler:");
+            writer.println(prefix + "  requests=" + mRequestCount + " pending=" + mQueue.size()
+                    + " reordered=" + mReorderedCount
+                    + " reprioritized=" + mReprioritizeCount);
+            writer.println(prefix + "  highestPriority: count=" + mHighestPriorityCount
+                    + " avgWaitMs=" + (mHighestPriorityCount == 0
+                            ? 0 : mHighestPriorityWaitMs / mHighestPriorityCount)
+                    + " maxWaitMs=" + mMaxHighestPriorityWaitMs);
+        }
+    }
+
+    private static class Request {
+        final int taskId;
+        final Runnable runnable;
+        final long queueTime = SystemClock.uptimeMillis();
+
+        Request(int taskId, Runnable runnable) {
+            this.taskId = taskId;
+            this.runnable = runnable;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import android.util.SparseArray;
+
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.util.Preconditions;
+import com.android.systemui.shared.recents.model.Task;
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Loads the thumbnails of the tasks where a fling in overview will come to rest, while the fling
+ * is still too fast for the visible tasks to load them. All the low resolution thumbnails are
+ * queued before the high resolution ones, and the loads for tasks which are no longer targeted
+ * are cancelled.
+ *
+ * This class must only be used on the UI thread.
+ */
+public class ThumbnailPrefetcher {
+
+    /**
+     * Loads thumbnails in the background, see
+     * {@link com.android.quickstep.TaskThumbnailCache#prefetchThumbnail}
+     */
+    public interface ThumbnailLoader {
+
+        /**
+         * @return A cancelable handle to the load, or null if the thumbnail is already cached
+         */
+        @Nullable
+        CancellableTask prefetchThumbnail(TaskKey key, boolean lowResolution);
+    }
+
+    private final ThumbnailLoader mThumbnailLoader;
+
+    // Pending requests by task id
+    private final SparseArray<CancellableTask> mLowResRequests = new SparseArray<>();
+    private final SparseArray<CancellableTask> mHighResRequests = new SparseArray<>();
+
+    public ThumbnailPrefetcher(ThumbnailLoader thumbnailLoader) {
+        mThumbnailLoader = thumbnailLoader;
+    }
+
+    /**
+     * Adds to {@param outKeys} the keys of the tasks of {@param tasks} whose index matches
+     * {@param isTarget} and which do not have a thumbnail yet, ignoring {@param runningTask}.
+     */
+    public static void getFlingTargets(List<Task> tasks, IntPredicate isTarget,
+            @Nullable Task runningTask, List<TaskKey> outKeys) {
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (task != null && task != runningTask && task.thumbnail == null
+                    && isTarget.test(i)) {
+                outKeys.add(task.key);
+            }
+        }
+    }
+
+    /**
+     * Prefetches the thumbnails of {@param keys}, cancelling the pending loads of other tasks.
+     *
+     * @param highResolution whether to also queue high resolution loads after the low
+     *                       resolution ones
+     */
+    public void prefetch(List<TaskKey> keys, boolean highResolution) {
+        Preconditions.assertUIThread();
+        cancelOtherRequests(mLowResRequests, keys);
+        cancelOtherRequests(mHighResRequests, keys);
+
+        for (TaskKey key : keys) {
+            queueRequest(mLowResRequests, key, true /* lowResolution */);
+        }
+        if (highResolution) {
+            for (TaskKey key : keys) {
+                queueRequest(mHighResRequests, key, false /* lowResolution */);
+            }
+        }
+    }
+
+    /**
+     * Called when the fling has slowed down enough for the visible tasks to load their own
+     * thumbnails. The pending loads are kept, so that these tasks can use their results.
+     */
+    public void onFlingFinished() {
+        mLowResRequests.clear();
+        mHighResRequests.clear();
+    }
+
+    /**
+     * Cancels all the pending loads, e.g. when the fling was stopped before coming to rest
+     */
+    public void cancelAll() {
+        cancelRequests(mLowResRequests);
+        cancelRequests(mHighResRequests);
+    }
+
+    private void queueRequest(SparseArray<CancellableTask> requests, TaskKey key,
+            boolean lowResolution) {
+        if (requests.indexOfKey(key.id) >= 0) {
+            return;
+        }
+        // Null requests are kept to not check the cache again for the same task
+        requests.put(key.id, mThumbnailLoader.prefetchThumbnail(key, lowResolution));
+    }
+
+    private void cancelOtherRequests(SparseArray<CancellableTask> requests, List<TaskKey> keys) {
+        for (int i = requests.size() - 1; i >= 0; i--) {
+            int taskId = requests.keyAt(i);
+            boolean targeted = false;
+            for (int j = keys.size() - 1; j >= 0 && !targeted; j--) {
+                targeted = keys.get(j).id == taskId;
+            }
+            if (!targeted) {
+                cancelRequest(requests.valueAt(i));
+                requests.removeAt(i);
+            }
+        }
+    }
+
+    private void cancelRequests(SparseArray<CancellableTask> requests) {
+        for (int i = requests.size() - 1; i >= 0; i--) {
+            cancelRequest(requests.valueAt(i));
+        }
+        requests.clear();
+    }
+
+    private void cancelRequest(CancellableTask request) {
+        if (request != null) {
+            request.cancel();
+        }
+    }
+}
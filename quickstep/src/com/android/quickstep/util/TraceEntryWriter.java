@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+/**
+ * Encodes a proto message into a preallocated buffer, without allocating, so that trace entries
+ * can be written on every frame. Fields must be written in field number order to produce the
+ * same bytes as the generated protos.
+ *
+ * Nested messages and strings are written between a begin and an end call. Their length is only
+ * known at the end, so the content is moved if its length does not fit in the byte reserved for
+ * it.
+ */
+public class TraceEntryWriter {
+
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_TYPE_FIXED32 = 5;
+
+    private static final int MAX_DEPTH = 8;
+
+    private final byte[] mBuffer;
+    // Start of the content of the open length delimited fields
+    private final int[] mStarts = new int[MAX_DEPTH];
+    private int mDepth;
+    private int mPosition;
+    private boolean mOverflow;
+
+    public TraceEntryWriter(int capacity) {
+        mBuffer = new byte[capacity];
+    }
+
+    /**
+     * Clears the buffer to write a new message
+     */
+    public void reset() {
+        mPosition = 0;
+        mDepth = 0;
+        mOverflow = false;
+    }
+
+    public void writeBool(int fieldNumber, boolean value) {
+        writeTag(fieldNumber, WIRE_TYPE_VARINT);
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeInt32(int fieldNumber, int value) {
+        writeTag(fieldNumber, WIRE_TYPE_VARINT);
+        // Negative values are sign extended to 64 bits
+        writeVarint(value);
+    }
+
+    public void writeEnum(int fieldNumber, int value) {
+        writeInt32(fieldNumber, value);
+    }
+
+    public void writeFloat(int fieldNumber, float value) {
+        writeTag(fieldNumber, WIRE_TYPE_FIXED32);
+        int bits = Float.floatToRawIntBits(value);
+        for (int i = 0; i < 4; i++) {
+            writeByte(bits >>> (8 * i));
+        }
+    }
+
+    public void writeFixed64(int fieldNumber, long value) {
+        writeTag(fieldNumber, WIRE_TYPE_FIXED64);
+        for (int i = 0; i < 8; i++) {
+            writeByte((int) (value >>> (8 * i)));
+        }
+    }
+
+    /**
+     * Starts a nested message, which ends with {@link #endMessage()}
+     */
+    public void beginMessage(int fieldNumber) {
+        beginLengthDelimited(fieldNumber);
+    }
+
+    public void endMessage() {
+        endLengthDelimited();
+    }
+
+    /**
+     * Starts a string field, whose content is added with {@link #appendString(CharSequence)}
+     * until {@link #endString()}
+     */
+    public void beginString(int fieldNumber) {
+        beginLengthDelimited(fieldNumber);
+    }
+
+    /**
+     * Appends {@param value} encoded in UTF-8 to the current string field
+     */
+    public void appendString(CharSequence value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            int c = value.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, value.charAt(++i));
+            } else if (Character.isSurrogate((char) c)) {
+                // Unpaired surrogates are replaced, as by String.getBytes
+                c = '?';
+            }
+            if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >>> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (c < 0x10000) {
+                writeByte(0xE0 | (c >>> 12));
+                writeByte(0x80 | ((c >>> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            } else {
+                writeByte(0xF0 | (c >>> 18));
+                writeByte(0x80 | ((c >>> 12) & 0x3F));
+                writeByte(0x80 | ((c >>> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    public void endString() {
+        endLengthDelimited();
+    }
+
+    public void writeString(int fieldNumber, CharSequence value) {
+        beginString(fieldNumber);
+        appendString(value);
+        endString();
+    }
+
+    private void beginLengthDelimited(int fieldNumber) {
+        writeTag(fieldNumber, WIRE_TYPE_LENGTH_DELIMITED);
+        // Reserve a byte for the length, enough for content shorter than 128 bytes
+        writeByte(0);
+        if (mDepth >= MAX_DEPTH) {
+            throw new IllegalStateException("Messages nested too deep");
+        }
+        mStarts[mDepth++] = mPosition;
+    }
+
+    private void endLengthDelimited() {
+        int start = mStarts[--mDepth];
+        if (mOverflow) {
+            return;
+        }
+        int length = mPosition - start;
+        int lengthSize = varintSize(length);
+        if (lengthSize > 1) {
+            if (mPosition + lengthSize - 1 > mBuffer.length) {
+                mOverflow = true;
+                return;
+            }
+            // The fields still open start before this one, so they are not affected
+            System.arraycopy(mBuffer, start, mBuffer, start + lengthSize - 1, length);
+        }
+        int position = start - 1;
+        long value = length;
+        while ((value & ~0x7FL) != 0) {
+            mBuffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        mBuffer[position] = (byte) value;
+        mPosition += lengthSize - 1;
+    }
+
+    private void writeTag(int fieldNumber, int wireType) {
+        writeVarint((fieldNumber << 3) | wireType);
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private void writeByte(int value) {
+        if (mPosition >= mBuffer.length) {
+            mOverflow = true;
+            return;
+        }
+        mBuffer[mPosition++] = (byte) value;
+    }
+
+    /**
+     * Returns whether the message did not fit in the buffer, in which case its bytes are invalid
+     */
+    public boolean hasOverflowed() {
+        return mOverflow;
+    }
+
+    byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    int getSize() {
+        return mPosition;
+    }
+}
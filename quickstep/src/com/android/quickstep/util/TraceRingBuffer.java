@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A size-bounded buffer of encoded trace entries, preallocated so that adding an entry does not
+ * allocate. When full, the oldest entries are dropped to make space for new ones.
+ *
+ * Each entry is stored as its size on 4 bytes followed by its bytes, possibly wrapping around the
+ * end of the buffer.
+ */
+public class TraceRingBuffer {
+
+    private static final int HEADER_SIZE = 4;
+
+    // Field numbers and wire types of LauncherTraceFileProto
+    private static final int MAGIC_NUMBER_TAG = (1 << 3) | 1;
+    private static final int ENTRY_TAG = (2 << 3) | 2;
+
+    private final byte[] mBuffer;
+    // Offset of the oldest entry
+    private int mStart;
+    private int mUsed;
+    private int mEntryCount;
+    private int mDroppedCount;
+
+    public TraceRingBuffer(int capacity) {
+        mBuffer = new byte[capacity];
+    }
+
+    /**
+     * Adds the message written by {@param writer}, dropping the oldest entries if needed.
+     *
+     * @return false if the entry is larger than the buffer
+     */
+    public boolean add(TraceEntryWriter writer) {
+        int size = writer.getSize();
+        int required = HEADER_SIZE + size;
+        if (writer.hasOverflowed() || required > mBuffer.length) {
+            mDroppedCount++;
+            return false;
+        }
+        while (mBuffer.length - mUsed < required) {
+            int oldestSize = HEADER_SIZE + readHeader(mStart);
+            mStart = (mStart + oldestSize) % mBuffer.length;
+            mUsed -= oldestSize;
+            mEntryCount--;
+            mDroppedCount++;
+        }
+
+        int end = (mStart + mUsed) % mBuffer.length;
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            mBuffer[(end + i) % mBuffer.length] = (byte) (size >>> (8 * i));
+        }
+        copyIn(writer.getBuffer(), size, (end + HEADER_SIZE) % mBuffer.length);
+        mUsed += required;
+        mEntryCount++;
+        return true;
+    }
+
+    public void clear() {
+        mStart = 0;
+        mUsed = 0;
+        mEntryCount = 0;
+        mDroppedCount = 0;
+    }
+
+    public int getEntryCount() {
+        return mEntryCount;
+    }
+
+    public int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * Writes the entries, oldest first, as an encoded LauncherTraceFileProto
+     */
+    public void writeTo(long magicNumber, OutputStream out) throws IOException {
+        out.write(MAGIC_NUMBER_TAG);
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (magicNumber >>> (8 * i)));
+        }
+
+        int offset = mStart;
+        for (int i = 0; i < mEntryCount; i++) {
+            int size = readHeader(offset);
+            out.write(ENTRY_TAG);
+            int length = size;
+            while ((length & ~0x7F) != 0) {
+                out.write((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            out.write(length);
+
+            int entryStart = (offset + HEADER_SIZE) % mBuffer.length;
+            int firstPart = Math.min(size, mBuffer.length - entryStart);
+            out.write(mBuffer, entryStart, firstPart);
+            out.write(mBuffer, 0, size - firstPart);
+            offset = (entryStart + size) % mBuffer.length;
+        }
+    }
+
+    private int readHeader(int offset) {
+        int size = 0;
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            size |= (mBuffer[(offset + i) % mBuffer.length] & 0xFF) << (8 * i);
+        }
+        return size;
+    }
+
+    private void copyIn(byte[] src, int size, int offset) {
+        int firstPart = Math.min(size, mBuffer.length - offset);
+        System.arraycopy(src, 0, mBuffer, offset, firstPart);
+        System.arraycopy(src, firstPart, mBuffer, 0, size - firstPart);
+    }
+}
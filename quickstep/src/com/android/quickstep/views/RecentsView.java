@@ -77,13 +77,16 @@ import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.text.Layout;
 import android.text.StaticLayout;
 import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.util.FloatProperty;
+import android.util.SparseArray;
 import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
 import android.view.Gravity;
 import android.view.HapticFeedbackConstants;
 import android.view.KeyEvent;
@@ -126,6 +129,7 @@ import com.android.launcher3.statemanager.StatefulActivity;
 import com.android.launcher3.touch.OverScroll;
 import com.android.launcher3.touch.PagedOrientationHandler;
 import com.android.launcher3.util.DynamicResource;
+import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.IntSet;
 import com.android.launcher3.util.MultiValueAlpha;
 import com.android.launcher3.util.ResourceBasedOverride.Overrides;
@@ -144,16 +148,20 @@ import com.android.quickstep.RecentsModel;
 import com.android.quickstep.RecentsModel.TaskVisualsChangeListener;
 import com.android.quickstep.RemoteAnimationTargets;
 import com.android.quickstep.SystemUiProxy;
+import com.android.quickstep.TaskListDiff;
 import com.android.quickstep.TaskOverlayFactory;
 import com.android.quickstep.TaskThumbnailCache;
 import com.android.quickstep.TaskViewUtils;
 import com.android.quickstep.ViewUtils;
+import com.android.quickstep.util.ActiveGestureLog;
 import com.android.quickstep.util.LayoutUtils;
 import com.android.quickstep.util.RecentsOrientedState;
 import com.android.quickstep.util.SplitScreenBounds;
 import com.android.quickstep.util.SplitSelectStateController;
 import com.android.quickstep.util.SurfaceTransactionApplier;
+import com.android.quickstep.util.TaskLoadScheduler;
 import com.android.quickstep.util.TaskViewSimulator;
+import com.android.quickstep.util.ThumbnailPrefetcher;
 import com.android.quickstep.util.TransformParams;
 import com.android.systemui.plugins.ResourceProvider;
 import com.android.systemui.shared.recents.model.Task;
@@ -170,6 +178,7 @@ import com.android.wm.shell.pip.IPipAnimationListener;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
 /**
  * A list of recent tasks.
@@ -376,6 +385,19 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
     protected final ACTIVITY_TYPE mActivity;
     private final float mFastFlingVelocity;
     private final RecentsModel mModel;
+    private final ThumbnailPrefetcher mThumbnailPrefetcher;
+    private final ArrayList<TaskKey> mPrefetchTaskKeys = new ArrayList<>();
+    private final ArrayList<Task> mPrefetchTasks = new ArrayList<>();
+    private final SparseIntArray mTaskLoadPriorities = new SparseIntArray();
+    // Task list updates applied since the last reset
+    private LoadPlanStats mLoadPlanStats = new LoadPlanStats();
+    // State for which mTaskLoadPriorities was computed
+    private int mTaskLoadPrioritiesCenterPage = -1;
+    private int mTaskLoadPrioritiesNextPage = -1;
+    private int mTaskLoadPrioritiesRunningTaskId = -1;
+    private int mTaskLoadPrioritiesBindId = -1;
+    // Incremented each time a task list is bound to the task views
+    private int mTaskListBindId = 0;
     private final int mRowSpacing;
     private final int mGridSideMargin;
     private final ClearAllButton mClearAllButton;
@@ -591,6 +613,8 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
         mFastFlingVelocity = getResources()
                 .getDimensionPixelSize(R.dimen.recents_fast_fling_velocity);
         mModel = RecentsModel.INSTANCE.get(context);
+        mThumbnailPrefetcher =
+                new ThumbnailPrefetcher(mModel.getThumbnailCache()::prefetchThumbnail);
         mIdp = InvariantDeviceProfile.INSTANCE.get(context);
 
         mClearAllButton = (ClearAllButton) LayoutInflater.from(context)
@@ -1102,6 +1126,7 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
             mPendingAnimation.addEndListener(success -> applyLoadPlan(tasks));
             return;
         }
+        mTaskListBindId++;
 
         if (tasks == null || tasks.isEmpty()) {
             removeTasksViewsAndClearAllButton();
@@ -1115,34 +1140,40 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
             currentTaskId = currentTaskView.getTask().key.id;
         }
 
-        // Unload existing visible task data
-        unloadVisibleTaskData(TaskView.FLAG_UPDATE_ALL);
-
+        long startTime = SystemClock.uptimeMillis();
         TaskView ignoreResetTaskView =
                 mIgnoreResetTaskId == -1 ? null : getTaskView(mIgnoreResetTaskId);
 
-        final int requiredTaskCount = tasks.size();
-        if (getTaskViewCount() != requiredTaskCount) {
-            if (indexOfChild(mClearAllButton) != -1) {
-                removeView(mClearAllButton);
-            }
-            for (int i = getTaskViewCount(); i < requiredTaskCount; i++) {
-                addView(mTaskViewPool.getView());
-            }
-            while (getTaskViewCount() > requiredTaskCount) {
-                removeView(getChildAt(getChildCount() - 1));
-            }
-            if (requiredTaskCount > 0) {
-                addView(mClearAllButton);
+        if (FeatureFlags.ENABLE_INCREMENTAL_TASK_LIST.get() && getTaskViewCount() > 0) {
+            applyTaskListDiff(tasks);
+        } else {
+            // Unload existing visible task data
+            unloadVisibleTaskData(TaskView.FLAG_UPDATE_ALL);
+
+            final int requiredTaskCount = tasks.size();
+            if (getTaskViewCount() != requiredTaskCount) {
+                if (indexOfChild(mClearAllButton) != -1) {
+                    removeView(mClearAllButton);
+                }
+                for (int i = getTaskViewCount(); i < requiredTaskCount; i++) {
+                    addView(mTaskViewPool.getView());
+                }
+                while (getTaskViewCount() > requiredTaskCount) {
+                    removeView(getChildAt(getChildCount() - 1));
+                }
+                if (requiredTaskCount > 0) {
+                    addView(mClearAllButton);
+                }
             }
-        }
 
-        // Rebind and reset all task views
-        for (int i = requiredTaskCount - 1; i >= 0; i--) {
-            final int pageIndex = requiredTaskCount - i - 1 + mTaskViewStartIndex;
-            final Task task = tasks.get(i);
-            final TaskView taskView = (TaskView) getChildAt(pageIndex);
-            taskView.bind(task, mOrientationState);
+            // Rebind and reset all task views
+            for (int i = requiredTaskCount - 1; i >= 0; i--) {
+                final int pageIndex = requiredTaskCount - i - 1 + mTaskViewStartIndex;
+                final Task task = tasks.get(i);
+                final TaskView taskView = (TaskView) getChildAt(pageIndex);
+                taskView.bind(task, mOrientationState);
+            }
+            mLoadPlanStats.rebindCount += requiredTaskCount;
         }
         updateTaskSize();
 
@@ -1174,6 +1205,89 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
         resetTaskVisuals();
         onTaskStackUpdated();
         updateEnabledOverlays();
+
+        mLoadPlanStats.applyCount++;
+        mLoadPlanStats.timeMs += SystemClock.uptimeMillis() - startTime;
+    }
+
+    /**
+     * Updates the task views to show {@param tasks}, only binding the views of the tasks which
+     * were added or changed. The views of the other tasks are rebound to the new task instances,
+     * keeping the data already loaded, and only the views of the tasks which moved are detached
+     * to be attached again at their new position.
+     */
+    private void applyTaskListDiff(ArrayList<Task> tasks) {
+        // Task views are in the reverse order of the tasks
+        int taskViewCount = getTaskViewCount();
+        ArrayList<Task> boundTasks = new ArrayList<>(taskViewCount);
+        for (int i = taskViewCount - 1; i >= 0; i--) {
+            boundTasks.add(getTaskViewAt(i).getTask());
+        }
+        TaskListDiff diff = TaskListDiff.compute(boundTasks, tasks);
+
+        if (diff.isEmpty()) {
+            // Same tasks in the same order, only use the latest task instances
+            for (int i = 0; i < taskViewCount; i++) {
+                getTaskViewAt(i).rebindTask(tasks.get(taskViewCount - i - 1));
+            }
+            mLoadPlanStats.reuseCount += taskViewCount;
+            return;
+        }
+
+        IntArray moved = diff.getMoved();
+        SparseArray<TaskView> movedTaskViews = new SparseArray<>();
+        for (int i = taskViewCount - 1; i >= 0; i--) {
+            TaskView taskView = getTaskViewAt(i);
+            int taskId = taskView.getTask().key.id;
+            if (diff.removed.contains(taskId)) {
+                unloadTaskData(taskView);
+                removeView(taskView);
+            } else if (moved.contains(taskId)) {
+                movedTaskViews.put(taskId, taskView);
+                detachViewFromParent(taskView);
+            }
+        }
+
+        // The remaining views keep their relative order, so adding the inserted and moved views
+        // by increasing index puts every view at its new position
+        final int requiredTaskCount = tasks.size();
+        for (int i = requiredTaskCount - 1; i >= 0; i--) {
+            final int pageIndex = requiredTaskCount - i - 1 + mTaskViewStartIndex;
+            final Task task = tasks.get(i);
+            TaskView taskView;
+            if (diff.inserted.contains(task.key.id)) {
+                taskView = mTaskViewPool.getView();
+                addView(taskView, pageIndex);
+                taskView.bind(task, mOrientationState);
+                mLoadPlanStats.rebindCount++;
+                continue;
+            }
+
+            taskView = movedTaskViews.get(task.key.id);
+            if (taskView != null) {
+                attachViewToParent(taskView, pageIndex, taskView.getLayoutParams());
+            } else {
+                taskView = (TaskView) getChildAt(pageIndex);
+            }
+            if (diff.changed.contains(task.key.id)) {
+                unloadTaskData(taskView);
+                taskView.bind(task, mOrientationState);
+                mLoadPlanStats.rebindCount++;
+            } else {
+                // Keep the loaded data, but use the latest task instance
+                taskView.rebindTask(task);
+                mLoadPlanStats.reuseCount++;
+            }
+        }
+        requestLayout();
+    }
+
+    private void unloadTaskData(TaskView taskView) {
+        int taskId = taskView.getTask().key.id;
+        if (mHasVisibleTaskData.get(taskId)) {
+            taskView.onTaskListVisibilityChanged(false /* visible */, TaskView.FLAG_UPDATE_ALL);
+        }
+        mHasVisibleTaskData.delete(taskId);
     }
 
     private boolean isModal() {
@@ -1450,6 +1564,16 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
                 // Check if we are flinging quickly to disable high res thumbnail loading
                 isFlingingFast = mScroller.getCurrVelocity() > mFastFlingVelocity;
             }
+            if (FeatureFlags.ENABLE_THUMBNAIL_PREFETCH.get()) {
+                if (isFlingingFast) {
+                    prefetchFlingTargetThumbnails();
+                } else if (isHandlingTouch()) {
+                    // The fling was caught before coming to rest
+                    mThumbnailPrefetcher.cancelAll();
+                } else {
+                    mThumbnailPrefetcher.onFlingFinished();
+                }
+            }
 
             // After scrolling, update the visible task's data
             loadVisibleTaskData(TaskView.FLAG_UPDATE_ALL);
@@ -1469,6 +1593,36 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
         return scrolling;
     }
 
+    /**
+     * Prefetches the thumbnails of the tasks which will be visible when the current fling comes
+     * to rest, while it is too fast for the visible tasks to load their thumbnails.
+     */
+    private void prefetchFlingTargetThumbnails() {
+        if (!mOverviewStateEnabled || mTaskListChangeId == -1) {
+            return;
+        }
+
+        int finalScroll = mScroller.getFinalX();
+        IntPredicate isTarget;
+        if (showAsGrid()) {
+            int visibleEnd = finalScroll + mOrientationHandler.getMeasuredSize(this);
+            isTarget = i -> isTaskViewWithinBounds(getTaskViewAt(i), finalScroll, visibleEnd);
+        } else {
+            int destinationPage = getDestinationPage(finalScroll);
+            isTarget = i -> Math.abs(indexOfChild(getTaskViewAt(i)) - destinationPage) <= 1;
+        }
+
+        mPrefetchTasks.clear();
+        for (int i = 0; i < getTaskViewCount(); i++) {
+            mPrefetchTasks.add(getTaskViewAt(i).getTask());
+        }
+        mPrefetchTaskKeys.clear();
+        ThumbnailPrefetcher.getFlingTargets(mPrefetchTasks, isTarget, mTmpRunningTask,
+                mPrefetchTaskKeys);
+        mThumbnailPrefetcher.prefetch(mPrefetchTaskKeys,
+                mModel.getThumbnailCache().getHighResLoadingState().isEnabledAfterFling());
+    }
+
     /**
      * Scales and adjusts translation of adjacent pages as if on a curved carousel.
      */
@@ -1515,6 +1669,7 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
             // task list hasn't been loaded yet (the task views will not reflect the task list)
             return;
         }
+        updateTaskLoadPriorities();
 
         int lower = 0;
         int upper = 0;
@@ -1569,6 +1724,46 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
         }
     }
 
+    /**
+     * Orders the pending loads of task data by distance from the center of the screen, loading
+     * the data of the running task and the snap target first. Only updated when the page at the
+     * center, the snap target or the bound task list changes, as the order of the other tasks
+     * does not change in between.
+     */
+    private void updateTaskLoadPriorities() {
+        int centerPage = getPageNearestToCenterOfScreen();
+        int nextPage = getNextPage();
+        if (centerPage == mTaskLoadPrioritiesCenterPage
+                && nextPage == mTaskLoadPrioritiesNextPage
+                && mRunningTaskId == mTaskLoadPrioritiesRunningTaskId
+                && mTaskListBindId == mTaskLoadPrioritiesBindId) {
+            return;
+        }
+        mTaskLoadPrioritiesCenterPage = centerPage;
+        mTaskLoadPrioritiesNextPage = nextPage;
+        mTaskLoadPrioritiesRunningTaskId = mRunningTaskId;
+        mTaskLoadPrioritiesBindId = mTaskListBindId;
+
+        int primaryScroll = mOrientationHandler.getPrimaryScroll(this);
+        mTaskLoadPriorities.clear();
+        for (int i = 0; i < getTaskViewCount(); i++) {
+            TaskView taskView = getTaskViewAt(i);
+            Task task = taskView.getTask();
+            if (task == null) {
+                continue;
+            }
+            int index = indexOfChild(taskView);
+            int priority;
+            if (index == nextPage || task.key.id == mRunningTaskId) {
+                priority = TaskLoadScheduler.PRIORITY_HIGHEST;
+            } else {
+                priority = 1 + Math.abs(getScrollForPage(index) - primaryScroll);
+            }
+            mTaskLoadPriorities.put(task.key.id, priority);
+        }
+        mModel.getLoadScheduler().setPriorities(mTaskLoadPriorities);
+    }
+
     /**
      * Unloads any associated data from the currently visible tasks
      */
@@ -1612,6 +1807,11 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
         mIgnoreResetTaskId = -1;
         mTaskListChangeId = -1;
         mFocusedTaskId = -1;
+        mThumbnailPrefetcher.cancelAll();
+        if (mLoadPlanStats.applyCount > 0) {
+            ActiveGestureLog.INSTANCE.addLog("overviewTaskList: " + mLoadPlanStats);
+            mLoadPlanStats = new LoadPlanStats();
+        }
 
         if (mRecentsAnimationController != null) {
             if (ENABLE_QUICKSTEP_LIVE_TILE.get() && mEnableDrawingLiveTile) {
@@ -3944,4 +4144,19 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
         // Set locus context is a binder call, don't want it to happen during a transition
         UI_HELPER_EXECUTOR.post(() -> mActivity.setLocusContext(id, Bundle.EMPTY));
     }
+
+    private static class LoadPlanStats {
+        int applyCount;
+        long timeMs;
+        // Task views bound to a new or changed task
+        int rebindCount;
+        // Task views kept with their loaded data
+        int reuseCount;
+
+        @Override
+        public String toString() {
+            return "applyLoadPlan=" + applyCount + " timeMs=" + timeMs
+                    + " rebinds=" + rebindCount + " reused=" + reuseCount;
+        }
+    }
 }
@@ -520,6 +520,25 @@ public class TaskView extends FrameLayout implements Reusable {
         setOrientationState(orientedState);
     }
 
+    /**
+     * Updates this task view to {@param task}, a newer instance of the task it shows, keeping the
+     * data already loaded for that task. The loads still pending are restarted for the new
+     * instance.
+     */
+    public void rebindTask(Task task) {
+        int pendingChanges = (mThumbnailLoadRequest != null ? FLAG_UPDATE_THUMBNAIL : 0)
+                | (mIconLoadRequest != null ? FLAG_UPDATE_ICON : 0);
+        cancelPendingLoadTasks();
+        task.thumbnail = mTask.thumbnail;
+        task.icon = mTask.icon;
+        task.titleDescription = mTask.titleDescription;
+        mTask = task;
+        mSnapshotView.setThumbnail(task, task.thumbnail, false /* refreshNow */);
+        if (pendingChanges != 0) {
+            onTaskListVisibilityChanged(true /* visible */, pendingChanges);
+        }
+    }
+
     public Task getTask() {
         return mTask;
     }
@@ -690,12 +709,14 @@ public class TaskView extends FrameLayout implements Reusable {
             if (needsUpdate(changes, FLAG_UPDATE_THUMBNAIL)) {
                 mThumbnailLoadRequest = thumbnailCache.updateThumbnailInBackground(
                         mTask, thumbnail -> {
+                            mThumbnailLoadRequest = null;
                             mSnapshotView.setThumbnail(mTask, thumbnail);
                         });
             }
             if (needsUpdate(changes, FLAG_UPDATE_ICON)) {
                 mIconLoadRequest = iconCache.updateIconInBackground(mTask,
                         (task) -> {
+                            mIconLoadRequest = null;
                             setIcon(task.icon);
                             mDigitalWellBeingToast.initialize(mTask);
                         });
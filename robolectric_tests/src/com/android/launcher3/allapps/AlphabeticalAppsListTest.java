@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.allapps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.view.ViewGroup;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.android.launcher3.allapps.AllAppsGridAdapter.AdapterItem;
+import com.android.launcher3.allapps.AlphabeticalAppsList.FastScrollSectionInfo;
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.model.data.ItemInfoWithIcon;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link AlphabeticalAppsList} incremental updates, which are compared to a list
+ * rebuilt from scratch for the same apps.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AlphabeticalAppsListTest {
+
+    private static final int NUM_APPS_PER_ROW = 4;
+
+    private AllAppsStore mStore;
+    private AlphabeticalAppsList mIncrementalList;
+    private AlphabeticalAppsList mFullList;
+    private RecordingAdapter mAdapter;
+    private List<AppInfo> mApps;
+
+    @Before
+    public void setup() {
+        mStore = new AllAppsStore();
+        mIncrementalList = new AlphabeticalAppsList(RuntimeEnvironment.application, mStore,
+                null, NUM_APPS_PER_ROW, true);
+        mFullList = new AlphabeticalAppsList(RuntimeEnvironment.application, mStore,
+                null, NUM_APPS_PER_ROW, false);
+        mApps = new ArrayList<>(Arrays.asList(newApp("Alarm"), newApp("Books"),
+                newApp("Browser"), newApp("Camera"), newApp("Clock"), newApp("Files"),
+                newApp("Maps"), newApp("Music"), newApp("Phone"), newApp("Photos")));
+        setApps();
+
+        mAdapter = new RecordingAdapter(mIncrementalList.getAdapterItems());
+        mIncrementalList.setAdapter(mAdapter);
+    }
+
+    @Test
+    public void testAppAdded() {
+        mApps.add(newApp("Calendar"));
+        setApps();
+        assertMatchesFullList();
+        assertEquals(1, mAdapter.mInserted);
+        assertEquals(0, mAdapter.mRemoved);
+    }
+
+    @Test
+    public void testAppRemoved() {
+        mApps.remove(3);
+        setApps();
+        assertMatchesFullList();
+        assertEquals(1, mAdapter.mRemoved);
+        assertEquals(0, mAdapter.mInserted);
+    }
+
+    @Test
+    public void testLastAppRemoved() {
+        mApps.remove(mApps.size() - 1);
+        setApps();
+        assertMatchesFullList();
+        assertEquals(1, mAdapter.mRemoved);
+    }
+
+    @Test
+    public void testAppMoved() {
+        mApps.get(0).title = "Weather";
+        mApps.get(0).sectionName = "W";
+        setApps();
+        assertMatchesFullList();
+        assertEquals(1, mAdapter.mRemoved);
+        assertEquals(1, mAdapter.mInserted);
+    }
+
+    @Test
+    public void testAppChanged() {
+        AppInfo app = mApps.get(4);
+        app.runtimeStatusFlags |= ItemInfoWithIcon.FLAG_DISABLED_SUSPENDED;
+        setApps();
+        assertMatchesFullList();
+        assertEquals(1, mAdapter.mChanged.size());
+        assertSame(app, mIncrementalList.getAdapterItems().get(mAdapter.mChanged.get(0)).appInfo);
+        assertEquals(0, mAdapter.mRemoved + mAdapter.mInserted);
+    }
+
+    @Test
+    public void testChangedAppsCountTowardsIncrementalLimit() {
+        // 7 added apps alone would be applied in place
+        for (int i = 0; i < 10; i++) {
+            mApps.get(i).runtimeStatusFlags |= ItemInfoWithIcon.FLAG_DISABLED_SUSPENDED;
+        }
+        for (int i = 0; i < 7; i++) {
+            mApps.add(newApp("New" + i));
+        }
+        setApps();
+        assertMatchesFullList();
+        assertTrue(mAdapter.mDataSetChanged);
+    }
+
+    private void setApps() {
+        AppInfo[] apps = mApps.toArray(new AppInfo[0]);
+        Arrays.sort(apps, AppInfo.COMPONENT_KEY_COMPARATOR);
+        mStore.setApps(apps, 0);
+    }
+
+    private AppInfo newApp(String title) {
+        AppInfo app = new AppInfo();
+        app.title = title;
+        app.sectionName = title.substring(0, 1);
+        app.componentName = new ComponentName("com.test." + title.toLowerCase(), "Activity");
+        app.user = Process.myUserHandle();
+        return app;
+    }
+
+    private void assertMatchesFullList() {
+        List<AdapterItem> expected = mFullList.getAdapterItems();
+        List<AdapterItem> actual = mIncrementalList.getAdapterItems();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            AdapterItem e = expected.get(i);
+            AdapterItem a = actual.get(i);
+            assertSame(e.appInfo, a.appInfo);
+            assertEquals(e.viewType, a.viewType);
+            assertEquals(e.sectionName, a.sectionName);
+            assertEquals(e.position, a.position);
+            assertEquals(e.appIndex, a.appIndex);
+            assertEquals(e.rowIndex, a.rowIndex);
+            assertEquals(e.rowAppIndex, a.rowAppIndex);
+        }
+        assertEquals(mFullList.getNumAppRows(), mIncrementalList.getNumAppRows());
+        assertEquals(mFullList.getApps(), mIncrementalList.getApps());
+
+        List<FastScrollSectionInfo> expectedSections = mFullList.getFastScrollerSections();
+        List<FastScrollSectionInfo> actualSections = mIncrementalList.getFastScrollerSections();
+        assertEquals(expectedSections.size(), actualSections.size());
+        for (int i = 0; i < expectedSections.size(); i++) {
+            FastScrollSectionInfo e = expectedSections.get(i);
+            FastScrollSectionInfo a = actualSections.get(i);
+            assertEquals(e.sectionName, a.sectionName);
+            assertEquals(e.fastScrollToItem.position, a.fastScrollToItem.position);
+            assertSame(actual.get(a.fastScrollToItem.position), a.fastScrollToItem);
+            assertEquals(e.touchFraction, a.touchFraction, 0);
+        }
+
+        // Replaying the notifications on the previously bound apps gives the new apps
+        if (!mAdapter.mDataSetChanged) {
+            assertEquals(actual.size(), mAdapter.mBoundApps.size());
+            for (int i = 0; i < actual.size(); i++) {
+                AppInfo bound = mAdapter.mBoundApps.get(i);
+                if (bound != RecordingAdapter.INSERTED) {
+                    assertSame(actual.get(i).appInfo, bound);
+                }
+            }
+            for (int i : mAdapter.mChanged) {
+                assertFalse(mAdapter.mBoundApps.get(i) == RecordingAdapter.INSERTED);
+            }
+        }
+    }
+
+    /**
+     * Adapter which applies the notified changes to the list of bound apps
+     */
+    private static class RecordingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+        // Placeholder for an inserted item, which is only bound once all the changes are applied
+        static final AppInfo INSERTED = new AppInfo();
+
+        final List<AppInfo> mBoundApps = new ArrayList<>();
+        final List<Integer> mChanged = new ArrayList<>();
+        int mInserted;
+        int mRemoved;
+        boolean mDataSetChanged;
+
+        RecordingAdapter(List<AdapterItem> items) {
+            for (AdapterItem item : items) {
+                mBoundApps.add(item.appInfo);
+            }
+            registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onChanged() {
+                    mDataSetChanged = true;
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount) {
+                    for (int i = 0; i < itemCount; i++) {
+                        mChanged.add(positionStart + i);
+                    }
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount,
+                        Object payload) {
+                    onItemRangeChanged(positionStart, itemCount);
+                }
+
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    for (int i = 0; i < itemCount; i++) {
+                        mInserted++;
+                        mBoundApps.add(positionStart + i, INSERTED);
+                    }
+                }
+
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    for (int i = 0; i < itemCount; i++) {
+                        mRemoved++;
+                        mBoundApps.remove(positionStart);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) { }
+
+        @Override
+        public int getItemCount() {
+            return mBoundApps.size();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.celllayout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.view.View;
+
+import com.android.launcher3.util.CellAndSpan;
+import com.android.launcher3.util.GridOccupancy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for {@link ReorderSolver}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ReorderSolverTest {
+
+    private static final int COUNT_X = 4;
+    private static final int COUNT_Y = 4;
+
+    private final ArrayList<Runnable> mBgTasks = new ArrayList<>();
+    private final ArrayList<Runnable> mResultTasks = new ArrayList<>();
+
+    private ReorderSolver mSolver;
+    private View[] mViews;
+
+    @Before
+    public void setup() {
+        mSolver = new ReorderSolver(mBgTasks::add, mResultTasks::add);
+        mViews = new View[COUNT_X];
+        for (int i = 0; i < mViews.length; i++) {
+            mViews[i] = new View(RuntimeEnvironment.application);
+        }
+    }
+
+    @Test
+    public void testPushSolution() {
+        // A row of items at the top, dropping on the first cell pushes them down
+        ItemConfiguration solution = mSolver.solve(createRequest(true, 0, 0));
+        assertTrue(solution.isSolution);
+        assertEquals(0, solution.cellX);
+        assertEquals(0, solution.cellY);
+        CellAndSpan pushed = solution.map.get(mViews[0]);
+        assertEquals(0, pushed.cellX);
+        assertEquals(1, pushed.cellY);
+        // Other items stay in place
+        assertEquals(0, solution.map.get(mViews[1]).cellY);
+    }
+
+    @Test
+    public void testFixedItemsAreNotMoved() {
+        ItemConfiguration solution = mSolver.solve(createRequest(false, 0, 0));
+        assertFalse(solution.isSolution);
+    }
+
+    @Test
+    public void testShrinkCandidates() {
+        // A 4x4 item does not fit on a page with items, but a 4x3 item does
+        ReorderRequest request = createRequest(false)
+                .addCandidate(0, 0, 4, 4)
+                .addCandidate(0, 1, 4, 3);
+        ItemConfiguration solution = mSolver.solve(request);
+        assertTrue(solution.isSolution);
+        assertEquals(1, solution.cellY);
+        assertEquals(3, solution.spanY);
+    }
+
+    @Test
+    public void testSolutionsAreCached() {
+        ItemConfiguration solution = mSolver.solve(createRequest(true, 1, 0));
+        assertSame(solution, mSolver.solve(createRequest(true, 1, 0)));
+
+        // Any change in the request is a different solution
+        assertNotSame(solution, mSolver.solve(createRequest(true, 2, 0)));
+        ReorderRequest moved = createRequest(true);
+        moved.items.get(0).cell.cellY = 1;
+        assertNotSame(solution, mSolver.solve(moved.addCandidate(1, 0, 1, 1)));
+
+        mSolver.clear();
+        assertNotSame(solution, mSolver.solve(createRequest(true, 1, 0)));
+    }
+
+    @Test
+    public void testSolveAsync() {
+        ItemConfiguration[] result = new ItemConfiguration[1];
+        mSolver.solveAsync(createRequest(true, 0, 0), s -> result[0] = s);
+        assertEquals(1, mBgTasks.size());
+        assertNull(result[0]);
+
+        runTasks(mBgTasks);
+        assertNull(result[0]);
+        runTasks(mResultTasks);
+        assertNotNull(result[0]);
+        assertTrue(result[0].isSolution);
+
+        // The solution is now cached and delivered immediately
+        ItemConfiguration[] cached = new ItemConfiguration[1];
+        mSolver.solveAsync(createRequest(true, 0, 0), s -> cached[0] = s);
+        assertTrue(mBgTasks.isEmpty());
+        assertSame(result[0], cached[0]);
+    }
+
+    @Test
+    public void testStaleSolveIsCancelled() {
+        ItemConfiguration[] result = new ItemConfiguration[2];
+        mSolver.solveAsync(createRequest(true, 0, 0), s -> result[0] = s);
+        mSolver.solveAsync(createRequest(true, 1, 0), s -> result[1] = s);
+        runTasks(mBgTasks);
+        runTasks(mResultTasks);
+        assertNull(result[0]);
+        assertNotNull(result[1]);
+
+        // A synchronous solve cancels the pending one
+        mSolver.solveAsync(createRequest(true, 2, 0), s -> result[0] = s);
+        mSolver.solve(createRequest(true, 3, 0));
+        runTasks(mBgTasks);
+        runTasks(mResultTasks);
+        assertNull(result[0]);
+    }
+
+    private ReorderRequest createRequest(boolean canReorder, int cellX, int cellY) {
+        return createRequest(canReorder).addCandidate(cellX, cellY, 1, 1);
+    }
+
+    /**
+     * Returns a request for a grid with a row of 1x1 items at the top
+     */
+    private ReorderRequest createRequest(boolean canReorder) {
+        GridOccupancy occupied = new GridOccupancy(COUNT_X, COUNT_Y);
+        occupied.markCells(0, 0, COUNT_X, 1, true);
+        ReorderRequest request = new ReorderRequest(COUNT_X, COUNT_Y, occupied, null,
+                new int[] {0, 1});
+        for (int i = 0; i < mViews.length; i++) {
+            request.addItem(mViews[i], i, 0, 1, 1, canReorder);
+        }
+        return request;
+    }
+
+    private static void runTasks(ArrayList<Runnable> tasks) {
+        ArrayList<Runnable> copy = new ArrayList<>(tasks);
+        tasks.clear();
+        copy.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.folder;
+
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Process;
+import android.util.Log;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.model.data.FolderInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.util.IntSparseArrayMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Tests for {@link FolderNameIndex}, comparing the suggestions and latency of
+ * {@link FolderNameProvider} using the index with the provider scanning the app list.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class FolderNameIndexTest {
+
+    private static final String TAG = "FolderNameIndexTest";
+
+    private static final int APP_COUNT = 1000;
+    private static final int FOLDER_COUNT = 50;
+    private static final int ITEMS_PER_FOLDER = 6;
+    private static final int ITERATIONS = 20;
+
+    private Context mContext;
+    private FolderNameIndex mIndex;
+    private ArrayList<AppInfo> mApps;
+    private IntSparseArrayMap<FolderInfo> mFolders;
+    private int mNextId = 1;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mIndex = new FolderNameIndex();
+        mApps = new ArrayList<>();
+        mFolders = new IntSparseArrayMap<>();
+    }
+
+    @Test
+    public void getAppTitle_usesFirstComponent() {
+        AppInfo b = addApp("com.pkg", "B", "Second");
+        AppInfo a = addApp("com.pkg", "A", "First");
+        assertEquals("First", mIndex.getAppTitle("com.pkg"));
+
+        mIndex.onAppRemoved(a);
+        assertEquals("Second", mIndex.getAppTitle("com.pkg"));
+        mIndex.onAppRemoved(b);
+        assertNull(mIndex.getAppTitle("com.pkg"));
+    }
+
+    @Test
+    public void getFolderLabels_followsItemAndFolderUpdates() {
+        FolderInfo games = addFolder("Games");
+        FolderInfo social = addFolder("Social");
+        WorkspaceItemInfo item = addFolderItem(games, addApp("com.game", "Main", "Game"));
+
+        assertEquals(Collections.singletonList("Games"),
+                mIndex.getFolderLabels(Collections.singleton("com.game"), -1, 4));
+        // The folder of the items being suggested for is excluded
+        assertTrue(mIndex.getFolderLabels(
+                Collections.singleton("com.game"), games.id, 4).isEmpty());
+
+        // Rename
+        games.title = "Fun";
+        mIndex.onItemUpdated(games);
+        assertEquals(Collections.singletonList("Fun"),
+                mIndex.getFolderLabels(Collections.singleton("com.game"), -1, 4));
+
+        // Move
+        item.container = social.id;
+        mIndex.onItemUpdated(item);
+        assertEquals(Collections.singletonList("Social"),
+                mIndex.getFolderLabels(Collections.singleton("com.game"), -1, 4));
+
+        // Remove
+        mIndex.onItemRemoved(item);
+        assertTrue(mIndex.getFolderLabels(
+                Collections.singleton("com.game"), -1, 4).isEmpty());
+    }
+
+    @Test
+    public void getFolderLabels_ranksFoldersByMatchingItems() {
+        FolderInfo one = addFolder("One");
+        FolderInfo two = addFolder("Two");
+        addFolderItem(one, addApp("com.a", "Main", "A"));
+        addFolderItem(two, addApp("com.b", "Main", "B"));
+        addFolderItem(two, addApp("com.c", "Main", "C"));
+
+        assertEquals(Arrays.asList("Two", "One"), mIndex.getFolderLabels(
+                Arrays.asList("com.a", "com.b", "com.c"), -1, 4));
+        assertEquals(Collections.singletonList("Two"), mIndex.getFolderLabels(
+                Arrays.asList("com.a", "com.b", "com.c"), -1, 1));
+    }
+
+    @Test
+    public void compareWithListProvider() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < APP_COUNT; i++) {
+            // Some packages have several apps
+            String packageName = "com.pkg" + random.nextInt(APP_COUNT * 3 / 4);
+            addApp(packageName, "Activity" + i, "App " + i);
+        }
+        ArrayList<ArrayList<WorkspaceItemInfo>> queries = new ArrayList<>();
+        AppInfo singleApp = null;
+        for (int i = 0; i < FOLDER_COUNT; i++) {
+            FolderInfo folder = addFolder("Folder " + i);
+            if (i % 2 == 0) {
+                // Half of the folders only contain items of one package
+                singleApp = mApps.get(random.nextInt(mApps.size()));
+                for (int j = 0; j < ITEMS_PER_FOLDER; j++) {
+                    addFolderItem(folder, singleApp);
+                }
+            } else {
+                // The other half also contain the app of the previous folder
+                addFolderItem(folder, singleApp);
+                for (int j = 1; j < ITEMS_PER_FOLDER; j++) {
+                    addFolderItem(folder, mApps.get(random.nextInt(mApps.size())));
+                }
+            }
+            queries.add(folder.contents);
+        }
+
+        FolderNameProvider listProvider = new FolderNameProvider();
+        AppInfo[] sortedApps = mApps.toArray(AppInfo.EMPTY_ARRAY);
+        Arrays.sort(sortedApps, AppInfo.COMPONENT_KEY_COMPARATOR);
+        listProvider.mAppInfos = Arrays.asList(sortedApps);
+        listProvider.mFolderInfos = mFolders;
+        FolderNameProvider indexProvider = new FolderNameProvider();
+        indexProvider.mIndex = mIndex;
+
+        MODEL_EXECUTOR.submit(() -> {
+            int primaryMatches = 0;
+            int extraSuggestions = 0;
+            for (ArrayList<WorkspaceItemInfo> items : queries) {
+                FolderNameInfos listInfos = new FolderNameInfos();
+                listProvider.getSuggestedFolderName(mContext, items, listInfos);
+                FolderNameInfos indexInfos = new FolderNameInfos();
+                indexProvider.getSuggestedFolderName(mContext, items, indexInfos);
+
+                // The index never loses the app title suggestion
+                if (listInfos.hasPrimary()) {
+                    assertEquals(listInfos.getLabels()[0], indexInfos.getLabels()[0]);
+                    primaryMatches++;
+                }
+                extraSuggestions += count(indexInfos) - count(listInfos);
+            }
+
+            long listNanos = measure(listProvider, queries);
+            long indexNanos = measure(indexProvider, queries);
+            Log.d(TAG, "folders=" + queries.size() + " primaryMatches=" + primaryMatches
+                    + " extraSuggestions=" + extraSuggestions
+                    + " listNsPerQuery=" + listNanos + " indexNsPerQuery=" + indexNanos);
+            assertTrue(primaryMatches > 0);
+            assertTrue(extraSuggestions > 0);
+        }).get();
+    }
+
+    private long measure(FolderNameProvider provider,
+            ArrayList<ArrayList<WorkspaceItemInfo>> queries) {
+        // Warm up
+        for (ArrayList<WorkspaceItemInfo> items : queries) {
+            provider.getSuggestedFolderName(mContext, items, new FolderNameInfos());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (ArrayList<WorkspaceItemInfo> items : queries) {
+                provider.getSuggestedFolderName(mContext, items, new FolderNameInfos());
+            }
+        }
+        return (System.nanoTime() - start) / ((long) ITERATIONS * queries.size());
+    }
+
+    private static int count(FolderNameInfos infos) {
+        int count = 0;
+        for (CharSequence label : infos.getLabels()) {
+            if (label != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private AppInfo addApp(String packageName, String className, String title) {
+        ComponentName cn = new ComponentName(packageName, packageName + "." + className);
+        AppInfo info = new AppInfo(cn, title, Process.myUserHandle(),
+                new Intent().setComponent(cn));
+        mApps.add(info);
+        mIndex.onAppAdded(info);
+        return info;
+    }
+
+    private FolderInfo addFolder(String title) {
+        FolderInfo folder = new FolderInfo();
+        folder.id = mNextId++;
+        folder.title = title;
+        mFolders.put(folder.id, folder);
+        mIndex.onItemUpdated(folder);
+        return folder;
+    }
+
+    private WorkspaceItemInfo addFolderItem(FolderInfo folder, AppInfo app) {
+        WorkspaceItemInfo item = new WorkspaceItemInfo(app);
+        item.id = mNextId++;
+        item.container = folder.id;
+        folder.contents.add(item);
+        mIndex.onItemUpdated(item);
+        return item;
+    }
+}
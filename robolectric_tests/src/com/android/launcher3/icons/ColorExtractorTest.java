@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.SparseArray;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link ColorExtractor}, comparing it with the original implementation on a corpus
+ * of generated icons, and benchmarking the cost per icon of an icon cache rebuild.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ColorExtractorTest {
+
+    private static final String TAG = "ColorExtractorTest";
+
+    private static final int CORPUS_SIZE = 300;
+    private static final int[] ICON_SIZES = {1, 7, 48, 72, 96, 144, 192};
+    private static final int BENCHMARK_ICON_SIZE = 192;
+    private static final int BENCHMARK_ICON_COUNT = 200;
+
+    @Test
+    public void testMatchesLegacyExtractor() {
+        ColorExtractor extractor = new ColorExtractor();
+        LegacyColorExtractor legacy = new LegacyColorExtractor();
+        List<Bitmap> corpus = createCorpus(new Random(42), CORPUS_SIZE);
+        for (int i = 0; i < corpus.size(); i++) {
+            Bitmap icon = corpus.get(i);
+            for (int samples : new int[] {1, 20, 64}) {
+                assertEquals("icon " + i + " samples " + samples,
+                        legacy.findDominantColorByHue(icon, samples),
+                        extractor.findDominantColorByHue(icon, samples));
+            }
+        }
+    }
+
+    @Test
+    public void testSpecialCases() {
+        ColorExtractor extractor = new ColorExtractor();
+        // Fully transparent
+        assertEquals(0xff000000, extractor.findDominantColorByHue(solidIcon(48, 0x00ff0000)));
+        // Mostly transparent pixels are ignored
+        assertEquals(0xff000000, extractor.findDominantColorByHue(solidIcon(48, 0x7f00ff00)));
+        // Gray has a zero score but still wins
+        assertEquals(0xff808080, extractor.findDominantColorByHue(solidIcon(48, 0xff808080)));
+        assertEquals(0xff0000ff, extractor.findDominantColorByHue(solidIcon(48, 0xff0000ff)));
+    }
+
+    @Test
+    public void benchmarkIconCacheRebuild() {
+        List<Bitmap> icons = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < BENCHMARK_ICON_COUNT; i++) {
+            icons.add(createIcon(random, BENCHMARK_ICON_SIZE));
+        }
+
+        ColorExtractor extractor = new ColorExtractor();
+        LegacyColorExtractor legacy = new LegacyColorExtractor();
+        long legacyNanos = measure(icons, legacy::findDominantColorByHue);
+        long newNanos = measure(icons, extractor::findDominantColorByHue);
+        Log.d(TAG, "per icon: legacy=" + legacyNanos + "ns bulk=" + newNanos + "ns");
+    }
+
+    private static long measure(List<Bitmap> icons, Extractor extractor) {
+        // Warm up
+        for (Bitmap icon : icons) {
+            extractor.extract(icon);
+        }
+        long start = System.nanoTime();
+        for (Bitmap icon : icons) {
+            extractor.extract(icon);
+        }
+        return (System.nanoTime() - start) / icons.size();
+    }
+
+    private static List<Bitmap> createCorpus(Random random, int count) {
+        List<Bitmap> corpus = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            corpus.add(createIcon(random, ICON_SIZES[i % ICON_SIZES.length]));
+        }
+        return corpus;
+    }
+
+    private static Bitmap solidIcon(int size, int color) {
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        return bitmap;
+    }
+
+    /**
+     * Creates an icon made of a few overlapping rectangles over a transparent or opaque
+     * background, some of them using similar colors, translucent colors or grays.
+     */
+    private static Bitmap createIcon(Random random, int size) {
+        int[] pixels = new int[size * size];
+        if (random.nextBoolean()) {
+            Arrays.fill(pixels, randomColor(random));
+        }
+        int shapes = 1 + random.nextInt(5);
+        int baseColor = randomColor(random);
+        for (int i = 0; i < shapes; i++) {
+            int color = random.nextInt(3) == 0 ? baseColor + random.nextInt(8)
+                    : randomColor(random);
+            int left = random.nextInt(size);
+            int top = random.nextInt(size);
+            int right = left + 1 + random.nextInt(size - left);
+            int bottom = top + 1 + random.nextInt(size - top);
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    pixels[y * size + x] = color;
+                }
+            }
+        }
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(pixels, 0, size, 0, 0, size, size);
+        return bitmap;
+    }
+
+    private static int randomColor(Random random) {
+        switch (random.nextInt(4)) {
+            case 0: {
+                // Gray
+                int c = random.nextInt(256);
+                return 0xff000000 | (c << 16) | (c << 8) | c;
+            }
+            case 1:
+                // Any alpha
+                return random.nextInt();
+            default:
+                return 0xff000000 | random.nextInt(0x1000000);
+        }
+    }
+
+    private interface Extractor {
+        int extract(Bitmap bitmap);
+    }
+
+    /**
+     * The original implementation of {@link ColorExtractor}, sampling pixels one by one and
+     * boxing the bucket scores. {@link android.graphics.Color#colorToHSV} is replaced by a copy
+     * of its native implementation, as the test environment does not round the hue the same
+     * way as devices do.
+     */
+    private static class LegacyColorExtractor {
+
+        private final int NUM_SAMPLES = 20;
+        private final float[] mTmpHsv = new float[3];
+        private final float[] mTmpHueScoreHistogram = new float[360];
+        private final SparseArray<Float> mTmpRgbScores = new SparseArray<>();
+
+        int findDominantColorByHue(Bitmap bitmap) {
+            return findDominantColorByHue(bitmap, NUM_SAMPLES);
+        }
+
+        int findDominantColorByHue(Bitmap bitmap, int samples) {
+            final int height = bitmap.getHeight();
+            final int width = bitmap.getWidth();
+            int sampleStride = (int) Math.sqrt((height * width) / samples);
+            if (sampleStride < 1) {
+                sampleStride = 1;
+            }
+
+            float[] hsv = mTmpHsv;
+            float[] hueScoreHistogram = mTmpHueScoreHistogram;
+            Arrays.fill(hueScoreHistogram, 0);
+            float highScore = -1;
+            int bestHue = -1;
+
+            int[] pixels = new int[samples];
+            int pixelCount = 0;
+
+            for (int y = 0; y < height; y += sampleStride) {
+                for (int x = 0; x < width; x += sampleStride) {
+                    int argb = bitmap.getPixel(x, y);
+                    int alpha = 0xFF & (argb >> 24);
+                    if (alpha < 0x80) {
+                        continue;
+                    }
+                    int rgb = argb | 0xFF000000;
+                    colorToHSV(rgb, hsv);
+                    int hue = (int) hsv[0];
+                    if (hue < 0 || hue >= hueScoreHistogram.length) {
+                        continue;
+                    }
+                    if (pixelCount < samples) {
+                        pixels[pixelCount++] = rgb;
+                    }
+                    float score = hsv[1] * hsv[2];
+                    hueScoreHistogram[hue] += score;
+                    if (hueScoreHistogram[hue] > highScore) {
+                        highScore = hueScoreHistogram[hue];
+                        bestHue = hue;
+                    }
+                }
+            }
+
+            SparseArray<Float> rgbScores = mTmpRgbScores;
+            rgbScores.clear();
+            int bestColor = 0xff000000;
+            highScore = -1;
+            for (int i = 0; i < pixelCount; i++) {
+                int rgb = pixels[i];
+                colorToHSV(rgb, hsv);
+                int hue = (int) hsv[0];
+                if (hue == bestHue) {
+                    float s = hsv[1];
+                    float v = hsv[2];
+                    int bucket = (int) (s * 100) + (int) (v * 10000);
+                    float score = s * v;
+                    Float oldTotal = rgbScores.get(bucket);
+                    float newTotal = oldTotal == null ? score : oldTotal + score;
+                    rgbScores.put(bucket, newTotal);
+                    if (newTotal > highScore) {
+                        highScore = newTotal;
+                        bestColor = rgb;
+                    }
+                }
+            }
+            return bestColor;
+        }
+
+        /**
+         * Same as SkRGBToHSV, which backs {@link android.graphics.Color#colorToHSV} on devices
+         */
+        private static void colorToHSV(int color, float[] hsv) {
+            int r = (color >> 16) & 0xFF;
+            int g = (color >> 8) & 0xFF;
+            int b = color & 0xFF;
+            int max = Math.max(r, Math.max(g, b));
+            int min = Math.min(r, Math.min(g, b));
+            int delta = max - min;
+            float v = max / 255f;
+            if (delta == 0) {
+                hsv[0] = 0;
+                hsv[1] = 0;
+                hsv[2] = v;
+                return;
+            }
+            float s = (float) delta / max;
+            float h;
+            if (r == max) {
+                h = (float) (g - b) / delta;
+            } else if (g == max) {
+                h = 2 + (float) (b - r) / delta;
+            } else {
+                h = 4 + (float) (r - g) / delta;
+            }
+            h *= 60;
+            if (h < 0) {
+                h += 360;
+            }
+            hsv[0] = h;
+            hsv[1] = s;
+            hsv[2] = v;
+        }
+    }
+}
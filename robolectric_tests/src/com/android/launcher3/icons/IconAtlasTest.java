@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Process;
+import android.os.UserHandle;
+
+import com.android.launcher3.icons.IconAtlas.AtlasBitmapInfo;
+import com.android.launcher3.icons.IconAtlas.Region;
+import com.android.launcher3.util.ComponentKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for {@link IconAtlas}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IconAtlasTest {
+
+    private static final int ICON_SIZE = 96;
+    private static final int PAGE_SIZE = 1024;
+    // 10 slots of 98px per row
+    private static final int SLOT_SIZE = 98;
+    private static final int ICONS_PER_PAGE = 100;
+
+    private final UserHandle mUser = Process.myUserHandle();
+    private List<Runnable> mUiTasks;
+
+    @Before
+    public void setup() {
+        mUiTasks = new ArrayList<>();
+    }
+
+    @Test
+    public void testRegionsDoNotOverlap() {
+        IconAtlas atlas = newAtlas(2);
+        atlas.reserve(2 * ICONS_PER_PAGE);
+        List<Region> regions = new ArrayList<>();
+        for (int i = 0; i < 2 * ICONS_PER_PAGE; i++) {
+            Region region = atlas.allocate(key("com.test" + i));
+            assertNotNull(region);
+            assertEquals(ICON_SIZE, region.bounds.width());
+            assertEquals(ICON_SIZE, region.bounds.height());
+            assertTrue(new Rect(0, 0, PAGE_SIZE, PAGE_SIZE).contains(region.bounds));
+            for (Region other : regions) {
+                // Regions on the same page also keep a gutter between them
+                Rect inset = new Rect(other.bounds);
+                inset.inset(-1, -1);
+                assertFalse(other.page == region.page
+                        && Rect.intersects(inset, region.bounds));
+            }
+            regions.add(region);
+        }
+        assertEquals(2, atlas.getPageCount());
+        assertSame(regions.get(0).page, regions.get(ICONS_PER_PAGE - 1).page);
+        assertFalse(regions.get(0).page == regions.get(ICONS_PER_PAGE).page);
+    }
+
+    @Test
+    public void testReloadReusesSlot() {
+        IconAtlas atlas = newAtlas(1);
+        Region region = atlas.add(key("com.test"), newIcon());
+        // For instance after the entry was evicted from the memory cache and loaded again
+        assertSame(region, atlas.add(key("com.test"), newIcon()));
+        assertEquals(1, atlas.getIconCount());
+    }
+
+    @Test
+    public void testFullAtlasRejectsIcons() {
+        IconAtlas atlas = newAtlas(1);
+        atlas.reserve(ICONS_PER_PAGE);
+        for (int i = 0; i < ICONS_PER_PAGE; i++) {
+            assertNotNull(atlas.add(key("com.test" + i), newIcon()));
+        }
+        assertNull(atlas.add(key("com.other"), newIcon()));
+        assertEquals(ICONS_PER_PAGE, atlas.getIconCount());
+        assertEquals(1, atlas.getPageCount());
+    }
+
+    @Test
+    public void testRemovedPackageSlotsAreReused() {
+        IconAtlas atlas = newAtlas(1);
+        atlas.reserve(ICONS_PER_PAGE);
+        Set<Region> removed = new HashSet<>();
+        for (int i = 0; i < ICONS_PER_PAGE; i++) {
+            String packageName = i < 10 ? "com.removed" : "com.test";
+            Region region = atlas.allocate(new ComponentKey(
+                    new ComponentName(packageName, "Activity" + i), mUser));
+            if (i < 10) {
+                removed.add(region);
+            }
+        }
+        assertNull(atlas.allocate(key("com.other")));
+
+        atlas.removePackage("com.removed", mUser);
+        assertEquals(ICONS_PER_PAGE - 10, atlas.getIconCount());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(removed.contains(atlas.allocate(key("com.other" + i))));
+        }
+        assertNull(atlas.allocate(key("com.other")));
+        assertEquals(1, atlas.getPageCount());
+    }
+
+    @Test
+    public void testPagesSizedToReservedIcons() {
+        IconAtlas atlas = newAtlas(2);
+        assertEquals(0, atlas.getPageCount());
+        assertEquals(0, atlas.getAllocatedBytes());
+
+        // 15 icons need 2 rows of 10 slots
+        atlas.reserve(15);
+        Region first = null;
+        for (int i = 0; i < 15; i++) {
+            Region region = atlas.allocate(key("com.test" + i));
+            first = first == null ? region : first;
+            assertSame(first.page, region.page);
+        }
+        assertEquals(1, atlas.getPageCount());
+        assertEquals(PAGE_SIZE, first.page.getWidth());
+        assertEquals(2 * SLOT_SIZE, first.page.getHeight());
+
+        // The remaining slots of the last row are used before allocating a new page
+        for (int i = 15; i < 20; i++) {
+            assertSame(first.page, atlas.allocate(key("com.test" + i)).page);
+        }
+        assertEquals(1, atlas.getPageCount());
+        assertEquals(SLOT_SIZE, atlas.allocate(key("com.test20")).page.getHeight());
+        assertEquals(2, atlas.getPageCount());
+    }
+
+    @Test
+    public void testSmallPagesCountTowardsMaxSlots() {
+        IconAtlas atlas = newAtlas(1);
+        for (int i = 0; i < ICONS_PER_PAGE; i++) {
+            // Without a reservation, each page holds a single row
+            atlas.reserve(0);
+            assertNotNull(atlas.allocate(key("com.test" + i)));
+        }
+        assertEquals(ICONS_PER_PAGE / 10, atlas.getPageCount());
+        assertNull(atlas.allocate(key("com.other")));
+    }
+
+    @Test
+    public void testClearReleasesPages() {
+        IconAtlas atlas = newAtlas(1);
+        atlas.reserve(10);
+        Bitmap pending = newIcon();
+        Region region = atlas.add(key("com.test"), pending);
+        assertTrue(atlas.getAllocatedBytes() > 0);
+
+        atlas.clear();
+        assertEquals(0, atlas.getPageCount());
+        assertEquals(0, atlas.getIconCount());
+        assertEquals(0, atlas.getAllocatedBytes());
+        // Icons which were not drawn yet are dropped, the old page is left to bound drawables
+        assertTrue(pending.isRecycled());
+        assertFalse(region.page.isRecycled());
+        runUiTasks();
+        assertEquals(0, atlas.getDrawPassCount());
+
+        atlas.reserve(1);
+        Region newRegion = atlas.add(key("com.test"), newIcon());
+        assertFalse(newRegion.page == region.page);
+        assertEquals(1, atlas.getPageCount());
+    }
+
+    @Test
+    public void testThemedIconsAreNotAdded() {
+        assertTrue(IconAtlas.canAdd(BitmapInfo.of(newIcon(), 0).toByteArray()));
+        assertFalse(IconAtlas.canAdd(new byte[] {BitmapInfo.TYPE_THEMED, 0, 0}));
+    }
+
+    @Test
+    public void testIconsDrawnInOneUiPass() {
+        IconAtlas atlas = newAtlas(2);
+        atlas.reserve(150);
+        List<Bitmap> icons = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            Bitmap icon = newIcon();
+            icons.add(icon);
+            atlas.add(key("com.test" + i), icon);
+        }
+        // Nothing is drawn into the pages until the UI thread runs the single scheduled pass
+        assertEquals(1, mUiTasks.size());
+        assertEquals(0, atlas.getDrawPassCount());
+        assertFalse(icons.get(0).isRecycled());
+
+        runUiTasks();
+        assertEquals(1, atlas.getDrawPassCount());
+        for (Bitmap icon : icons) {
+            assertTrue(icon.isRecycled());
+        }
+
+        atlas.add(key("com.test0"), newIcon());
+        assertEquals(1, mUiTasks.size());
+        runUiTasks();
+        assertEquals(2, atlas.getDrawPassCount());
+    }
+
+    @Test
+    public void testDrawableUsesRegion() {
+        IconAtlas atlas = newAtlas(1);
+        atlas.allocate(key("com.first"));
+        AtlasBitmapInfo info = new AtlasBitmapInfo(atlas.allocate(key("com.test")), 0xFF00FF00);
+        assertTrue(info.isLowRes());
+        assertNull(info.toByteArray());
+
+        FastBitmapDrawable drawable = new FastBitmapDrawable(
+                info.region.page, info.region.bounds, info.color, false);
+        assertEquals(ICON_SIZE, drawable.getIntrinsicWidth());
+        assertEquals(ICON_SIZE, drawable.getIntrinsicHeight());
+
+        FastBitmapDrawable copy = (FastBitmapDrawable) drawable.getConstantState().newDrawable();
+        assertSame(info.region.page, copy.mBitmap);
+        assertEquals(info.region.bounds, copy.mSrcRect);
+    }
+
+    /**
+     * All apps with 300 apps opened for the first time, then again after all the entries were
+     * evicted from the memory cache and reloaded: the icons are backed by 3 bitmaps, uploaded by
+     * one draw pass per load, instead of one bitmap and upload per icon.
+     */
+    @Test
+    public void testFirstOpenAndReloadUseFewBitmaps() {
+        int appCount = 300;
+        IconAtlas atlas = newAtlas(4);
+        Set<Bitmap> pages = new HashSet<>();
+        for (int pass = 0; pass < 2; pass++) {
+            atlas.reserve(appCount);
+            for (int i = 0; i < appCount; i++) {
+                Region region = atlas.add(key("com.test" + i), newIcon());
+                assertNotNull(region);
+                pages.add(region.page);
+            }
+            runUiTasks();
+        }
+        assertEquals(3, pages.size());
+        assertEquals(3, atlas.getPageCount());
+        assertEquals(appCount, atlas.getIconCount());
+        assertEquals(2, atlas.getDrawPassCount());
+    }
+
+    private IconAtlas newAtlas(int maxPages) {
+        return new IconAtlas(ICON_SIZE, PAGE_SIZE, maxPages, mUiTasks::add);
+    }
+
+    private ComponentKey key(String packageName) {
+        return new ComponentKey(new ComponentName(packageName, "Activity"), mUser);
+    }
+
+    private static Bitmap newIcon() {
+        return Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    private void runUiTasks() {
+        while (!mUiTasks.isEmpty()) {
+            mUiTasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.RectF;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link IconNormalizer}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IconNormalizerTest {
+
+    private static final int ICON_SIZE = 48;
+
+    private Context mContext;
+    private IconNormalizer mNormalizer;
+    private Drawable mIcon;
+
+    @Before
+    public void setup() {
+        mContext = RuntimeEnvironment.application;
+        mNormalizer = IconNormalizer.getInstance(mContext, ICON_SIZE, false);
+        mIcon = new ColorDrawable(Color.RED);
+    }
+
+    @Test
+    public void testResultRecorded() {
+        assertNull(IconNormalizer.endResultCaching());
+
+        IconNormalizer.beginResultCaching(null);
+        RectF bounds = new RectF();
+        float scale = mNormalizer.getScale(mIcon, bounds, null, null);
+        IconNormalizer.Result result = IconNormalizer.endResultCaching();
+
+        assertNotNull(result);
+        assertEquals(scale, result.scale, 0);
+        assertEquals(bounds, result.bounds);
+        // Results are not recorded outside of caching
+        mNormalizer.getScale(mIcon, null, null, null);
+        assertNull(IconNormalizer.endResultCaching());
+    }
+
+    @Test
+    public void testResultReused() {
+        float expectedScale = mNormalizer.getScale(mIcon, null, null, null);
+        IconNormalizer.Result cached = new IconNormalizer.Result(getParams(), 0.5f,
+                new RectF(0.1f, 0.2f, 0.3f, 0.4f), false);
+        IconNormalizer.beginResultCaching(cached);
+        RectF bounds = new RectF();
+        assertEquals(0.5f, mNormalizer.getScale(mIcon, bounds, null, null), 0);
+        assertEquals(cached.bounds, bounds);
+
+        // Only the first normalization is cached
+        assertEquals(expectedScale, mNormalizer.getScale(mIcon, null, null, null), 0);
+        assertSame(cached, IconNormalizer.endResultCaching());
+    }
+
+    @Test
+    public void testResultWithOtherParamsNotReused() {
+        IconNormalizer.Result cached = new IconNormalizer.Result("other", 0.5f,
+                new RectF(0.1f, 0.2f, 0.3f, 0.4f), false);
+        IconNormalizer.beginResultCaching(cached);
+        float scale = mNormalizer.getScale(mIcon, null, null, null);
+        IconNormalizer.Result result = IconNormalizer.endResultCaching();
+
+        assertNotSame(cached, result);
+        assertEquals(scale, result.scale, 0);
+    }
+
+    @Test
+    public void testInstancePerThread() throws Exception {
+        assertSame(mNormalizer, IconNormalizer.getInstance(mContext, ICON_SIZE, false));
+        assertNotSame(mNormalizer, IconNormalizer.getInstance(mContext, ICON_SIZE * 2, false));
+
+        AtomicReference<IconNormalizer> otherThreadNormalizer = new AtomicReference<>();
+        Thread thread = new Thread(() -> otherThreadNormalizer.set(
+                IconNormalizer.getInstance(mContext, ICON_SIZE, false)));
+        thread.start();
+        thread.join();
+        assertNotNull(otherThreadNormalizer.get());
+        assertNotSame(IconNormalizer.getInstance(mContext, ICON_SIZE, false),
+                otherThreadNormalizer.get());
+    }
+
+    @Test
+    public void testInvalidateInstances() {
+        IconNormalizer.invalidateInstances();
+        IconNormalizer normalizer = IconNormalizer.getInstance(mContext, ICON_SIZE, false);
+        assertNotSame(mNormalizer, normalizer);
+        assertSame(normalizer, IconNormalizer.getInstance(mContext, ICON_SIZE, false));
+    }
+
+    @Test
+    public void testInvalidateDuringCachingSkipsResult() {
+        IconNormalizer.Result cached = new IconNormalizer.Result(getParams(), 0.5f,
+                new RectF(0.1f, 0.2f, 0.3f, 0.4f), false);
+        IconNormalizer.beginResultCaching(cached);
+        IconNormalizer.invalidateInstances();
+        float scale = IconNormalizer.getInstance(mContext, ICON_SIZE, false)
+                .getScale(mIcon, null, null, null);
+
+        // The result computed before the change is neither reused nor recorded
+        assertNotEquals(0.5f, scale, 0);
+        assertNull(IconNormalizer.endResultCaching());
+    }
+
+    private String getParams() {
+        IconNormalizer.beginResultCaching(null);
+        mNormalizer.getScale(mIcon, null, null, null);
+        return IconNormalizer.endResultCaching().params;
+    }
+}
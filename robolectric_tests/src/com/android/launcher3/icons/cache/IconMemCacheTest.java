@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.os.UserHandle;
+
+import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.icons.cache.BaseIconCache.CacheEntry;
+import com.android.launcher3.util.ComponentKey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Tests for {@link IconMemCache}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IconMemCacheTest {
+
+    private static final int ICON_SIZE = 10;
+
+    private final UserHandle mUser = Process.myUserHandle();
+    private final int mEntrySize = IconMemCache.getSize(newEntry());
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        IconMemCache cache = new IconMemCache(10, 3 * mEntrySize);
+        CacheEntry a = newEntry();
+        cache.put(key("a"), a);
+        cache.put(key("b"), newEntry());
+        cache.put(key("c"), newEntry());
+        assertSame(a, cache.get(key("a")));
+
+        cache.put(key("d"), newEntry());
+        assertNull(cache.get(key("b")));
+        assertNotNull(cache.get(key("a")));
+        assertNotNull(cache.get(key("c")));
+        assertNotNull(cache.get(key("d")));
+
+        assertEquals(3, cache.size());
+        assertEquals(3 * mEntrySize, cache.getEvictableBytes());
+        assertEquals(4, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testPinnedAndUnevictableEntriesAreKept() {
+        IconMemCache cache = new IconMemCache(10, 2 * mEntrySize);
+        cache.put(key("pinned"), newEntry());
+        cache.putUnevictable(key("promise"), newEntry());
+        cache.pin(key("pinned"));
+        for (int i = 0; i < 10; i++) {
+            cache.put(key("app" + i), newEntry());
+        }
+        assertNotNull(cache.get(key("pinned")));
+        assertNotNull(cache.get(key("promise")));
+        assertNotNull(cache.get(key("app9")));
+        assertNotNull(cache.get(key("app8")));
+        assertNull(cache.get(key("app7")));
+        assertEquals(2 * mEntrySize, cache.getEvictableBytes());
+
+        // Unpinned entries count towards the budget again
+        cache.unpin(key("pinned"));
+        assertNull(cache.get(key("pinned")));
+        assertNotNull(cache.get(key("promise")));
+        assertEquals(2 * mEntrySize, cache.getEvictableBytes());
+    }
+
+    @Test
+    public void testKeyPinnedBySeveralItems() {
+        IconMemCache cache = new IconMemCache(10, mEntrySize);
+        // For instance an app in all apps which also has a shortcut on the workspace
+        cache.pin(key("pinned"));
+        cache.pin(key("pinned"));
+        cache.put(key("pinned"), newEntry());
+        cache.put(key("app"), newEntry());
+        assertEquals(mEntrySize, cache.getEvictableBytes());
+
+        cache.unpin(key("pinned"));
+        cache.put(key("other"), newEntry());
+        assertNotNull(cache.get(key("pinned")));
+
+        // Once unpinned by all its items, the entry counts towards the budget again
+        cache.unpin(key("pinned"));
+        assertEquals(mEntrySize, cache.getEvictableBytes());
+        assertNull(cache.get(key("other")));
+        cache.put(key("app"), newEntry());
+        assertNull(cache.get(key("pinned")));
+        assertEquals(mEntrySize, cache.getEvictableBytes());
+
+        // Unbalanced calls are ignored
+        cache.unpin(key("pinned"));
+        assertEquals(mEntrySize, cache.getEvictableBytes());
+    }
+
+    @Test
+    public void testReplacingAndRemovingUpdatesSize() {
+        IconMemCache cache = new IconMemCache(10, 10 * mEntrySize);
+        CacheEntry lowRes = new CacheEntry();
+        cache.put(key("a"), lowRes);
+        assertEquals(IconMemCache.getSize(lowRes), cache.getEvictableBytes());
+        cache.put(key("a"), newEntry());
+        cache.put(new ComponentKey(new ComponentName("other", "a"), mUser), newEntry());
+        assertEquals(2 * mEntrySize, cache.getEvictableBytes());
+
+        cache.removePackage("test", mUser);
+        assertNull(cache.get(key("a")));
+        assertEquals(mEntrySize, cache.getEvictableBytes());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEvictableBytes());
+    }
+
+    @Test
+    public void testNoBudgetKeepsNothing() {
+        IconMemCache cache = new IconMemCache(10, 0);
+        cache.put(key("a"), newEntry());
+        cache.putUnevictable(key("b"), newEntry());
+        assertNull(cache.get(key("a")));
+        assertNull(cache.get(key("b")));
+    }
+
+    private ComponentKey key(String className) {
+        return new ComponentKey(new ComponentName("test", className), mUser);
+    }
+
+    private static CacheEntry newEntry() {
+        CacheEntry entry = new CacheEntry();
+        entry.bitmap = BitmapInfo.of(
+                Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888), 0);
+        return entry;
+    }
+}
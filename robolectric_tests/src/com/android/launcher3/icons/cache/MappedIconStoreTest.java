@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.launcher3.icons.cache.BaseIconCache.IconDB;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link MappedIconStore}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MappedIconStoreTest {
+
+    private static final String TAG = "MappedIconStoreTest";
+
+    private static final String STORE_NAME = "test_icons-store";
+    private static final int VERSION = 1;
+    private static final int BENCHMARK_APP_COUNT = 600;
+
+    private Context mContext;
+    private File mDir;
+    private MappedIconStore mStore;
+
+    @Before
+    public void setup() {
+        mContext = RuntimeEnvironment.application;
+        mDir = mContext.getCacheDir();
+        mStore = new MappedIconStore(mDir, STORE_NAME, VERSION);
+        mStore.clear();
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        mStore.put(newValues("com.test/.A", 0, "A", 10));
+
+        MappedIconStore.Entry entry = new MappedIconStore.Entry();
+        assertTrue(mStore.get("com.test/.A", 0, false, entry));
+        assertEquals("A", entry.label);
+        assertEquals(10, entry.lastUpdated);
+        assertEquals("state", entry.systemState);
+        assertArrayEquals(iconBytes("A"), entry.icon);
+
+        assertTrue(mStore.get("com.test/.A", 0, true, entry));
+        assertNull(entry.icon);
+
+        assertFalse(mStore.get("com.test/.A", 1, false, entry));
+        assertFalse(mStore.get("com.test/.B", 0, false, entry));
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        mStore.put(newValues("com.test/.A", 0, "A", 10));
+        mStore.put(newValues("com.test/.A", 0, "A2", 20));
+        mStore.put(newValues("com.test/.B", 0, "B", 10));
+        mStore.put(newValues("com.other/.C", 0, "C", 10));
+
+        MappedIconStore.Entry entry = new MappedIconStore.Entry();
+        assertTrue(mStore.get("com.test/.A", 0, false, entry));
+        assertEquals("A2", entry.label);
+        assertEquals(20, entry.lastUpdated);
+
+        mStore.removePackage("com.test", 0);
+        assertFalse(mStore.get("com.test/.A", 0, false, entry));
+        assertFalse(mStore.get("com.test/.B", 0, false, entry));
+        assertTrue(mStore.get("com.other/.C", 0, false, entry));
+
+        mStore.remove("com.other/.C", 0);
+        assertFalse(mStore.get("com.other/.C", 0, false, entry));
+    }
+
+    @Test
+    public void testCompactionAndReopen() {
+        for (int i = 0; i < BENCHMARK_APP_COUNT; i++) {
+            mStore.put(newValues(component(i), 0, "Old" + i, i));
+        }
+        for (int i = 0; i < BENCHMARK_APP_COUNT; i++) {
+            if (i % 3 == 0) {
+                mStore.remove(component(i), 0);
+            } else {
+                mStore.put(newValues(component(i), 0, "App" + i, i));
+            }
+        }
+        mStore.compact();
+        mStore.close();
+
+        mStore = new MappedIconStore(mDir, STORE_NAME, VERSION);
+        MappedIconStore.Entry entry = new MappedIconStore.Entry();
+        for (int i = 0; i < BENCHMARK_APP_COUNT; i++) {
+            if (i % 3 == 0) {
+                assertFalse(mStore.get(component(i), 0, false, entry));
+            } else {
+                assertTrue(mStore.get(component(i), 0, false, entry));
+                assertEquals("App" + i, entry.label);
+                assertArrayEquals(iconBytes("App" + i), entry.icon);
+            }
+        }
+    }
+
+    @Test
+    public void testInterruptedCompactionKeepsStore() throws Exception {
+        mStore.put(newValues("com.test/.A", 0, "A", 10));
+        mStore.close();
+
+        // Files left behind by a compaction which did not reach the index rename
+        File partialData = new File(mDir, STORE_NAME + ".1.dat");
+        try (FileOutputStream out = new FileOutputStream(partialData)) {
+            out.write(iconBytes("garbage"));
+        }
+        new File(mDir, STORE_NAME + ".idx.tmp").createNewFile();
+
+        mStore = new MappedIconStore(mDir, STORE_NAME, VERSION);
+        MappedIconStore.Entry entry = new MappedIconStore.Entry();
+        assertTrue(mStore.get("com.test/.A", 0, false, entry));
+        assertEquals("A", entry.label);
+        assertFalse(partialData.exists());
+
+        mStore.compact();
+        assertTrue(mStore.get("com.test/.A", 0, false, entry));
+        assertArrayEquals(iconBytes("A"), entry.icon);
+        assertFalse(new File(mDir, STORE_NAME + ".0.dat").exists());
+    }
+
+    @Test
+    public void testVersionChangeResetsStore() {
+        mStore.put(newValues("com.test/.A", 0, "A", 10));
+        mStore.close();
+
+        mStore = new MappedIconStore(mDir, STORE_NAME, VERSION + 1);
+        assertFalse(mStore.get("com.test/.A", 0, false, new MappedIconStore.Entry()));
+    }
+
+    @Test
+    public void testDataLostNotified() {
+        int[] lostCount = new int[1];
+        mStore.put(newValues("com.test/.A", 0, "A", 10));
+        mStore.close();
+
+        // Reopening an intact store keeps its entries
+        mStore = new MappedIconStore(mDir, STORE_NAME, VERSION, () -> lostCount[0]++);
+        assertEquals(0, lostCount[0]);
+
+        mStore.clear();
+        assertEquals(1, lostCount[0]);
+        mStore.close();
+
+        mStore = new MappedIconStore(mDir, STORE_NAME, VERSION + 1, () -> lostCount[0]++);
+        assertEquals(2, lostCount[0]);
+    }
+
+    @Test
+    public void benchmarkLookupAgainstIconDB() {
+        IconDB db = new IconDB(mContext, "test_icons.db", 100);
+        db.clear();
+        for (int i = 0; i < BENCHMARK_APP_COUNT; i++) {
+            ContentValues values = newValues(component(i), 0, "App" + i, i);
+            db.insertOrReplace(values);
+            mStore.put(values);
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BENCHMARK_APP_COUNT; i++) {
+            try (Cursor c = db.query(IconDB.COLUMNS_HIGH_RES,
+                    IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
+                    new String[]{component(i), "0"})) {
+                assertTrue(c.moveToNext());
+                c.getBlob(2);
+            }
+        }
+        long dbTime = SystemClock.elapsedRealtimeNanos() - start;
+
+        MappedIconStore.Entry entry = new MappedIconStore.Entry();
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BENCHMARK_APP_COUNT; i++) {
+            assertTrue(mStore.get(component(i), 0, false, entry));
+        }
+        long storeTime = SystemClock.elapsedRealtimeNanos() - start;
+        db.close();
+
+        Log.d(TAG, "Lookup of " + BENCHMARK_APP_COUNT + " icons: IconDB=" + dbTime / 1000
+                + "us, MappedIconStore=" + storeTime / 1000 + "us");
+    }
+
+    private static String component(int i) {
+        return "com.test.app" + i + "/.MainActivity";
+    }
+
+    private static byte[] iconBytes(String label) {
+        byte[] bytes = new byte[256];
+        Arrays.fill(bytes, (byte) label.hashCode());
+        return bytes;
+    }
+
+    private static ContentValues newValues(String component, long user, String label,
+            long lastUpdated) {
+        ContentValues values = new ContentValues();
+        values.put(IconDB.COLUMN_COMPONENT, component);
+        values.put(IconDB.COLUMN_USER, user);
+        values.put(IconDB.COLUMN_LAST_UPDATED, lastUpdated);
+        values.put(IconDB.COLUMN_VERSION, 1);
+        values.put(IconDB.COLUMN_ICON, iconBytes(label));
+        values.put(IconDB.COLUMN_ICON_COLOR, 0xFF00FF00);
+        values.put(IconDB.COLUMN_LABEL, label);
+        values.put(IconDB.COLUMN_SYSTEM_STATE, "state");
+        return values;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import com.android.launcher3.model.GridMigrationPlanner.Input;
+import com.android.launcher3.model.GridMigrationPlanner.Plan;
+import com.android.launcher3.model.GridSizeMigrationTaskV2.DbEntry;
+import com.android.launcher3.util.GridOccupancy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Tests for {@link GridMigrationPlanner}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GridMigrationPlannerTest {
+
+    private static final String TAG = "GridMigrationPlannerTest";
+
+    private int mNextId;
+
+    @Before
+    public void setup() {
+        mNextId = 1;
+        GridMigrationPlanner.clearCache();
+    }
+
+    @Test
+    public void testPlacement() {
+        ArrayList<DbEntry> srcHotseat = new ArrayList<>();
+        srcHotseat.add(createEntry(ITEM_TYPE_APPLICATION, "app1", 0, 0, 0));
+        srcHotseat.add(createEntry(ITEM_TYPE_APPLICATION, "app2", 1, 0, 0));
+        srcHotseat.add(createEntry(ITEM_TYPE_APPLICATION, "app3", 3, 0, 0));
+        srcHotseat.add(createEntry(ITEM_TYPE_APPLICATION, "app4", 4, 0, 0));
+        ArrayList<DbEntry> srcWorkspace = new ArrayList<>();
+        srcWorkspace.add(createEntry(ITEM_TYPE_APPLICATION, "app5", 0, 2, 2));
+        srcWorkspace.add(createEntry(ITEM_TYPE_APPLICATION, "app6", 0, 2, 3));
+        srcWorkspace.add(createEntry(ITEM_TYPE_APPLICATION, "app8", 0, 4, 1));
+        srcWorkspace.add(createEntry(ITEM_TYPE_APPLICATION, "app9", 0, 4, 2));
+        srcWorkspace.add(createEntry(ITEM_TYPE_APPLICATION, "app10", 0, 4, 3));
+
+        ArrayList<DbEntry> destHotseat = new ArrayList<>();
+        destHotseat.add(createEntry(ITEM_TYPE_APPLICATION, "app2", 1, 0, 0));
+        ArrayList<DbEntry> destWorkspace = new ArrayList<>();
+        destWorkspace.add(createEntry(ITEM_TYPE_APPLICATION, "app7", 0, 2, 2));
+
+        Input input = new Input(srcHotseat, srcWorkspace, destHotseat, destWorkspace);
+        Plan plan = GridMigrationPlanner.computePlan(input, 4, 4, 4);
+
+        String[] expected = {
+                "app1 hotseat 0", "app3 hotseat 2", "app4 hotseat 3",
+                "app6 0:0,3", "app10 0:1,3", "app5 0:2,3", "app9 0:3,3", "app8 0:0,2",
+        };
+        assertEquals(expected.length, plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            DbEntry entry = plan.getPlacedEntry(input, i);
+            String placement = plan.isHotseat(i)
+                    ? entry.mIntent + " hotseat " + entry.screenId
+                    : entry.mIntent + " " + entry.screenId + ":" + entry.cellX + "," + entry.cellY;
+            assertEquals(expected[i], placement);
+        }
+
+        // The snapshot is not modified
+        assertEquals(4, srcWorkspace.get(4).cellX);
+        assertEquals(3, srcWorkspace.get(4).cellY);
+    }
+
+    @Test
+    public void testNothingToMigrate() {
+        ArrayList<DbEntry> items = new ArrayList<>();
+        items.add(createEntry(ITEM_TYPE_APPLICATION, "app1", 0, 1, 1));
+        Input input = new Input(new ArrayList<>(), items, new ArrayList<>(), items);
+        assertTrue(GridMigrationPlanner.computePlan(input, 4, 4, 4).isEmpty());
+    }
+
+    @Test
+    public void testWidgetsResizedAndDropped() {
+        ArrayList<DbEntry> srcWorkspace = new ArrayList<>();
+        DbEntry resizable = createEntry(ITEM_TYPE_APPWIDGET, "widget1", 0, 0, 1);
+        resizable.spanX = 5;
+        resizable.spanY = 2;
+        resizable.minSpanX = 2;
+        resizable.minSpanY = 2;
+        srcWorkspace.add(resizable);
+        DbEntry tooLarge = createEntry(ITEM_TYPE_APPWIDGET, "widget2", 0, 0, 3);
+        tooLarge.spanX = tooLarge.minSpanX = 5;
+        srcWorkspace.add(tooLarge);
+
+        Input input = new Input(new ArrayList<>(), srcWorkspace, new ArrayList<>(),
+                new ArrayList<>());
+        Plan plan = GridMigrationPlanner.computePlan(input, 4, 4, 4);
+        assertEquals(1, plan.size());
+        DbEntry entry = plan.getPlacedEntry(input, 0);
+        assertEquals("widget1", entry.mIntent);
+        assertEquals(2, entry.spanX);
+        assertEquals(2, entry.spanY);
+    }
+
+    @Test
+    public void testPlanCached() {
+        ArrayList<DbEntry> srcWorkspace = createWorkspace(new Random(1), 100, 5, 5);
+        Input input = new Input(new ArrayList<>(), srcWorkspace, new ArrayList<>(),
+                new ArrayList<>());
+        Plan plan = GridMigrationPlanner.getPlan(input, 4, 4, 4);
+
+        // Same items read again
+        Input sameInput = new Input(new ArrayList<>(), new ArrayList<>(srcWorkspace),
+                new ArrayList<>(), new ArrayList<>());
+        assertSame(plan, GridMigrationPlanner.getPlan(sameInput, 4, 4, 4));
+        assertNotSame(plan, GridMigrationPlanner.getPlan(input, 4, 3, 4));
+
+        srcWorkspace.get(0).cellX++;
+        Input changedInput = new Input(new ArrayList<>(), srcWorkspace, new ArrayList<>(),
+                new ArrayList<>());
+        // The cached snapshot keeps the values read when it was created
+        assertTrue(input.hasSameValues(sameInput));
+        assertFalse(input.hasSameValues(changedInput));
+        assertNotSame(plan, GridMigrationPlanner.getPlan(changedInput, 4, 4, 4));
+    }
+
+    @Test
+    public void benchmarkPlanning() {
+        Random random = new Random(42);
+        ArrayList<DbEntry> srcWorkspace = createWorkspace(random, 2000, 5, 5);
+        ArrayList<DbEntry> destWorkspace = new ArrayList<>(srcWorkspace.subList(0, 200));
+        Input input = new Input(new ArrayList<>(), srcWorkspace, new ArrayList<>(),
+                new ArrayList<>(destWorkspace));
+
+        int[][] grids = {{4, 4}, {4, 5}, {3, 3}, {5, 5}, {5, 6}};
+        long start = System.nanoTime();
+        int placements = 0;
+        for (int[] grid : grids) {
+            Plan plan = GridMigrationPlanner.computePlan(input, 4, grid[0], grid[1]);
+            placements += plan.size();
+            assertNoOverlap(input, plan, destWorkspace, grid[0], grid[1]);
+        }
+        long computeTime = System.nanoTime() - start;
+
+        for (int[] grid : grids) {
+            GridMigrationPlanner.getPlan(input, 4, grid[0], grid[1]);
+        }
+        start = System.nanoTime();
+        for (int[] grid : grids) {
+            assertFalse(GridMigrationPlanner.getPlan(input, 4, grid[0], grid[1]).isEmpty());
+        }
+        long cachedTime = System.nanoTime() - start;
+
+        Log.d(TAG, "items=" + srcWorkspace.size() + " grids=" + grids.length
+                + " placements=" + placements
+                + " computeUsPerGrid=" + computeTime / 1000 / grids.length
+                + " cachedUsPerGrid=" + cachedTime / 1000 / grids.length);
+    }
+
+    private void assertNoOverlap(Input input, Plan plan, ArrayList<DbEntry> destWorkspace,
+            int trgX, int trgY) {
+        HashMap<Integer, GridOccupancy> screens = new HashMap<>();
+        for (DbEntry entry : destWorkspace) {
+            getOccupancy(screens, entry.screenId, trgX, trgY).markCells(entry, true);
+        }
+        for (int i = 0; i < plan.size(); i++) {
+            DbEntry entry = plan.getPlacedEntry(input, i);
+            GridOccupancy occupancy = getOccupancy(screens, entry.screenId, trgX, trgY);
+            assertTrue(occupancy.isRegionVacant(
+                    entry.cellX, entry.cellY, entry.spanX, entry.spanY));
+            occupancy.markCells(entry, true);
+        }
+    }
+
+    private static GridOccupancy getOccupancy(HashMap<Integer, GridOccupancy> screens,
+            int screenId, int trgX, int trgY) {
+        GridOccupancy occupancy = screens.get(screenId);
+        if (occupancy == null) {
+            occupancy = new GridOccupancy(trgX, trgY);
+            screens.put(screenId, occupancy);
+        }
+        return occupancy;
+    }
+
+    private ArrayList<DbEntry> createWorkspace(Random random, int count, int srcX, int srcY) {
+        ArrayList<DbEntry> entries = new ArrayList<>();
+        int perScreen = srcX * srcY;
+        for (int i = 0; i < count; i++) {
+            int cell = i % perScreen;
+            DbEntry entry = createEntry(ITEM_TYPE_APPLICATION, "app" + i, i / perScreen,
+                    cell % srcX, cell / srcX);
+            if (random.nextInt(10) == 0 && cell % srcX < srcX - 1) {
+                entry.itemType = ITEM_TYPE_APPWIDGET;
+                entry.spanX = 2;
+                entry.minSpanX = 1 + random.nextInt(2);
+            }
+            entries.add(entry);
+        }
+        Collections.shuffle(entries, random);
+        return entries;
+    }
+
+    private DbEntry createEntry(int itemType, String intent, int screenId, int cellX,
+            int cellY) {
+        DbEntry entry = new DbEntry();
+        entry.id = mNextId++;
+        entry.itemType = itemType;
+        entry.mIntent = intent;
+        entry.screenId = screenId;
+        entry.cellX = cellX;
+        entry.cellY = cellY;
+        return entry;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_DESKTOP;
+import static com.android.launcher3.util.LauncherModelHelper.APP_ICON;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.model.ItemUpdateQueue.ItemUpdate;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.util.LauncherModelHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link ItemUpdateQueue}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ItemUpdateQueueTest {
+
+    private final ArrayList<Runnable> mTasks = new ArrayList<>();
+    private final ArrayList<String> mLog = new ArrayList<>();
+
+    private Context mContext;
+    private ItemUpdateQueue mQueue;
+    private ItemInfo mItem1;
+    private ItemInfo mItem2;
+
+    @Before
+    public void setup() {
+        LauncherModelHelper modelHelper = new LauncherModelHelper();
+        mContext = RuntimeEnvironment.application;
+        mQueue = new ItemUpdateQueue(mContext, mTasks::add);
+
+        mItem1 = new ItemInfo();
+        mItem1.id = modelHelper.addItem(APP_ICON, 0, CONTAINER_DESKTOP, 0, 0);
+        mItem2 = new ItemInfo();
+        mItem2.id = modelHelper.addItem(APP_ICON, 0, CONTAINER_DESKTOP, 1, 0);
+    }
+
+    @Test
+    public void testUpdatesAreCoalesced() {
+        mQueue.enqueue(new TestUpdate("a", mItem1, Favorites.CELLX, 2));
+        mQueue.enqueue(new TestUpdate("b", mItem2, Favorites.CELLX, 3));
+        mQueue.enqueue(new TestUpdate("c", mItem1, Favorites.CELLY, 4));
+        mQueue.enqueue(new TestUpdate("d", mItem1, Favorites.CELLX, 5));
+        assertEquals(1, mTasks.size());
+
+        runTasks();
+        assertEquals(5, getColumn(mItem1, Favorites.CELLX));
+        assertEquals(4, getColumn(mItem1, Favorites.CELLY));
+        assertEquals(3, getColumn(mItem2, Favorites.CELLX));
+        // Each item is written once
+        assertEquals(Arrays.asList("a", "b"), mLog);
+        assertDump("updatesRequested=4 updatesCoalesced=2 rowsWritten=2 transactions=1");
+    }
+
+    @Test
+    public void testOperationsAreOrdered() {
+        mQueue.enqueue(new TestUpdate("a", mItem1, Favorites.CELLX, 2));
+        mQueue.execute(() -> {
+            mLog.add("run");
+            assertEquals(2, getColumn(mItem1, Favorites.CELLX));
+        });
+        mQueue.enqueue(new TestUpdate("b", mItem1, Favorites.CELLX, 3));
+        assertEquals(3, mTasks.size());
+
+        runTasks();
+        assertEquals(3, getColumn(mItem1, Favorites.CELLX));
+        assertEquals(Arrays.asList("a", "run", "b"), mLog);
+    }
+
+    @Test
+    public void testCopiesOfItemAreNotCoalesced() {
+        ItemInfo copy = new ItemInfo();
+        copy.id = mItem1.id;
+        mQueue.enqueue(new TestUpdate("a", mItem1, Favorites.CELLX, 2));
+        mQueue.enqueue(new TestUpdate("b", copy, Favorites.CELLX, 3));
+        assertEquals(2, mTasks.size());
+
+        runTasks();
+        assertEquals(3, getColumn(mItem1, Favorites.CELLX));
+        assertEquals(Arrays.asList("a", "b"), mLog);
+    }
+
+    @Test
+    public void testUpdatesAfterWriteAreNotLost() {
+        mQueue.enqueue(new TestUpdate("a", mItem1, Favorites.CELLX, 2));
+        runTasks();
+        mQueue.enqueue(new TestUpdate("b", mItem1, Favorites.CELLX, 3));
+        assertEquals(1, mTasks.size());
+
+        runTasks();
+        assertEquals(3, getColumn(mItem1, Favorites.CELLX));
+        assertDump("updatesRequested=2 updatesCoalesced=0 rowsWritten=2 transactions=2");
+    }
+
+    @Test
+    public void testFailedBatchIsNotReportedWritten() {
+        mQueue.enqueue(new TestUpdate("a", mItem1, Favorites.CELLX, 2));
+        mQueue.enqueue(new TestUpdate("b", mItem2, "unknownColumn", 3));
+        assertEquals(1, mTasks.size());
+
+        runTasks();
+        // The batch is written in a single transaction, so the valid update is not written either
+        assertEquals(0, getColumn(mItem1, Favorites.CELLX));
+        assertTrue(mLog.isEmpty());
+        assertDump("rowsWritten=0 transactions=0 failedTransactions=1");
+    }
+
+    private int getColumn(ItemInfo item, String column) {
+        try (Cursor c = mContext.getContentResolver().query(Favorites.getContentUri(item.id),
+                new String[] {column}, null, null, null)) {
+            assertTrue(c.moveToNext());
+            return c.getInt(0);
+        }
+    }
+
+    private void assertDump(String expected) {
+        StringWriter out = new StringWriter();
+        mQueue.dump("", new PrintWriter(out));
+        assertTrue(out.toString(), out.toString().contains(expected));
+    }
+
+    private void runTasks() {
+        List<Runnable> tasks = new ArrayList<>(mTasks);
+        mTasks.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private class TestUpdate implements ItemUpdate {
+
+        private final String mName;
+        private final ItemInfo mItem;
+        private final String mColumn;
+        private final int mValue;
+
+        TestUpdate(String name, ItemInfo item, String column, int value) {
+            mName = name;
+            mItem = item;
+            mColumn = column;
+            mValue = value;
+        }
+
+        @Override
+        public ItemInfo getItem() {
+            return mItem;
+        }
+
+        @Override
+        public int getItemId() {
+            return mItem.id;
+        }
+
+        @Override
+        public ContentValues getValues() {
+            ContentValues values = new ContentValues();
+            values.put(mColumn, mValue);
+            return values;
+        }
+
+        @Override
+        public void onWritten() {
+            mLog.add(mName);
+        }
+    }
+}
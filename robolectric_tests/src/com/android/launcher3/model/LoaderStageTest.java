@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link LoaderStage}. Stages are submitted to a controlled executor which only runs
+ * them when the test asks, so the ordering checks do not depend on timing.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LoaderStageTest {
+
+    private List<Runnable> mPending;
+    private List<String> mRunOrder;
+
+    @Before
+    public void setup() {
+        mPending = new ArrayList<>();
+        mRunOrder = new ArrayList<>();
+    }
+
+    @Test
+    public void testResult() {
+        LoaderStage<String> stage = LoaderStage.start("test", mPending::add, () -> "result");
+        runPending();
+        assertEquals("result", stage.getOrNull());
+        assertTrue(stage.getTiming(), stage.getTiming().endsWith("ms in background)"));
+    }
+
+    @Test
+    public void testFailureReturnsNull() {
+        LoaderStage<String> stage = LoaderStage.start("test", mPending::add, () -> {
+            throw new IllegalStateException();
+        });
+        runPending();
+        assertNull(stage.getOrNull());
+    }
+
+    @Test
+    public void testCancelBeforeRun() {
+        LoaderStage<String> stage = LoaderStage.start("test", mPending::add, () -> "result");
+        stage.cancel();
+        runPending();
+        assertEquals("test (not run)", stage.getTiming());
+    }
+
+    @Test
+    public void testIndependentStagesAreSubmittedTogether() {
+        LoaderStage.start("a", mPending::add, () -> record("a"));
+        LoaderStage.start("b", mPending::add, () -> record("b"));
+        LoaderStage.start("c", mPending::add, () -> record("c"));
+        assertEquals(3, mPending.size());
+    }
+
+    private String record(String name) {
+        mRunOrder.add(name);
+        return name;
+    }
+
+    private void runNext() {
+        mPending.remove(0).run();
+    }
+
+    private void runPending() {
+        while (!mPending.isEmpty()) {
+            runNext();
+        }
+    }
+}
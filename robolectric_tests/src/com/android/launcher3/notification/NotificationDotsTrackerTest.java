@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Notification;
+import android.os.Process;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import com.android.launcher3.dot.DotInfo;
+import com.android.launcher3.util.PackageUserKey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Tests for {@link NotificationDotsTracker}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NotificationDotsTrackerTest {
+
+    private static final UserHandle USER = Process.myUserHandle();
+    private static final PackageUserKey PACKAGE_1 = new PackageUserKey("com.example.one", USER);
+    private static final PackageUserKey PACKAGE_2 = new PackageUserKey("com.example.two", USER);
+
+    private final NotificationDotsTracker mTracker = new NotificationDotsTracker();
+
+    @Test
+    public void testPostedAndRemoved() {
+        NotificationKeyData key1 = createKey(PACKAGE_1, 1, 1);
+        NotificationDotsSnapshot first = mTracker.onNotificationPosted(PACKAGE_1, key1);
+        assertEquals(Collections.singleton(PACKAGE_1), first.getChangedKeys());
+        assertEquals(1, first.getDotInfos().get(PACKAGE_1).getNotificationCount());
+
+        // Posting the same notification again does not change the dots
+        assertNull(mTracker.onNotificationPosted(PACKAGE_1, createKey(PACKAGE_1, 1, 1)));
+
+        NotificationDotsSnapshot second =
+                mTracker.onNotificationPosted(PACKAGE_1, createKey(PACKAGE_1, 1, 3));
+        assertEquals(first.version, second.previousVersion);
+        assertEquals(3, second.getDotInfos().get(PACKAGE_1).getNotificationCount());
+        // Published snapshots are never modified
+        assertEquals(1, first.getDotInfos().get(PACKAGE_1).getNotificationCount());
+        assertNotSame(first.getDotInfos().get(PACKAGE_1), second.getDotInfos().get(PACKAGE_1));
+
+        assertNull(mTracker.onNotificationRemoved(PACKAGE_2, createKey(PACKAGE_2, 1, 1)));
+        NotificationDotsSnapshot third =
+                mTracker.onNotificationRemoved(PACKAGE_1, createKey(PACKAGE_1, 1, 3));
+        assertEquals(second.version, third.previousVersion);
+        assertEquals(Collections.singleton(PACKAGE_1), third.getChangedKeys());
+        assertTrue(third.getDotInfos().isEmpty());
+        assertFalse(second.getDotInfos().isEmpty());
+    }
+
+    @Test
+    public void testFullRefresh() {
+        mTracker.onNotificationPosted(PACKAGE_1, createKey(PACKAGE_1, 1, 1));
+        NotificationDotsSnapshot before =
+                mTracker.onNotificationPosted(PACKAGE_1, createKey(PACKAGE_1, 2, 1));
+
+        // Package 1 keeps the same count with different notifications, package 2 is added
+        NotificationDotsSnapshot after = mTracker.onNotificationFullRefresh(
+                Arrays.asList(PACKAGE_1, PACKAGE_1, PACKAGE_2),
+                Arrays.asList(createKey(PACKAGE_1, 3, 1), createKey(PACKAGE_1, 4, 1),
+                        createKey(PACKAGE_2, 1, 2)));
+        assertEquals(before.version, after.previousVersion);
+        assertEquals(Collections.singleton(PACKAGE_2), after.getChangedKeys());
+        DotInfo dotInfo = after.getDotInfos().get(PACKAGE_1);
+        assertEquals(Arrays.asList("key3", "key4"),
+                NotificationKeyData.extractKeysOnly(dotInfo.getNotificationKeys()));
+
+        NotificationDotsSnapshot cleared = mTracker.onNotificationFullRefresh(
+                new ArrayList<>(), new ArrayList<>());
+        assertEquals(new HashSet<>(Arrays.asList(PACKAGE_1, PACKAGE_2)),
+                cleared.getChangedKeys());
+        assertTrue(cleared.getDotInfos().isEmpty());
+    }
+
+    @Test
+    public void testVersionsUniqueAcrossTrackers() {
+        NotificationDotsSnapshot first =
+                mTracker.onNotificationPosted(PACKAGE_1, createKey(PACKAGE_1, 1, 1));
+        NotificationDotsSnapshot other = new NotificationDotsTracker()
+                .onNotificationFullRefresh(new ArrayList<>(), new ArrayList<>());
+        assertEquals(NotificationDotsSnapshot.NO_VERSION, other.previousVersion);
+        assertTrue(other.version != first.version);
+    }
+
+    private static NotificationKeyData createKey(PackageUserKey packageUserKey, int id,
+            int count) {
+        Notification notification = new Notification.Builder(RuntimeEnvironment.application,
+                "channel").setNumber(count).build();
+        StatusBarNotification sbn = new StatusBarNotification(packageUserKey.mPackageName,
+                packageUserKey.mPackageName, id, null, 0, 0, notification, packageUserKey.mUser,
+                null, 0) {
+            @Override
+            public String getKey() {
+                return "key" + id;
+            }
+        };
+        return NotificationKeyData.fromNotification(sbn);
+    }
+}
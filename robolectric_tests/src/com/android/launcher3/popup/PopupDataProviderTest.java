@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.popup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Notification;
+import android.os.Process;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import com.android.launcher3.notification.NotificationKeyData;
+import com.android.launcher3.util.PackageUserKey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the notification dot updates of {@link PopupDataProvider}
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class PopupDataProviderTest {
+
+    private static final UserHandle USER = Process.myUserHandle();
+    private static final PackageUserKey PACKAGE_1 = new PackageUserKey("com.example.one", USER);
+    private static final PackageUserKey PACKAGE_2 = new PackageUserKey("com.example.two", USER);
+
+    private final ArrayList<Set<PackageUserKey>> mDispatches = new ArrayList<>();
+
+    @Test
+    public void testChangesInOneFrameDispatchedOnce() {
+        PopupDataProvider provider = new PopupDataProvider(mDispatches::add, true);
+        provider.onNotificationPosted(PACKAGE_1, createKey(PACKAGE_1, 1));
+        provider.onNotificationPosted(PACKAGE_2, createKey(PACKAGE_2, 2));
+        provider.onNotificationPosted(PACKAGE_1, createKey(PACKAGE_1, 3));
+        assertTrue(mDispatches.isEmpty());
+
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+        assertEquals(1, mDispatches.size());
+        assertEquals(new HashSet<>(Arrays.asList(PACKAGE_1, PACKAGE_2)), mDispatches.get(0));
+        assertTrue(dump(provider).contains("dotChanges=3 coalesced=2 dispatches=1 pending=0"));
+
+        // A change in a later frame gets its own dispatch
+        provider.onNotificationPosted(PACKAGE_2, createKey(PACKAGE_2, 4));
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+        assertEquals(2, mDispatches.size());
+        assertEquals(new HashSet<>(Arrays.asList(PACKAGE_2)), mDispatches.get(1));
+        assertTrue(dump(provider).contains("dotChanges=4 coalesced=2 dispatches=2 pending=0"));
+    }
+
+    @Test
+    public void testChangesDispatchedImmediatelyWithoutCoalescing() {
+        PopupDataProvider provider = new PopupDataProvider(mDispatches::add, false);
+        provider.onNotificationPosted(PACKAGE_1, createKey(PACKAGE_1, 1));
+        provider.onNotificationPosted(PACKAGE_2, createKey(PACKAGE_2, 2));
+        assertEquals(2, mDispatches.size());
+        assertTrue(dump(provider).contains("dotChanges=2 coalesced=0 dispatches=2"));
+    }
+
+    private static String dump(PopupDataProvider provider) {
+        StringWriter out = new StringWriter();
+        provider.dump("", new PrintWriter(out));
+        return out.toString();
+    }
+
+    private static NotificationKeyData createKey(PackageUserKey packageUserKey, int id) {
+        Notification notification = new Notification.Builder(RuntimeEnvironment.application,
+                "channel").build();
+        StatusBarNotification sbn = new StatusBarNotification(packageUserKey.mPackageName,
+                packageUserKey.mPackageName, id, null, 0, 0, notification, packageUserKey.mUser,
+                null, 0) {
+            @Override
+            public String getKey() {
+                return "key" + id;
+            }
+        };
+        return NotificationKeyData.fromNotification(sbn);
+    }
+}
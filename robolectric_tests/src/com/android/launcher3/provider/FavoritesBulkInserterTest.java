@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.android.launcher3.LauncherProvider.DatabaseHelper;
+import com.android.launcher3.LauncherSettings.Favorites;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for {@link FavoritesBulkInserter}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FavoritesBulkInserterTest {
+
+    private static final String TAG = "FavoritesBulkInserterTest";
+
+    private static final int LAYOUT_SIZE = 2000;
+
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setup() {
+        mDb = new MyDatabaseHelper().getWritableDatabase();
+    }
+
+    @Test
+    public void testSameRowsAsSingleInserts() {
+        ArrayList<ContentValues> layout = createLayout(LAYOUT_SIZE);
+        for (ContentValues values : layout) {
+            mDb.insert(Favorites.TABLE_NAME, null, values);
+        }
+        String expected = dumpTable();
+        mDb.delete(Favorites.TABLE_NAME, null, null);
+
+        try (FavoritesBulkInserter inserter =
+                     new FavoritesBulkInserter(mDb, Favorites.TABLE_NAME, 64)) {
+            for (ContentValues values : layout) {
+                assertEquals((int) values.getAsInteger(Favorites._ID), inserter.insert(values));
+            }
+            inserter.finish();
+            assertEquals(LAYOUT_SIZE, inserter.getRowCount());
+            assertEquals((LAYOUT_SIZE + 63) / 64, inserter.getChunkCount());
+        }
+        assertEquals(expected, dumpTable());
+    }
+
+    @Test
+    public void testDuplicateIdFails() {
+        try (FavoritesBulkInserter inserter =
+                     new FavoritesBulkInserter(mDb, Favorites.TABLE_NAME, 10)) {
+            assertEquals(1, inserter.insert(createItem(1, 0)));
+            assertEquals(-1, inserter.insert(createItem(1, 1)));
+            assertEquals(2, inserter.insert(createItem(2, 2)));
+            inserter.finish();
+            assertEquals(2, inserter.getRowCount());
+        }
+        assertEquals(2, getCount());
+    }
+
+    @Test
+    public void testUnfinishedChunkRolledBack() {
+        try (FavoritesBulkInserter inserter =
+                     new FavoritesBulkInserter(mDb, Favorites.TABLE_NAME, 10)) {
+            for (int i = 1; i <= 25; i++) {
+                inserter.insert(createItem(i, i));
+            }
+        }
+        // Only the full chunks are committed
+        assertEquals(20, getCount());
+    }
+
+    @Test
+    public void testAccepts() {
+        FavoritesBulkInserter inserter =
+                new FavoritesBulkInserter(mDb, Favorites.TABLE_NAME, 10);
+        assertTrue(inserter.accepts(mDb, Favorites.TABLE_NAME));
+        assertFalse(inserter.accepts(mDb, "workspaceScreens"));
+        inserter.close();
+    }
+
+    @Test
+    public void benchmarkLayoutImport() {
+        ArrayList<ContentValues> layout = createLayout(LAYOUT_SIZE);
+
+        long start = System.nanoTime();
+        for (ContentValues values : layout) {
+            mDb.insert(Favorites.TABLE_NAME, null, values);
+        }
+        long singleTime = System.nanoTime() - start;
+        mDb.delete(Favorites.TABLE_NAME, null, null);
+
+        String result;
+        start = System.nanoTime();
+        try (FavoritesBulkInserter inserter = new FavoritesBulkInserter(
+                mDb, Favorites.TABLE_NAME, FavoritesBulkInserter.DEFAULT_CHUNK_SIZE)) {
+            for (ContentValues values : layout) {
+                inserter.insert(values);
+            }
+            inserter.finish();
+            result = inserter.toString();
+        }
+        long bulkTime = System.nanoTime() - start;
+
+        assertEquals(LAYOUT_SIZE, getCount());
+        Log.d(TAG, "single inserts: timeMs=" + singleTime / 1_000_000
+                + " rowsPerSec=" + LAYOUT_SIZE * 1_000_000_000L / Math.max(singleTime, 1));
+        Log.d(TAG, "bulk inserts: timeMs=" + bulkTime / 1_000_000
+                + " rowsPerSec=" + LAYOUT_SIZE * 1_000_000_000L / Math.max(bulkTime, 1)
+                + " " + result);
+    }
+
+    /**
+     * Returns a synthetic layout with folders, folder items, shortcuts and widgets
+     */
+    private static ArrayList<ContentValues> createLayout(int size) {
+        ArrayList<ContentValues> layout = new ArrayList<>(size);
+        int folderId = -1;
+        for (int id = 1; id <= size; id++) {
+            ContentValues values;
+            switch (id % 10) {
+                case 0:
+                    values = createItem(id, id);
+                    values.put(Favorites.ITEM_TYPE, Favorites.ITEM_TYPE_FOLDER);
+                    folderId = id;
+                    break;
+                case 1:
+                case 2:
+                case 3:
+                    values = createItem(id, id);
+                    if (folderId > 0) {
+                        values.put(Favorites.CONTAINER, folderId);
+                        values.put(Favorites.RANK, id % 10);
+                    }
+                    break;
+                case 4:
+                    values = createItem(id, id);
+                    values.put(Favorites.ITEM_TYPE, Favorites.ITEM_TYPE_APPWIDGET);
+                    values.put(Favorites.APPWIDGET_ID, id);
+                    values.put(Favorites.APPWIDGET_PROVIDER,
+                            "com.example/.Widget" + (id % 7));
+                    values.put(Favorites.SPANX, 2);
+                    values.put(Favorites.SPANY, 2);
+                    break;
+                default:
+                    values = createItem(id, id);
+                    break;
+            }
+            layout.add(values);
+        }
+        return layout;
+    }
+
+    private static ContentValues createItem(int id, int position) {
+        ContentValues values = new ContentValues();
+        values.put(Favorites._ID, id);
+        values.put(Favorites.TITLE, "item " + id);
+        values.put(Favorites.ITEM_TYPE, Favorites.ITEM_TYPE_APPLICATION);
+        values.put(Favorites.INTENT, "#Intent;component=com.example/.Activity" + id + ";end");
+        values.put(Favorites.CONTAINER, Favorites.CONTAINER_DESKTOP);
+        values.put(Favorites.SCREEN, position / 20);
+        values.put(Favorites.CELLX, position % 4);
+        values.put(Favorites.CELLY, (position / 4) % 5);
+        values.put(Favorites.SPANX, 1);
+        values.put(Favorites.SPANY, 1);
+        return values;
+    }
+
+    private int getCount() {
+        try (Cursor c = mDb.rawQuery("select * from favorites", null)) {
+            return c.getCount();
+        }
+    }
+
+    private String dumpTable() {
+        StringBuilder builder = new StringBuilder();
+        try (Cursor c = mDb.query(Favorites.TABLE_NAME, null, null, null, null, null,
+                Favorites._ID)) {
+            while (c.moveToNext()) {
+                for (int i = 0; i < c.getColumnCount(); i++) {
+                    if (!Favorites.MODIFIED.equals(c.getColumnName(i))) {
+                        builder.append(c.getString(i)).append(',');
+                    }
+                }
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private class MyDatabaseHelper extends DatabaseHelper {
+
+        MyDatabaseHelper() {
+            super(RuntimeEnvironment.application, null, false);
+        }
+
+        @Override
+        public long getDefaultUserSerial() {
+            return 0;
+        }
+
+        @Override
+        protected void handleOneTimeDataUpgrade(SQLiteDatabase db) { }
+
+        protected void onEmptyDbCreated() { }
+    }
+}
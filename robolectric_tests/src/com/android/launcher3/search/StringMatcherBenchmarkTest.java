@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import com.android.launcher3.search.StringMatcherUtility.MatchQuery;
+import com.android.launcher3.search.StringMatcherUtility.MatchTarget;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Micro benchmark comparing {@link StringMatcherUtility#matches(String, String, StringMatcher)}
+ * with the prepared {@link MatchQuery} and {@link MatchTarget} path, reporting the time per
+ * match and the bytes allocated per query.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StringMatcherBenchmarkTest {
+
+    private static final String TAG = "StringMatcherBenchmark";
+
+    private static final int LABEL_COUNT = 1000;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+
+    private static final String[] LATIN = {
+            "Calendar", "Calculator", "Camera", "Clock", "Contacts", "Drive", "Gmail", "Maps",
+            "Messages", "Photos", "Play Store", "Settings", "YouTube", "Files", "Go2Work", "2048",
+    };
+    private static final String[] ACCENTED = {
+            "Café", "École", "Über", "Ärzte", "Niño", "Ñandú", "Smörgås", "Øre", "Ångström",
+            "Straße", "İstanbul", "Crème Brûlée", "Façade", "Garçon", "Jalapeño", "Zürich",
+    };
+    private static final String[] CJK = {
+            "微信", "支付宝", "抖音", "淘宝", "百度地图", "카카오톡", "네이버", "배달의민족",
+            "ＬＩＮＥ", "メルカリ", "ヤフー", "楽天市場", "高德地图", "哔哩哔哩", "美团", "京东",
+    };
+
+    private static final String[] QUERIES = {
+            "c", "ca", "cal", "calc", "e", "ec", "é", "u", "ub", "ü", "s", "st", "str", "g",
+            "go", "2", "20", "p", "pl", "play", "m", "ma", "n", "ni", "ñ", "z", "zu",
+            "微", "支付", "地图", "카", "네이", "ｌ", "line", "メ", "x", "xyz",
+    };
+
+    @Test
+    public void benchmarkMatching() {
+        String[] labels = createLabels();
+        StringMatcher matcher = StringMatcher.getInstance();
+
+        MatchTarget[] targets = new MatchTarget[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            targets[i] = new MatchTarget(labels[i], matcher);
+        }
+
+        // Both paths should return the same results
+        for (String query : QUERIES) {
+            MatchQuery matchQuery = new MatchQuery(query, matcher);
+            for (int i = 0; i < labels.length; i++) {
+                assertEquals(query + " / " + labels[i],
+                        StringMatcherUtility.matches(query, labels[i], matcher),
+                        StringMatcherUtility.matches(matchQuery, targets[i], matcher));
+            }
+        }
+
+        Result legacy = measure(() -> {
+            int count = 0;
+            for (String query : QUERIES) {
+                for (String label : labels) {
+                    count += StringMatcherUtility.matches(query, label, matcher) ? 1 : 0;
+                }
+            }
+            return count;
+        });
+        Result prepared = measure(() -> {
+            int count = 0;
+            for (String query : QUERIES) {
+                MatchQuery matchQuery = new MatchQuery(query, matcher);
+                for (MatchTarget target : targets) {
+                    count += StringMatcherUtility.matches(matchQuery, target, matcher) ? 1 : 0;
+                }
+            }
+            return count;
+        });
+
+        Log.d(TAG, "legacy: " + legacy);
+        Log.d(TAG, "prepared: " + prepared);
+        assertEquals(legacy.matchCount, prepared.matchCount);
+        if (legacy.bytesPerQuery >= 0) {
+            assertTrue(prepared + " vs " + legacy,
+                    prepared.bytesPerQuery < legacy.bytesPerQuery);
+        }
+    }
+
+    private static Result measure(Benchmark benchmark) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            benchmark.run();
+        }
+
+        long startBytes = getAllocatedBytes();
+        long startTime = System.nanoTime();
+        int matchCount = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            matchCount = benchmark.run();
+        }
+        long time = System.nanoTime() - startTime;
+        long bytes = getAllocatedBytes() - startBytes;
+
+        long queries = (long) MEASURED_ITERATIONS * QUERIES.length;
+        Result result = new Result();
+        result.matchCount = matchCount;
+        result.nanosPerMatch = time / (queries * LABEL_COUNT);
+        result.bytesPerQuery = startBytes < 0 ? -1 : bytes / queries;
+        return result;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread, or -1 if the JVM does not report it.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static String[] createLabels() {
+        Random random = new Random(42);
+        String[][] scripts = {LATIN, ACCENTED, CJK};
+        String[] labels = new String[LABEL_COUNT];
+        for (int i = 0; i < LABEL_COUNT; i++) {
+            String[] script = scripts[i % scripts.length];
+            String label = script[random.nextInt(script.length)];
+            if (random.nextBoolean()) {
+                label += " " + script[random.nextInt(script.length)];
+            }
+            labels[i] = random.nextInt(4) == 0 ? label + " " + random.nextInt(100) : label;
+        }
+        return labels;
+    }
+
+    private interface Benchmark {
+        int run();
+    }
+
+    private static class Result {
+        int matchCount;
+        long nanosPerMatch;
+        long bytesPerQuery;
+
+        @Override
+        public String toString() {
+            return "matches=" + matchCount + " nsPerMatch=" + nanosPerMatch
+                    + " bytesPerQuery=" + bytesPerQuery;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static org.junit.Assert.assertEquals;
+
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link StringMatcherIndex}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StringMatcherIndexTest {
+
+    private static final String[] WORDS = {
+            "Calendar", "calculator", "Café", "cafe", "École", "ecole", "Über", "uber", "Ärzte",
+            "Mail", "MAIL", "gMail", "Play Store", "YouTube", "Youtube", "Photos", "Фото",
+            "Карты", "Σημειώσεις", "微信", "支付宝", "抖音", "카카오톡", "네이버", "ＬＩＮＥ",
+            "2048", "Go2Work", "my-app", "$pay", "A&B", "+plus", "!bang", "...dots", "x_y",
+            "Niño", "Ñandú", "Smörgås", "Øre", "Ångström", "Straße", "strasse", "İstanbul",
+    };
+
+    private static final String[] QUERIES = {
+            "c", "ca", "caf", "cafe", "café", "e", "ec", "é", "u", "ub", "ü", "a", "ar", "m",
+            "ma", "mail", "g", "p", "pl", "st", "store", "y", "yo", "you", "t", "tu", "ф", "фо",
+            "к", "σ", "微", "信", "宝", "抖音", "카", "카카", "네", "ｌ", "l", "line", "2", "20",
+            "204", "0", "w", "wo", "-", "my", "app", "$", "pay", "&", "b", "+", "pl", "!", ".",
+            "..", "d", "_", "y", "n", "ni", "ñ", "nan", "s", "sm", "o", "ø", "å", "ang", "str",
+            "straß", "i", "is", "ist", "zzz",
+    };
+
+    private StringMatcher mMatcher;
+
+    @Before
+    public void setup() {
+        mMatcher = StringMatcher.getInstance();
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random(42);
+        ArrayList<String> labels = new ArrayList<>();
+        StringMatcherIndex<Integer> index = new StringMatcherIndex<>();
+        for (int i = 0; i < 2000; i++) {
+            String label = randomLabel(random);
+            labels.add(label);
+            index.put(i, label);
+        }
+        for (String label : WORDS) {
+            index.put(labels.size(), label);
+            labels.add(label);
+        }
+
+        for (String query : QUERIES) {
+            assertEquals(query, linearSearch(labels, query, Integer.MAX_VALUE),
+                    index.search(query, Integer.MAX_VALUE));
+            assertEquals(query, linearSearch(labels, query, 5), index.search(query, 5));
+        }
+    }
+
+    @Test
+    public void testUpdateKeepsOrder() {
+        StringMatcherIndex<String> index = new StringMatcherIndex<>();
+        index.put("a", "Alpha");
+        index.put("b", "Beta");
+        index.put("c", "Another");
+        assertEquals(Arrays.asList("a", "c"), index.search("a", 10));
+
+        // Updating a label keeps the original position
+        index.put("b", "Also");
+        assertEquals(Arrays.asList("a", "b", "c"), index.search("a", 10));
+        assertEquals(0, index.search("be", 10).size());
+
+        // Re-adding a removed item moves it to the end
+        index.remove("a");
+        assertEquals(Arrays.asList("b", "c"), index.search("a", 10));
+        index.put("a", "Alpha");
+        assertEquals(Arrays.asList("b", "c", "a"), index.search("a", 10));
+        assertEquals(3, index.size());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.search("a", 10).size());
+    }
+
+    @Test
+    public void testSymbolPrefixes() {
+        StringMatcherIndex<String> index = new StringMatcherIndex<>();
+        index.put("a", "+Plus");
+        index.put("b", "Plus");
+        index.put("c", "1 Plus");
+        assertEquals(Arrays.asList("a", "b", "c"), index.search("p", 10));
+        assertEquals(Arrays.asList("a"), index.search("+", 10));
+        assertEquals(Arrays.asList("c"), index.search("1", 10));
+    }
+
+    private List<Integer> linearSearch(List<String> labels, String query, int maxResults) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int i = 0; i < labels.size() && result.size() < maxResults; i++) {
+            if (StringMatcherUtility.matches(query, labels.get(i), mMatcher)) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    private static String randomLabel(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int words = 1 + random.nextInt(3);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                builder.append(random.nextBoolean() ? " " : "");
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            switch (random.nextInt(4)) {
+                case 0:
+                    word = word.toUpperCase();
+                    break;
+                case 1:
+                    word = word.toLowerCase();
+                    break;
+                case 2:
+                    word = word + random.nextInt(100);
+                    break;
+            }
+            builder.append(word);
+        }
+        return builder.toString();
+    }
+}
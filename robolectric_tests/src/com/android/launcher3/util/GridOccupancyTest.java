@@ -4,16 +4,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import android.util.Log;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.Random;
+
 /**
  * Unit tests for {@link GridOccupancy}
  */
 @RunWith(RobolectricTestRunner.class)
 public class GridOccupancyTest {
 
+    private static final String TAG = "GridOccupancyTest";
+
+    private static final int BENCHMARK_ITERATIONS = 10000;
+    private static final int BENCHMARK_WARMUP_PASSES = 3;
+
     @Test
     public void testFindVacantCell() {
         GridOccupancy grid = initGrid(4,
@@ -52,16 +61,237 @@ public class GridOccupancyTest {
         assertFalse(grid.isRegionVacant(0, 0, 2, 1));
     }
 
+    @Test
+    public void testIsRegionVacantForBlock() {
+        GridOccupancy grid = initGrid(3,
+                1, 0, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0, 0
+        );
+        // An L shaped block
+        GridOccupancy block = initGrid(2,
+                1, 0,
+                1, 1
+        );
+
+        assertTrue(grid.isRegionVacant(0, 1, block));
+        // The empty cell of the block can overlap an occupied cell
+        assertTrue(grid.isRegionVacant(1, 1, block));
+        assertFalse(grid.isRegionVacant(0, 0, block));
+        assertFalse(grid.isRegionVacant(2, 0, block));
+        assertFalse(grid.isRegionVacant(3, 0, block));
+    }
+
+    @Test
+    public void testMatchesBooleanGrid() {
+        Random random = new Random(42);
+        int[] vacant = new int[2];
+        int[] expectedVacant = new int[2];
+        for (int[] size : new int[][] {{4, 5}, {6, 7}, {8, 8}, {64, 3}}) {
+            GridOccupancy grid = new GridOccupancy(size[0], size[1]);
+            BooleanGrid expected = new BooleanGrid(size[0], size[1]);
+            for (int i = 0; i < 500; i++) {
+                int x = random.nextInt(size[0] + 2) - 1;
+                int y = random.nextInt(size[1] + 2) - 1;
+                int spanX = 1 + random.nextInt(4);
+                int spanY = 1 + random.nextInt(4);
+                boolean value = random.nextInt(3) != 0;
+                grid.markCells(x, y, spanX, spanY, value);
+                expected.markCells(x, y, spanX, spanY, value);
+
+                for (int j = 0; j < size[0]; j++) {
+                    for (int k = 0; k < size[1]; k++) {
+                        assertEquals(expected.cells[j][k], grid.isOccupied(j, k));
+                    }
+                }
+                assertEquals(expected.isRegionVacant(x, y, spanX, spanY),
+                        grid.isRegionVacant(x, y, spanX, spanY));
+                assertEquals(expected.findVacantCell(expectedVacant, spanX, spanY),
+                        grid.findVacantCell(vacant, spanX, spanY));
+                assertEquals(expectedVacant[0], vacant[0]);
+                assertEquals(expectedVacant[1], vacant[1]);
+            }
+
+            GridOccupancy copy = new GridOccupancy(size[0], size[1]);
+            grid.copyTo(copy);
+            for (int j = 0; j < size[0]; j++) {
+                for (int k = 0; k < size[1]; k++) {
+                    assertEquals(grid.isOccupied(j, k), copy.isOccupied(j, k));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkReorderSearch() {
+        for (int[] size : new int[][] {{6, 7}, {8, 8}}) {
+            GridOccupancy grid = new GridOccupancy(size[0], size[1]);
+            BooleanGrid reference = new BooleanGrid(size[0], size[1]);
+            fillDense(new Random(42), size[0], size[1], grid, reference);
+
+            // The first passes warm up the JIT
+            for (int pass = 0; pass <= BENCHMARK_WARMUP_PASSES; pass++) {
+                long start = System.nanoTime();
+                int count = searchReference(reference, size[0], size[1]);
+                long referenceTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int bitsetCount = searchBitset(grid, size[0], size[1]);
+                long bitsetTime = System.nanoTime() - start;
+
+                assertEquals(count, bitsetCount);
+                if (pass == BENCHMARK_WARMUP_PASSES) {
+                    Log.d(TAG, size[0] + "x" + size[1] + " reorder search: boolean[][]="
+                            + referenceTime / BENCHMARK_ITERATIONS + "ns, bitset="
+                            + bitsetTime / BENCHMARK_ITERATIONS + "ns per iteration");
+                }
+            }
+        }
+    }
+
+    /**
+     * Same work as the reorder solver does per drag frame: copy the grid, move items around and
+     * look for vacant regions of every span.
+     */
+    private static int searchBitset(GridOccupancy grid, int countX, int countY) {
+        GridOccupancy tmp = new GridOccupancy(countX, countY);
+        int[] vacant = new int[2];
+        int count = 0;
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            grid.copyTo(tmp);
+            for (int spanX = 1; spanX <= 3; spanX++) {
+                for (int spanY = 1; spanY <= 3; spanY++) {
+                    tmp.markCells(i % countX, i % countY, spanX, spanY, false);
+                    for (int y = 0; y < countY; y++) {
+                        for (int x = 0; x < countX; x++) {
+                            count += tmp.isRegionVacant(x, y, spanX, spanY) ? 1 : 0;
+                        }
+                    }
+                    count += tmp.findVacantCell(vacant, spanX, spanY) ? 1 : 0;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int searchReference(BooleanGrid grid, int countX, int countY) {
+        BooleanGrid tmp = new BooleanGrid(countX, countY);
+        int[] vacant = new int[2];
+        int count = 0;
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            grid.copyTo(tmp);
+            for (int spanX = 1; spanX <= 3; spanX++) {
+                for (int spanY = 1; spanY <= 3; spanY++) {
+                    tmp.markCells(i % countX, i % countY, spanX, spanY, false);
+                    for (int y = 0; y < countY; y++) {
+                        for (int x = 0; x < countX; x++) {
+                            count += tmp.isRegionVacant(x, y, spanX, spanY) ? 1 : 0;
+                        }
+                    }
+                    count += tmp.findVacantCell(vacant, spanX, spanY) ? 1 : 0;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fills about 90% of the grid with items of various spans
+     */
+    private static void fillDense(Random random, int countX, int countY, GridOccupancy grid,
+            BooleanGrid reference) {
+        int[] vacant = new int[2];
+        for (int i = 0; i < countX * countY; i++) {
+            int spanX = random.nextInt(4) == 0 ? 2 : 1;
+            int spanY = random.nextInt(4) == 0 ? 2 : 1;
+            if (grid.findVacantCell(vacant, spanX, spanY) && random.nextInt(10) != 0) {
+                grid.markCells(vacant[0], vacant[1], spanX, spanY, true);
+                reference.markCells(vacant[0], vacant[1], spanX, spanY, true);
+            }
+        }
+    }
+
     private GridOccupancy initGrid(int rows, int... cells) {
         int cols = cells.length / rows;
         int i = 0;
         GridOccupancy grid = new GridOccupancy(cols, rows);
         for (int y = 0; y < rows; y++) {
             for (int x = 0; x < cols; x++) {
-                grid.cells[x][y] = cells[i] != 0;
+                grid.markCells(x, y, 1, 1, cells[i] != 0);
                 i++;
             }
         }
         return grid;
     }
+
+    /**
+     * The previous boolean[][] implementation of {@link GridOccupancy}, used as a reference.
+     */
+    private static class BooleanGrid {
+
+        private final int mCountX;
+        private final int mCountY;
+
+        final boolean[][] cells;
+
+        BooleanGrid(int countX, int countY) {
+            mCountX = countX;
+            mCountY = countY;
+            cells = new boolean[countX][countY];
+        }
+
+        boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
+            for (int y = 0; (y + spanY) <= mCountY; y++) {
+                for (int x = 0; (x + spanX) <= mCountX; x++) {
+                    boolean available = !cells[x][y];
+                    out:
+                    for (int i = x; i < x + spanX; i++) {
+                        for (int j = y; j < y + spanY; j++) {
+                            available = available && !cells[i][j];
+                            if (!available) break out;
+                        }
+                    }
+                    if (available) {
+                        vacantOut[0] = x;
+                        vacantOut[1] = y;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void copyTo(BooleanGrid dest) {
+            for (int i = 0; i < mCountX; i++) {
+                for (int j = 0; j < mCountY; j++) {
+                    dest.cells[i][j] = cells[i][j];
+                }
+            }
+        }
+
+        boolean isRegionVacant(int x, int y, int spanX, int spanY) {
+            int x2 = x + spanX - 1;
+            int y2 = y + spanY - 1;
+            if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
+                return false;
+            }
+            for (int i = x; i <= x2; i++) {
+                for (int j = y; j <= y2; j++) {
+                    if (cells[i][j]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
+            if (cellX < 0 || cellY < 0) return;
+            for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
+                for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
+                    cells[x][y] = value;
+                }
+            }
+        }
+    }
 }
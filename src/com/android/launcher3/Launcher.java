@@ -58,6 +58,7 @@ import com.android.launcher3.dot.DotInfo;
 import com.android.launcher3.dragndrop.*;
 import com.android.launcher3.folder.FolderGridOrganizer;
 import com.android.launcher3.folder.FolderIcon;
+import com.android.launcher3.folder.FolderIconDrawStats;
 import com.android.launcher3.icons.BitmapRenderer;
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.keyboard.ViewGroupFocusHelper;
@@ -109,7 +110,6 @@ import com.android.systemui.plugins.shared.LauncherOverlayManager.LauncherOverla
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.*;
-import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -242,6 +242,8 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
     private LauncherAccessibilityDelegate mAccessibilityDelegate;
 
     private PopupDataProvider mPopupDataProvider;
+    // Number of workspace views updated for notification dot changes
+    private int mNotificationDotViewsUpdated;
 
     private int mSynchronouslyBoundPage = PagedView.INVALID_PAGE;
     private int mPageToBindSynchronously = PagedView.INVALID_PAGE;
@@ -1329,9 +1331,9 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         }
     };
 
-    private void updateNotificationDots(Predicate<PackageUserKey> updatedDots) {
-        mWorkspace.updateNotificationDots(updatedDots);
-        mAppsView.getAppsStore().updateNotificationDots(updatedDots);
+    private void updateNotificationDots(Set<PackageUserKey> updatedKeys) {
+        mNotificationDotViewsUpdated += mWorkspace.updateNotificationDots(updatedKeys);
+        mAppsView.getAppsStore().updateNotificationDots(updatedKeys::contains);
     }
 
     @Override
@@ -2678,6 +2680,8 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         mDragLayer.dump(prefix, writer);
         mStateManager.dump(prefix, writer);
         mPopupDataProvider.dump(prefix, writer);
+        writer.println(prefix + "\tnotificationDotViewsUpdated=" + mNotificationDotViewsUpdated);
+        FolderIconDrawStats.INSTANCE.dump(prefix + "\t", writer);
         mDeviceProfile.dump(prefix, writer);
 
         try {
@@ -35,6 +35,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.folder.FolderNameIndex;
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.logging.FileLog;
 import com.android.launcher3.model.AddWorkspaceItemsTask;
@@ -44,6 +45,7 @@ import com.android.launcher3.model.BgDataModel;
 import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.CacheDataUpdatedTask;
 import com.android.launcher3.model.ItemInstallQueue;
+import com.android.launcher3.model.ItemUpdateQueue;
 import com.android.launcher3.model.LoaderResults;
 import com.android.launcher3.model.LoaderTask;
 import com.android.launcher3.model.ModelDelegate;
@@ -113,6 +115,9 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
      */
     private final BgDataModel mBgDataModel = new BgDataModel();
 
+    // Shared by all the model writers, so that their updates can be coalesced
+    private final ItemUpdateQueue mItemUpdateQueue;
+
     private final ModelDelegate mModelDelegate;
 
     // Runnable to check if the shortcuts permission has changed.
@@ -128,13 +133,23 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     LauncherModel(Context context, LauncherAppState app, IconCache iconCache, AppFilter appFilter) {
         mApp = app;
         mBgAllAppsList = new AllAppsList(iconCache, appFilter);
+        mBgAllAppsList.setFolderNameIndex(mBgDataModel.folderNameIndex);
+        mBgDataModel.setIconCache(iconCache);
         mModelDelegate = ModelDelegate.newInstance(context, app, mBgAllAppsList, mBgDataModel);
+        mItemUpdateQueue = new ItemUpdateQueue(context, MODEL_EXECUTOR);
     }
 
     public ModelDelegate getModelDelegate() {
         return mModelDelegate;
     }
 
+    /**
+     * Returns the index used for folder name suggestions, which is kept up to date with the model
+     */
+    public FolderNameIndex getFolderNameIndex() {
+        return mBgDataModel.folderNameIndex;
+    }
+
     /**
      * Adds the provided items to the workspace.
      */
@@ -146,7 +161,7 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     }
 
     public ModelWriter getWriter(boolean hasVerticalHotseat, boolean verifyChanges) {
-        return new ModelWriter(mApp.getContext(), this, mBgDataModel,
+        return new ModelWriter(mApp.getContext(), this, mBgDataModel, mItemUpdateQueue,
                 hasVerticalHotseat, verifyChanges);
     }
 
@@ -622,6 +637,8 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
         }
         mModelDelegate.dump(prefix, fd, writer, args);
         mBgDataModel.dump(prefix, fd, writer, args);
+        mItemUpdateQueue.dump(prefix, writer);
+        mApp.getIconCache().dump(prefix, writer);
     }
 
     /**
@@ -56,6 +56,8 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.util.Xml;
 
+import androidx.annotation.Nullable;
+
 import com.android.launcher3.AutoInstallsLayout.LayoutParserCallback;
 import com.android.launcher3.LauncherSettings.Favorites;
 import com.android.launcher3.config.FeatureFlags;
@@ -63,6 +65,7 @@ import com.android.launcher3.logging.FileLog;
 import com.android.launcher3.model.DbDowngradeHelper;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.provider.FavoritesBulkInserter;
 import com.android.launcher3.provider.LauncherDbUtils;
 import com.android.launcher3.provider.LauncherDbUtils.SQLiteTransaction;
 import com.android.launcher3.provider.RestoreDbTask;
@@ -200,6 +203,16 @@ public class LauncherProvider extends ContentProvider {
 
     @Thunk static int dbInsertAndCheck(DatabaseHelper helper,
             SQLiteDatabase db, String table, String nullColumnHack, ContentValues values) {
+        return dbInsertAndCheck(helper, db, table, nullColumnHack, values, null);
+    }
+
+    /**
+     * Same as {@link #dbInsertAndCheck(DatabaseHelper, SQLiteDatabase, String, String,
+     * ContentValues)}, but inserts through {@param inserter} when it is writing to {@param table}.
+     */
+    @Thunk static int dbInsertAndCheck(DatabaseHelper helper,
+            SQLiteDatabase db, String table, String nullColumnHack, ContentValues values,
+            @Nullable FavoritesBulkInserter inserter) {
         if (values == null) {
             throw new RuntimeException("Error: attempting to insert null values");
         }
@@ -207,6 +220,9 @@ public class LauncherProvider extends ContentProvider {
             throw new RuntimeException("Error: attempting to add item without specifying an id");
         }
         helper.checkId(values);
+        if (inserter != null && inserter.accepts(db, table)) {
+            return inserter.insert(values);
+        }
         return (int) db.insert(table, nullColumnHack, values);
     }
 
@@ -285,14 +301,18 @@ public class LauncherProvider extends ContentProvider {
         SqlArguments args = new SqlArguments(uri);
 
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        try (SQLiteTransaction t = new SQLiteTransaction(db)) {
+        try (SQLiteTransaction t = new SQLiteTransaction(db);
+             FavoritesBulkInserter inserter =
+                     new FavoritesBulkInserter(db, args.table, values.length)) {
             int numValues = values.length;
             for (int i = 0; i < numValues; i++) {
                 addModifiedTime(values[i]);
-                if (dbInsertAndCheck(mOpenHelper, db, args.table, null, values[i]) < 0) {
+                if (dbInsertAndCheck(
+                        mOpenHelper, db, args.table, null, values[i], inserter) < 0) {
                     return 0;
                 }
             }
+            inserter.finish();
             onAddOrDeleteOp(db);
             t.commit();
         }
@@ -536,38 +556,48 @@ public class LauncherProvider extends ContentProvider {
             Log.d(TAG, "loading default workspace");
 
             AppWidgetHost widgetHost = mOpenHelper.newLauncherWidgetHost();
-            AutoInstallsLayout loader = createWorkspaceLoaderFromAppRestriction(widgetHost);
-            if (loader == null) {
-                loader = AutoInstallsLayout.get(getContext(),widgetHost, mOpenHelper);
-            }
-            if (loader == null) {
-                final Partner partner = Partner.get(getContext().getPackageManager());
-                if (partner != null && partner.hasDefaultLayout()) {
-                    final Resources partnerRes = partner.getResources();
-                    int workspaceResId = partnerRes.getIdentifier(Partner.RES_DEFAULT_LAYOUT,
-                            "xml", partner.getPackageName());
-                    if (workspaceResId != 0) {
-                        loader = new DefaultLayoutParser(getContext(), widgetHost,
-                                mOpenHelper, partnerRes, workspaceResId);
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            final boolean usingExternallyProvidedLayout;
+            int count;
+            try (FavoritesBulkInserter inserter = mOpenHelper.newFavoritesInserter(db)) {
+                // The layouts add their items through the inserter
+                LayoutParserCallback callback = mOpenHelper.newBulkInsertCallback(inserter);
+                AutoInstallsLayout loader =
+                        createWorkspaceLoaderFromAppRestriction(widgetHost, callback);
+                if (loader == null) {
+                    loader = AutoInstallsLayout.get(getContext(), widgetHost, callback);
+                }
+                if (loader == null) {
+                    final Partner partner = Partner.get(getContext().getPackageManager());
+                    if (partner != null && partner.hasDefaultLayout()) {
+                        final Resources partnerRes = partner.getResources();
+                        int workspaceResId = partnerRes.getIdentifier(Partner.RES_DEFAULT_LAYOUT,
+                                "xml", partner.getPackageName());
+                        if (workspaceResId != 0) {
+                            loader = new DefaultLayoutParser(getContext(), widgetHost,
+                                    callback, partnerRes, workspaceResId);
+                        }
                     }
                 }
-            }
 
-            final boolean usingExternallyProvidedLayout = loader != null;
-            if (loader == null) {
-                loader = getDefaultLayoutParser(widgetHost);
-            }
+                usingExternallyProvidedLayout = loader != null;
+                if (loader == null) {
+                    loader = getDefaultLayoutParser(widgetHost, callback);
+                }
 
-            // There might be some partially restored DB items, due to buggy restore logic in
-            // previous versions of launcher.
-            mOpenHelper.createEmptyDB(mOpenHelper.getWritableDatabase());
-            // Populate favorites table with initial favorites
-            if ((mOpenHelper.loadFavorites(mOpenHelper.getWritableDatabase(), loader) <= 0)
-                    && usingExternallyProvidedLayout) {
+                // There might be some partially restored DB items, due to buggy restore logic in
+                // previous versions of launcher.
+                mOpenHelper.createEmptyDB(db);
+                // Populate favorites table with initial favorites
+                count = mOpenHelper.loadFavorites(db, loader, inserter);
+            }
+            if (count <= 0 && usingExternallyProvidedLayout) {
                 // Unable to load external layout. Cleanup and load the internal layout.
-                mOpenHelper.createEmptyDB(mOpenHelper.getWritableDatabase());
-                mOpenHelper.loadFavorites(mOpenHelper.getWritableDatabase(),
-                        getDefaultLayoutParser(widgetHost));
+                mOpenHelper.createEmptyDB(db);
+                try (FavoritesBulkInserter inserter = mOpenHelper.newFavoritesInserter(db)) {
+                    mOpenHelper.loadFavorites(db, getDefaultLayoutParser(widgetHost,
+                            mOpenHelper.newBulkInsertCallback(inserter)), inserter);
+                }
             }
             clearFlagEmptyDbCreated();
         }
@@ -578,7 +608,8 @@ public class LauncherProvider extends ContentProvider {
      *
      * @return the loader if the restrictions are set and the resource exists; null otherwise.
      */
-    private AutoInstallsLayout createWorkspaceLoaderFromAppRestriction(AppWidgetHost widgetHost) {
+    private AutoInstallsLayout createWorkspaceLoaderFromAppRestriction(AppWidgetHost widgetHost,
+            LayoutParserCallback callback) {
         Context ctx = getContext();
         final String authority;
         if (!TextUtils.isEmpty(mProviderAuthority)) {
@@ -604,7 +635,7 @@ public class LauncherProvider extends ContentProvider {
             parser.setInput(new StringReader(layout));
 
             Log.d(TAG, "Loading layout from " + authority);
-            return new AutoInstallsLayout(ctx, widgetHost, mOpenHelper,
+            return new AutoInstallsLayout(ctx, widgetHost, callback,
                     ctx.getPackageManager().getResourcesForApplication(pi.applicationInfo),
                     () -> parser, AutoInstallsLayout.TAG_WORKSPACE);
         } catch (Exception e) {
@@ -623,7 +654,8 @@ public class LauncherProvider extends ContentProvider {
                 .build();
     }
 
-    private DefaultLayoutParser getDefaultLayoutParser(AppWidgetHost widgetHost) {
+    private DefaultLayoutParser getDefaultLayoutParser(AppWidgetHost widgetHost,
+            LayoutParserCallback callback) {
         InvariantDeviceProfile idp = LauncherAppState.getIDP(getContext());
         int defaultLayout = idp.defaultLayoutId;
 
@@ -633,7 +665,7 @@ public class LauncherProvider extends ContentProvider {
         }
 
         return new DefaultLayoutParser(getContext(), widgetHost,
-                mOpenHelper, getContext().getResources(), defaultLayout);
+                callback, getContext().getResources(), defaultLayout);
     }
 
     /**
@@ -1095,13 +1127,41 @@ public class LauncherProvider extends ContentProvider {
                     Favorites.CONTAINER_DESKTOP);
         }
 
-        @Thunk int loadFavorites(SQLiteDatabase db, AutoInstallsLayout loader) {
+        FavoritesBulkInserter newFavoritesInserter(SQLiteDatabase db) {
+            return new FavoritesBulkInserter(
+                    db, Favorites.TABLE_NAME, FavoritesBulkInserter.DEFAULT_CHUNK_SIZE);
+        }
+
+        /**
+         * Returns a callback for a layout which adds its items through {@param inserter}
+         */
+        LayoutParserCallback newBulkInsertCallback(FavoritesBulkInserter inserter) {
+            return new LayoutParserCallback() {
+                @Override
+                public int generateNewItemId() {
+                    return DatabaseHelper.this.generateNewItemId();
+                }
+
+                @Override
+                public int insertAndCheck(SQLiteDatabase db, ContentValues values) {
+                    return dbInsertAndCheck(DatabaseHelper.this, db, Favorites.TABLE_NAME,
+                            null, values, inserter);
+                }
+            };
+        }
+
+        /**
+         * Loads {@param loader}, which was created with a callback adding its items through
+         * {@param inserter}, and returns the number of items added on the desktop
+         */
+        @Thunk int loadFavorites(SQLiteDatabase db, AutoInstallsLayout loader,
+                FavoritesBulkInserter inserter) {
             // TODO: Use multiple loaders with fall-back and transaction.
             int count = loader.loadLayout(db, new IntArray());
-
-            // Ensure that the max ids are initialized
-            mMaxItemId = initializeMaxItemId(db);
-            mMaxScreenId = initializeMaxScreenId(db);
+            // Keep the rows of a partially parsed layout, as when inserting row by row
+            inserter.finish();
+            FileLog.d(TAG, "Loaded layout: " + inserter);
+            // The max ids were already updated by checkId for each inserted row
             return count;
         }
     }
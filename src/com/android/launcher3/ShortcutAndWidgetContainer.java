@@ -58,6 +58,9 @@ ShortcutAndWidgetContainer extends ViewGroup implements FolderIcon.FolderIconPar
     private final ActivityContext mActivity;
     private boolean mInvertIfRtl = false;
 
+    // Called when a child is added or removed
+    private Runnable mOnChildrenChangedListener;
+
     public ShortcutAndWidgetContainer(Context context, @ContainerType int containerType) {
         super(context);
         mActivity = ActivityContext.lookupContext(context);
@@ -293,4 +296,27 @@ ShortcutAndWidgetContainer extends ViewGroup implements FolderIcon.FolderIconPar
             cl.clearFolderLeaveBehind();
         }
     }
+
+    /**
+     * Sets a callback to be called when a child is added or removed
+     */
+    public void setOnChildrenChangedListener(Runnable listener) {
+        mOnChildrenChangedListener = listener;
+    }
+
+    @Override
+    public void onViewAdded(View child) {
+        super.onViewAdded(child);
+        if (mOnChildrenChangedListener != null) {
+            mOnChildrenChangedListener.run();
+        }
+    }
+
+    @Override
+    public void onViewRemoved(View child) {
+        super.onViewRemoved(child);
+        if (mOnChildrenChangedListener != null) {
+            mOnChildrenChangedListener.run();
+        }
+    }
 }
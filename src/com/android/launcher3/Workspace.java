@@ -119,8 +119,10 @@ import com.android.systemui.plugins.shared.LauncherOverlayManager.LauncherOverla
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -255,6 +257,14 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
 
     private boolean mForceDrawAdjacentPages = false;
 
+    // Icons on the workspace and hotseat by package, and folder icons, used to update the
+    // notification dots without walking all the items. Rebuilt lazily after the items change.
+    private final HashMap<PackageUserKey, ArrayList<BubbleTextView>> mDotIconIndex =
+            new HashMap<>();
+    private final ArrayList<FolderIcon> mDotFolderIcons = new ArrayList<>();
+    private boolean mDotIndexValid = false;
+    private final Runnable mInvalidateDotIndex = () -> mDotIndexValid = false;
+
     // Total over scrollX in the overlay direction.
     private float mOverlayTranslation;
 
@@ -542,9 +552,16 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
         CellLayout cl = ((CellLayout) child);
         cl.setOnInterceptTouchListener(this);
         cl.setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_NO);
+        mDotIndexValid = false;
         super.onViewAdded(child);
     }
 
+    @Override
+    public void onViewRemoved(View child) {
+        mDotIndexValid = false;
+        super.onViewRemoved(child);
+    }
+
     /**
      * Initializes and binds the first page
      * @param qsb an existing qsb to recycle or null.
@@ -3157,6 +3174,8 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
     }
 
     void updateShortcuts(List<WorkspaceItemInfo> shortcuts) {
+        // The packages of the items may have changed
+        mDotIndexValid = false;
         final HashSet<WorkspaceItemInfo> updates = new HashSet<>(shortcuts);
         ItemOperator op = (info, v) -> {
             if (v instanceof BubbleTextView && updates.contains(info)) {
@@ -3181,24 +3200,25 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
         }
     }
 
-    public void updateNotificationDots(Predicate<PackageUserKey> updatedDots) {
+    /**
+     * Updates the dots of the items of the packages in {@param updatedKeys}.
+     * @return the number of views updated
+     */
+    public int updateNotificationDots(Set<PackageUserKey> updatedKeys) {
         final PackageUserKey packageUserKey = new PackageUserKey(null, null);
         Predicate<ItemInfo> matcher = info -> !packageUserKey.updateFromItemInfo(info)
-                || updatedDots.test(packageUserKey);
+                || updatedKeys.contains(packageUserKey);
+        final int[] updatedViews = new int[1];
 
         ItemOperator op = (info, v) -> {
             if (info instanceof WorkspaceItemInfo && v instanceof BubbleTextView) {
                 if (matcher.test(info)) {
                     ((BubbleTextView) v).applyDotState(info, true /* animate */);
+                    updatedViews[0]++;
                 }
             } else if (info instanceof FolderInfo && v instanceof FolderIcon) {
-                FolderInfo fi = (FolderInfo) info;
-                if (fi.contents.stream().anyMatch(matcher)) {
-                    FolderDotInfo folderDotInfo = new FolderDotInfo();
-                    for (WorkspaceItemInfo si : fi.contents) {
-                        folderDotInfo.addDotInfo(mLauncher.getDotInfoForItem(si));
-                    }
-                    ((FolderIcon) v).setDotInfo(folderDotInfo);
+                if (updateFolderDot((FolderIcon) v, matcher)) {
+                    updatedViews[0]++;
                 }
             }
 
@@ -3206,11 +3226,77 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
             return false;
         };
 
-        mapOverItems(op);
+        if (FeatureFlags.ENABLE_NOTIFICATION_DOT_COALESCING.get()) {
+            if (!mDotIndexValid) {
+                rebuildDotIndex();
+            }
+            for (PackageUserKey key : updatedKeys) {
+                ArrayList<BubbleTextView> icons = mDotIconIndex.get(key);
+                if (icons != null) {
+                    for (BubbleTextView icon : icons) {
+                        icon.applyDotState((ItemInfo) icon.getTag(), true /* animate */);
+                        updatedViews[0]++;
+                    }
+                }
+            }
+            for (FolderIcon folderIcon : mDotFolderIcons) {
+                if (updateFolderDot(folderIcon, matcher)) {
+                    updatedViews[0]++;
+                }
+            }
+        } else {
+            mapOverItems(op);
+        }
         Folder folder = Folder.getOpen(mLauncher);
         if (folder != null) {
             folder.iterateOverItems(op);
         }
+        return updatedViews[0];
+    }
+
+    private boolean updateFolderDot(FolderIcon folderIcon, Predicate<ItemInfo> matcher) {
+        FolderInfo fi = folderIcon.mInfo;
+        if (!fi.contents.stream().anyMatch(matcher)) {
+            return false;
+        }
+        FolderDotInfo folderDotInfo = new FolderDotInfo();
+        for (WorkspaceItemInfo si : fi.contents) {
+            folderDotInfo.addDotInfo(mLauncher.getDotInfoForItem(si));
+        }
+        folderIcon.setDotInfo(folderDotInfo);
+        return true;
+    }
+
+    /**
+     * Indexes the icons which can show a notification dot, and listens for items being added or
+     * removed to invalidate the index. Icons without a package can never show a dot and are not
+     * indexed.
+     */
+    private void rebuildDotIndex() {
+        mDotIconIndex.clear();
+        mDotFolderIcons.clear();
+        for (CellLayout layout : getWorkspaceAndHotseatCellLayouts()) {
+            if (layout != null) {
+                layout.getShortcutsAndWidgets().setOnChildrenChangedListener(mInvalidateDotIndex);
+            }
+        }
+        mapOverItems((info, v) -> {
+            if (info instanceof WorkspaceItemInfo && v instanceof BubbleTextView) {
+                PackageUserKey key = new PackageUserKey(null, null);
+                if (key.updateFromItemInfo(info)) {
+                    ArrayList<BubbleTextView> icons = mDotIconIndex.get(key);
+                    if (icons == null) {
+                        icons = new ArrayList<>(1);
+                        mDotIconIndex.put(key, icons);
+                    }
+                    icons.add((BubbleTextView) v);
+                }
+            } else if (info instanceof FolderInfo && v instanceof FolderIcon) {
+                mDotFolderIcons.add((FolderIcon) v);
+            }
+            return false;
+        });
+        mDotIndexValid = true;
     }
 
     public void removeAbandonedPromise(String packageName, UserHandle user) {
@@ -17,16 +17,23 @@ package com.android.launcher3.allapps;
 
 
 import android.content.Context;
+import android.text.TextUtils;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.launcher3.BaseDraggingActivity;
 import com.android.launcher3.allapps.AllAppsGridAdapter.AdapterItem;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.icons.BitmapInfo;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.LabelComparator;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -43,6 +50,10 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
     private static final int FAST_SCROLL_FRACTION_DISTRIBUTE_BY_ROWS_FRACTION = 0;
     private static final int FAST_SCROLL_FRACTION_DISTRIBUTE_BY_NUM_SECTIONS = 1;
 
+    // Maximum number of added, removed, moved or changed apps which are applied in place. Above
+    // this, it is cheaper to rebuild the list and rebind all the views.
+    private static final int MAX_INCREMENTAL_CHANGES = 16;
+
     private final int mFastScrollDistributionMode = FAST_SCROLL_FRACTION_DISTRIBUTE_BY_NUM_SECTIONS;
     private final WorkAdapterProvider mWorkAdapterProvider;
 
@@ -64,7 +75,7 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
     }
 
 
-    private final BaseDraggingActivity mLauncher;
+    private final Context mContext;
 
     // The set of apps from the system
     private final List<AppInfo> mApps = new ArrayList<>();
@@ -79,19 +90,34 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
 
     // The of ordered component names as a result of a search query
     private ArrayList<AdapterItem> mSearchResults;
-    private AllAppsGridAdapter mAdapter;
+    private RecyclerView.Adapter<?> mAdapter;
     private AppInfoComparator mAppNameComparator;
     private final int mNumAppsPerRow;
     private int mNumAppRowsInAdapter;
     private ItemInfoMatcher mItemFilter;
 
+    // The state of each app in mApps when it was last sorted, used for incremental updates
+    private final boolean mIncrementalUpdates;
+    private final IdentityHashMap<AppInfo, BoundApp> mBoundApps = new IdentityHashMap<>();
+    private boolean mBoundAppsValid = false;
+    private int mUpdateGeneration;
+
     public AlphabeticalAppsList(Context context, AllAppsStore appsStore,
             WorkAdapterProvider adapterProvider) {
+        this(context, appsStore, adapterProvider,
+                BaseDraggingActivity.fromContext(context).getDeviceProfile().inv.numColumns,
+                FeatureFlags.ENABLE_INCREMENTAL_ALL_APPS_UPDATES.get());
+    }
+
+    @VisibleForTesting
+    AlphabeticalAppsList(Context context, AllAppsStore appsStore,
+            WorkAdapterProvider adapterProvider, int numAppsPerRow, boolean incrementalUpdates) {
         mAllAppsStore = appsStore;
-        mLauncher = BaseDraggingActivity.fromContext(context);
+        mContext = context;
         mAppNameComparator = new AppInfoComparator(context);
         mWorkAdapterProvider = adapterProvider;
-        mNumAppsPerRow = mLauncher.getDeviceProfile().inv.numColumns;
+        mNumAppsPerRow = numAppsPerRow;
+        mIncrementalUpdates = incrementalUpdates;
         mAllAppsStore.addUpdateListener(this);
     }
 
@@ -103,7 +129,7 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
     /**
      * Sets the adapter to notify when this dataset changes.
      */
-    public void setAdapter(AllAppsGridAdapter adapter) {
+    public void setAdapter(RecyclerView.Adapter<?> adapter) {
         mAdapter = adapter;
     }
 
@@ -216,6 +242,10 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
      */
     @Override
     public void onAppsUpdated() {
+        if (mIncrementalUpdates && updateAppsIncrementally()) {
+            return;
+        }
+
         // Sort the list of apps
         mApps.clear();
 
@@ -229,9 +259,7 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
 
         // As a special case for some languages (currently only Simplified Chinese), we may need to
         // coalesce sections
-        Locale curLocale = mLauncher.getResources().getConfiguration().locale;
-        boolean localeRequiresSectionSorting = curLocale.equals(Locale.SIMPLIFIED_CHINESE);
-        if (localeRequiresSectionSorting) {
+        if (localeRequiresSectionSorting()) {
             // Compute the section headers. We use a TreeMap with the section name comparator to
             // ensure that the sections are ordered when we iterate over it later
             TreeMap<String, ArrayList<AppInfo>> sectionMap = new TreeMap<>(new LabelComparator());
@@ -254,6 +282,7 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
                 mApps.addAll(entry.getValue());
             }
         }
+        updateBoundApps();
 
         // Recompose the set of adapter items from the current set of apps
         if (mSearchResults == null) {
@@ -261,6 +290,158 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
         }
     }
 
+    private boolean localeRequiresSectionSorting() {
+        Locale curLocale = mContext.getResources().getConfiguration().locale;
+        return curLocale.equals(Locale.SIMPLIFIED_CHINESE);
+    }
+
+    private void updateBoundApps() {
+        if (!mIncrementalUpdates) {
+            mBoundAppsValid = false;
+            mBoundApps.clear();
+            return;
+        }
+        int generation = ++mUpdateGeneration;
+        for (AppInfo app : mApps) {
+            BoundApp bound = mBoundApps.get(app);
+            if (bound == null) {
+                bound = new BoundApp();
+                mBoundApps.put(app, bound);
+            }
+            bound.update(app, generation);
+        }
+        for (Iterator<BoundApp> itr = mBoundApps.values().iterator(); itr.hasNext(); ) {
+            if (itr.next().generation != generation) {
+                itr.remove();
+            }
+        }
+        mBoundAppsValid = true;
+    }
+
+    /**
+     * Applies the changes in {@link AllAppsStore} to the current list of apps in place, only
+     * sorting and notifying the adapter for the apps which were added, removed or changed.
+     *
+     * @return false if the changes can not be applied incrementally, in which case nothing was
+     *         changed.
+     */
+    private boolean updateAppsIncrementally() {
+        if (!mBoundAppsValid || hasFilter() || mWorkAdapterProvider != null
+                || localeRequiresSectionSorting()) {
+            return false;
+        }
+
+        int generation = ++mUpdateGeneration;
+        ArrayList<AppInfo> addedOrMoved = new ArrayList<>();
+        ArrayList<AppInfo> changed = new ArrayList<>();
+        int keptCount = 0;
+        for (AppInfo app : mAllAppsStore.getApps()) {
+            if (mItemFilter != null && !mItemFilter.matches(app, null)) {
+                continue;
+            }
+            BoundApp bound = mBoundApps.get(app);
+            if (bound == null) {
+                addedOrMoved.add(app);
+                continue;
+            }
+            keptCount++;
+            bound.generation = generation;
+            bound.moved = bound.isSortKeyChanged(app);
+            if (bound.moved) {
+                addedOrMoved.add(app);
+            } else if (bound.isContentChanged(app)) {
+                changed.add(app);
+            }
+        }
+        int removedCount = mApps.size() - keptCount;
+        if (addedOrMoved.size() + removedCount + changed.size() > MAX_INCREMENTAL_CHANGES) {
+            return false;
+        }
+
+        // Remove the apps which were removed or moved, the remaining apps are still sorted
+        boolean structureChanged = false;
+        int firstChangedIndex = mApps.size();
+        for (int i = mApps.size() - 1; i >= 0; i--) {
+            AppInfo app = mApps.get(i);
+            BoundApp bound = mBoundApps.get(app);
+            boolean removed = bound.generation != generation;
+            if (removed || bound.moved) {
+                if (removed) {
+                    mBoundApps.remove(app);
+                }
+                mApps.remove(i);
+                mAdapterItems.remove(i);
+                firstChangedIndex = i;
+                structureChanged = true;
+                if (mAdapter != null) {
+                    mAdapter.notifyItemRemoved(i);
+                }
+            }
+        }
+
+        // Insert the added and moved apps at their sorted position
+        for (AppInfo app : addedOrMoved) {
+            int index = Collections.binarySearch(mApps, app, mAppNameComparator);
+            if (index < 0) {
+                index = -(index + 1);
+            }
+            mApps.add(index, app);
+            mAdapterItems.add(index, AdapterItem.asApp(index, app.sectionName, app, index));
+            firstChangedIndex = Math.min(firstChangedIndex, index);
+            structureChanged = true;
+
+            BoundApp bound = mBoundApps.get(app);
+            if (bound == null) {
+                bound = new BoundApp();
+                mBoundApps.put(app, bound);
+            }
+            bound.update(app, generation);
+            if (mAdapter != null) {
+                mAdapter.notifyItemInserted(index);
+            }
+        }
+
+        // The sort key of the changed apps is the same, so they are found at their sorted position
+        for (AppInfo app : changed) {
+            mBoundApps.get(app).update(app, generation);
+            if (mAdapter != null) {
+                mAdapter.notifyItemChanged(
+                        Collections.binarySearch(mApps, app, mAppNameComparator));
+            }
+        }
+
+        // Also needed when only the last apps were removed, in which case no remaining item moved
+        if (structureChanged) {
+            for (int i = firstChangedIndex; i < mAdapterItems.size(); i++) {
+                AdapterItem item = mAdapterItems.get(i);
+                item.position = i;
+                item.appIndex = i;
+            }
+            mAccessibilityResultsCount = mApps.size();
+            updateFastScrollerSections();
+            updateRowsAndFastScrollFractions();
+        }
+        return true;
+    }
+
+    /**
+     * Recomputes the fast scroller sections from the current app adapter items.
+     */
+    private void updateFastScrollerSections() {
+        mFastScrollerSections.clear();
+        FastScrollSectionInfo lastInfo = null;
+        for (AdapterItem item : mAdapterItems) {
+            if (item.appInfo == null) {
+                continue;
+            }
+            if (lastInfo == null || !item.sectionName.equals(lastInfo.sectionName)) {
+                lastInfo = new FastScrollSectionInfo(item.sectionName);
+                lastInfo.fastScrollToItem = item;
+                mFastScrollerSections.add(lastInfo);
+            }
+        }
+    }
+
     /**
      * Updates the set of filtered apps with the current filter. At this point, we expect
      * mCachedSectionNames to have been calculated for the set of all apps in mApps.
@@ -330,6 +511,10 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
 
             }
         }
+        updateRowsAndFastScrollFractions();
+    }
+
+    private void updateRowsAndFastScrollFractions() {
         if (mNumAppsPerRow != 0) {
             // Update the number of rows in the adapter after we do all the merging (otherwise, we
             // would have to shift the values again)
@@ -384,4 +569,38 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
             }
         }
     }
+
+    /**
+     * The properties of an app which were used when it was last added to the list.
+     */
+    private static class BoundApp {
+        CharSequence title;
+        String sectionName;
+        BitmapInfo bitmap;
+        int runtimeStatusFlags;
+        int progressLevel;
+
+        int generation;
+        boolean moved;
+
+        void update(AppInfo app, int generation) {
+            title = app.title;
+            sectionName = app.sectionName;
+            bitmap = app.bitmap;
+            runtimeStatusFlags = app.runtimeStatusFlags;
+            progressLevel = app.getProgressLevel();
+            this.generation = generation;
+            moved = false;
+        }
+
+        boolean isSortKeyChanged(AppInfo app) {
+            return !TextUtils.equals(title, app.title)
+                    || !TextUtils.equals(sectionName, app.sectionName);
+        }
+
+        boolean isContentChanged(AppInfo app) {
+            return bitmap != app.bitmap || runtimeStatusFlags != app.runtimeStatusFlags
+                    || progressLevel != app.getProgressLevel();
+        }
+    }
 }
@@ -62,12 +62,21 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
         mAppState.getModel().enqueueModelUpdateTask(new BaseModelUpdateTask() {
             @Override
             public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList apps) {
-                ArrayList<AdapterItem> result = getTitleMatchResult(apps.data, query);
+                ArrayList<AdapterItem> result = toAdapterItems(
+                        apps.searchTitles(query.toLowerCase(), MAX_RESULTS_COUNT));
                 mResultHandler.post(() -> callback.onSearchResult(query, result));
             }
         });
     }
 
+    private static ArrayList<AdapterItem> toAdapterItems(List<AppInfo> apps) {
+        ArrayList<AdapterItem> result = new ArrayList<>(apps.size());
+        for (int i = 0; i < apps.size(); i++) {
+            result.add(AdapterItem.asApp(i, "", apps.get(i), i));
+        }
+        return result;
+    }
+
     /**
      * Filters {@link AppInfo}s matching specified query
      */
@@ -75,16 +84,17 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
     public static ArrayList<AdapterItem> getTitleMatchResult(List<AppInfo> apps, String query) {
         // Do an intersection of the words in the query and each title, and filter out all the
         // apps that don't match all of the words in the query.
-        final String queryTextLower = query.toLowerCase();
         final ArrayList<AdapterItem> result = new ArrayList<>();
         StringMatcherUtility.StringMatcher matcher =
                 StringMatcherUtility.StringMatcher.getInstance();
+        StringMatcherUtility.MatchQuery matchQuery =
+                new StringMatcherUtility.MatchQuery(query.toLowerCase(), matcher);
 
         int resultCount = 0;
         int total = apps.size();
         for (int i = 0; i < total && resultCount < MAX_RESULTS_COUNT; i++) {
             AppInfo info = apps.get(i);
-            if (StringMatcherUtility.matches(queryTextLower, info.title.toString(), matcher)) {
+            if (StringMatcherUtility.matches(matchQuery, info.getMatchTarget(matcher), matcher)) {
                 AdapterItem appItem = AdapterItem.asApp(resultCount, "", info, resultCount);
                 result.add(appItem);
                 resultCount++;
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.celllayout;
+
+import android.graphics.Rect;
+import android.util.ArrayMap;
+import android.view.View;
+
+import com.android.launcher3.util.CellAndSpan;
+
+import java.util.ArrayList;
+
+/**
+ * A placement of the items of a CellLayout, along with the cell and span of the item being
+ * dropped.
+ */
+public class ItemConfiguration extends CellAndSpan {
+    public final ArrayMap<View, CellAndSpan> map = new ArrayMap<>();
+    private final ArrayMap<View, CellAndSpan> savedMap = new ArrayMap<>();
+    public final ArrayList<View> sortedViews = new ArrayList<>();
+    public ArrayList<View> intersectingViews;
+    public boolean isSolution = false;
+
+    void save() {
+        // Copy current state into savedMap
+        for (View v: map.keySet()) {
+            savedMap.get(v).copyFrom(map.get(v));
+        }
+    }
+
+    void restore() {
+        // Restore current state from savedMap
+        for (View v: savedMap.keySet()) {
+            map.get(v).copyFrom(savedMap.get(v));
+        }
+    }
+
+    public void add(View v, CellAndSpan cs) {
+        map.put(v, cs);
+        savedMap.put(v, new CellAndSpan());
+        sortedViews.add(v);
+    }
+
+    public int area() {
+        return spanX * spanY;
+    }
+
+    void getBoundingRectForViews(ArrayList<View> views, Rect outRect) {
+        boolean first = true;
+        for (View v: views) {
+            CellAndSpan c = map.get(v);
+            if (first) {
+                outRect.set(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
+                first = false;
+            } else {
+                outRect.union(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
+            }
+        }
+    }
+}
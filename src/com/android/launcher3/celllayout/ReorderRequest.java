@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.celllayout;
+
+import android.view.View;
+
+import com.android.launcher3.util.CellAndSpan;
+import com.android.launcher3.util.GridOccupancy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Snapshot of the state of a CellLayout needed to find a reorder solution, which can be handed
+ * off to a background thread. A request is also the key under which {@link ReorderSolver}
+ * memoizes its solutions: two requests are equal if they have the same grid, items, drag view,
+ * candidate placements and direction.
+ *
+ * The request must not be modified once passed to the solver.
+ */
+public class ReorderRequest {
+
+    final int countX;
+    final int countY;
+    final GridOccupancy occupied;
+    final View dragView;
+    final int[] direction;
+
+    final ArrayList<Item> items = new ArrayList<>();
+    // Cells and spans to try for the dragged item, in order of preference
+    final ArrayList<CellAndSpan> candidates = new ArrayList<>();
+
+    private int mHashCode;
+
+    /**
+     * @param occupied the occupancy of the layout, which is copied
+     * @param dragView the view being dragged, or null
+     * @param direction the favored direction in which the items should be pushed, which is
+     *                  copied
+     */
+    public ReorderRequest(int countX, int countY, GridOccupancy occupied, View dragView,
+            int[] direction) {
+        this.countX = countX;
+        this.countY = countY;
+        this.occupied = new GridOccupancy(countX, countY);
+        occupied.copyTo(this.occupied);
+        this.dragView = dragView;
+        this.direction = new int[] {direction[0], direction[1]};
+    }
+
+    /**
+     * Adds an item of the layout at its current position.
+     * @param canReorder false if the item must not be moved by a solution
+     */
+    public ReorderRequest addItem(View view, int cellX, int cellY, int spanX, int spanY,
+            boolean canReorder) {
+        items.add(new Item(view, new CellAndSpan(cellX, cellY, spanX, spanY), canReorder));
+        mHashCode = 0;
+        return this;
+    }
+
+    /**
+     * Adds a placement to try for the dragged item. Candidates are tried in the order they are
+     * added and the first one with a solution is used. A negative cell means that there is no
+     * area for the span, and is never a solution.
+     */
+    public ReorderRequest addCandidate(int cellX, int cellY, int spanX, int spanY) {
+        candidates.add(new CellAndSpan(cellX, cellY, spanX, spanY));
+        mHashCode = 0;
+        return this;
+    }
+
+    /**
+     * Returns a new configuration with all the items at their current position.
+     */
+    ItemConfiguration createConfiguration() {
+        ItemConfiguration config = new ItemConfiguration();
+        for (Item item : items) {
+            config.add(item.view, new CellAndSpan(item.cell.cellX, item.cell.cellY,
+                    item.cell.spanX, item.cell.spanY));
+        }
+        return config;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ReorderRequest)) {
+            return false;
+        }
+        ReorderRequest other = (ReorderRequest) o;
+        if (countX != other.countX || countY != other.countY || dragView != other.dragView
+                || !Arrays.equals(direction, other.direction)
+                || items.size() != other.items.size()
+                || candidates.size() != other.candidates.size()
+                || hashCode() != other.hashCode()
+                || !occupied.equals(other.occupied)) {
+            return false;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            if (!items.get(i).equals(other.items.get(i))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            if (!sameCellAndSpan(candidates.get(i), other.candidates.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        if (mHashCode == 0) {
+            int result = 31 * countX + countY;
+            result = 31 * result + System.identityHashCode(dragView);
+            result = 31 * result + Arrays.hashCode(direction);
+            result = 31 * result + occupied.hashCode();
+            for (Item item : items) {
+                result = 31 * result + item.hashCode();
+            }
+            for (CellAndSpan c : candidates) {
+                result = 31 * result + hashCellAndSpan(c);
+            }
+            mHashCode = result == 0 ? 1 : result;
+        }
+        return mHashCode;
+    }
+
+    private static boolean sameCellAndSpan(CellAndSpan a, CellAndSpan b) {
+        return a.cellX == b.cellX && a.cellY == b.cellY && a.spanX == b.spanX
+                && a.spanY == b.spanY;
+    }
+
+    private static int hashCellAndSpan(CellAndSpan c) {
+        return ((c.cellX * 31 + c.cellY) * 31 + c.spanX) * 31 + c.spanY;
+    }
+
+    /**
+     * An item of the layout at its current position
+     */
+    static class Item {
+        final View view;
+        final CellAndSpan cell;
+        final boolean canReorder;
+
+        Item(View view, CellAndSpan cell, boolean canReorder) {
+            this.view = view;
+            this.cell = cell;
+            this.canReorder = canReorder;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Item)) {
+                return false;
+            }
+            Item other = (Item) o;
+            return view == other.view && canReorder == other.canReorder
+                    && sameCellAndSpan(cell, other.cell);
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(view) * 31 + hashCellAndSpan(cell)) * 2
+                    + (canReorder ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.celllayout;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+import static com.android.launcher3.util.Executors.THREAD_POOL_EXECUTOR;
+
+import androidx.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Finds reorder solutions for the items of a CellLayout, either synchronously or on a background
+ * executor. Solutions are memoized by request, so that dragging over the same cells with the same
+ * direction does not compute the same configuration again.
+ *
+ * Requests and the cache are only accessed on the thread calling the solver, which is expected
+ * to be the thread the result executor posts to. Solutions returned by the solver must not be
+ * modified.
+ */
+public class ReorderSolver {
+
+    private static final int MAX_CACHED_SOLUTIONS = 8;
+
+    private final Executor mBgExecutor;
+    private final Executor mResultExecutor;
+
+    private final LinkedHashMap<ReorderRequest, ItemConfiguration> mCache =
+            new LinkedHashMap<ReorderRequest, ItemConfiguration>(
+                    MAX_CACHED_SOLUTIONS, 0.75f, true /* accessOrder */) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<ReorderRequest, ItemConfiguration> eldest) {
+                    return size() > MAX_CACHED_SOLUTIONS;
+                }
+            };
+
+    @Nullable
+    private SolveTask mPendingTask;
+
+    private int mCacheHits;
+    private int mCacheMisses;
+    private int mCancelledTasks;
+
+    public ReorderSolver() {
+        this(THREAD_POOL_EXECUTOR, MAIN_EXECUTOR);
+    }
+
+    public ReorderSolver(Executor bgExecutor, Executor resultExecutor) {
+        mBgExecutor = bgExecutor;
+        mResultExecutor = resultExecutor;
+    }
+
+    /**
+     * Returns the solution for the provided request, computing it on the calling thread if it is
+     * not cached. Any pending asynchronous solve is cancelled.
+     */
+    public ItemConfiguration solve(ReorderRequest request) {
+        cancelPending();
+        ItemConfiguration solution = getCachedSolution(request);
+        if (solution == null) {
+            solution = new ReorderAlgorithm(request).solve(() -> false);
+            mCache.put(request, solution);
+        }
+        return solution;
+    }
+
+    /**
+     * Computes the solution for the provided request on the background executor and delivers it
+     * to {@param callback} on the result executor, or immediately if it is cached. Any pending
+     * solve is cancelled, and its callback will not be called.
+     */
+    public void solveAsync(ReorderRequest request, Consumer<ItemConfiguration> callback) {
+        cancelPending();
+        ItemConfiguration solution = getCachedSolution(request);
+        if (solution != null) {
+            callback.accept(solution);
+            return;
+        }
+        SolveTask task = new SolveTask(request, callback);
+        mPendingTask = task;
+        mBgExecutor.execute(task);
+    }
+
+    /**
+     * Cancels the pending asynchronous solve, if any
+     */
+    public void cancelPending() {
+        if (mPendingTask != null) {
+            mPendingTask.mCancelled = true;
+            mPendingTask = null;
+            mCancelledTasks++;
+        }
+    }
+
+    /**
+     * Cancels any pending solve and drops all the cached solutions. This should be called once
+     * the items of the layout have moved for good, for example at the end of a drag.
+     */
+    public void clear() {
+        cancelPending();
+        mCache.clear();
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "ReorderSolver: cached=" + mCache.size() + " hits=" + mCacheHits
+                + " misses=" + mCacheMisses + " cancelled=" + mCancelledTasks);
+    }
+
+    private ItemConfiguration getCachedSolution(ReorderRequest request) {
+        ItemConfiguration solution = mCache.get(request);
+        if (solution != null) {
+            mCacheHits++;
+        } else {
+            mCacheMisses++;
+        }
+        return solution;
+    }
+
+    /*
+     * Returns a pair (x, y), where x,y are in {-1, 0, 1} corresponding to vector between
+     * the provided point and the provided cell
+     */
+    public static void computeDirectionVector(float deltaX, float deltaY, int[] result) {
+        double angle = Math.atan(deltaY / deltaX);
+
+        result[0] = 0;
+        result[1] = 0;
+        if (Math.abs(Math.cos(angle)) > 0.5f) {
+            result[0] = (int) Math.signum(deltaX);
+        }
+        if (Math.abs(Math.sin(angle)) > 0.5f) {
+            result[1] = (int) Math.signum(deltaY);
+        }
+    }
+
+    private class SolveTask implements Runnable {
+
+        private final ReorderRequest mRequest;
+        private final Consumer<ItemConfiguration> mCallback;
+        private volatile boolean mCancelled;
+
+        SolveTask(ReorderRequest request, Consumer<ItemConfiguration> callback) {
+            mRequest = request;
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            ItemConfiguration solution = new ReorderAlgorithm(mRequest).solve(() -> mCancelled);
+            if (solution == null) {
+                return;
+            }
+            mResultExecutor.execute(() -> {
+                // The solution is still valid for the request, even if it is stale
+                mCache.put(mRequest, solution);
+                if (!mCancelled) {
+                    mPendingTask = null;
+                    mCallback.accept(solution);
+                }
+            });
+        }
+    }
+}
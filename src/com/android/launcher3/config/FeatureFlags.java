@@ -258,6 +258,58 @@ public final class FeatureFlags {
             "WIDGETS_IN_LAUNCHER_PREVIEW", true,
             "Enables widgets in Launcher preview for the Wallpaper app.");
 
+    public static final BooleanFlag ENABLE_MAPPED_ICON_CACHE = getDebugFlag(
+            "ENABLE_MAPPED_ICON_CACHE", false,
+            "Looks up icons in a memory-mapped store before querying the icon cache DB.");
+
+    public static final BooleanFlag ENABLE_PARALLEL_ICON_RENDERING = getDebugFlag(
+            "ENABLE_PARALLEL_ICON_RENDERING", false,
+            "Renders icons on a thread pool when updating the icon cache.");
+
+    public static final BooleanFlag ENABLE_INCREMENTAL_ALL_APPS_UPDATES = getDebugFlag(
+            "ENABLE_INCREMENTAL_ALL_APPS_UPDATES", false,
+            "Patches the all apps list in place when only a few apps change.");
+
+    public static final BooleanFlag ENABLE_ASYNC_REORDER_SOLVER = getDebugFlag(
+            "ENABLE_ASYNC_REORDER_SOLVER", false,
+            "Computes the reorder hint shown while dragging over a full page off the UI thread.");
+
+    public static final BooleanFlag ENABLE_MODEL_WRITE_COALESCING = getDebugFlag(
+            "ENABLE_MODEL_WRITE_COALESCING", false,
+            "Merges pending updates of the same item and writes them in a single transaction.");
+
+    public static final BooleanFlag ENABLE_PARALLEL_LOADER = getDebugFlag(
+            "ENABLE_PARALLEL_LOADER", false,
+            "Runs the system queries of the loader in the background while the workspace loads.");
+
+    public static final BooleanFlag ENABLE_ICON_ATLAS = getDebugFlag(
+            "ENABLE_ICON_ATLAS", false,
+            "Draws all apps and widget picker icons from an atlas of shared full size bitmaps.");
+
+    public static final BooleanFlag ENABLE_NOTIFICATION_DOT_COALESCING = getDebugFlag(
+            "ENABLE_NOTIFICATION_DOT_COALESCING", false,
+            "Applies the notification dot changes once per frame, only to the affected icons.");
+
+    public static final BooleanFlag ENABLE_NOTIFICATION_DOT_SNAPSHOTS = getDebugFlag(
+            "ENABLE_NOTIFICATION_DOT_SNAPSHOTS", false,
+            "Computes the notification dots in the background and publishes them as snapshots.");
+
+    public static final BooleanFlag ENABLE_FOLDER_PREVIEW_LAYER = getDebugFlag(
+            "ENABLE_FOLDER_PREVIEW_LAYER", false,
+            "Draws the folder icon previews from a cached layer, re-recorded only on changes.");
+
+    public static final BooleanFlag ENABLE_THUMBNAIL_PREFETCH = getDebugFlag(
+            "ENABLE_THUMBNAIL_PREFETCH", false,
+            "Loads the thumbnails of the tasks where a fling in overview will end before it ends.");
+
+    public static final BooleanFlag ENABLE_INCREMENTAL_TASK_LIST = getDebugFlag(
+            "ENABLE_INCREMENTAL_TASK_LIST", false,
+            "Only rebinds the task views of the tasks which changed when the task list updates.");
+
+    public static final BooleanFlag ENABLE_RING_BUFFER_TRACING = getDebugFlag(
+            "ENABLE_RING_BUFFER_TRACING", false,
+            "Traces to a preallocated ring buffer, written to the trace file when tracing stops.");
+
     public static void initialize(Context context) {
         synchronized (sDebugFlags) {
             for (DebugFlag flag : sDebugFlags) {
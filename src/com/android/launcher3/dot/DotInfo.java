@@ -43,6 +43,16 @@ public class DotInfo {
      */
     private int mTotalCount;
 
+    public DotInfo() { }
+
+    /**
+     * Creates a copy of {@param dotInfo}, which can be updated without affecting the original
+     */
+    public DotInfo(DotInfo dotInfo) {
+        mNotificationKeys.addAll(dotInfo.mNotificationKeys);
+        mTotalCount = dotInfo.mTotalCount;
+    }
+
     /**
      * Returns whether the notification was added or its count changed.
      */
@@ -54,10 +64,11 @@ public class DotInfo {
             if (prevKey.count == notificationKey.count) {
                 return false;
             }
-            // Notification was updated with a new count.
+            // Notification was updated with a new count. The previous key is replaced rather than
+            // updated, as it can be shared with a copy of this DotInfo.
             mTotalCount -= prevKey.count;
             mTotalCount += notificationKey.count;
-            prevKey.count = notificationKey.count;
+            mNotificationKeys.set(indexOfPrevKey, notificationKey);
             return true;
         }
         boolean added = mNotificationKeys.add(notificationKey);
@@ -602,10 +602,16 @@ public class FolderIcon extends FrameLayout implements FolderListener, IconLabel
 
     @Override
     protected void dispatchDraw(Canvas canvas) {
+        long drawStart = FolderIconDrawStats.INSTANCE.onDrawStarted();
         super.dispatchDraw(canvas);
 
-        if (!mBackgroundIsVisible) return;
+        if (mBackgroundIsVisible) {
+            drawPreview(canvas);
+        }
+        FolderIconDrawStats.INSTANCE.onDrawFinished(drawStart);
+    }
 
+    private void drawPreview(Canvas canvas) {
         mPreviewItemManager.recomputePreviewDrawingParams();
 
         if (!mBackground.drawingDelegated()) {
@@ -661,6 +667,21 @@ public class FolderIcon extends FrameLayout implements FolderListener, IconLabel
         return mPreviewItemManager.verifyDrawable(who) || super.verifyDrawable(who);
     }
 
+    @Override
+    public void invalidateDrawable(@NonNull Drawable drawable) {
+        if (mPreviewItemManager.verifyDrawable(drawable)) {
+            // The preview layer needs to be recorded again with the updated drawable
+            mPreviewItemManager.invalidatePreviewLayer();
+        }
+        super.invalidateDrawable(drawable);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mPreviewItemManager.releasePreviewLayer();
+    }
+
     @Override
     public void onItemsChanged(boolean animate) {
         updatePreviewItems(animate);
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.folder;
+
+import android.os.SystemClock;
+import android.view.animation.AnimationUtils;
+
+import java.io.PrintWriter;
+
+/**
+ * Per-frame draw time of all the {@link FolderIcon}s, to measure the cost of the folder
+ * previews on workspaces with many folders. Must only be updated on the UI thread.
+ */
+public class FolderIconDrawStats {
+
+    public static final FolderIconDrawStats INSTANCE = new FolderIconDrawStats();
+
+    // Animation time of the frame being accumulated, which is the same for all the draws of
+    // a frame
+    private long mFrameTime = -1;
+    private long mFrameDrawNanos;
+    private int mFrameDrawCount;
+
+    private int mFrameCount;
+    private long mCompletedDrawNanos;
+    private long mMaxFrameDrawNanos;
+    private long mLastFrameDrawNanos;
+    private int mLastFrameDrawCount;
+
+    private int mLayerRecordCount;
+    private int mLayerDrawCount;
+
+    private FolderIconDrawStats() { }
+
+    /**
+     * Returns the start time to pass to {@link #onDrawFinished(long)}
+     */
+    long onDrawStarted() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    void onDrawFinished(long startNanos) {
+        long drawNanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+        long frameTime = AnimationUtils.currentAnimationTimeMillis();
+        if (frameTime != mFrameTime) {
+            onFrameFinished();
+            mFrameTime = frameTime;
+        }
+        mFrameDrawNanos += drawNanos;
+        mFrameDrawCount++;
+    }
+
+    private void onFrameFinished() {
+        if (mFrameDrawCount == 0) {
+            return;
+        }
+        mFrameCount++;
+        mCompletedDrawNanos += mFrameDrawNanos;
+        mLastFrameDrawNanos = mFrameDrawNanos;
+        mLastFrameDrawCount = mFrameDrawCount;
+        mMaxFrameDrawNanos = Math.max(mMaxFrameDrawNanos, mFrameDrawNanos);
+        mFrameDrawNanos = 0;
+        mFrameDrawCount = 0;
+    }
+
+    void onLayerRecorded() {
+        mLayerRecordCount++;
+    }
+
+    void onLayerDrawn() {
+        mLayerDrawCount++;
+    }
+
+    /**
+     * Dumps the stats of the completed frames
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "FolderIconDrawStats:");
+        writer.println(prefix + "  frames=" + mFrameCount + " avgFrameUs="
+                + (mFrameCount == 0 ? 0 : mCompletedDrawNanos / mFrameCount / 1000)
+                + " maxFrameUs=" + mMaxFrameDrawNanos / 1000);
+        writer.println(prefix + "  lastFrame: folders=" + mLastFrameDrawCount
+                + " timeUs=" + mLastFrameDrawNanos / 1000);
+        writer.println(prefix + "  previewLayer: recorded=" + mLayerRecordCount
+                + " drawn=" + mLayerDrawCount);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.folder;
+
+import static com.android.launcher3.model.data.AppInfo.COMPONENT_KEY_COMPARATOR;
+
+import android.content.ComponentName;
+import android.text.TextUtils;
+
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.util.IntSparseArrayMap;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An incrementally maintained index used by {@link FolderNameProvider}, mapping package names to
+ * the apps of the package and to the folders containing items of the package.
+ *
+ * The apps are updated by {@link com.android.launcher3.model.AllAppsList} and the folders by
+ * {@link com.android.launcher3.model.BgDataModel} and
+ * {@link com.android.launcher3.model.ModelWriter}, so that suggestions can be computed without
+ * copying the model. Updates happen on the model thread, lookups can be made from any thread.
+ */
+public class FolderNameIndex {
+
+    // Apps by package name
+    private final HashMap<String, ArrayList<AppInfo>> mAppsByPackage = new HashMap<>();
+
+    // Items in folders by item id, and by package name
+    private final IntSparseArrayMap<FolderItem> mFolderItems = new IntSparseArrayMap<>();
+    private final HashMap<String, ArrayList<FolderItem>> mFolderItemsByPackage = new HashMap<>();
+
+    // Folder labels by folder id
+    private final IntSparseArrayMap<CharSequence> mFolderLabels = new IntSparseArrayMap<>();
+
+    public synchronized void onAppAdded(AppInfo info) {
+        if (info.componentName == null) {
+            return;
+        }
+        String packageName = info.componentName.getPackageName();
+        ArrayList<AppInfo> apps = mAppsByPackage.get(packageName);
+        if (apps == null) {
+            apps = new ArrayList<>(1);
+            mAppsByPackage.put(packageName, apps);
+        }
+        apps.add(info);
+    }
+
+    public synchronized void onAppRemoved(AppInfo info) {
+        if (info.componentName == null) {
+            return;
+        }
+        String packageName = info.componentName.getPackageName();
+        ArrayList<AppInfo> apps = mAppsByPackage.get(packageName);
+        if (apps != null && apps.remove(info) && apps.isEmpty()) {
+            mAppsByPackage.remove(packageName);
+        }
+    }
+
+    public synchronized void clearApps() {
+        mAppsByPackage.clear();
+    }
+
+    /**
+     * Updates the index for an item added to the model or whose container or label changed.
+     */
+    public synchronized void onItemUpdated(ItemInfo item) {
+        if (item.itemType == Favorites.ITEM_TYPE_FOLDER) {
+            mFolderLabels.put(item.id, item.title);
+            return;
+        }
+        if (!(item instanceof WorkspaceItemInfo)) {
+            return;
+        }
+        FolderItem folderItem = mFolderItems.get(item.id);
+        ComponentName cn = item.getTargetComponent();
+        String packageName = cn == null ? null : cn.getPackageName();
+        if (folderItem != null && folderItem.folderId == item.container
+                && TextUtils.equals(folderItem.packageName, packageName)) {
+            return;
+        }
+        removeFolderItem(item.id);
+        // Folder ids are the ids of their items, which are never negative
+        if (item.container >= 0 && packageName != null) {
+            folderItem = new FolderItem(packageName, item.container);
+            mFolderItems.put(item.id, folderItem);
+            ArrayList<FolderItem> items = mFolderItemsByPackage.get(packageName);
+            if (items == null) {
+                items = new ArrayList<>(1);
+                mFolderItemsByPackage.put(packageName, items);
+            }
+            items.add(folderItem);
+        }
+    }
+
+    public synchronized void onItemRemoved(ItemInfo item) {
+        if (item.itemType == Favorites.ITEM_TYPE_FOLDER) {
+            mFolderLabels.remove(item.id);
+        } else {
+            removeFolderItem(item.id);
+        }
+    }
+
+    public synchronized void clearFolders() {
+        mFolderItems.clear();
+        mFolderItemsByPackage.clear();
+        mFolderLabels.clear();
+    }
+
+    private void removeFolderItem(int itemId) {
+        FolderItem folderItem = mFolderItems.get(itemId);
+        if (folderItem == null) {
+            return;
+        }
+        mFolderItems.remove(itemId);
+        ArrayList<FolderItem> items = mFolderItemsByPackage.get(folderItem.packageName);
+        if (items != null && items.remove(folderItem) && items.isEmpty()) {
+            mFolderItemsByPackage.remove(folderItem.packageName);
+        }
+    }
+
+    /**
+     * Returns the title of the app of {@param packageName}, or null if there is none. When the
+     * package has several apps, the first one in {@link AppInfo#COMPONENT_KEY_COMPARATOR} order
+     * is used.
+     */
+    public synchronized CharSequence getAppTitle(String packageName) {
+        ArrayList<AppInfo> apps = mAppsByPackage.get(packageName);
+        if (apps == null) {
+            return null;
+        }
+        AppInfo result = null;
+        for (AppInfo info : apps) {
+            if (result == null || COMPONENT_KEY_COMPARATOR.compare(info, result) < 0) {
+                result = info;
+            }
+        }
+        return result == null ? null : result.title;
+    }
+
+    /**
+     * Returns up to {@param maxResults} distinct labels of the folders containing items of
+     * {@param packageNames}, other than {@param excludedFolderId}. Folders containing the most
+     * items of these packages come first.
+     */
+    public synchronized List<CharSequence> getFolderLabels(Collection<String> packageNames,
+            int excludedFolderId, int maxResults) {
+        IntSparseArrayMap<int[]> countsByFolder = new IntSparseArrayMap<>();
+        for (String packageName : packageNames) {
+            ArrayList<FolderItem> items = mFolderItemsByPackage.get(packageName);
+            if (items == null) {
+                continue;
+            }
+            for (FolderItem item : items) {
+                if (item.folderId == excludedFolderId
+                        || TextUtils.isEmpty(mFolderLabels.get(item.folderId))) {
+                    continue;
+                }
+                int[] count = countsByFolder.get(item.folderId);
+                if (count == null) {
+                    countsByFolder.put(item.folderId, new int[] {1});
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+
+        ArrayList<CharSequence> result = new ArrayList<>();
+        while (result.size() < maxResults && countsByFolder.size() > 0) {
+            // Only a few folders contain items of the same packages, so a selection is enough
+            int best = 0;
+            for (int i = 1; i < countsByFolder.size(); i++) {
+                if (countsByFolder.valueAt(i)[0] > countsByFolder.valueAt(best)[0]) {
+                    best = i;
+                }
+            }
+            CharSequence label = mFolderLabels.get(countsByFolder.keyAt(best));
+            countsByFolder.removeAt(best);
+            if (!containsLabel(result, label)) {
+                result.add(label);
+            }
+        }
+        return result;
+    }
+
+    private static boolean containsLabel(List<CharSequence> labels, CharSequence label) {
+        for (CharSequence l : labels) {
+            if (TextUtils.equals(l, label)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "FolderNameIndex: packages=" + mAppsByPackage.size()
+                + " folderItems=" + mFolderItems.size() + " folders=" + mFolderLabels.size());
+    }
+
+    private static class FolderItem {
+        final String packageName;
+        final int folderId;
+
+        FolderItem(String packageName, int folderId) {
+            this.packageName = packageName;
+            this.folderId = folderId;
+        }
+    }
+}
@@ -24,9 +24,6 @@ import android.util.Log;
 
 import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.R;
-import com.android.launcher3.model.AllAppsList;
-import com.android.launcher3.model.BaseModelUpdateTask;
-import com.android.launcher3.model.BgDataModel;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.FolderInfo;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
@@ -35,7 +32,6 @@ import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.ResourceBasedOverride;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -55,8 +51,11 @@ public class FolderNameProvider implements ResourceBasedOverride {
      * name edit box can also be used to provide suggestion.
      */
     public static final int SUGGEST_MAX = 4;
+    private static final float FOLDER_LABEL_SCORE = 0.5f;
     protected IntSparseArrayMap<FolderInfo> mFolderInfos;
     protected List<AppInfo> mAppInfos;
+    // When set, used instead of mAppInfos and mFolderInfos
+    protected FolderNameIndex mIndex;
 
     /**
      * Retrieve instance of this object that can be overridden in runtime based on the build
@@ -82,8 +81,7 @@ public class FolderNameProvider implements ResourceBasedOverride {
     }
 
     private void load(Context context) {
-        LauncherAppState.getInstance(context).getModel().enqueueModelUpdateTask(
-                new FolderNameWorker());
+        mIndex = LauncherAppState.getInstance(context).getModel().getFolderNameIndex();
     }
 
     private void load(List<AppInfo> appInfos, IntSparseArrayMap<FolderInfo> folderInfos) {
@@ -101,6 +99,21 @@ public class FolderNameProvider implements ResourceBasedOverride {
         if (DEBUG) {
             Log.d(TAG, "getSuggestedFolderName:" + nameInfos.toString());
         }
+        Set<String> packageNames = workspaceItemInfos.stream()
+                .map(WorkspaceItemInfo::getTargetComponent)
+                .filter(Objects::nonNull)
+                .map(ComponentName::getPackageName)
+                .collect(Collectors.toSet());
+
+        // Suggest the labels of the other folders containing the same apps, leaving room for
+        // the suggestions below
+        if (mIndex != null && !packageNames.isEmpty()) {
+            for (CharSequence label : mIndex.getFolderLabels(packageNames,
+                    workspaceItemInfos.get(0).container, SUGGEST_MAX - 2)) {
+                setAsFreeSuggestion(nameInfos, label);
+            }
+        }
+
         // If all the icons are from work profile,
         // Then, suggest "Work" as the folder name
         Set<UserHandle> users = workspaceItemInfos.stream().map(w -> w.user)
@@ -112,17 +125,16 @@ public class FolderNameProvider implements ResourceBasedOverride {
 
         // If all the icons are from same package (e.g., main icon, shortcut, shortcut)
         // Then, suggest the package's title as the folder name
-        Set<String> packageNames = workspaceItemInfos.stream()
-                .map(WorkspaceItemInfo::getTargetComponent)
-                .filter(Objects::nonNull)
-                .map(ComponentName::getPackageName)
-                .collect(Collectors.toSet());
-
         if (packageNames.size() == 1) {
-            Optional<AppInfo> info = getAppInfoByPackageName(packageNames.iterator().next());
+            String packageName = packageNames.iterator().next();
+            CharSequence title = mIndex != null ? mIndex.getAppTitle(packageName)
+                    : getAppInfoByPackageName(packageName).map(i -> i.title).orElse(null);
             // Place it as first viable suggestion and shift everything else
-            info.ifPresent(i -> setAsFirstSuggestion(nameInfos, i.title.toString()));
+            if (title != null) {
+                setAsFirstSuggestion(nameInfos, title.toString());
+            }
         }
+
         if (DEBUG) {
             Log.d(TAG, "getSuggestedFolderName:" + nameInfos.toString());
         }
@@ -154,6 +166,20 @@ public class FolderNameProvider implements ResourceBasedOverride {
         nameInfos.setLabel(0, label, 1.0f);
     }
 
+    private void setAsFreeSuggestion(FolderNameInfos nameInfos, CharSequence label) {
+        if (nameInfos == null || nameInfos.contains(label)) {
+            return;
+        }
+        CharSequence[] labels = nameInfos.getLabels();
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] == null || TextUtils.isEmpty(labels[i])) {
+                nameInfos.setStatus(FolderNameInfos.HAS_SUGGESTIONS);
+                nameInfos.setLabel(i, label, FOLDER_LABEL_SCORE);
+                return;
+            }
+        }
+    }
+
     private void setAsLastSuggestion(FolderNameInfos nameInfos, CharSequence label) {
         if (nameInfos == null || nameInfos.contains(label)) {
             return;
@@ -171,12 +197,4 @@ public class FolderNameProvider implements ResourceBasedOverride {
         nameInfos.setLabel(labels.length - 1, label, 1.0f);
     }
 
-    private class FolderNameWorker extends BaseModelUpdateTask {
-        @Override
-        public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList apps) {
-            mFolderInfos = dataModel.folders.clone();
-            mAppInfos = Arrays.asList(apps.copyData());
-        }
-    }
-
 }
@@ -26,12 +26,17 @@ import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Path;
 import android.graphics.PointF;
 import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.util.FloatProperty;
 import android.view.View;
 
@@ -39,6 +44,7 @@ import androidx.annotation.NonNull;
 
 import com.android.launcher3.BubbleTextView;
 import com.android.launcher3.Utilities;
+import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.graphics.PreloadIconDrawable;
 import com.android.launcher3.model.data.ItemInfoWithIcon;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
@@ -90,6 +96,15 @@ public class PreviewItemManager {
     private float mCurrentPageItemsTransX = 0;
     private boolean mShouldSlideInFirstPage;
 
+    // Layer caching the first page preview items while they are at rest. It is only recorded
+    // again when the items, their drawables or their drawing params change.
+    private RenderNode mPreviewLayer;
+    private boolean mPreviewLayerValid;
+    private final PointF mPreviewLayerOffset = new PointF();
+    private final RectF mLayerBounds = new RectF();
+    private final RectF mTmpRectF = new RectF();
+    private final Rect mTmpRect = new Rect();
+
     static final int INITIAL_ITEM_ANIMATION_DURATION = 350;
     private static final int FINAL_ITEM_ANIMATION_DURATION = 200;
 
@@ -202,11 +217,87 @@ public class PreviewItemManager {
         PointF firstPageOffset = new PointF(bg.basePreviewOffsetX + firstPageItemsTransX,
                 bg.basePreviewOffsetY);
         boolean shouldClipFirstPage = firstPageItemsTransX < -mClipThreshold;
-        drawParams(canvas, mFirstPageParams, firstPageOffset, shouldClipFirstPage, clipPath);
+        if (firstPageItemsTransX == 0 && canDrawFromLayer(canvas)) {
+            drawFromLayer(canvas, firstPageOffset, clipPath);
+        } else {
+            drawParams(canvas, mFirstPageParams, firstPageOffset, shouldClipFirstPage, clipPath);
+        }
         canvas.restoreToCount(saveCount);
     }
 
+    private boolean canDrawFromLayer(Canvas canvas) {
+        if (!FeatureFlags.ENABLE_FOLDER_PREVIEW_LAYER.get() || !Utilities.ATLEAST_Q
+                || !canvas.isHardwareAccelerated()) {
+            return false;
+        }
+        // Animating and exiting items are drawn directly
+        for (PreviewItemDrawingParams p : mFirstPageParams) {
+            if (p.anim != null || p.index == EXIT_INDEX) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    private void drawFromLayer(Canvas canvas, PointF offset, Path clipPath) {
+        if (mPreviewLayer == null) {
+            mPreviewLayer = new RenderNode("FolderPreview");
+            mPreviewLayer.setUseCompositingLayer(true, null);
+        }
+        if (!mPreviewLayerValid || !mPreviewLayerOffset.equals(offset.x, offset.y)) {
+            // The layer only covers the items, which are not clipped at rest
+            mLayerBounds.setEmpty();
+            for (PreviewItemDrawingParams p : mFirstPageParams) {
+                if (!p.hidden && p.drawable != null) {
+                    float left = offset.x + p.transX;
+                    float top = offset.y + p.transY;
+                    float size = mIntrinsicIconSize * p.scale;
+                    mTmpRectF.set(left, top, left + size, top + size);
+                    mLayerBounds.union(mTmpRectF);
+                }
+            }
+            mLayerBounds.roundOut(mTmpRect);
+            mPreviewLayer.setPosition(mTmpRect);
+            if (!mTmpRect.isEmpty()) {
+                RecordingCanvas c = mPreviewLayer.beginRecording(
+                        mTmpRect.width(), mTmpRect.height());
+                c.translate(-mTmpRect.left, -mTmpRect.top);
+                drawParams(c, mFirstPageParams, offset, false, clipPath);
+                mPreviewLayer.endRecording();
+            } else {
+                mPreviewLayer.discardDisplayList();
+            }
+            mPreviewLayerOffset.set(offset);
+            mPreviewLayerValid = true;
+            FolderIconDrawStats.INSTANCE.onLayerRecorded();
+        }
+        if (mPreviewLayer.hasDisplayList()) {
+            canvas.drawRenderNode(mPreviewLayer);
+            FolderIconDrawStats.INSTANCE.onLayerDrawn();
+        }
+    }
+
+    /**
+     * Marks the cached preview layer as outdated, so that it is recorded again on the next draw
+     */
+    void invalidatePreviewLayer() {
+        mPreviewLayerValid = false;
+    }
+
+    /**
+     * Releases the display list of the cached preview layer
+     */
+    @TargetApi(Build.VERSION_CODES.Q)
+    void releasePreviewLayer() {
+        if (mPreviewLayer != null) {
+            mPreviewLayer.discardDisplayList();
+        }
+        mPreviewLayerValid = false;
+    }
+
     public void onParamsChanged() {
+        invalidatePreviewLayer();
         mIcon.invalidate();
     }
 
@@ -248,11 +339,13 @@ public class PreviewItemManager {
                 mFirstPageParams.get(index) : null;
         if (params != null) {
             params.hidden = hidden;
+            invalidatePreviewLayer();
         }
     }
 
     void buildParamsForPage(int page, ArrayList<PreviewItemDrawingParams> params, boolean animate) {
         List<WorkspaceItemInfo> items = mIcon.getPreviewItemsOnPage(page);
+        invalidatePreviewLayer();
         int prevNumItems = params.size();
 
         // We adjust the size of the list to match the number of items in the preview.
@@ -433,6 +526,7 @@ public class PreviewItemManager {
         }
         p.drawable.setBounds(0, 0, mIconSize, mIconSize);
         p.item = item;
+        invalidatePreviewLayer();
 
         // Set the callback to FolderIcon as it is responsible to drawing the icon. The
         // callback will be released when the folder is opened.
@@ -47,15 +47,21 @@ import com.android.launcher3.model.data.PackageItemInfo;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.pm.UserCache;
 import com.android.launcher3.shortcuts.ShortcutKey;
+import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.InstantAppResolver;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import androidx.annotation.NonNull;
 
+import static com.android.launcher3.util.Executors.ICON_RENDER_EXECUTOR;
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
 
@@ -87,7 +93,8 @@ public class IconCache extends BaseIconCache {
     public IconCache(Context context, InvariantDeviceProfile idp, String dbFileName,
                      IconProvider iconProvider) {
         super(context, dbFileName, MODEL_EXECUTOR.getLooper(),
-                idp.fillResIconDpi, idp.iconBitmapSize, true /* inMemoryCache */);
+                idp.fillResIconDpi, idp.iconBitmapSize, true /* inMemoryCache */,
+                FeatureFlags.ENABLE_MAPPED_ICON_CACHE.get());
         mComponentWithLabelCachingLogic = new ComponentCachingLogic(context, false);
         mLauncherActivityInfoCachingLogic = LauncherActivityCachingLogic.newInstance(context);
         mShortcutCachingLogic = new ShortcutCachingLogic();
@@ -112,6 +119,16 @@ public class IconCache extends BaseIconCache {
         return LauncherIcons.obtain(mContext);
     }
 
+    @Override
+    public boolean isIconAtlasEnabled() {
+        return FeatureFlags.ENABLE_ICON_ATLAS.get();
+    }
+
+    @Override
+    protected Executor getIconRenderExecutor() {
+        return FeatureFlags.ENABLE_PARALLEL_ICON_RENDERING.get() ? ICON_RENDER_EXECUTOR : null;
+    }
+
     /**
      * Updates the entries related to the given package in memory and persistent DB.
      */
@@ -135,6 +152,9 @@ public class IconCache extends BaseIconCache {
      */
     public void close() {
         mIconDb.close();
+        if (mIconStore != null) {
+            mIconStore.close();
+        }
     }
 
     /**
@@ -320,6 +340,18 @@ public class IconCache extends BaseIconCache {
         applyCacheEntry(entry, infoInOut);
     }
 
+    /**
+     * Loads the low res package entries of {@param infos}, one batch of packages at a time,
+     * before they are filled in by {@link #getTitleAndIconForApp}.
+     */
+    public void prefetchPackageEntries(Collection<PackageItemInfo> infos) {
+        List<ComponentKey> keys = new ArrayList<>(infos.size());
+        for (PackageItemInfo info : infos) {
+            keys.add(getPackageKey(info.packageName, info.user));
+        }
+        prefetchEntries(keys, true /* lowRes */);
+    }
+
     /**
      * Fill in {@param infoInOut} with the corresponding icon and label.
      */
@@ -20,8 +20,12 @@ import android.content.Context;
 import android.content.pm.LauncherActivityInfo;
 import android.os.UserHandle;
 
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.InvariantDeviceProfile;
 import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.R;
+import com.android.launcher3.Utilities;
 import com.android.launcher3.icons.cache.CachingLogic;
 import com.android.launcher3.util.ResourceBasedOverride;
 
@@ -62,4 +66,15 @@ public class LauncherActivityCachingLogic
                     object.getUser(), object.getApplicationInfo().targetSdkVersion);
         }
     }
+
+    @Nullable
+    @Override
+    public String getIconSource(Context context, LauncherActivityInfo object) {
+        if (!Utilities.ATLEAST_S) {
+            // The icon resource of the activity is not available
+            return null;
+        }
+        return InvariantDeviceProfile.INSTANCE.get(context).fillResIconDpi + ","
+                + object.getActivityInfo().getIconResource();
+    }
 }
@@ -67,6 +67,7 @@ public class LauncherIcons extends BaseIconFactory implements AutoCloseable {
             sPool = null;
             sPoolId++;
         }
+        IconNormalizer.invalidateInstances();
     }
 
     private final int mPoolId;
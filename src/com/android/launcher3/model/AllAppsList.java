@@ -33,10 +33,12 @@ import androidx.annotation.Nullable;
 
 import com.android.launcher3.AppFilter;
 import com.android.launcher3.compat.AlphabeticIndexCompat;
+import com.android.launcher3.folder.FolderNameIndex;
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.pm.PackageInstallInfo;
+import com.android.launcher3.search.StringMatcherIndex;
 import com.android.launcher3.util.FlagOp;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.PackageManagerHelper;
@@ -70,6 +72,8 @@ public class AllAppsList {
     private Consumer<AppInfo> mRemoveListener = NO_OP_CONSUMER;
 
     private AlphabeticIndexCompat mIndex;
+    private StringMatcherIndex<AppInfo> mSearchIndex = new StringMatcherIndex<>();
+    private FolderNameIndex mFolderNameIndex = new FolderNameIndex();
 
     /**
      * @see Callbacks#FLAG_HAS_SHORTCUT_PERMISSION
@@ -136,10 +140,14 @@ public class AllAppsList {
         if (findAppInfo(info.componentName, info.user) != null) {
             return;
         }
-        mIconCache.getTitleAndIcon(info, activityInfo, false /* useLowResIcon */);
+        // With the icon atlas, the full icons are only loaded when the apps are displayed
+        mIconCache.getTitleAndIcon(info, activityInfo, mIconCache.isIconAtlasEnabled());
         info.sectionName = mIndex.computeSectionName(info.title);
 
         data.add(info);
+        indexTitle(info);
+        mFolderNameIndex.onAppAdded(info);
+        mIconCache.pinKey(info.toComponentKey());
         mDataChanged = true;
     }
 
@@ -152,6 +160,9 @@ public class AllAppsList {
             info.sectionName = mIndex.computeSectionName(info.title);
 
             data.add(info);
+            indexTitle(info);
+            mFolderNameIndex.onAppAdded(info);
+            mIconCache.pinKey(info.toComponentKey());
             mDataChanged = true;
         }
     }
@@ -186,16 +197,43 @@ public class AllAppsList {
     private void removeApp(int index) {
         AppInfo removed = data.remove(index);
         if (removed != null) {
+            mSearchIndex.remove(removed);
+            mFolderNameIndex.onAppRemoved(removed);
+            mIconCache.unpinKey(removed.toComponentKey());
             mDataChanged = true;
             mRemoveListener.accept(removed);
         }
     }
 
     public void clear() {
+        for (AppInfo info : data) {
+            mIconCache.unpinKey(info.toComponentKey());
+        }
         data.clear();
         mDataChanged = false;
         // Reset the index as locales might have changed
         mIndex = new AlphabeticIndexCompat(LocaleList.getDefault());
+        mSearchIndex = new StringMatcherIndex<>();
+        mFolderNameIndex.clearApps();
+    }
+
+    /**
+     * Returns the first {@param maxResults} apps whose title matches {@param queryLower}, in the
+     * same order as {@link #data}.
+     */
+    public ArrayList<AppInfo> searchTitles(String queryLower, int maxResults) {
+        if (mSearchIndex.size() != data.size()) {
+            // The list was modified directly, rebuild the index
+            mSearchIndex.clear();
+            for (AppInfo info : data) {
+                indexTitle(info);
+            }
+        }
+        return mSearchIndex.search(queryLower, maxResults);
+    }
+
+    private void indexTitle(AppInfo info) {
+        mSearchIndex.put(info, info.getMatchTarget(mSearchIndex.getMatcher()));
     }
 
     /**
@@ -245,6 +283,7 @@ public class AllAppsList {
             if (info.user.equals(user) && packages.contains(info.componentName.getPackageName())) {
                 mIconCache.updateTitleAndIcon(info);
                 info.sectionName = mIndex.computeSectionName(info.title);
+                indexTitle(info);
                 mDataChanged = true;
             }
         }
@@ -282,6 +321,7 @@ public class AllAppsList {
 
                     mIconCache.getTitleAndIcon(applicationInfo, info, false /* useLowResIcon */);
                     applicationInfo.sectionName = mIndex.computeSectionName(applicationInfo.title);
+                    indexTitle(applicationInfo);
                     applicationInfo.setProgressLevel(
                             PackageManagerHelper.getLoadingProgress(info),
                             PackageInstallInfo.STATUS_INSTALLED_DOWNLOADING);
@@ -339,6 +379,17 @@ public class AllAppsList {
         return result;
     }
 
+    /**
+     * Sets the index to keep up to date with the apps of this list
+     */
+    public void setFolderNameIndex(FolderNameIndex index) {
+        mFolderNameIndex = index;
+        index.clearApps();
+        for (AppInfo info : data) {
+            index.onAppAdded(info);
+        }
+    }
+
     public SafeCloseable trackRemoves(Consumer<AppInfo> removeListener) {
         mRemoveListener = removeListener;
 
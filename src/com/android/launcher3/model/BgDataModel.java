@@ -31,10 +31,14 @@ import android.text.TextUtils;
 import android.util.ArraySet;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.android.launcher3.LauncherSettings;
 import com.android.launcher3.LauncherSettings.Favorites;
 import com.android.launcher3.Workspace;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.folder.FolderNameIndex;
+import com.android.launcher3.icons.cache.BaseIconCache;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.FolderInfo;
 import com.android.launcher3.model.data.ItemInfo;
@@ -62,6 +66,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -111,11 +116,22 @@ public class BgDataModel {
      */
     public final WidgetsModel widgetsModel = new WidgetsModel();
 
+    /**
+     * Index of the apps and folder labels used for folder name suggestions
+     */
+    public final FolderNameIndex folderNameIndex = new FolderNameIndex();
+
     /**
      * Id when the model was last bound
      */
     public int lastBindId = 0;
 
+    // Icon cache whose entries are pinned while the items using them are in the model
+    @Nullable
+    private BaseIconCache mIconCache;
+    // Icon key pinned for each item id
+    private final IntSparseArrayMap<ComponentKey> mPinnedIconKeys = new IntSparseArrayMap<>();
+
     /**
      * Clears all the data
      */
@@ -126,6 +142,65 @@ public class BgDataModel {
         itemsIdMap.clear();
         deepShortcutMap.clear();
         extraItems.clear();
+        folderNameIndex.clearFolders();
+        if (mIconCache != null) {
+            for (ComponentKey key : mPinnedIconKeys) {
+                mIconCache.unpinKey(key);
+            }
+        }
+        mPinnedIconKeys.clear();
+    }
+
+    /**
+     * Sets the icon cache whose entries are kept in memory while they are used by an item
+     */
+    public synchronized void setIconCache(@Nullable BaseIconCache iconCache) {
+        mIconCache = iconCache;
+    }
+
+    /**
+     * Updates the icon cache entry pinned for {@param item}, after it was added or its target
+     * changed
+     */
+    public synchronized void updatePinnedIconKey(ItemInfo item) {
+        if (mIconCache == null) {
+            return;
+        }
+        ComponentKey key = getIconKey(item);
+        ComponentKey oldKey = mPinnedIconKeys.get(item.id);
+        if (Objects.equals(key, oldKey)) {
+            return;
+        }
+        if (key != null) {
+            mIconCache.pinKey(key);
+            mPinnedIconKeys.put(item.id, key);
+        } else {
+            mPinnedIconKeys.remove(item.id);
+        }
+        if (oldKey != null) {
+            mIconCache.unpinKey(oldKey);
+        }
+    }
+
+    private void unpinIconKey(ItemInfo item) {
+        ComponentKey key = mPinnedIconKeys.get(item.id);
+        if (key != null && mIconCache != null) {
+            mIconCache.unpinKey(key);
+        }
+        mPinnedIconKeys.remove(item.id);
+    }
+
+    /**
+     * Returns the key of the icon cache entry used by {@param item}, if any
+     */
+    @Nullable
+    private static ComponentKey getIconKey(ItemInfo item) {
+        if (item.itemType == LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT) {
+            return ShortcutKey.fromItemInfo(item);
+        } else if (item instanceof WorkspaceItemInfo && item.getTargetComponent() != null) {
+            return new ComponentKey(item.getTargetComponent(), item.user);
+        }
+        return null;
     }
 
     /**
@@ -164,6 +239,8 @@ public class BgDataModel {
             writer.println(prefix + '\t' + itemsIdMap.valueAt(i).toString());
         }
 
+        folderNameIndex.dump(prefix, writer);
+
         if (args.length > 0 && TextUtils.equals(args[0], "--all")) {
             writer.println(prefix + "shortcut counts ");
             for (Integer count : deepShortcutMap.values()) {
@@ -210,6 +287,8 @@ public class BgDataModel {
                     break;
             }
             itemsIdMap.remove(item.id);
+            folderNameIndex.onItemRemoved(item);
+            unpinIconKey(item);
         }
         updatedDeepShortcuts.forEach(user -> updateShortcutPinnedState(context, user));
     }
@@ -246,6 +325,8 @@ public class BgDataModel {
                 appWidgets.add((LauncherAppWidgetInfo) item);
                 break;
         }
+        folderNameIndex.onItemUpdated(item);
+        updatePinnedIconKey(item);
         if (newItem && item.itemType == LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT) {
             updateShortcutPinnedState(context, item.user);
         }
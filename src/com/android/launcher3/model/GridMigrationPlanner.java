@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_FOLDER;
+
+import com.android.launcher3.model.GridSizeMigrationTaskV2.DbEntry;
+import com.android.launcher3.util.GridOccupancy;
+import com.android.launcher3.util.IntArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Computes where the items of a source grid are placed in a destination grid, without touching
+ * the database.
+ *
+ * The planner works on a snapshot of the source and destination items ({@link Input}) and
+ * returns a {@link Plan}, which references the placed items by their index in the snapshot.
+ * Plans are cached by target grid and snapshot fingerprint, so that computing the migration to
+ * the same grid again (for example when the grid preview is shown repeatedly) is free. As the
+ * fingerprint can collide, a cached plan is only reused if the values of its snapshot are equal
+ * to the requested one.
+ *
+ * The placement logic is the same as the one originally done in {@link GridSizeMigrationTaskV2}:
+ * hotseat items fill the first empty hotseat cells, and workspace items fill the empty cells of
+ * each screen in reading order, from the bottom row, before new screens are added.
+ */
+public class GridMigrationPlanner {
+
+    private static final int MAX_CACHED_PLANS = 8;
+
+    // Cached plans in access order
+    private static final LinkedHashMap<PlanKey, Plan> sPlanCache =
+            new LinkedHashMap<PlanKey, Plan>(MAX_CACHED_PLANS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PlanKey, Plan> eldest) {
+                    return size() > MAX_CACHED_PLANS;
+                }
+            };
+
+    /**
+     * Returns the plan to migrate {@param input} to a grid of {@param trgX} x {@param trgY}
+     * with {@param hotseatSize} hotseat cells, computing it if it is not cached.
+     */
+    public static Plan getPlan(Input input, int hotseatSize, int trgX, int trgY) {
+        PlanKey key = new PlanKey(input.mFingerprint, hotseatSize, trgX, trgY);
+        synchronized (sPlanCache) {
+            Plan plan = sPlanCache.get(key);
+            if (plan != null && plan.mInput.hasSameValues(input)) {
+                return plan;
+            }
+        }
+        Plan plan = computePlan(input, hotseatSize, trgX, trgY);
+        synchronized (sPlanCache) {
+            sPlanCache.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Removes all the cached plans
+     */
+    public static void clearCache() {
+        synchronized (sPlanCache) {
+            sPlanCache.clear();
+        }
+    }
+
+    /**
+     * Computes the plan to migrate {@param input} to a grid of {@param trgX} x {@param trgY}
+     * with {@param hotseatSize} hotseat cells. The entries of the input are not modified.
+     */
+    public static Plan computePlan(Input input, int hotseatSize, int trgX, int trgY) {
+        Plan plan = new Plan(input);
+        IntArray hotseatDiff = calcDiff(input.mSrcHotseat, input.mDestHotseat);
+        IntArray workspaceDiff = calcDiff(input.mSrcWorkspace, input.mDestWorkspace);
+        if (hotseatDiff.isEmpty() && workspaceDiff.isEmpty()) {
+            return plan;
+        }
+
+        // Migrate hotseat
+        boolean[] hotseatCells = new boolean[hotseatSize];
+        for (DbEntry entry : input.mDestHotseat) {
+            hotseatCells[entry.screenId] = true;
+        }
+        int next = 0;
+        for (int i = 0; i < hotseatSize && next < hotseatDiff.size(); i++) {
+            if (!hotseatCells[i]) {
+                int index = hotseatDiff.get(next++);
+                DbEntry entry = input.mSrcHotseat[index];
+                // The cell values do not affect the item position, but we should set them to
+                // something other than -1.
+                plan.add(true, index, i, i, 0, entry.spanX, entry.spanY);
+                hotseatCells[i] = true;
+            }
+        }
+
+        // Sort the items by the reading order.
+        sortByReadingOrder(workspaceDiff, input.mSrcWorkspace);
+
+        // Migrate workspace.
+        HashMap<Integer, ArrayList<DbEntry>> destEntriesByScreen = new HashMap<>();
+        for (DbEntry entry : input.mDestWorkspace) {
+            ArrayList<DbEntry> entries = destEntriesByScreen.get(entry.screenId);
+            if (entries == null) {
+                entries = new ArrayList<>();
+                destEntriesByScreen.put(entry.screenId, entries);
+            }
+            entries.add(entry);
+        }
+        GridOccupancy occupied = new GridOccupancy(trgX, trgY);
+        int screenId = 0;
+        while (!workspaceDiff.isEmpty()) {
+            occupied.clear();
+            List<DbEntry> existingEntries = destEntriesByScreen.get(screenId);
+            if (existingEntries != null) {
+                for (DbEntry entry : existingEntries) {
+                    occupied.markCells(entry, true);
+                }
+            }
+            placeOnScreen(plan, input.mSrcWorkspace, workspaceDiff, occupied, screenId,
+                    trgX, trgY);
+            screenId++;
+        }
+        return plan;
+    }
+
+    /**
+     * Places the items of {@param itemsToPlace} which fit on the screen, and removes the placed
+     * items, as well as the items which can never fit, from {@param itemsToPlace}.
+     */
+    private static void placeOnScreen(Plan plan, DbEntry[] entries, IntArray itemsToPlace,
+            GridOccupancy occupied, int screenId, int trgX, int trgY) {
+        // (nextStartX, nextStartY) serves as a memoization of last placement, we can start our
+        // search for next placement from there to speed up the search.
+        int nextStartX = 0;
+        int nextStartY = trgY - 1;
+        int minY = screenId == 0 ? 1 /* smartspace */ : 0;
+
+        int i = 0;
+        while (i < itemsToPlace.size()) {
+            DbEntry entry = entries[itemsToPlace.get(i)];
+            if (entry.minSpanX > trgX || entry.minSpanY > trgY) {
+                itemsToPlace.removeIndex(i);
+                continue;
+            }
+
+            boolean placed = false;
+            for (int y = nextStartY; y >= minY && !placed; y--) {
+                for (int x = nextStartX; x < trgX; x++) {
+                    boolean fits = occupied.isRegionVacant(x, y, entry.spanX, entry.spanY);
+                    boolean minFits = occupied.isRegionVacant(x, y, entry.minSpanX,
+                            entry.minSpanY);
+                    if (fits || minFits) {
+                        int spanX = minFits ? entry.minSpanX : entry.spanX;
+                        int spanY = minFits ? entry.minSpanY : entry.spanY;
+                        plan.add(false, itemsToPlace.get(i), screenId, x, y, spanX, spanY);
+                        occupied.markCells(x, y, spanX, spanY, true);
+                        nextStartX = x + spanX;
+                        nextStartY = y;
+                        placed = true;
+                        break;
+                    }
+                }
+                if (!placed) {
+                    nextStartX = 0;
+                }
+            }
+            if (placed) {
+                itemsToPlace.removeIndex(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /** Returns the indices of the entries of {@param src} which are not in {@param dest} */
+    private static IntArray calcDiff(DbEntry[] src, DbEntry[] dest) {
+        Set<String> destIntentSet = new HashSet<>();
+        Set<Map<String, Integer>> destFolderIntentSet = new HashSet<>();
+        for (DbEntry entry : dest) {
+            if (entry.itemType == ITEM_TYPE_FOLDER) {
+                destFolderIntentSet.add(getFolderIntents(entry));
+            } else {
+                destIntentSet.add(entry.mIntent);
+            }
+        }
+        IntArray diff = new IntArray(src.length);
+        for (int i = 0; i < src.length; i++) {
+            DbEntry entry = src[i];
+            if (entry.itemType == ITEM_TYPE_FOLDER) {
+                if (!destFolderIntentSet.contains(getFolderIntents(entry))) {
+                    diff.add(i);
+                }
+            } else if (!destIntentSet.contains(entry.mIntent)) {
+                diff.add(i);
+            }
+        }
+        return diff;
+    }
+
+    private static Map<String, Integer> getFolderIntents(DbEntry entry) {
+        Map<String, Integer> folder = new HashMap<>();
+        for (Map.Entry<String, Set<Integer>> e : entry.mFolderItems.entrySet()) {
+            folder.put(e.getKey(), e.getValue().size());
+        }
+        return folder;
+    }
+
+    /** Stable insertion sort of {@param indices} by the reading order of the entries */
+    private static void sortByReadingOrder(IntArray indices, DbEntry[] entries) {
+        for (int i = 1; i < indices.size(); i++) {
+            int index = indices.get(i);
+            int j = i - 1;
+            while (j >= 0 && entries[indices.get(j)].compareTo(entries[index]) > 0) {
+                indices.set(j + 1, indices.get(j));
+                j--;
+            }
+            indices.set(j + 1, index);
+        }
+    }
+
+    /**
+     * An immutable snapshot of the items to migrate
+     */
+    public static class Input {
+
+        final DbEntry[] mSrcHotseat;
+        final DbEntry[] mSrcWorkspace;
+        final DbEntry[] mDestHotseat;
+        final DbEntry[] mDestWorkspace;
+        final long mFingerprint;
+
+        // Copy of the entry values read by the planner, as the entries themselves are mutable
+        private final IntArray mValues = new IntArray();
+        private final ArrayList<Object> mRefs = new ArrayList<>();
+
+        public Input(List<DbEntry> srcHotseat, List<DbEntry> srcWorkspace,
+                List<DbEntry> destHotseat, List<DbEntry> destWorkspace) {
+            mSrcHotseat = srcHotseat.toArray(new DbEntry[srcHotseat.size()]);
+            mSrcWorkspace = srcWorkspace.toArray(new DbEntry[srcWorkspace.size()]);
+            mDestHotseat = destHotseat.toArray(new DbEntry[destHotseat.size()]);
+            mDestWorkspace = destWorkspace.toArray(new DbEntry[destWorkspace.size()]);
+
+            copyValues(mSrcHotseat);
+            copyValues(mSrcWorkspace);
+            copyValues(mDestHotseat);
+            copyValues(mDestWorkspace);
+
+            long hash = 0;
+            for (int i = 0; i < mValues.size(); i++) {
+                hash = 31 * hash + mValues.get(i);
+            }
+            mFingerprint = 31 * hash + mRefs.hashCode();
+        }
+
+        private void copyValues(DbEntry[] entries) {
+            mValues.add(entries.length);
+            for (DbEntry entry : entries) {
+                mValues.add(entry.id);
+                mValues.add(entry.itemType);
+                mValues.add(entry.screenId);
+                mValues.add(entry.cellX);
+                mValues.add(entry.cellY);
+                mValues.add(entry.spanX);
+                mValues.add(entry.spanY);
+                mValues.add(entry.minSpanX);
+                mValues.add(entry.minSpanY);
+                mRefs.add(entry.mIntent);
+                mRefs.add(getFolderIntents(entry));
+            }
+        }
+
+        /** Returns true if the values of {@param other} are the same as this snapshot's ones */
+        boolean hasSameValues(Input other) {
+            return mFingerprint == other.mFingerprint && mValues.equals(other.mValues)
+                    && mRefs.equals(other.mRefs);
+        }
+    }
+
+    /**
+     * The placements of the migrated items, in the order they should be inserted
+     */
+    public static class Plan {
+
+        private static final int SCREEN = 0;
+        private static final int CELL_X = 1;
+        private static final int CELL_Y = 2;
+        private static final int SPAN_X = 3;
+        private static final int SPAN_Y = 4;
+        private static final int STRIDE = 5;
+
+        // Snapshot the plan was computed for
+        private final Input mInput;
+
+        // Index of the placed entries in the source hotseat or workspace
+        private final IntArray mIndices = new IntArray();
+        private final IntArray mHotseat = new IntArray();
+        private final IntArray mPositions = new IntArray();
+
+        private Plan(Input input) {
+            mInput = input;
+        }
+
+        private void add(boolean hotseat, int index, int screenId, int cellX, int cellY,
+                int spanX, int spanY) {
+            mIndices.add(index);
+            mHotseat.add(hotseat ? 1 : 0);
+            mPositions.add(screenId);
+            mPositions.add(cellX);
+            mPositions.add(cellY);
+            mPositions.add(spanX);
+            mPositions.add(spanY);
+        }
+
+        /** Returns true if no item needs to be migrated */
+        public boolean isEmpty() {
+            return mIndices.isEmpty();
+        }
+
+        public int size() {
+            return mIndices.size();
+        }
+
+        public boolean isHotseat(int i) {
+            return mHotseat.get(i) != 0;
+        }
+
+        /**
+         * Returns the source entry of {@param input} placed by the i-th placement, with its
+         * position updated to the destination one.
+         */
+        public DbEntry getPlacedEntry(Input input, int i) {
+            DbEntry src = isHotseat(i) ? input.mSrcHotseat[mIndices.get(i)]
+                    : input.mSrcWorkspace[mIndices.get(i)];
+            DbEntry entry = new DbEntry(src);
+            int offset = i * STRIDE;
+            entry.screenId = mPositions.get(offset + SCREEN);
+            entry.cellX = mPositions.get(offset + CELL_X);
+            entry.cellY = mPositions.get(offset + CELL_Y);
+            entry.spanX = mPositions.get(offset + SPAN_X);
+            entry.spanY = mPositions.get(offset + SPAN_Y);
+            return entry;
+        }
+    }
+
+    private static class PlanKey {
+
+        private final long mFingerprint;
+        private final int mHotseatSize;
+        private final int mTrgX;
+        private final int mTrgY;
+
+        PlanKey(long fingerprint, int hotseatSize, int trgX, int trgY) {
+            mFingerprint = fingerprint;
+            mHotseatSize = hotseatSize;
+            mTrgX = trgX;
+            mTrgY = trgY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) o;
+            return mFingerprint == other.mFingerprint && mHotseatSize == other.mHotseatSize
+                    && mTrgX == other.mTrgX && mTrgY == other.mTrgY;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mFingerprint, mHotseatSize, mTrgX, mTrgY);
+        }
+    }
+}
@@ -32,7 +32,6 @@ import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Point;
-import android.util.ArrayMap;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -45,16 +44,13 @@ import com.android.launcher3.graphics.LauncherPreviewRenderer;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.pm.InstallSessionHelper;
 import com.android.launcher3.provider.LauncherDbUtils.SQLiteTransaction;
-import com.android.launcher3.util.GridOccupancy;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.widget.LauncherAppWidgetProviderInfo;
 import com.android.launcher3.widget.WidgetManagerHelper;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -74,12 +70,7 @@ public class GridSizeMigrationTaskV2 {
     private final DbReader mSrcReader;
     private final DbReader mDestReader;
 
-    private final List<DbEntry> mHotseatItems;
-    private final List<DbEntry> mWorkspaceItems;
-
-    private final List<DbEntry> mHotseatDiff;
-    private final List<DbEntry> mWorkspaceDiff;
-
+    private final GridMigrationPlanner.Input mInput;
     private final int mDestHotseatSize;
     private final int mTrgX, mTrgY;
 
@@ -91,11 +82,11 @@ public class GridSizeMigrationTaskV2 {
         mSrcReader = srcReader;
         mDestReader = destReader;
 
-        mHotseatItems = destReader.loadHotseatEntries();
-        mWorkspaceItems = destReader.loadAllWorkspaceEntries();
-
-        mHotseatDiff = calcDiff(mSrcReader.loadHotseatEntries(), mHotseatItems);
-        mWorkspaceDiff = calcDiff(mSrcReader.loadAllWorkspaceEntries(), mWorkspaceItems);
+        List<DbEntry> destHotseatItems = destReader.loadHotseatEntries();
+        List<DbEntry> destWorkspaceItems = destReader.loadAllWorkspaceEntries();
+        mInput = new GridMigrationPlanner.Input(
+                srcReader.loadHotseatEntries(), srcReader.loadAllWorkspaceEntries(),
+                destHotseatItems, destWorkspaceItems);
         mDestHotseatSize = destHotseatSize;
 
         mTrgX = targetSize.x;
@@ -211,75 +202,22 @@ public class GridSizeMigrationTaskV2 {
 
     @VisibleForTesting
     protected boolean migrate() {
-        if (mHotseatDiff.isEmpty() && mWorkspaceDiff.isEmpty()) {
+        GridMigrationPlanner.Plan plan =
+                GridMigrationPlanner.getPlan(mInput, mDestHotseatSize, mTrgX, mTrgY);
+        if (plan.isEmpty()) {
             return false;
         }
 
-        // Migrate hotseat
-        HotseatPlacementSolution hotseatSolution = new HotseatPlacementSolution(mDb, mSrcReader,
-                mDestReader, mContext, mDestHotseatSize, mHotseatItems, mHotseatDiff);
-        hotseatSolution.find();
-
-        // Sort the items by the reading order.
-        Collections.sort(mWorkspaceDiff);
-
-        // Migrate workspace.
-        for (int screenId = 0; screenId <= mDestReader.mLastScreenId; screenId++) {
+        for (int i = 0; i < plan.size(); i++) {
+            DbEntry entry = plan.getPlacedEntry(mInput, i);
             if (DEBUG) {
-                Log.d(TAG, "Migrating " + screenId);
+                Log.d(TAG, "Migrating " + entry.id + " to screen " + entry.screenId);
             }
-            GridPlacementSolution workspaceSolution = new GridPlacementSolution(mDb, mSrcReader,
-                    mDestReader, mContext, screenId, mTrgX, mTrgY, mWorkspaceDiff);
-            workspaceSolution.find();
-            if (mWorkspaceDiff.isEmpty()) {
-                break;
-            }
-        }
-
-        int screenId = mDestReader.mLastScreenId + 1;
-        while (!mWorkspaceDiff.isEmpty()) {
-            GridPlacementSolution workspaceSolution = new GridPlacementSolution(mDb, mSrcReader,
-                    mDestReader, mContext, screenId, mTrgX, mTrgY, mWorkspaceDiff);
-            workspaceSolution.find();
-            screenId++;
+            insertEntryInDb(mDb, mContext, entry, mSrcReader.mTableName, mDestReader.mTableName);
         }
         return true;
     }
 
-    /** Return what's in the src but not in the dest */
-    private static List<DbEntry> calcDiff(List<DbEntry> src, List<DbEntry> dest) {
-        Set<String> destIntentSet = new HashSet<>();
-        Set<Map<String, Integer>> destFolderIntentSet = new HashSet<>();
-        for (DbEntry entry : dest) {
-            if (entry.itemType == LauncherSettings.Favorites.ITEM_TYPE_FOLDER) {
-                destFolderIntentSet.add(getFolderIntents(entry));
-            } else {
-                destIntentSet.add(entry.mIntent);
-            }
-        }
-        List<DbEntry> diff = new ArrayList<>();
-        for (DbEntry entry : src) {
-            if (entry.itemType == LauncherSettings.Favorites.ITEM_TYPE_FOLDER) {
-                if (!destFolderIntentSet.contains(getFolderIntents(entry))) {
-                    diff.add(entry);
-                }
-            } else {
-                if (!destIntentSet.contains(entry.mIntent)) {
-                    diff.add(entry);
-                }
-            }
-        }
-        return diff;
-    }
-
-    private static Map<String, Integer> getFolderIntents(DbEntry entry) {
-        Map<String, Integer> folder = new HashMap<>();
-        for (String intent : entry.mFolderItems.keySet()) {
-            folder.put(intent, entry.mFolderItems.get(intent).size());
-        }
-        return folder;
-    }
-
     private static void insertEntryInDb(SQLiteDatabase db, Context context, DbEntry entry,
             String srcTableName, String destTableName) {
         int id = copyEntryAndUpdate(db, context, entry, srcTableName, destTableName);
@@ -349,142 +287,6 @@ public class GridSizeMigrationTaskV2 {
         return validPackages;
     }
 
-    protected static class GridPlacementSolution {
-
-        private final SQLiteDatabase mDb;
-        private final DbReader mSrcReader;
-        private final DbReader mDestReader;
-        private final Context mContext;
-        private final GridOccupancy mOccupied;
-        private final int mScreenId;
-        private final int mTrgX;
-        private final int mTrgY;
-        private final List<DbEntry> mItemsToPlace;
-
-        private int mNextStartX;
-        private int mNextStartY;
-
-        GridPlacementSolution(SQLiteDatabase db, DbReader srcReader, DbReader destReader,
-                Context context, int screenId, int trgX, int trgY, List<DbEntry> itemsToPlace) {
-            mDb = db;
-            mSrcReader = srcReader;
-            mDestReader = destReader;
-            mContext = context;
-            mOccupied = new GridOccupancy(trgX, trgY);
-            mScreenId = screenId;
-            mTrgX = trgX;
-            mTrgY = trgY;
-            mNextStartX = 0;
-            mNextStartY = mTrgY - 1;
-            List<DbEntry> existedEntries = mDestReader.mWorkspaceEntriesByScreenId.get(screenId);
-            if (existedEntries != null) {
-                for (DbEntry entry : existedEntries) {
-                    mOccupied.markCells(entry, true);
-                }
-            }
-            mItemsToPlace = itemsToPlace;
-        }
-
-        public void find() {
-            Iterator<DbEntry> iterator = mItemsToPlace.iterator();
-            while (iterator.hasNext()) {
-                final DbEntry entry = iterator.next();
-                if (entry.minSpanX > mTrgX || entry.minSpanY > mTrgY) {
-                    iterator.remove();
-                    continue;
-                }
-                if (findPlacement(entry)) {
-                    insertEntryInDb(mDb, mContext, entry, mSrcReader.mTableName,
-                            mDestReader.mTableName);
-                    iterator.remove();
-                }
-            }
-        }
-
-        /**
-         * Search for the next possible placement of an icon. (mNextStartX, mNextStartY) serves as
-         * a memoization of last placement, we can start our search for next placement from there
-         * to speed up the search.
-         */
-        private boolean findPlacement(DbEntry entry) {
-            for (int y = mNextStartY; y >= (mScreenId == 0 ? 1 /* smartspace */ : 0); y--) {
-                for (int x = mNextStartX; x < mTrgX; x++) {
-                    boolean fits = mOccupied.isRegionVacant(x, y, entry.spanX, entry.spanY);
-                    boolean minFits = mOccupied.isRegionVacant(x, y, entry.minSpanX,
-                            entry.minSpanY);
-                    if (minFits) {
-                        entry.spanX = entry.minSpanX;
-                        entry.spanY = entry.minSpanY;
-                    }
-                    if (fits || minFits) {
-                        entry.screenId = mScreenId;
-                        entry.cellX = x;
-                        entry.cellY = y;
-                        mOccupied.markCells(entry, true);
-                        mNextStartX = x + entry.spanX;
-                        mNextStartY = y;
-                        return true;
-                    }
-                }
-                mNextStartX = 0;
-            }
-            return false;
-        }
-    }
-
-    protected static class HotseatPlacementSolution {
-
-        private final SQLiteDatabase mDb;
-        private final DbReader mSrcReader;
-        private final DbReader mDestReader;
-        private final Context mContext;
-        private final HotseatOccupancy mOccupied;
-        private final List<DbEntry> mItemsToPlace;
-
-        HotseatPlacementSolution(SQLiteDatabase db, DbReader srcReader, DbReader destReader,
-                Context context, int hotseatSize, List<DbEntry> placedHotseatItems,
-                List<DbEntry> itemsToPlace) {
-            mDb = db;
-            mSrcReader = srcReader;
-            mDestReader = destReader;
-            mContext = context;
-            mOccupied = new HotseatOccupancy(hotseatSize);
-            for (DbEntry entry : placedHotseatItems) {
-                mOccupied.markCells(entry, true);
-            }
-            mItemsToPlace = itemsToPlace;
-        }
-
-        public void find() {
-            for (int i = 0; i < mOccupied.mCells.length; i++) {
-                if (!mOccupied.mCells[i] && !mItemsToPlace.isEmpty()) {
-                    DbEntry entry = mItemsToPlace.remove(0);
-                    entry.screenId = i;
-                    // These values does not affect the item position, but we should set them
-                    // to something other than -1.
-                    entry.cellX = i;
-                    entry.cellY = 0;
-                    insertEntryInDb(mDb, mContext, entry, mSrcReader.mTableName,
-                            mDestReader.mTableName);
-                    mOccupied.markCells(entry, true);
-                }
-            }
-        }
-
-        private class HotseatOccupancy {
-
-            private final boolean[] mCells;
-
-            private HotseatOccupancy(int hotseatSize) {
-                mCells = new boolean[hotseatSize];
-            }
-
-            private void markCells(ItemInfo item, boolean value) {
-                mCells[item.screenId] = value;
-            }
-        }
-    }
-
     protected static class DbReader {
 
         private final SQLiteDatabase mDb;
@@ -492,12 +294,9 @@ public class GridSizeMigrationTaskV2 {
         private final Context mContext;
         private final HashSet<String> mValidPackages;
         private final int mHotseatSize;
-        private int mLastScreenId = -1;
 
         private final ArrayList<DbEntry> mHotseatEntries = new ArrayList<>();
         private final ArrayList<DbEntry> mWorkspaceEntries = new ArrayList<>();
-        private final Map<Integer, ArrayList<DbEntry>> mWorkspaceEntriesByScreenId =
-                new ArrayMap<>();
 
         DbReader(SQLiteDatabase db, String tableName, Context context,
                 HashSet<String> validPackages, int hotseatSize) {
@@ -608,7 +407,6 @@ public class GridSizeMigrationTaskV2 {
                 entry.id = c.getInt(indexId);
                 entry.itemType = c.getInt(indexItemType);
                 entry.screenId = c.getInt(indexScreen);
-                mLastScreenId = Math.max(mLastScreenId, entry.screenId);
                 entry.cellX = c.getInt(indexCellX);
                 entry.cellY = c.getInt(indexCellY);
                 entry.spanX = c.getInt(indexSpanX);
@@ -664,10 +462,6 @@ public class GridSizeMigrationTaskV2 {
                     continue;
                 }
                 mWorkspaceEntries.add(entry);
-                if (!mWorkspaceEntriesByScreenId.containsKey(entry.screenId)) {
-                    mWorkspaceEntriesByScreenId.put(entry.screenId, new ArrayList<>());
-                }
-                mWorkspaceEntriesByScreenId.get(entry.screenId).add(entry);
             }
             removeEntryFromDb(mDb, mTableName, entriesToRemove);
             c.close();
@@ -726,9 +520,18 @@ public class GridSizeMigrationTaskV2 {
 
     protected static class DbEntry extends ItemInfo implements Comparable<DbEntry> {
 
-        private String mIntent;
-        private String mProvider;
-        private Map<String, Set<Integer>> mFolderItems = new HashMap<>();
+        String mIntent;
+        String mProvider;
+        Map<String, Set<Integer>> mFolderItems = new HashMap<>();
+
+        DbEntry() { }
+
+        DbEntry(DbEntry entry) {
+            super(entry);
+            mIntent = entry.mIntent;
+            mProvider = entry.mProvider;
+            mFolderItems = entry.mFolderItems;
+        }
 
         /** Comparator according to the reading order */
         @Override
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.util.Log;
+
+import com.android.launcher3.LauncherProvider;
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.model.data.ItemInfo;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Write-behind queue for the item updates made through {@link ModelWriter}.
+ *
+ * Updates are written on the model executor. While an update is waiting to be written, further
+ * updates to the same item are merged into it, and all the waiting updates are written in a
+ * single transaction. Any other operation run through the queue is ordered after the waiting
+ * updates, so the database sees the same sequence of writes as without batching.
+ */
+public class ItemUpdateQueue {
+
+    private static final String TAG = "ItemUpdateQueue";
+
+    /**
+     * An update of some columns of a single item
+     */
+    public interface ItemUpdate {
+
+        ItemInfo getItem();
+
+        /**
+         * Returns the id of the item when the update was made
+         */
+        int getItemId();
+
+        /**
+         * Returns the values to write. Called on the executor thread.
+         */
+        ContentValues getValues();
+
+        /**
+         * Called on the executor thread after the update was written. Not called if writing the
+         * update failed.
+         */
+        void onWritten();
+    }
+
+    private final Context mContext;
+    private final Executor mExecutor;
+    private final Object mLock = new Object();
+
+    // Updates waiting to be written, by item id
+    private LinkedHashMap<Integer, PendingUpdate> mPending;
+
+    private int mUpdatesRequested;
+    private int mUpdatesCoalesced;
+    private int mRowsWritten;
+    private int mTransactions;
+    private int mFailedTransactions;
+
+    public ItemUpdateQueue(Context context, Executor executor) {
+        mContext = context;
+        mExecutor = executor;
+    }
+
+    /**
+     * Schedules an update to be written on the executor, merging it with a waiting update of the
+     * same item if there is one.
+     */
+    public void enqueue(ItemUpdate update) {
+        LinkedHashMap<Integer, PendingUpdate> newBatch = null;
+        synchronized (mLock) {
+            mUpdatesRequested++;
+            PendingUpdate pending = mPending == null ? null : mPending.get(update.getItemId());
+            if (pending != null && pending.first.getItem() == update.getItem()) {
+                pending.updates.add(update);
+                mUpdatesCoalesced++;
+                return;
+            }
+            if (mPending == null || pending != null) {
+                // A different object with the same id is written separately, in the same
+                // order as it was updated.
+                mPending = newBatch = new LinkedHashMap<>();
+            }
+            mPending.put(update.getItemId(), new PendingUpdate(update));
+        }
+        if (newBatch != null) {
+            LinkedHashMap<Integer, PendingUpdate> batch = newBatch;
+            mExecutor.execute(() -> write(batch));
+        }
+    }
+
+    /**
+     * Runs {@param r} on the executor after all the waiting updates have been written. Updates
+     * enqueued after this call are written after {@param r} has run.
+     */
+    public void execute(Runnable r) {
+        synchronized (mLock) {
+            mPending = null;
+        }
+        mExecutor.execute(r);
+    }
+
+    private void write(LinkedHashMap<Integer, PendingUpdate> batch) {
+        ArrayList<PendingUpdate> updates;
+        synchronized (mLock) {
+            if (mPending == batch) {
+                mPending = null;
+            }
+            updates = new ArrayList<>(batch.values());
+        }
+
+        if (updates.size() == 1) {
+            PendingUpdate update = updates.get(0);
+            mContext.getContentResolver().update(Favorites.getContentUri(update.first.getItemId()),
+                    update.getValues(), null, null);
+        } else {
+            ArrayList<ContentProviderOperation> ops = new ArrayList<>(updates.size());
+            for (PendingUpdate update : updates) {
+                ops.add(ContentProviderOperation
+                        .newUpdate(Favorites.getContentUri(update.first.getItemId()))
+                        .withValues(update.getValues())
+                        .build());
+            }
+            try {
+                mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, ops);
+            } catch (Exception e) {
+                // None of the updates were written, the model is not told they were
+                Log.e(TAG, "Failed to write " + ops.size() + " item updates", e);
+                synchronized (mLock) {
+                    mFailedTransactions++;
+                }
+                return;
+            }
+        }
+
+        synchronized (mLock) {
+            mRowsWritten += updates.size();
+            mTransactions++;
+        }
+        for (PendingUpdate update : updates) {
+            update.first.onWritten();
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        synchronized (mLock) {
+            writer.println(prefix + "ItemUpdateQueue: updatesRequested=" + mUpdatesRequested
+                    + " updatesCoalesced=" + mUpdatesCoalesced
+                    + " rowsWritten=" + mRowsWritten
+                    + " transactions=" + mTransactions
+                    + " failedTransactions=" + mFailedTransactions);
+        }
+    }
+
+    private static class PendingUpdate {
+        final ItemUpdate first;
+        final ArrayList<ItemUpdate> updates = new ArrayList<>(1);
+
+        PendingUpdate(ItemUpdate update) {
+            first = update;
+            updates.add(update);
+        }
+
+        ContentValues getValues() {
+            // Updates can write different columns, later updates take precedence
+            ContentValues values = new ContentValues();
+            for (ItemUpdate update : updates) {
+                values.putAll(update.getValues());
+            }
+            return values;
+        }
+    }
+}
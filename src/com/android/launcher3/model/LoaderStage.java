@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A step of {@link LoaderTask} which does not depend on the model, like a system service query,
+ * and runs on a background pool while the loader is busy with the previous steps. The step
+ * which depends on it waits for its result with {@link #getOrNull()}.
+ */
+class LoaderStage<T> {
+
+    private static final String TAG = "LoaderStage";
+
+    private final String mName;
+    private final FutureTask<T> mTask;
+
+    private volatile long mDurationMillis = -1;
+
+    private LoaderStage(String name, Callable<T> work) {
+        mName = name;
+        mTask = new FutureTask<>(() -> {
+            long start = SystemClock.uptimeMillis();
+            try {
+                return work.call();
+            } finally {
+                mDurationMillis = SystemClock.uptimeMillis() - start;
+            }
+        });
+    }
+
+    /**
+     * Starts running {@param work} on {@param executor}
+     */
+    static <T> LoaderStage<T> start(String name, Executor executor, Callable<T> work) {
+        LoaderStage<T> stage = new LoaderStage<>(name, work);
+        executor.execute(stage.mTask);
+        return stage;
+    }
+
+    /**
+     * Waits for the stage to complete and returns its result, or null if it failed, in which case
+     * the caller is expected to do the work itself.
+     * @throws CancellationException if the calling thread is interrupted or the stage was
+     *                               cancelled
+     */
+    @Nullable
+    T getOrNull() throws CancellationException {
+        try {
+            return mTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for " + mName);
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Loader stage " + mName + " failed", e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Cancels the stage if it has not started yet. Its result is discarded otherwise.
+     */
+    void cancel() {
+        mTask.cancel(false);
+    }
+
+    /**
+     * Returns a description of how long the stage took on the background pool, for logging
+     */
+    String getTiming() {
+        long duration = mDurationMillis;
+        return mName + (duration < 0 ? " (not run)" : " (" + duration + "ms in background)");
+    }
+}
@@ -25,6 +25,7 @@ import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_LO
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_SAFEMODE;
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_SUSPENDED;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+import static com.android.launcher3.util.Executors.THREAD_POOL_EXECUTOR;
 import static com.android.launcher3.util.PackageManagerHelper.hasShortcutsPermission;
 import static com.android.launcher3.util.PackageManagerHelper.isSystemApp;
 
@@ -41,6 +42,8 @@ import android.content.pm.PackageInstaller;
 import android.content.pm.PackageInstaller.SessionInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ShortcutInfo;
+import android.database.Cursor;
+import android.database.SQLException;
 import android.graphics.Point;
 import android.net.Uri;
 import android.os.Bundle;
@@ -52,6 +55,8 @@ import android.util.Log;
 import android.util.LongSparseArray;
 import android.util.TimingLogger;
 
+import androidx.annotation.Nullable;
+
 import com.android.launcher3.DeviceProfile;
 import com.android.launcher3.InvariantDeviceProfile;
 import com.android.launcher3.LauncherAppState;
@@ -93,7 +98,9 @@ import com.android.launcher3.util.TraceHelper;
 import com.android.launcher3.widget.LauncherAppWidgetProviderInfo;
 import com.android.launcher3.widget.WidgetManagerHelper;
 
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -136,6 +143,14 @@ public class LoaderTask implements Runnable {
 
     private boolean mStopped;
 
+    // System queries running in the background, only set if ENABLE_PARALLEL_LOADER is enabled
+    @Nullable
+    private LoaderStage<Map<UserHandle, List<LauncherActivityInfo>>> mActivitiesStage;
+    @Nullable
+    private LoaderStage<Map<UserHandle, List<ShortcutInfo>>> mDeepShortcutsStage;
+    @Nullable
+    private LoaderStage<List<AppWidgetProviderInfo>> mWidgetProvidersStage;
+
     private final Set<PackageUserKey> mPendingPackages = new HashSet<>();
     private boolean mItemsDeleted = false;
     private String mDbName;
@@ -193,6 +208,11 @@ public class LoaderTask implements Runnable {
         Object traceToken = TraceHelper.INSTANCE.beginSection(TAG);
         TimingLogger logger = new TimingLogger(TAG, "run");
         try (LauncherModel.LoaderTransaction transaction = mApp.getModel().beginLoader(this)) {
+            if (FeatureFlags.ENABLE_PARALLEL_LOADER.get()) {
+                startBackgroundStages();
+                logASplit(logger, "startBackgroundStages");
+            }
+
             List<ShortcutInfo> allShortcuts = new ArrayList<>();
             loadWorkspace(allShortcuts);
             logASplit(logger, "loadWorkspace");
@@ -216,6 +236,12 @@ public class LoaderTask implements Runnable {
             sendFirstScreenActiveInstallsBroadcast();
             logASplit(logger, "sendFirstScreenActiveInstallsBroadcast");
 
+            if (mActivitiesStage != null) {
+                // Warm up the icon cache for all apps while the workspace is being bound
+                prefetchAllAppsIcons();
+                logASplit(logger, "prefetchAllAppsIcons");
+            }
+
             // Take a break
             waitForIdle();
             logASplit(logger, "step 1 complete");
@@ -271,7 +297,8 @@ public class LoaderTask implements Runnable {
 
             // fourth step
             List<ComponentWithLabelAndIcon> allWidgetsList =
-                    mBgDataModel.widgetsModel.update(mApp, null);
+                    mBgDataModel.widgetsModel.update(mApp, null, mWidgetProvidersStage == null
+                            ? null : mWidgetProvidersStage.getOrNull());
             logASplit(logger, "load widgets");
 
             verifyNotStopped();
@@ -299,11 +326,94 @@ public class LoaderTask implements Runnable {
             // Loader stopped, ignore
             logASplit(logger, "Cancelled");
         } finally {
+            finishBackgroundStages(logger);
             logger.dumpToLog();
         }
         TraceHelper.INSTANCE.endSection(traceToken);
     }
 
+    /**
+     * Starts the system queries which do not depend on the model, so that they run while the
+     * workspace is loaded. Each query is consumed by the step which used to make it, so the steps
+     * and the binds happen in the same order.
+     */
+    private void startBackgroundStages() {
+        Context context = mApp.getContext();
+        List<UserHandle> profiles = mUserCache.getUserProfiles();
+
+        mActivitiesStage = LoaderStage.start("query activities", THREAD_POOL_EXECUTOR, () -> {
+            Map<UserHandle, List<LauncherActivityInfo>> activities = new ArrayMap<>();
+            for (UserHandle user : profiles) {
+                activities.put(user, mLauncherApps.getActivityList(null, user));
+            }
+            return activities;
+        });
+        mDeepShortcutsStage = LoaderStage.start("query deep shortcuts", THREAD_POOL_EXECUTOR,
+                () -> {
+                    Map<UserHandle, List<ShortcutInfo>> shortcuts = new ArrayMap<>();
+                    if (hasShortcutsPermission(context)) {
+                        for (UserHandle user : profiles) {
+                            if (mUserManager.isUserUnlocked(user)) {
+                                shortcuts.put(user, new ShortcutRequest(context, user)
+                                        .query(ShortcutRequest.ALL));
+                            }
+                        }
+                    }
+                    return shortcuts;
+                });
+        mWidgetProvidersStage = LoaderStage.start("query widget providers", THREAD_POOL_EXECUTOR,
+                () -> new WidgetManagerHelper(context).getAllProviders(null));
+    }
+
+    private void finishBackgroundStages(TimingLogger logger) {
+        for (LoaderStage<?> stage : Arrays.asList(
+                mActivitiesStage, mDeepShortcutsStage, mWidgetProvidersStage)) {
+            if (stage != null) {
+                stage.cancel();
+                logASplit(logger, stage.getTiming());
+            }
+        }
+    }
+
+    /**
+     * Returns the activities of {@param user}, as queried by the background stage if there is
+     * one.
+     */
+    private List<LauncherActivityInfo> getActivityList(UserHandle user) {
+        Map<UserHandle, List<LauncherActivityInfo>> activities =
+                mActivitiesStage == null ? null : mActivitiesStage.getOrNull();
+        if (activities != null && activities.containsKey(user)) {
+            return activities.get(user);
+        }
+        return mLauncherApps.getActivityList(null, user);
+    }
+
+    /**
+     * Returns all the deep shortcuts of {@param user}, as queried by the background stage if there
+     * is one.
+     */
+    private List<ShortcutInfo> getDeepShortcuts(UserHandle user) {
+        Map<UserHandle, List<ShortcutInfo>> shortcuts =
+                mDeepShortcutsStage == null ? null : mDeepShortcutsStage.getOrNull();
+        if (shortcuts != null && shortcuts.containsKey(user)) {
+            return shortcuts.get(user);
+        }
+        return new ShortcutRequest(mApp.getContext(), user).query(ShortcutRequest.ALL);
+    }
+
+    private void prefetchAllAppsIcons() {
+        List<ComponentKey> keys = new ArrayList<>();
+        for (UserHandle user : mUserCache.getUserProfiles()) {
+            List<LauncherActivityInfo> apps = getActivityList(user);
+            if (apps != null) {
+                for (LauncherActivityInfo app : apps) {
+                    keys.add(new ComponentKey(app.getComponentName(), user));
+                }
+            }
+        }
+        mIconCache.prefetchEntries(keys, false /* lowRes */);
+    }
+
     public synchronized void stopLocked() {
         mStopped = true;
         this.notify();
@@ -348,6 +458,8 @@ public class LoaderTask implements Runnable {
         LauncherSettings.Settings.call(contentResolver,
                 LauncherSettings.Settings.METHOD_LOAD_DEFAULT_FAVORITES);
 
+        prefetchWorkspaceIcons(contentResolver, contentUri, selection);
+
         synchronized (mBgDataModel) {
             mBgDataModel.clear();
             mPendingPackages.clear();
@@ -848,6 +960,59 @@ public class LoaderTask implements Runnable {
         }
     }
 
+    /**
+     * Loads the icon cache entries for all the apps in the workspace in bulk, so that the items
+     * do not query the icon DB one at a time while being loaded.
+     */
+    private void prefetchWorkspaceIcons(ContentResolver contentResolver, Uri contentUri,
+            String selection) {
+        String appSelection = LauncherSettings.Favorites.ITEM_TYPE + " = "
+                + LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+        if (selection != null) {
+            appSelection = "(" + selection + ") AND " + appSelection;
+        }
+        List<ComponentKey> workspaceKeys = new ArrayList<>();
+        List<ComponentKey> folderKeys = new ArrayList<>();
+        try (Cursor c = contentResolver.query(contentUri, new String[] {
+                        LauncherSettings.Favorites.INTENT,
+                        LauncherSettings.Favorites.PROFILE_ID,
+                        LauncherSettings.Favorites.CONTAINER},
+                appSelection, null, null)) {
+            if (c == null) {
+                return;
+            }
+            while (c.moveToNext()) {
+                UserHandle user = mUserCache.getUserForSerialNumber(c.getLong(1));
+                String intentDescription = c.getString(0);
+                if (user == null || TextUtils.isEmpty(intentDescription)) {
+                    continue;
+                }
+                ComponentName cn;
+                try {
+                    cn = Intent.parseUri(intentDescription, 0).getComponent();
+                } catch (URISyntaxException e) {
+                    continue;
+                }
+                if (cn == null) {
+                    continue;
+                }
+                int container = c.getInt(2);
+                // Same icon resolution as used by LoaderCursor#getAppShortcutInfo
+                if (container == LauncherSettings.Favorites.CONTAINER_DESKTOP
+                        || container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
+                    workspaceKeys.add(new ComponentKey(cn, user));
+                } else {
+                    folderKeys.add(new ComponentKey(cn, user));
+                }
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Error prefetching workspace icons", e);
+            return;
+        }
+        mIconCache.prefetchEntries(workspaceKeys, false /* lowRes */);
+        mIconCache.prefetchEntries(folderKeys, true /* lowRes */);
+    }
+
     private void setIgnorePackages(IconCacheUpdateHandler updateHandler) {
         // Ignore packages which have a promise icon.
         synchronized (mBgDataModel) {
@@ -910,13 +1075,20 @@ public class LoaderTask implements Runnable {
         mBgAllAppsList.clear();
         for (UserHandle user : profiles) {
             // Query for the set of apps
-            final List<LauncherActivityInfo> apps = mLauncherApps.getActivityList(null, user);
+            final List<LauncherActivityInfo> apps = getActivityList(user);
             // Fail if we don't have any apps
             // TODO: Fix this. Only fail for the current user.
             if (apps == null || apps.isEmpty()) {
                 return allActivityList;
             }
             boolean quietMode = mUserManagerState.isUserQuiet(user);
+
+            List<ComponentKey> keys = new ArrayList<>(apps.size());
+            for (int i = 0; i < apps.size(); i++) {
+                keys.add(new ComponentKey(apps.get(i).getComponentName(), user));
+            }
+            mIconCache.prefetchEntries(keys, mIconCache.isIconAtlasEnabled() /* lowRes */);
+
             // Create the ApplicationInfos
             for (int i = 0; i < apps.size(); i++) {
                 LauncherActivityInfo app = apps.get(i);
@@ -954,8 +1126,7 @@ public class LoaderTask implements Runnable {
         if (mBgAllAppsList.hasShortcutHostPermission()) {
             for (UserHandle user : mUserCache.getUserProfiles()) {
                 if (mUserManager.isUserUnlocked(user)) {
-                    List<ShortcutInfo> shortcuts = new ShortcutRequest(mApp.getContext(), user)
-                            .query(ShortcutRequest.ALL);
+                    List<ShortcutInfo> shortcuts = getDeepShortcuts(user);
                     allShortcuts.addAll(shortcuts);
                     mBgDataModel.updateDeepShortcutCounts(null, user, shortcuts);
                 }
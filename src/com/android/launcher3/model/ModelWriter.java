@@ -16,8 +16,6 @@
 
 package com.android.launcher3.model;
 
-import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
-
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
@@ -36,6 +34,7 @@ import com.android.launcher3.LauncherSettings.Settings;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.model.ItemUpdateQueue.ItemUpdate;
 import com.android.launcher3.model.data.FolderInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.model.data.LauncherAppWidgetInfo;
@@ -48,7 +47,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -63,20 +61,23 @@ public class ModelWriter {
     private final Context mContext;
     private final LauncherModel mModel;
     private final BgDataModel mBgDataModel;
+    private final ItemUpdateQueue mUpdateQueue;
     private final Handler mUiHandler;
 
     private final boolean mHasVerticalHotseat;
     private final boolean mVerifyChanges;
 
     // Keep track of delete operations that occur when an Undo option is present; we may not commit.
+    // Each runnable submits its operation to mUpdateQueue.
     private final List<Runnable> mDeleteRunnables = new ArrayList<>();
     private boolean mPreparingToUndo;
 
     public ModelWriter(Context context, LauncherModel model, BgDataModel dataModel,
-            boolean hasVerticalHotseat, boolean verifyChanges) {
+            ItemUpdateQueue updateQueue, boolean hasVerticalHotseat, boolean verifyChanges) {
         mContext = context;
         mModel = model;
         mBgDataModel = dataModel;
+        mUpdateQueue = updateQueue;
         mHasVerticalHotseat = hasVerticalHotseat;
         mVerifyChanges = verifyChanges;
         mUiHandler = new Handler(Looper.getMainLooper());
@@ -155,7 +156,7 @@ public class ModelWriter {
     public void moveItemInDatabase(final ItemInfo item,
             int container, int screenId, int cellX, int cellY) {
         updateItemInfoProps(item, container, screenId, cellX, cellY);
-        enqueueDeleteRunnable(new UpdateItemRunnable(item, () ->
+        enqueueDeleteUpdate(new UpdateItemRunnable(item, () ->
                 new ContentWriter(mContext)
                         .put(Favorites.CONTAINER, item.container)
                         .put(Favorites.CELLX, item.cellX)
@@ -197,7 +198,7 @@ public class ModelWriter {
         item.spanX = spanX;
         item.spanY = spanY;
 
-        ((Executor) MODEL_EXECUTOR).execute(new UpdateItemRunnable(item, () ->
+        enqueueUpdate(new UpdateItemRunnable(item, () ->
                 new ContentWriter(mContext)
                         .put(Favorites.CONTAINER, item.container)
                         .put(Favorites.CELLX, item.cellX)
@@ -212,7 +213,7 @@ public class ModelWriter {
      * Update an item to the database in a specified container.
      */
     public void updateItemInDatabase(ItemInfo item) {
-        ((Executor) MODEL_EXECUTOR).execute(new UpdateItemRunnable(item, () -> {
+        enqueueUpdate(new UpdateItemRunnable(item, () -> {
             ContentWriter writer = new ContentWriter(mContext);
             item.onAddToDatabase(writer);
             return writer;
@@ -232,7 +233,7 @@ public class ModelWriter {
 
         ModelVerifier verifier = new ModelVerifier();
         final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
-        ((Executor) MODEL_EXECUTOR).execute(() -> {
+        mUpdateQueue.execute(() -> {
             // Write the item on background thread, as some properties might have been updated in
             // the background.
             final ContentWriter writer = new ContentWriter(mContext);
@@ -339,16 +340,36 @@ public class ModelWriter {
      */
     private void enqueueDeleteRunnable(Runnable r) {
         if (mPreparingToUndo) {
-            mDeleteRunnables.add(r);
+            mDeleteRunnables.add(() -> mUpdateQueue.execute(r));
         } else {
-            ((Executor) MODEL_EXECUTOR).execute(r);
+            mUpdateQueue.execute(r);
+        }
+    }
+
+    /**
+     * Same as {@link #enqueueDeleteRunnable} for a single item update, which can be coalesced
+     * with other updates of the item.
+     */
+    private void enqueueDeleteUpdate(UpdateItemRunnable update) {
+        if (mPreparingToUndo) {
+            mDeleteRunnables.add(() -> enqueueUpdate(update));
+        } else {
+            enqueueUpdate(update);
+        }
+    }
+
+    private void enqueueUpdate(UpdateItemRunnable update) {
+        if (FeatureFlags.ENABLE_MODEL_WRITE_COALESCING.get()) {
+            mUpdateQueue.enqueue(update);
+        } else {
+            mUpdateQueue.execute(update);
         }
     }
 
     public void commitDelete() {
         mPreparingToUndo = false;
         for (Runnable runnable : mDeleteRunnables) {
-            ((Executor) MODEL_EXECUTOR).execute(runnable);
+            runnable.run();
         }
         mDeleteRunnables.clear();
     }
@@ -364,7 +385,7 @@ public class ModelWriter {
         mModel.forceReload();
     }
 
-    private class UpdateItemRunnable extends UpdateItemBaseRunnable {
+    private class UpdateItemRunnable extends UpdateItemBaseRunnable implements ItemUpdate {
         private final ItemInfo mItem;
         private final Supplier<ContentWriter> mWriter;
         private final int mItemId;
@@ -378,8 +399,27 @@ public class ModelWriter {
         @Override
         public void run() {
             Uri uri = Favorites.getContentUri(mItemId);
-            mContext.getContentResolver().update(uri, mWriter.get().getValues(mContext),
-                    null, null);
+            mContext.getContentResolver().update(uri, getValues(), null, null);
+            onWritten();
+        }
+
+        @Override
+        public ItemInfo getItem() {
+            return mItem;
+        }
+
+        @Override
+        public int getItemId() {
+            return mItemId;
+        }
+
+        @Override
+        public ContentValues getValues() {
+            return mWriter.get().getValues(mContext);
+        }
+
+        @Override
+        public void onWritten() {
             updateItemArrays(mItem, mItemId);
         }
     }
@@ -443,6 +483,10 @@ public class ModelWriter {
                 // as in Workspace.onDrop. Here, we just add/remove them from the list of items
                 // that are on the desktop, as appropriate
                 ItemInfo modelItem = mBgDataModel.itemsIdMap.get(itemId);
+                if (modelItem != null) {
+                    mBgDataModel.folderNameIndex.onItemUpdated(modelItem);
+                    mBgDataModel.updatePinnedIconKey(modelItem);
+                }
                 if (modelItem != null &&
                         (modelItem.container == Favorites.CONTAINER_DESKTOP ||
                                 modelItem.container == Favorites.CONTAINER_HOTSEAT)) {
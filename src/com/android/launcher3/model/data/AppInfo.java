@@ -35,6 +35,8 @@ import androidx.annotation.VisibleForTesting;
 import com.android.launcher3.LauncherSettings;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.pm.PackageInstallInfo;
+import com.android.launcher3.search.StringMatcherUtility.MatchTarget;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.PackageManagerHelper;
 
@@ -61,6 +63,9 @@ public class AppInfo extends ItemInfoWithIcon {
     // Section name used for indexing.
     public String sectionName = "";
 
+    // Title prepared for search, rebuilt when the title or locale changes.
+    private MatchTarget mMatchTarget;
+
     public AppInfo() {
         itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
     }
@@ -94,6 +99,7 @@ public class AppInfo extends ItemInfoWithIcon {
         componentName = info.componentName;
         title = Utilities.trim(info.title);
         intent = new Intent(info.intent);
+        mMatchTarget = info.mMatchTarget;
     }
 
     @VisibleForTesting
@@ -116,6 +122,23 @@ public class AppInfo extends ItemInfoWithIcon {
         user = installInfo.user;
     }
 
+    /**
+     * Returns the title prepared for matching with {@param matcher}
+     */
+    public MatchTarget getMatchTarget(StringMatcher matcher) {
+        MatchTarget target = mMatchTarget;
+        if (target == null || !target.isPreparedFor(title, matcher)) {
+            target = new MatchTarget(title, matcher);
+            mMatchTarget = target;
+        }
+        return target;
+    }
+
+    @Override
+    protected boolean canUseAtlasIcon() {
+        return container == CONTAINER_ALL_APPS;
+    }
+
     @Override
     protected String dumpProperties() {
         return super.dumpProperties() + " componentName=" + componentName;
@@ -24,6 +24,7 @@ import androidx.annotation.Nullable;
 
 import com.android.launcher3.icons.BitmapInfo;
 import com.android.launcher3.icons.FastBitmapDrawable;
+import com.android.launcher3.icons.IconAtlas.AtlasBitmapInfo;
 import com.android.launcher3.logging.FileLog;
 import com.android.launcher3.pm.PackageInstallInfo;
 import com.android.launcher3.util.PackageManagerHelper;
@@ -148,6 +149,24 @@ public abstract class ItemInfoWithIcon extends ItemInfo {
         return bitmap.isLowRes();
     }
 
+    /**
+     * Returns true if the high res icon needs to be loaded to display this item. Low res icons
+     * drawn from the icon atlas are already at full size, but are only kept where
+     * {@link #canUseAtlasIcon()}.
+     */
+    public boolean needsHighResIcon() {
+        return usingLowResIcon() && !(bitmap instanceof AtlasBitmapInfo && canUseAtlasIcon());
+    }
+
+    /**
+     * Returns true if an icon drawn from the icon atlas can be kept instead of the high res icon.
+     * This is only the case for the lists which load many icons at once, items elsewhere load
+     * their high res icon which keeps any theme applied to it.
+     */
+    protected boolean canUseAtlasIcon() {
+        return false;
+    }
+
     /**
      * Returns whether the app this shortcut represents is able to be started. For legacy apps,
      * this returns whether it is fully installed. For apps that support incremental downloads,
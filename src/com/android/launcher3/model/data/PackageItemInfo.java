@@ -60,6 +60,12 @@ public class PackageItemInfo extends ItemInfoWithIcon {
         this.itemType = LauncherSettings.Favorites.ITEM_TYPE_NON_ACTIONABLE;
     }
 
+    @Override
+    protected boolean canUseAtlasIcon() {
+        // Shown in the widget picker
+        return true;
+    }
+
     @Override
     protected String dumpProperties() {
         return super.dumpProperties() + " packageName=" + packageName;
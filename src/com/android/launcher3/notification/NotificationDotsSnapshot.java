@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.notification;
+
+import com.android.launcher3.dot.DotInfo;
+import com.android.launcher3.util.PackageUserKey;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable state of the notification dots of all the packages, computed by
+ * {@link NotificationDotsTracker} on the worker thread and published to the UI thread.
+ *
+ * The {@link DotInfo} it contains must not be modified.
+ */
+public class NotificationDotsSnapshot {
+
+    /** Version of a snapshot which does not follow any other snapshot */
+    public static final int NO_VERSION = -1;
+
+    public static final NotificationDotsSnapshot EMPTY = new NotificationDotsSnapshot(
+            NO_VERSION, NO_VERSION, Collections.emptyMap(), Collections.emptySet());
+
+    /** Unique version of this snapshot */
+    public final int version;
+    /** Version of the snapshot which {@link #getChangedKeys()} is relative to */
+    public final int previousVersion;
+
+    private final Map<PackageUserKey, DotInfo> mDotInfos;
+    private final Set<PackageUserKey> mChangedKeys;
+
+    NotificationDotsSnapshot(int version, int previousVersion,
+            Map<PackageUserKey, DotInfo> dotInfos, Set<PackageUserKey> changedKeys) {
+        this.version = version;
+        this.previousVersion = previousVersion;
+        mDotInfos = Collections.unmodifiableMap(dotInfos);
+        mChangedKeys = Collections.unmodifiableSet(changedKeys);
+    }
+
+    /**
+     * Returns the dot info of each package with notifications
+     */
+    public Map<PackageUserKey, DotInfo> getDotInfos() {
+        return mDotInfos;
+    }
+
+    /**
+     * Returns the packages whose dot changed since the snapshot {@link #previousVersion}
+     */
+    public Set<PackageUserKey> getChangedKeys() {
+        return mChangedKeys;
+    }
+
+    @Override
+    public String toString() {
+        return "NotificationDotsSnapshot{version=" + version + ", previousVersion="
+                + previousVersion + ", packages=" + mDotInfos.size() + ", changed="
+                + mChangedKeys.size() + "}";
+    }
+}
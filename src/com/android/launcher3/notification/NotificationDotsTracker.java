@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.notification;
+
+import static com.android.launcher3.notification.NotificationDotsSnapshot.NO_VERSION;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.dot.DotInfo;
+import com.android.launcher3.util.PackageUserKey;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the notification dots of all the packages on the worker thread, and returns the
+ * changes as {@link NotificationDotsSnapshot}s.
+ *
+ * The published {@link DotInfo}s are never modified: a changed {@link DotInfo} is replaced by an
+ * updated copy in the next snapshot.
+ */
+@WorkerThread
+public class NotificationDotsTracker {
+
+    // Shared by all the trackers, so that a snapshot never has the version of a snapshot
+    // published by an earlier instance of the listener service.
+    private static final AtomicInteger sNextVersion = new AtomicInteger();
+
+    private HashMap<PackageUserKey, DotInfo> mDotInfos = new HashMap<>();
+    private int mVersion = NO_VERSION;
+
+    /**
+     * Adds or updates a notification, and returns the new snapshot if the dots changed
+     */
+    @Nullable
+    public NotificationDotsSnapshot onNotificationPosted(PackageUserKey packageUserKey,
+            NotificationKeyData notificationKey) {
+        DotInfo oldDotInfo = mDotInfos.get(packageUserKey);
+        DotInfo dotInfo = oldDotInfo == null ? new DotInfo() : new DotInfo(oldDotInfo);
+        if (!dotInfo.addOrUpdateNotificationKey(notificationKey)) {
+            return null;
+        }
+        HashMap<PackageUserKey, DotInfo> dotInfos = new HashMap<>(mDotInfos);
+        dotInfos.put(packageUserKey, dotInfo);
+        return publish(dotInfos, Collections.singleton(packageUserKey));
+    }
+
+    /**
+     * Removes a notification, and returns the new snapshot if the dots changed
+     */
+    @Nullable
+    public NotificationDotsSnapshot onNotificationRemoved(PackageUserKey packageUserKey,
+            NotificationKeyData notificationKey) {
+        DotInfo oldDotInfo = mDotInfos.get(packageUserKey);
+        if (oldDotInfo == null) {
+            return null;
+        }
+        DotInfo dotInfo = new DotInfo(oldDotInfo);
+        if (!dotInfo.removeNotificationKey(notificationKey)) {
+            return null;
+        }
+        HashMap<PackageUserKey, DotInfo> dotInfos = new HashMap<>(mDotInfos);
+        if (dotInfo.getNotificationKeys().isEmpty()) {
+            dotInfos.remove(packageUserKey);
+        } else {
+            dotInfos.put(packageUserKey, dotInfo);
+        }
+        return publish(dotInfos, Collections.singleton(packageUserKey));
+    }
+
+    /**
+     * Replaces all the notifications with the provided active notifications, and returns the
+     * new snapshot.
+     */
+    public NotificationDotsSnapshot onNotificationFullRefresh(
+            List<PackageUserKey> packageUserKeys, List<NotificationKeyData> notificationKeys) {
+        HashMap<PackageUserKey, DotInfo> dotInfos = new HashMap<>();
+        for (int i = 0; i < packageUserKeys.size(); i++) {
+            DotInfo dotInfo = dotInfos.get(packageUserKeys.get(i));
+            if (dotInfo == null) {
+                dotInfo = new DotInfo();
+                dotInfos.put(packageUserKeys.get(i), dotInfo);
+            }
+            dotInfo.addOrUpdateNotificationKey(notificationKeys.get(i));
+        }
+
+        // Packages which lost all their notifications, or whose count changed
+        HashSet<PackageUserKey> changedKeys = new HashSet<>(mDotInfos.keySet());
+        changedKeys.removeAll(dotInfos.keySet());
+        for (Map.Entry<PackageUserKey, DotInfo> entry : dotInfos.entrySet()) {
+            DotInfo prevDot = mDotInfos.get(entry.getKey());
+            if (prevDot == null
+                    || prevDot.getNotificationCount() != entry.getValue().getNotificationCount()) {
+                changedKeys.add(entry.getKey());
+            }
+        }
+        return publish(dotInfos, changedKeys);
+    }
+
+    private NotificationDotsSnapshot publish(HashMap<PackageUserKey, DotInfo> dotInfos,
+            Set<PackageUserKey> changedKeys) {
+        NotificationDotsSnapshot snapshot = new NotificationDotsSnapshot(
+                sNextVersion.getAndIncrement(), mVersion, dotInfos, changedKeys);
+        mDotInfos = dotInfos;
+        mVersion = snapshot.version;
+        return snapshot;
+    }
+}
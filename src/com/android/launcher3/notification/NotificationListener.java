@@ -16,6 +16,7 @@
 
 package com.android.launcher3.notification;
 
+import static com.android.launcher3.config.FeatureFlags.ENABLE_NOTIFICATION_DOT_SNAPSHOTS;
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
 import static com.android.launcher3.util.SettingsCache.NOTIFICATION_BADGING_URI;
@@ -64,6 +65,7 @@ public class NotificationListener extends NotificationListenerService {
     private static final int MSG_NOTIFICATION_FULL_REFRESH = 3;
     private static final int MSG_CANCEL_NOTIFICATION = 4;
     private static final int MSG_RANKING_UPDATE = 5;
+    private static final int MSG_NOTIFICATION_DOTS_CHANGED = 6;
 
     private static NotificationListener sNotificationListenerInstance = null;
     private static NotificationsChangedListener sNotificationsChangedListener;
@@ -72,6 +74,8 @@ public class NotificationListener extends NotificationListenerService {
     private final Handler mWorkerHandler;
     private final Handler mUiHandler;
     private final Ranking mTempRanking = new Ranking();
+    /** Notification dots of all the packages, only used on the worker thread. */
+    private final NotificationDotsTracker mDotsTracker = new NotificationDotsTracker();
 
     /** Maps groupKey's to the corresponding group of notifications. */
     private final Map<String, NotificationGroup> mNotificationGroupMap = new HashMap<>();
@@ -103,8 +107,13 @@ public class NotificationListener extends NotificationListenerService {
         } else {
             // User turned off dots globally, so we unbound this service;
             // tell the listener that there are no notifications to remove dots.
-            MODEL_EXECUTOR.submit(() -> MAIN_EXECUTOR.submit(() ->
-                            listener.onNotificationFullRefresh(Collections.emptyList())));
+            MODEL_EXECUTOR.submit(() -> MAIN_EXECUTOR.submit(() -> {
+                if (ENABLE_NOTIFICATION_DOT_SNAPSHOTS.get()) {
+                    listener.onNotificationDotsChanged(NotificationDotsSnapshot.EMPTY);
+                } else {
+                    listener.onNotificationFullRefresh(Collections.emptyList());
+                }
+            }));
         }
     }
 
@@ -116,15 +125,31 @@ public class NotificationListener extends NotificationListenerService {
         switch (message.what) {
             case MSG_NOTIFICATION_POSTED: {
                 StatusBarNotification sbn = (StatusBarNotification) message.obj;
-                mUiHandler.obtainMessage(notificationIsValidForUI(sbn)
-                                ? MSG_NOTIFICATION_POSTED : MSG_NOTIFICATION_REMOVED,
-                        toKeyPair(sbn)).sendToTarget();
+                boolean isValidForUI = notificationIsValidForUI(sbn);
+                if (ENABLE_NOTIFICATION_DOT_SNAPSHOTS.get()) {
+                    PackageUserKey packageUserKey = PackageUserKey.fromNotification(sbn);
+                    NotificationKeyData notificationKey =
+                            NotificationKeyData.fromNotification(sbn);
+                    publishDots(isValidForUI
+                            ? mDotsTracker.onNotificationPosted(packageUserKey, notificationKey)
+                            : mDotsTracker.onNotificationRemoved(packageUserKey, notificationKey));
+                } else {
+                    mUiHandler.obtainMessage(isValidForUI
+                                    ? MSG_NOTIFICATION_POSTED : MSG_NOTIFICATION_REMOVED,
+                            toKeyPair(sbn)).sendToTarget();
+                }
                 return true;
             }
             case MSG_NOTIFICATION_REMOVED: {
                 StatusBarNotification sbn = (StatusBarNotification) message.obj;
-                mUiHandler.obtainMessage(MSG_NOTIFICATION_REMOVED,
-                        toKeyPair(sbn)).sendToTarget();
+                if (ENABLE_NOTIFICATION_DOT_SNAPSHOTS.get()) {
+                    publishDots(mDotsTracker.onNotificationRemoved(
+                            PackageUserKey.fromNotification(sbn),
+                            NotificationKeyData.fromNotification(sbn)));
+                } else {
+                    mUiHandler.obtainMessage(MSG_NOTIFICATION_REMOVED,
+                            toKeyPair(sbn)).sendToTarget();
+                }
 
                 NotificationGroup notificationGroup = mNotificationGroupMap.get(sbn.getGroupKey());
                 String key = sbn.getKey();
@@ -159,7 +184,18 @@ public class NotificationListener extends NotificationListenerService {
                     activeNotifications = new ArrayList<>();
                 }
 
-                mUiHandler.obtainMessage(message.what, activeNotifications).sendToTarget();
+                if (ENABLE_NOTIFICATION_DOT_SNAPSHOTS.get()) {
+                    List<PackageUserKey> packageUserKeys = new ArrayList<>();
+                    List<NotificationKeyData> notificationKeys = new ArrayList<>();
+                    for (StatusBarNotification sbn : activeNotifications) {
+                        packageUserKeys.add(PackageUserKey.fromNotification(sbn));
+                        notificationKeys.add(NotificationKeyData.fromNotification(sbn));
+                    }
+                    publishDots(mDotsTracker.onNotificationFullRefresh(
+                            packageUserKeys, notificationKeys));
+                } else {
+                    mUiHandler.obtainMessage(message.what, activeNotifications).sendToTarget();
+                }
                 return true;
             case MSG_CANCEL_NOTIFICATION: {
                 mLastKeyDismissedByLauncher = (String) message.obj;
@@ -199,10 +235,23 @@ public class NotificationListener extends NotificationListenerService {
                             (List<StatusBarNotification>) message.obj);
                 }
                 break;
+            case MSG_NOTIFICATION_DOTS_CHANGED:
+                if (sNotificationsChangedListener != null) {
+                    sNotificationsChangedListener.onNotificationDotsChanged(
+                            (NotificationDotsSnapshot) message.obj);
+                }
+                break;
         }
         return true;
     }
 
+    @WorkerThread
+    private void publishDots(@Nullable NotificationDotsSnapshot snapshot) {
+        if (snapshot != null) {
+            mUiHandler.obtainMessage(MSG_NOTIFICATION_DOTS_CHANGED, snapshot).sendToTarget();
+        }
+    }
+
     @Override
     public void onListenerConnected() {
         super.onListenerConnected();
@@ -345,5 +394,7 @@ public class NotificationListener extends NotificationListenerService {
         void onNotificationRemoved(PackageUserKey removedPackageUserKey,
                 NotificationKeyData notificationKey);
         void onNotificationFullRefresh(List<StatusBarNotification> activeNotifications);
+        /** Called with the dots computed on the worker thread, replacing all the dots */
+        void onNotificationDotsChanged(NotificationDotsSnapshot snapshot);
     }
 }
@@ -16,16 +16,22 @@
 
 package com.android.launcher3.popup;
 
+import static com.android.launcher3.config.FeatureFlags.ENABLE_NOTIFICATION_DOT_COALESCING;
+
 import android.content.ComponentName;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.Choreographer.FrameCallback;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.launcher3.dot.DotInfo;
 import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.notification.NotificationDotsSnapshot;
 import com.android.launcher3.notification.NotificationKeyData;
 import com.android.launcher3.notification.NotificationListener;
 import com.android.launcher3.util.ComponentKey;
@@ -38,9 +44,11 @@ import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -53,12 +61,15 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     private static final boolean LOGD = false;
     private static final String TAG = "PopupDataProvider";
 
-    private final Consumer<Predicate<PackageUserKey>> mNotificationDotsChangeListener;
+    private final Consumer<Set<PackageUserKey>> mNotificationDotsChangeListener;
+    private final boolean mCoalesceDots;
 
     /** Maps launcher activity components to a count of how many shortcuts they have. */
     private HashMap<ComponentKey, Integer> mDeepShortcutMap = new HashMap<>();
     /** Maps packages to their DotInfo's . */
     private Map<PackageUserKey, DotInfo> mPackageUserToDotInfos = new HashMap<>();
+    /** Version of the snapshot mPackageUserToDotInfos comes from, if any. */
+    private int mDotsVersion = NotificationDotsSnapshot.NO_VERSION;
 
     /** All installed widgets. */
     private List<WidgetsListBaseEntry> mAllWidgets = List.of();
@@ -67,13 +78,65 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
 
     private PopupDataChangeListener mChangeListener = PopupDataChangeListener.INSTANCE;
 
-    public PopupDataProvider(Consumer<Predicate<PackageUserKey>> notificationDotsChangeListener) {
+    /** Packages whose dots changed since the last frame, when coalescing dot updates. */
+    private final HashSet<PackageUserKey> mPendingDotUpdates = new HashSet<>();
+    private final FrameCallback mDispatchPendingDots = frameTimeNanos -> dispatchPendingDots();
+
+    // Number of dot changes received since the pending dots were last dispatched
+    private int mPendingDotChangeCount;
+
+    private int mDotChangeCount;
+    private int mCoalescedDotChangeCount;
+    private int mDotDispatchCount;
+
+    public PopupDataProvider(Consumer<Set<PackageUserKey>> notificationDotsChangeListener) {
+        this(notificationDotsChangeListener, ENABLE_NOTIFICATION_DOT_COALESCING.get());
+    }
+
+    @VisibleForTesting
+    PopupDataProvider(Consumer<Set<PackageUserKey>> notificationDotsChangeListener,
+            boolean coalesceDots) {
         mNotificationDotsChangeListener = notificationDotsChangeListener;
+        mCoalesceDots = coalesceDots;
     }
 
-    private void updateNotificationDots(Predicate<PackageUserKey> updatedDots) {
-        mNotificationDotsChangeListener.accept(updatedDots);
-        mChangeListener.onNotificationDotsUpdated(updatedDots);
+    private void dispatchNotificationDots(Set<PackageUserKey> updatedKeys) {
+        mDotDispatchCount++;
+        mNotificationDotsChangeListener.accept(updatedKeys);
+        mChangeListener.onNotificationDotsUpdated(updatedKeys::contains);
+    }
+
+    /**
+     * Updates the dots of the provided packages, either immediately or on the next frame along
+     * with the other dots changed until then.
+     */
+    private void updateNotificationDots(Set<PackageUserKey> updatedKeys) {
+        mDotChangeCount += updatedKeys.size();
+        if (!mCoalesceDots) {
+            dispatchNotificationDots(updatedKeys);
+            return;
+        }
+        boolean wasPending = !mPendingDotUpdates.isEmpty();
+        mPendingDotUpdates.addAll(updatedKeys);
+        mPendingDotChangeCount += updatedKeys.size();
+        if (!wasPending && !mPendingDotUpdates.isEmpty()) {
+            Choreographer.getInstance().postFrameCallback(mDispatchPendingDots);
+        }
+    }
+
+    /**
+     * Applies the dot changes which are waiting for the next frame, if any
+     */
+    private void dispatchPendingDots() {
+        if (mPendingDotUpdates.isEmpty()) {
+            return;
+        }
+        HashSet<PackageUserKey> updatedKeys = new HashSet<>(mPendingDotUpdates);
+        mPendingDotUpdates.clear();
+        // Only the changes which did not get a dispatch of their own were merged
+        mCoalescedDotChangeCount += mPendingDotChangeCount - 1;
+        mPendingDotChangeCount = 0;
+        dispatchNotificationDots(updatedKeys);
     }
 
     @Override
@@ -85,7 +148,7 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             mPackageUserToDotInfos.put(postedPackageUserKey, dotInfo);
         }
         if (dotInfo.addOrUpdateNotificationKey(notificationKey)) {
-            updateNotificationDots(postedPackageUserKey::equals);
+            updateNotificationDots(Collections.singleton(postedPackageUserKey));
         }
     }
 
@@ -97,7 +160,7 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             if (oldDotInfo.getNotificationKeys().size() == 0) {
                 mPackageUserToDotInfos.remove(removedPackageUserKey);
             }
-            updateNotificationDots(removedPackageUserKey::equals);
+            updateNotificationDots(Collections.singleton(removedPackageUserKey));
             trimNotifications(mPackageUserToDotInfos);
         }
     }
@@ -134,11 +197,30 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
         }
 
         if (!updatedDots.isEmpty()) {
-            updateNotificationDots(updatedDots::containsKey);
+            updateNotificationDots(updatedDots.keySet());
         }
         trimNotifications(updatedDots);
     }
 
+    @Override
+    public void onNotificationDotsChanged(NotificationDotsSnapshot snapshot) {
+        Set<PackageUserKey> updatedKeys;
+        if (snapshot.previousVersion == mDotsVersion) {
+            updatedKeys = snapshot.getChangedKeys();
+        } else {
+            // The snapshot does not follow the current dots, update all the packages
+            HashSet<PackageUserKey> keys = new HashSet<>(mPackageUserToDotInfos.keySet());
+            keys.addAll(snapshot.getDotInfos().keySet());
+            updatedKeys = keys;
+        }
+        mPackageUserToDotInfos = snapshot.getDotInfos();
+        mDotsVersion = snapshot.version;
+        if (!updatedKeys.isEmpty()) {
+            updateNotificationDots(updatedKeys);
+            trimNotifications(mPackageUserToDotInfos);
+        }
+    }
+
     private void trimNotifications(Map<PackageUserKey, DotInfo> updatedDots) {
         mChangeListener.trimNotifications(updatedDots);
     }
@@ -262,6 +344,10 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     public void dump(String prefix, PrintWriter writer) {
         writer.println(prefix + "PopupDataProvider:");
         writer.println(prefix + "\tmPackageUserToDotInfos:" + mPackageUserToDotInfos);
+        writer.println(prefix + "\tmDotsVersion:" + mDotsVersion);
+        writer.println(prefix + "\tdotChanges=" + mDotChangeCount
+                + " coalesced=" + mCoalescedDotChangeCount + " dispatches=" + mDotDispatchCount
+                + " pending=" + mPendingDotUpdates.size());
     }
 
     public interface PopupDataChangeListener {
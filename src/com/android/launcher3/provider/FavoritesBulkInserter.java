@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.provider;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.launcher3.LauncherSettings.Favorites;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Inserts a stream of rows in a table of the launcher DB, using one prepared statement per set
+ * of columns and committing the rows in chunks instead of one transaction per row.
+ *
+ * Chunks are committed as soon as they are full, the last chunk is only committed by
+ * {@link #finish()}. When used inside an existing transaction, nothing is committed until that
+ * transaction is.
+ *
+ * An instance must only be used by the thread which created it.
+ */
+public class FavoritesBulkInserter implements AutoCloseable {
+
+    private static final String TAG = "FavoritesBulkInserter";
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private final SQLiteDatabase mDb;
+    private final String mTable;
+    private final int mChunkSize;
+    private final Thread mThread = Thread.currentThread();
+    private final long mStartTime = SystemClock.elapsedRealtime();
+
+    // Insert statements keyed by their comma separated sorted columns
+    private final HashMap<String, Statement> mStatements = new HashMap<>();
+
+    private boolean mInTransaction;
+    private int mChunkRowCount;
+    private int mRowCount;
+    private int mFailedRowCount;
+    private int mChunkCount;
+
+    public FavoritesBulkInserter(SQLiteDatabase db, String table, int chunkSize) {
+        mDb = db;
+        mTable = table;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Returns true if this can be used to insert rows in {@param table} of {@param db} from the
+     * current thread
+     */
+    public boolean accepts(SQLiteDatabase db, String table) {
+        return mDb == db && mTable.equals(table) && mThread == Thread.currentThread();
+    }
+
+    /**
+     * Inserts a row and returns its id, or -1 if it could not be inserted.
+     */
+    public int insert(ContentValues values) {
+        if (values == null) {
+            throw new RuntimeException("Error: attempting to insert null values");
+        }
+        if (!values.containsKey(Favorites._ID)) {
+            throw new RuntimeException("Error: attempting to add item without specifying an id");
+        }
+        if (!mInTransaction) {
+            mDb.beginTransaction();
+            mInTransaction = true;
+        }
+
+        String[] columns = values.keySet().toArray(new String[values.size()]);
+        Arrays.sort(columns);
+        String key = TextUtils.join(",", columns);
+        Statement statement = mStatements.get(key);
+        if (statement == null) {
+            statement = new Statement(columns);
+            mStatements.put(key, statement);
+        }
+
+        long rowId;
+        try {
+            rowId = statement.execute(values);
+        } catch (SQLException e) {
+            // Same as SQLiteDatabase#insert
+            Log.e(TAG, "Error inserting " + values, e);
+            rowId = -1;
+        }
+        if (rowId < 0) {
+            mFailedRowCount++;
+        } else {
+            mRowCount++;
+        }
+
+        mChunkRowCount++;
+        if (mChunkRowCount >= mChunkSize) {
+            endChunk(true);
+        }
+        return (int) rowId;
+    }
+
+    /**
+     * Commits the rows inserted since the last full chunk
+     */
+    public void finish() {
+        if (mInTransaction) {
+            endChunk(true);
+        }
+    }
+
+    private void endChunk(boolean successful) {
+        if (successful) {
+            mDb.setTransactionSuccessful();
+            mChunkCount++;
+        }
+        mDb.endTransaction();
+        mInTransaction = false;
+        mChunkRowCount = 0;
+    }
+
+    /**
+     * Rolls back the rows inserted since the last full chunk if {@link #finish()} was not
+     * called, and releases the prepared statements.
+     */
+    @Override
+    public void close() {
+        if (mInTransaction) {
+            endChunk(false);
+        }
+        for (Statement statement : mStatements.values()) {
+            statement.close();
+        }
+        mStatements.clear();
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public int getChunkCount() {
+        return mChunkCount;
+    }
+
+    @Override
+    public String toString() {
+        long time = SystemClock.elapsedRealtime() - mStartTime;
+        return "rows=" + mRowCount + " failed=" + mFailedRowCount + " chunks=" + mChunkCount
+                + " statements=" + mStatements.size() + " timeMs=" + time
+                + " rowsPerSec=" + (time == 0 ? 0 : mRowCount * 1000 / time);
+    }
+
+    private class Statement {
+
+        private final String[] mColumns;
+        private final SQLiteStatement mStatement;
+
+        Statement(String[] columns) {
+            mColumns = columns;
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(mTable).append(" (")
+                    .append(TextUtils.join(",", columns)).append(") VALUES (");
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            mStatement = mDb.compileStatement(sql.append(')').toString());
+        }
+
+        long execute(ContentValues values) {
+            for (int i = 0; i < mColumns.length; i++) {
+                DatabaseUtils.bindObjectToProgram(mStatement, i + 1, values.get(mColumns[i]));
+            }
+            try {
+                return mStatement.executeInsert();
+            } finally {
+                mStatement.clearBindings();
+            }
+        }
+
+        void close() {
+            mStatement.close();
+        }
+    }
+}
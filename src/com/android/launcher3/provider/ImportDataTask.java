@@ -65,7 +65,8 @@ public class ImportDataTask {
 
     private static final String TAG = "ImportDataTask";
     private static final int MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION = 6;
-    // Insert items progressively to avoid OOM exception when loading icons.
+    // Insert items progressively to avoid OOM exception when loading icons. This is independent
+    // of the transaction chunk size used by FavoritesBulkInserter.
     private static final int BATCH_INSERT_SIZE = 15;
 
     private final Context mContext;
@@ -118,7 +119,8 @@ public class ImportDataTask {
             createEmptyRowOnFirstScreen = false;
         }
 
-        ArrayList<ContentProviderOperation> insertOperations = new ArrayList<>(BATCH_INSERT_SIZE);
+        ArrayList<ContentValues> insertValues = new ArrayList<>(BATCH_INSERT_SIZE);
+        ArrayList<ContentProviderOperation> insertOperations = new ArrayList<>();
 
         // Set of package names present in hotseat
         final HashSet<String> hotseatTargetApps = new HashSet<>();
@@ -261,16 +263,13 @@ public class ImportDataTask {
                 values.put(Favorites.SPANX, spanX);
                 values.put(Favorites.SPANY, spanY);
                 values.put(Favorites.TITLE, c.getString(titleIndex));
-                insertOperations.add(ContentProviderOperation
-                        .newInsert(Favorites.CONTENT_URI).withValues(values).build());
+                insertValues.add(new ContentValues(values));
                 if (container < 0) {
                     totalItemsOnWorkspace++;
                 }
 
-                if (insertOperations.size() >= BATCH_INSERT_SIZE) {
-                    mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                            insertOperations);
-                    insertOperations.clear();
+                if (insertValues.size() >= BATCH_INSERT_SIZE) {
+                    bulkInsert(insertValues);
                 }
             }
         }
@@ -278,10 +277,8 @@ public class ImportDataTask {
         if (totalItemsOnWorkspace < MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION) {
             throw new Exception("Insufficient data");
         }
-        if (!insertOperations.isEmpty()) {
-            mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                    insertOperations);
-            insertOperations.clear();
+        if (!insertValues.isEmpty()) {
+            bulkInsert(insertValues);
         }
 
         IntSparseArrayMap<Object> hotseatItems = GridSizeMigrationTask
@@ -302,6 +299,18 @@ public class ImportDataTask {
         }
     }
 
+    /**
+     * Inserts all the {@param values} in a single transaction and clears the list
+     */
+    private void bulkInsert(ArrayList<ContentValues> values) throws Exception {
+        int count = mContext.getContentResolver().bulkInsert(Favorites.CONTENT_URI,
+                values.toArray(new ContentValues[values.size()]));
+        if (count != values.size()) {
+            throw new Exception("Failed to insert " + values.size() + " items");
+        }
+        values.clear();
+    }
+
     private static String getPackage(Intent intent) {
         return intent.getComponent() != null ? intent.getComponent().getPackageName()
             : intent.getPackage();
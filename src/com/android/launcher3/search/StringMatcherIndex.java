@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static com.android.launcher3.search.StringMatcherUtility.StringMatcher.NO_PRIMARY_ORDER;
+
+import android.util.SparseArray;
+
+import com.android.launcher3.search.StringMatcherUtility.MatchQuery;
+import com.android.launcher3.search.StringMatcherUtility.MatchTarget;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * An incrementally maintained index over item labels, which returns the same results as running
+ * {@link StringMatcherUtility#matches} on every item, in the same order.
+ *
+ * Each label is prepared as a {@link MatchTarget} once when the item is added. Each break
+ * position is bucketed by the primary collation order of its first character, so a query is
+ * only verified against the items having a word starting like the query. Items are returned in
+ * the order they were added, and keep their position when updated.
+ *
+ * This class is not thread safe.
+ */
+public class StringMatcherIndex<T> {
+
+    private final StringMatcher mMatcher = StringMatcher.getInstance();
+
+    // Entries in insertion order
+    private final LinkedHashMap<T, Entry<T>> mEntries = new LinkedHashMap<>();
+    private final SparseArray<ArrayList<Entry<T>>> mBuckets = new SparseArray<>();
+    // Entries with a break position whose first character has no primary order. These can
+    // potentially match any query, so they are always verified.
+    private final ArrayList<Entry<T>> mUnorderedEntries = new ArrayList<>();
+
+    private long mNextSequence;
+
+    /**
+     * Adds or updates the label for the provided item. New items are ordered after all existing
+     * items.
+     */
+    public void put(T item, CharSequence label) {
+        Entry<T> entry = mEntries.get(item);
+        if (entry == null || !entry.target.isPreparedFor(label, mMatcher)) {
+            put(item, new MatchTarget(label, mMatcher));
+        }
+    }
+
+    /**
+     * Same as {@link #put(Object, CharSequence)} for a label already prepared with
+     * {@link #getMatcher()}.
+     */
+    public void put(T item, MatchTarget target) {
+        Entry<T> entry = mEntries.get(item);
+        if (entry != null) {
+            if (entry.target == target) {
+                return;
+            }
+            removeFromBuckets(entry);
+            entry = new Entry<>(item, target, entry.sequence);
+        } else {
+            entry = new Entry<>(item, target, mNextSequence++);
+        }
+        mEntries.put(item, entry);
+        addToBuckets(entry);
+    }
+
+    /**
+     * Returns the matcher used to prepare the labels of this index.
+     */
+    public StringMatcher getMatcher() {
+        return mMatcher;
+    }
+
+    /**
+     * Removes the provided item from the index
+     */
+    public void remove(T item) {
+        Entry<T> entry = mEntries.remove(item);
+        if (entry != null) {
+            removeFromBuckets(entry);
+        }
+    }
+
+    public void clear() {
+        mEntries.clear();
+        mBuckets.clear();
+        mUnorderedEntries.clear();
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the first {@param maxResults} items whose label matches {@param query}, in the
+     * order they were added.
+     * @param query the lower-cased query, as expected by {@link StringMatcherUtility#matches}
+     */
+    public ArrayList<T> search(String query, int maxResults) {
+        ArrayList<T> result = new ArrayList<>();
+        if (query.isEmpty() || maxResults <= 0) {
+            return result;
+        }
+
+        MatchQuery matchQuery = new MatchQuery(query, mMatcher);
+        int primaryOrder = StringMatcherUtility.requestSimpleFuzzySearch(query)
+                ? NO_PRIMARY_ORDER : mMatcher.getPrimaryOrder(query, 0);
+        if (primaryOrder == NO_PRIMARY_ORDER) {
+            // Matches are not restricted to word starts, verify all entries
+            for (Entry<T> entry : mEntries.values()) {
+                if (StringMatcherUtility.matches(matchQuery, entry.target, mMatcher)) {
+                    result.add(entry.item);
+                    if (result.size() >= maxResults) {
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+
+        ArrayList<Entry<T>> bucket = mBuckets.get(primaryOrder);
+        ArrayList<Entry<T>> candidates = new ArrayList<>(
+                (bucket == null ? 0 : bucket.size()) + mUnorderedEntries.size());
+        if (bucket != null) {
+            candidates.addAll(bucket);
+        }
+        candidates.addAll(mUnorderedEntries);
+        candidates.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+
+        Entry<T> lastEntry = null;
+        for (Entry<T> entry : candidates) {
+            // An entry can be both in the bucket and in the unordered list
+            if (entry != lastEntry
+                    && StringMatcherUtility.matches(matchQuery, entry.target, mMatcher)) {
+                result.add(entry.item);
+                if (result.size() >= maxResults) {
+                    break;
+                }
+            }
+            lastEntry = entry;
+        }
+        return result;
+    }
+
+    private void addToBuckets(Entry<T> entry) {
+        for (int primaryOrder : entry.primaryOrders) {
+            if (primaryOrder == NO_PRIMARY_ORDER) {
+                mUnorderedEntries.add(entry);
+            } else {
+                ArrayList<Entry<T>> bucket = mBuckets.get(primaryOrder);
+                if (bucket == null) {
+                    bucket = new ArrayList<>();
+                    mBuckets.put(primaryOrder, bucket);
+                }
+                bucket.add(entry);
+            }
+        }
+    }
+
+    private void removeFromBuckets(Entry<T> entry) {
+        for (int primaryOrder : entry.primaryOrders) {
+            List<Entry<T>> bucket = primaryOrder == NO_PRIMARY_ORDER
+                    ? mUnorderedEntries : mBuckets.get(primaryOrder);
+            if (bucket != null) {
+                bucket.remove(entry);
+            }
+        }
+    }
+
+    private static class Entry<E> {
+        final E item;
+        final MatchTarget target;
+        final long sequence;
+        // Distinct primary orders of the characters at the break positions
+        final int[] primaryOrders;
+
+        Entry(E item, MatchTarget target, long sequence) {
+            this.item = item;
+            this.target = target;
+            this.sequence = sequence;
+
+            int[] orders = new int[target.breakPrimaryOrders.length];
+            int count = 0;
+            for (int order : target.breakPrimaryOrders) {
+                boolean found = false;
+                for (int i = 0; i < count && !found; i++) {
+                    found = orders[i] == order;
+                }
+                if (!found) {
+                    orders[count++] = order;
+                }
+            }
+            primaryOrders = Arrays.copyOf(orders, count);
+        }
+    }
+}
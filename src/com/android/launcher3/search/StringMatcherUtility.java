@@ -16,7 +16,15 @@
 
 package com.android.launcher3.search;
 
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.util.IntArray;
+
+import java.text.CollationElementIterator;
 import java.text.Collator;
+import java.text.RuleBasedCollator;
+import java.util.Arrays;
+import java.util.Locale;
 
 /**
  * Utilities for matching query string to target string.
@@ -58,6 +66,84 @@ public class StringMatcherUtility {
         return false;
     }
 
+    /**
+     * Returns the positions in {@code target} at which {@link #matches} tries to match a query.
+     */
+    public static int[] getBreakPositions(String target) {
+        int targetLength = target.length();
+        if (targetLength == 0) {
+            return new int[0];
+        }
+        int[] breaks = new int[targetLength];
+        int count = 0;
+
+        int lastType;
+        int thisType = Character.UNASSIGNED;
+        int nextType = Character.getType(target.codePointAt(0));
+        for (int i = 0; i < targetLength; i++) {
+            lastType = thisType;
+            thisType = nextType;
+            nextType = i < (targetLength - 1)
+                    ? Character.getType(target.codePointAt(i + 1)) : Character.UNASSIGNED;
+            if (isBreak(thisType, lastType, nextType)) {
+                breaks[count++] = i;
+            }
+        }
+        return Arrays.copyOf(breaks, count);
+    }
+
+    /**
+     * Same as {@link #matches(String, String, StringMatcher)}, for a query and target which were
+     * prepared for the {@param matcher}. When both can be compared using their primary collation
+     * orders, this does not allocate.
+     */
+    public static boolean matches(MatchQuery query, MatchTarget target, StringMatcher matcher) {
+        int queryLength = query.query.length();
+        int targetLength = target.label.length();
+        if (targetLength < queryLength || queryLength <= 0) {
+            return false;
+        }
+
+        if (query.fuzzy) {
+            return target.labelLower.contains(query.query);
+        }
+
+        boolean comparePrimaries = query.primaries != null && target.primaries != null;
+        int end = targetLength - queryLength;
+        for (int i : target.breakPositions) {
+            if (i > end) {
+                break;
+            }
+            int from = comparePrimaries ? target.primaryStarts[i] : -1;
+            int to = comparePrimaries ? target.primaryStarts[i + queryLength] : -1;
+            if (from >= 0 && to >= 0) {
+                if (startsWith(target.primaries, from, to, query.primaries)) {
+                    return true;
+                }
+            } else if (matcher.matches(
+                    query.query, target.label.substring(i, i + queryLength))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if {@param prefix} is a prefix of {@param array} between {@param from}
+     * and {@param to}. At primary strength, this is equivalent to {@link StringMatcher#matches}.
+     */
+    private static boolean startsWith(int[] array, int from, int to, int[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (array[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Returns true if the current point should be a break point. Following cases
      * are considered as break points:
@@ -111,9 +197,13 @@ public class StringMatcherUtility {
 
         private static final char MAX_UNICODE = '\uFFFF';
 
+        public static final int NO_PRIMARY_ORDER = -1;
+
         private final Collator mCollator;
+        private final Locale mLocale;
 
         StringMatcher() {
+            mLocale = Locale.getDefault();
             // On android N and above, Collator uses ICU implementation which has a much better
             // support for non-latin locales.
             mCollator = Collator.getInstance();
@@ -139,15 +229,151 @@ public class StringMatcherUtility {
             }
         }
 
+        /**
+         * Returns the primary collation order of the character at {@param offset} in
+         * {@param text}, or {@link #NO_PRIMARY_ORDER} if the character has none. Two strings
+         * can only match if their first characters have the same primary order.
+         */
+        public int getPrimaryOrder(String text, int offset) {
+            if (!(mCollator instanceof RuleBasedCollator) || offset >= text.length()) {
+                return NO_PRIMARY_ORDER;
+            }
+            int end = offset + Character.charCount(text.codePointAt(offset));
+            CollationElementIterator itr = ((RuleBasedCollator) mCollator)
+                    .getCollationElementIterator(text.substring(offset, end));
+            int element;
+            while ((element = itr.next()) != CollationElementIterator.NULLORDER) {
+                int primary = CollationElementIterator.primaryOrder(element);
+                if (primary != 0) {
+                    return primary;
+                }
+            }
+            return NO_PRIMARY_ORDER;
+        }
+
+        /**
+         * Adds the non-zero primary collation orders of {@param text} between {@param start}
+         * and {@param end} to {@param out}. Returns false if the collator does not expose them.
+         */
+        boolean addPrimaryOrders(String text, int start, int end, IntArray out) {
+            if (!(mCollator instanceof RuleBasedCollator)) {
+                return false;
+            }
+            CollationElementIterator itr = ((RuleBasedCollator) mCollator)
+                    .getCollationElementIterator(text.substring(start, end));
+            int element;
+            while ((element = itr.next()) != CollationElementIterator.NULLORDER) {
+                int primary = CollationElementIterator.primaryOrder(element);
+                if (primary != 0) {
+                    out.add(primary);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the primary collation orders of each code point in {@param text}, or null if
+         * they can not be compared independently. This is the case when the collator combines
+         * adjacent characters, like contractions or reordering in some locales.
+         *
+         * @param starts if not null, filled with the index of the first primary order of each
+         *               char, or -1 for the second half of a surrogate pair.
+         */
+        @Nullable
+        int[] getCodePointPrimaryOrders(String text, @Nullable int[] starts) {
+            int length = text.length();
+            IntArray primaries = new IntArray(length);
+            for (int i = 0; i < length; ) {
+                int next = i + Character.charCount(text.codePointAt(i));
+                if (starts != null) {
+                    starts[i] = primaries.size();
+                    for (int j = i + 1; j < next; j++) {
+                        starts[j] = -1;
+                    }
+                }
+                if (!addPrimaryOrders(text, i, next, primaries)) {
+                    return null;
+                }
+                i = next;
+            }
+            if (starts != null) {
+                starts[length] = primaries.size();
+            }
+
+            IntArray wholeText = new IntArray(primaries.size());
+            addPrimaryOrders(text, 0, length, wholeText);
+            return wholeText.equals(primaries) ? primaries.toArray() : null;
+        }
+
         public static StringMatcher getInstance() {
             return new StringMatcher();
         }
     }
 
+    /**
+     * A query prepared for matching against many {@link MatchTarget}s.
+     */
+    public static class MatchQuery {
+
+        public final String query;
+        final boolean fuzzy;
+        // Primary collation orders of the query, or null if they can not be used for matching
+        @Nullable final int[] primaries;
+
+        /**
+         * @param query the lower-cased query
+         */
+        public MatchQuery(String query, StringMatcher matcher) {
+            this.query = query;
+            fuzzy = requestSimpleFuzzySearch(query);
+            primaries = fuzzy ? null : matcher.getCodePointPrimaryOrders(query, null);
+        }
+    }
+
+    /**
+     * A label prepared for matching, which caches everything that does not depend on the query.
+     */
+    public static class MatchTarget {
+
+        public final String label;
+        final String labelLower;
+        final Locale locale;
+        final int[] breakPositions;
+        // Primary order of the first character at each break position
+        final int[] breakPrimaryOrders;
+        // Primary collation orders of the label, or null if they can not be used for matching
+        @Nullable final int[] primaries;
+        // Index in primaries of the first primary order of each char, see
+        // StringMatcher#getCodePointPrimaryOrders
+        final int[] primaryStarts;
+
+        public MatchTarget(@Nullable CharSequence label, StringMatcher matcher) {
+            this.label = label == null ? "" : label.toString();
+            labelLower = this.label.toLowerCase();
+            locale = matcher.mLocale;
+            breakPositions = getBreakPositions(this.label);
+            breakPrimaryOrders = new int[breakPositions.length];
+            for (int i = 0; i < breakPositions.length; i++) {
+                breakPrimaryOrders[i] = matcher.getPrimaryOrder(this.label, breakPositions[i]);
+            }
+            primaryStarts = new int[this.label.length() + 1];
+            primaries = matcher.getCodePointPrimaryOrders(this.label, primaryStarts);
+        }
+
+        /**
+         * Returns true if this target can be used for matching {@param label} using
+         * {@param matcher}.
+         */
+        public boolean isPreparedFor(@Nullable CharSequence label, StringMatcher matcher) {
+            return locale.equals(matcher.mLocale)
+                    && this.label.contentEquals(label == null ? "" : label);
+        }
+    }
+
     /**
      * Matching optimization to search in Chinese.
      */
-    private static boolean requestSimpleFuzzySearch(String s) {
+    static boolean requestSimpleFuzzySearch(String s) {
         for (int i = 0; i < s.length(); ) {
             int codepoint = s.codePointAt(i);
             i += Character.charCount(codepoint);
@@ -104,7 +104,8 @@ public class SecondaryDisplayLauncher extends BaseDraggingActivity
         mAppsButton = findViewById(R.id.all_apps_button);
 
         mPopupDataProvider = new PopupDataProvider(
-                mAppsView.getAppsStore()::updateNotificationDots);
+                updatedKeys -> mAppsView.getAppsStore().updateNotificationDots(
+                        updatedKeys::contains));
 
         mModel.addCallbacksAndLoad(this);
     }
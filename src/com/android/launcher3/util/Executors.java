@@ -40,6 +40,12 @@ public class Executors {
     public static final ThreadPoolExecutor THREAD_POOL_EXECUTOR = new ThreadPoolExecutor(
             POOL_SIZE, POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
 
+    /**
+     * A bounded {@link ThreadPoolExecutor} for rendering icons in the background. It leaves one
+     * core for the model thread, which commits the rendered icons.
+     */
+    public static final ThreadPoolExecutor ICON_RENDER_EXECUTOR = createIconRenderExecutor();
+
     /**
      * Returns the executor for running tasks on the main thread.
      */
@@ -75,6 +81,15 @@ public class Executors {
     public static final LooperExecutor MODEL_EXECUTOR =
             new LooperExecutor(createAndStartNewLooper("launcher-loader"));
 
+    private static ThreadPoolExecutor createIconRenderExecutor() {
+        int poolSize = Math.max(POOL_SIZE - 1, 1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new SimpleThreadFactory("icon-render-", Process.THREAD_PRIORITY_BACKGROUND));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * A simple ThreadFactory to set the thread name and priority when used with executors.
      */
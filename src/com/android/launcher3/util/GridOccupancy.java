@@ -4,20 +4,46 @@ import android.graphics.Rect;
 
 import com.android.launcher3.model.data.ItemInfo;
 
+import java.util.Arrays;
+
 /**
  * Utility object to manage the occupancy in a grid.
+ *
+ * Each row is stored as a bit mask of its occupied columns, so that a span can be checked or
+ * marked with a single mask operation per row. The grid supports up to {@link #MAX_COUNT_X}
+ * columns.
  */
 public class GridOccupancy {
 
+    public static final int MAX_COUNT_X = Long.SIZE;
+
     private final int mCountX;
     private final int mCountY;
 
-    public final boolean[][] cells;
+    // Bit x of mRows[y] is set if the cell (x, y) is occupied
+    private final long[] mRows;
 
     public GridOccupancy(int countX, int countY) {
+        if (countX > MAX_COUNT_X) {
+            throw new IllegalArgumentException("Grid too wide: " + countX);
+        }
         mCountX = countX;
         mCountY = countY;
-        cells = new boolean[countX][countY];
+        mRows = new long[countY];
+    }
+
+    /**
+     * Returns a mask with the bits {@param x} to {@param x} + {@param spanX} - 1 set.
+     */
+    private static long spanMask(int x, int spanX) {
+        return (spanX >= Long.SIZE ? -1L : (1L << spanX) - 1) << x;
+    }
+
+    /**
+     * Returns true if the cell at {@param x}, {@param y} is occupied.
+     */
+    public boolean isOccupied(int x, int y) {
+        return (mRows[y] & (1L << x)) != 0;
     }
 
     /**
@@ -30,31 +56,37 @@ public class GridOccupancy {
      * @return true if a vacant cell was found
      */
     public boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
+        if (spanX <= 0 || spanY <= 0 || spanX > mCountX) {
+            return false;
+        }
+        long gridMask = spanMask(0, mCountX);
         for (int y = 0; (y + spanY) <= mCountY; y++) {
-            for (int x = 0; (x + spanX) <= mCountX; x++) {
-                boolean available = !cells[x][y];
-                out:
-                for (int i = x; i < x + spanX; i++) {
-                    for (int j = y; j < y + spanY; j++) {
-                        available = available && !cells[i][j];
-                        if (!available) break out;
-                    }
-                }
-                if (available) {
-                    vacantOut[0] = x;
-                    vacantOut[1] = y;
-                    return true;
-                }
+            long occupied = 0;
+            for (int j = y; j < y + spanY; j++) {
+                occupied |= mRows[j];
+            }
+            // Bit x of starts is set if the cells x to x + spanX - 1 are vacant
+            long starts = ~occupied & gridMask;
+            for (int i = 1; i < spanX && starts != 0; i++) {
+                starts &= starts >>> 1;
+            }
+            if (starts != 0) {
+                vacantOut[0] = Long.numberOfTrailingZeros(starts);
+                vacantOut[1] = y;
+                return true;
             }
         }
         return false;
     }
 
     public void copyTo(GridOccupancy dest) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                dest.cells[i][j] = cells[i][j];
-            }
+        if (dest.mCountX == mCountX) {
+            System.arraycopy(mRows, 0, dest.mRows, 0, mCountY);
+            return;
+        }
+        long gridMask = spanMask(0, mCountX);
+        for (int y = 0; y < mCountY; y++) {
+            dest.mRows[y] = (dest.mRows[y] & ~gridMask) | mRows[y];
         }
     }
 
@@ -64,11 +96,26 @@ public class GridOccupancy {
         if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
             return false;
         }
-        for (int i = x; i <= x2; i++) {
-            for (int j = y; j <= y2; j++) {
-                if (cells[i][j]) {
-                    return false;
-                }
+        long mask = spanMask(x, spanX);
+        for (int j = y; j <= y2; j++) {
+            if ((mRows[j] & mask) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if {@param block} can be placed with its top left corner at {@param x},
+     * {@param y}, that is if no cell occupied in the block is also occupied in this grid.
+     */
+    public boolean isRegionVacant(int x, int y, GridOccupancy block) {
+        if (x < 0 || y < 0 || x + block.mCountX > mCountX || y + block.mCountY > mCountY) {
+            return false;
+        }
+        for (int j = 0; j < block.mCountY; j++) {
+            if ((mRows[y + j] & (block.mRows[j] << x)) != 0) {
+                return false;
             }
         }
         return true;
@@ -76,9 +123,14 @@ public class GridOccupancy {
 
     public void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
         if (cellX < 0 || cellY < 0) return;
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                cells[x][y] = value;
+        int width = Math.min(cellX + spanX, mCountX) - cellX;
+        if (width <= 0) return;
+        long mask = spanMask(cellX, width);
+        for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
+            if (value) {
+                mRows[y] |= mask;
+            } else {
+                mRows[y] &= ~mask;
             }
         }
     }
@@ -96,6 +148,24 @@ public class GridOccupancy {
     }
 
     public void clear() {
-        markCells(0, 0, mCountX, mCountY, false);
+        Arrays.fill(mRows, 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GridOccupancy)) {
+            return false;
+        }
+        GridOccupancy other = (GridOccupancy) o;
+        return mCountX == other.mCountX && mCountY == other.mCountY
+                && Arrays.equals(mRows, other.mRows);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * mCountX + mCountY) + Arrays.hashCode(mRows);
     }
 }
@@ -294,7 +294,7 @@ public final class WidgetsListHeader extends LinearLayout implements ItemInfoUpd
         }
         if (getTag() instanceof ItemInfoWithIcon) {
             ItemInfoWithIcon info = (ItemInfoWithIcon) getTag();
-            if (info.usingLowResIcon()) {
+            if (info.needsHighResIcon()) {
                 mIconLoadRequest = LauncherAppState.getInstance(getContext()).getIconCache()
                         .updateIconInBackground(this, info);
             }
@@ -112,6 +112,15 @@ public class WidgetsModel {
      */
     public List<ComponentWithLabelAndIcon> update(
             LauncherAppState app, @Nullable PackageUserKey packageUser) {
+        return update(app, packageUser, null);
+    }
+
+    /**
+     * Same as {@link #update(LauncherAppState, PackageUserKey)}, but uses {@param providers} if
+     * not null instead of querying the widget providers for the package/user.
+     */
+    public List<ComponentWithLabelAndIcon> update(LauncherAppState app,
+            @Nullable PackageUserKey packageUser, @Nullable List<AppWidgetProviderInfo> providers) {
         Preconditions.assertWorkerThread();
 
         Context context = app.getContext();
@@ -123,7 +132,10 @@ public class WidgetsModel {
 
             // Widgets
             WidgetManagerHelper widgetManager = new WidgetManagerHelper(context);
-            for (AppWidgetProviderInfo widgetInfo : widgetManager.getAllProviders(packageUser)) {
+            if (providers == null) {
+                providers = widgetManager.getAllProviders(packageUser);
+            }
+            for (AppWidgetProviderInfo widgetInfo : providers) {
                 LauncherAppWidgetProviderInfo launcherWidgetInfo =
                         LauncherAppWidgetProviderInfo.fromProviderInfo(context, widgetInfo);
 
@@ -182,6 +194,10 @@ public class WidgetsModel {
 
         // Update each package entry
         IconCache iconCache = app.getIconCache();
+        if (iconCache.isIconAtlasEnabled()) {
+            // Draws the header icons from the atlas instead of loading one full icon per package
+            iconCache.prefetchPackageEntries(packageItemInfoCache.values());
+        }
         for (PackageItemInfo p : packageItemInfoCache.values()) {
             iconCache.getTitleAndIconForApp(p, true /* userLowResIcon */);
         }